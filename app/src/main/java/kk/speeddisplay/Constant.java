@@ -7,4 +7,48 @@ public class Constant {
     public final static int ONGOING_NOTIFICATION_ID = 11;
     public final static String NOTIFY_CHANNEL_ID = "22";
 
+    /* minimum time between writes of the max speed to the preferences, while it keeps increasing,
+     * the first new max speed after a write this long ago is written straight away, so a new max speed
+     * is held in memory for at most this long */
+    public final static long MAX_SPEED_FLUSH_INTERVAL = 1000L;
+
+    /* number of fixes the location provider collects into one batch while the main activity is not running */
+    public final static int BACKGROUND_BATCH_FIXES = 10;
+
+    /* directory under the app's files directory the trips are recorded in */
+    public final static String TRIP_DIRECTORY = "trips";
+
+    /* directory under the app's external files directory the traces to be replayed are read from,
+     * and the most fixes of a trace given to the speed pipeline as one location result */
+    public final static String TRACE_DIRECTORY = "traces";
+    public final static int REPLAY_BATCH_FIXES = 50;
+
+    /* file under the app's files directory the time in each speed band is saved in,
+     * and the minimum time between saves while the service is running */
+    public final static String SPEED_BANDS_FILE = "speed_bands";
+    public final static long SPEED_BANDS_SAVE_INTERVAL = 60000L;
+
+    /* directory under the app's external files directory the diagnostics are saved in,
+     * and the time between refreshes of the diagnostics screen */
+    public final static String DIAGNOSTICS_DIRECTORY = "diagnostics";
+    public final static long DIAGNOSTICS_REFRESH_INTERVAL = 1000L;
+
+    /* events held by the event log, about 40 bytes each, the last 15 minutes or so of driving */
+    public final static int EVENT_LOG_CAPACITY = 16384;
+
+    /* oldest last known fix in milliseconds, and its largest accuracy in metres,
+     * whose speed is shown on start up until the first fix */
+    public final static long WARM_START_MAX_AGE = 10000L;
+    public final static float WARM_START_MAX_ACCURACY = 20.0F;
+
+    /* longest time in milliseconds from the start of the process to the first speed
+     * from a fix on the screen, with the location provider already warm */
+    public final static long STARTUP_TARGET = 5000L;
+
+    /* file under the app's files directory the state of the trip in progress is checkpointed to */
+    public final static String SESSION_JOURNAL_FILE = "session.journal";
+
+    /* longest time since the last checkpoint, for a restarted service to resume the trip */
+    public final static long SESSION_RESUME_WINDOW = 30 * 60 * 1000L;
+
 }
@@ -0,0 +1,161 @@
+package kk.speeddisplay;
+
+import android.annotation.SuppressLint;
+import android.os.Bundle;
+import android.os.Handler;
+import android.support.v4.app.NavUtils;
+import android.support.v7.app.ActionBar;
+import android.support.v7.app.AppCompatActivity;
+import android.text.format.DateFormat;
+import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Shows the startup times and the timings from the location fixes to the speeds on the screen,
+ * recorded by the service and the main activity: the count, mean, percentiles and maximum of each timing,
+ * with the fix counts. Refreshed every second while visible. The report, with the counts in
+ * each bucket of the histograms, or the events held in the event log, can be saved to a file
+ * in the diagnostics directory of the app's external files directory.
+ */
+public class DiagnosticsActivity extends AppCompatActivity {
+    private final static String TAG = DiagnosticsActivity.class.getSimpleName();
+
+    private final Handler mHandler = new Handler();
+    private final StringBuilder mReport = new StringBuilder();
+    private TextView mDiagnosticsView;
+
+    private final Runnable mRefreshRunnable = new Runnable() {
+        @Override
+        public void run() {
+            showDiagnostics();
+            mHandler.postDelayed(this, Constant.DIAGNOSTICS_REFRESH_INTERVAL);
+        }
+    };
+
+    /* use to suppress error for line 'actionBar.setDefaultDisplayHomeAsUpEnabled(true);' */
+    @SuppressLint("RestrictedApi")
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "onCreate()");
+
+        setContentView(R.layout.activity_diagnostics);
+        mDiagnosticsView = findViewById(R.id.tv_Diagnostics);
+        ActionBar actionBar = this.getSupportActionBar();
+
+        // Set the action bar back button to look like an up button
+        if (actionBar != null) {
+            actionBar.setDefaultDisplayHomeAsUpEnabled(true);
+        }
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "onResume()");
+
+        mHandler.post(mRefreshRunnable);
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "onPause()");
+
+        mHandler.removeCallbacks(mRefreshRunnable);
+    }
+
+    /**
+     * Shows the latest timings
+     */
+    private void showDiagnostics() {
+        mReport.setLength(0);
+        appendReport(mReport, false);
+        mDiagnosticsView.setText(mReport);
+    }
+
+    /**
+     * Appends the startup times, then the timings and fix counts
+     *
+     * @param report  appended to
+     * @param buckets true to append the counts in each bucket of the histograms
+     */
+    private static void appendReport(StringBuilder report, boolean buckets) {
+        GetSpeedService.getStartup().appendReport(report);
+        report.append('\n');
+        GetSpeedService.getDiagnostics().appendReport(report, buckets);
+    }
+
+    /**
+     * Saves the timings, with the histogram buckets, or the event log, to a new file,
+     * and tells the user where
+     *
+     * @param eventLog true to save the events, false to save the timings
+     */
+    private void saveDiagnostics(boolean eventLog) {
+        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "saveDiagnostics()");
+
+        File directory = getExternalFilesDir(Constant.DIAGNOSTICS_DIRECTORY);
+        try {
+            if (directory == null) {
+                throw new IOException("external storage not available");
+            }
+            File file = new File(directory, (eventLog ? "events-" : "diagnostics-")
+                    + DateFormat.format("yyyyMMdd-HHmmss", System.currentTimeMillis()) + ".txt");
+            Writer writer = new BufferedWriter(new FileWriter(file));
+            try {
+                if (eventLog) {
+                    //every event held, the log only holds the last minutes
+                    Events.getLog().dump(writer, 0);
+                } else {
+                    StringBuilder report = new StringBuilder();
+                    appendReport(report, true);
+                    writer.write(report.toString());
+                }
+            } finally {
+                writer.close();
+            }
+            Toast.makeText(this, getString(R.string.diagnostics_saved, file.getPath()), Toast.LENGTH_LONG).show();
+        } catch (IOException e) {
+            Log.e(TAG, getString(R.string.diagnostics_save_failed), e);
+            Toast.makeText(this, R.string.diagnostics_save_failed, Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "onCreateOptionsMenu()");
+
+        getMenuInflater().inflate(R.menu.menu_diagnostics, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "onOptionsItemSelected()");
+
+        int id = item.getItemId();
+        if (id == R.id.diagnostics_save) {
+            saveDiagnostics(false);
+            return true;
+        }
+        if (id == R.id.diagnostics_save_events) {
+            saveDiagnostics(true);
+            return true;
+        }
+        // When the home button is pressed, take the user back to the MainActivity
+        if (id == android.R.id.home) {
+            NavUtils.navigateUpFromSameTask(this);
+        }
+        return super.onOptionsItemSelected(item);
+    }
+}
@@ -0,0 +1,222 @@
+package kk.speeddisplay;
+
+import kk.speeddisplay.core.EventLog;
+
+import static kk.speeddisplay.core.EventLog.ARG_BOOLEAN;
+import static kk.speeddisplay.core.EventLog.ARG_DOUBLE;
+import static kk.speeddisplay.core.EventLog.ARG_FLOAT;
+import static kk.speeddisplay.core.EventLog.ARG_LONG;
+import static kk.speeddisplay.core.EventLog.ARG_NONE;
+
+/**
+ * The events traced on the speed path, by the service, the location sources and the main
+ * activity, into an in-memory {@link EventLog}, in place of logcat messages built from strings.
+ * <p>
+ * Logging an event writes its id, the time and its arguments into the ring buffer,
+ * nothing is allocated, so it is left enabled in release builds, and can be switched off in the
+ * settings. The events are only turned into text when the log is saved from the diagnostics screen.
+ */
+final class Events {
+
+    /* service */
+    static final int SERVICE_CREATE = 1;
+    static final int SERVICE_START_COMMAND = 2;         // start id
+    static final int SERVICE_DESTROY = 3;
+    static final int SERVICE_LOW_MEMORY = 4;
+    static final int SERVICE_TRIM_MEMORY = 5;           // level
+    static final int SERVICE_BIND = 6;
+    static final int REQUEST_UPDATES = 7;               // requested rate in milliseconds
+    static final int APPLY_UPDATE_RATE = 8;             // rate in milliseconds, AdaptiveRateScheduler priority
+    static final int SEND_NOTIFICATION = 9;
+    static final int CREATE_LOCATION_SOURCE = 10;       // LocationSources constant
+    static final int REPLAY_TRACE = 11;                 // replay speed factor
+    static final int LOCATION_RESULT_START = 12;
+    static final int FIX = 13;                          // Doppler speed in metres/sec, accuracy in metres
+    static final int LOCATION_RESULT_END = 14;          // processing time in microseconds
+    static final int COMPACT_TRIP = 15;                 // trip id
+    static final int TRIP_COMPACTED = 16;               // samples
+    static final int RESUME_SESSION = 17;
+    static final int SESSION_RESUMED = 18;              // trip id, distance
+    static final int SAVE_SPEED_BANDS = 19;
+    static final int SPEED_FILTER = 20;                 // SpeedFilters constant
+    static final int NEW_MAX_SPEED = 21;                // max speed in km/hour
+    static final int SPEED_CHANGED = 22;                // speed, max speed in km/hour
+    static final int SAVE_MAX_SPEED = 23;               // max speed in km/hour
+    static final int SEND_TO_MAIN = 24;                 // speed, max speed in km/hour
+    static final int REGISTER_RECEIVER = 25;
+    static final int RATE_RECEIVED = 26;                // rate in milliseconds, main activity running
+    static final int SERVICE_HANDLER = 27;
+    static final int HANDLE_MESSAGE = 28;               // message code
+    static final int LAST_FIX = 29;                     // age in milliseconds, true if its speed is shown
+
+    /* service summary, when it is destroyed */
+    static final int MAX_SPEED_WRITES_SAVED = 30;       // writes
+    static final int RATE_SAVING = 31;                  // percentage of fixes saved by the adaptive rate
+    static final int SPEED_SOURCES = 32;                // fixes using Doppler speeds, positions
+    static final int SPEED_SOURCES_BLENDED = 33;        // fixes blended, Doppler speeds rejected
+    static final int LOCATIONS_REJECTED = 34;           // rejected for accuracy, acceleration
+    static final int LOCATIONS_PROCESSED = 35;          // locations, location results
+    static final int FIX_LATENCY = 36;                  // LocationSources constant, fixes measured
+    static final int FIX_LATENCY_MEAN = 37;             // mean, median in milliseconds
+    static final int FIX_LATENCY_TAIL = 38;             // 95th percentile, max in milliseconds
+
+    /* location sources */
+    static final int FUSED_LOCATION_RESULT = 40;        // locations
+    static final int FUSED_LOCATION_RESULT_NULL = 41;
+    static final int FUSED_REQUEST_UPDATES = 42;        // interval in milliseconds, max wait in milliseconds
+    static final int FUSED_REMOVE_UPDATES = 43;
+    static final int GPS_LOCATION_CHANGED = 44;
+    static final int GPS_ENABLED = 45;                  // true if enabled
+    static final int GPS_REQUEST_UPDATES = 46;          // interval in milliseconds
+    static final int GPS_REMOVE_UPDATES = 47;
+    static final int TRACE_REPLAYED = 48;               // fixes
+    static final int CREATE_SOURCE = 49;                // LocationSources constant
+
+    /* main activity */
+    static final int MAIN_CREATE = 60;
+    static final int MAIN_START = 61;
+    static final int MAIN_RESUME = 62;
+    static final int MAIN_PAUSE = 63;
+    static final int MAIN_DESTROY = 64;
+    static final int CHECK_PERMISSIONS = 65;
+    static final int SETUP_PREFERENCES = 66;
+    static final int SHOW_SETTINGS = 67;
+    static final int SHOW_TRIP_STATISTICS = 68;
+    static final int SHUT_DOWN = 69;
+    static final int SEND_RATE = 70;                    // rate in milliseconds, main activity running
+    static final int START_SERVICE = 71;
+    static final int PERMISSIONS_RESULT = 72;           // request code
+    static final int CREATE_OPTIONS_MENU = 73;
+    static final int PREFERENCE_CHANGED = 74;
+    static final int OPTIONS_ITEM_SELECTED = 75;        // item id
+    static final int FRAME = 76;                        // speed, max speed in km/hour
+    static final int STARTUP = 77;                      // first speed, first real speed in milliseconds
+    static final int PREFETCH = 78;                     // time taken in microseconds
+
+    private static final EventLog LOG = new EventLog(Constant.EVENT_LOG_CAPACITY);
+
+    static {
+        LOG.define(SERVICE_CREATE, "GetSpeedService.onCreate", ARG_NONE, ARG_NONE);
+        LOG.define(SERVICE_START_COMMAND, "GetSpeedService.onStartCommand", ARG_LONG, ARG_NONE);
+        LOG.define(SERVICE_DESTROY, "GetSpeedService.onDestroy", ARG_NONE, ARG_NONE);
+        LOG.define(SERVICE_LOW_MEMORY, "GetSpeedService.onLowMemory", ARG_NONE, ARG_NONE);
+        LOG.define(SERVICE_TRIM_MEMORY, "GetSpeedService.onTrimMemory", ARG_LONG, ARG_NONE);
+        LOG.define(SERVICE_BIND, "GetSpeedService.onBind", ARG_NONE, ARG_NONE);
+        LOG.define(REQUEST_UPDATES, "GetSpeedService.requestUpdates", ARG_LONG, ARG_NONE);
+        LOG.define(APPLY_UPDATE_RATE, "GetSpeedService.applyUpdateRate", ARG_LONG, ARG_LONG);
+        LOG.define(SEND_NOTIFICATION, "GetSpeedService.sendNotification", ARG_NONE, ARG_NONE);
+        LOG.define(CREATE_LOCATION_SOURCE, "GetSpeedService.createLocationSource", ARG_LONG, ARG_NONE);
+        LOG.define(REPLAY_TRACE, "GetSpeedService.replayTrace", ARG_DOUBLE, ARG_NONE);
+        LOG.define(LOCATION_RESULT_START, "GetSpeedService.onLocationResultStart", ARG_NONE, ARG_NONE);
+        LOG.define(FIX, "GetSpeedService.onFix", ARG_FLOAT, ARG_FLOAT);
+        LOG.define(LOCATION_RESULT_END, "GetSpeedService.onLocationResultEnd", ARG_LONG, ARG_NONE);
+        LOG.define(COMPACT_TRIP, "GetSpeedService.compactTrip", ARG_LONG, ARG_NONE);
+        LOG.define(TRIP_COMPACTED, "GetSpeedService.tripCompacted", ARG_LONG, ARG_NONE);
+        LOG.define(RESUME_SESSION, "GetSpeedService.resumeSession", ARG_NONE, ARG_NONE);
+        LOG.define(SESSION_RESUMED, "GetSpeedService.sessionResumed", ARG_LONG, ARG_FLOAT);
+        LOG.define(SAVE_SPEED_BANDS, "GetSpeedService.saveSpeedBands", ARG_NONE, ARG_NONE);
+        LOG.define(SPEED_FILTER, "GetSpeedService.speedFilter", ARG_LONG, ARG_NONE);
+        LOG.define(NEW_MAX_SPEED, "GetSpeedService.onNewMaxSpeed", ARG_FLOAT, ARG_NONE);
+        LOG.define(SPEED_CHANGED, "GetSpeedService.onSpeedChanged", ARG_FLOAT, ARG_FLOAT);
+        LOG.define(SAVE_MAX_SPEED, "GetSpeedService.saveMaxSpeed", ARG_FLOAT, ARG_NONE);
+        LOG.define(SEND_TO_MAIN, "GetSpeedService.sendToMain", ARG_FLOAT, ARG_FLOAT);
+        LOG.define(REGISTER_RECEIVER, "GetSpeedService.registerBroadcastReceiver", ARG_NONE, ARG_NONE);
+        LOG.define(RATE_RECEIVED, "MyRateBroadcastReceiver.onReceive", ARG_LONG, ARG_BOOLEAN);
+        LOG.define(SERVICE_HANDLER, "ServiceHandler.ServiceHandler", ARG_NONE, ARG_NONE);
+        LOG.define(HANDLE_MESSAGE, "ServiceHandler.handleMessage", ARG_LONG, ARG_NONE);
+        LOG.define(LAST_FIX, "GetSpeedService.onLastFix", ARG_LONG, ARG_BOOLEAN);
+        LOG.define(MAX_SPEED_WRITES_SAVED, "GetSpeedService.maxSpeedWritesSaved", ARG_LONG, ARG_NONE);
+        LOG.define(RATE_SAVING, "GetSpeedService.rateSaving", ARG_FLOAT, ARG_NONE);
+        LOG.define(SPEED_SOURCES, "GetSpeedService.speedSources", ARG_LONG, ARG_LONG);
+        LOG.define(SPEED_SOURCES_BLENDED, "GetSpeedService.speedSourcesBlended", ARG_LONG, ARG_LONG);
+        LOG.define(LOCATIONS_REJECTED, "GetSpeedService.locationsRejected", ARG_LONG, ARG_LONG);
+        LOG.define(LOCATIONS_PROCESSED, "GetSpeedService.locationsProcessed", ARG_LONG, ARG_LONG);
+        LOG.define(FIX_LATENCY, "GetSpeedService.fixLatency", ARG_LONG, ARG_LONG);
+        LOG.define(FIX_LATENCY_MEAN, "GetSpeedService.fixLatencyMean", ARG_FLOAT, ARG_FLOAT);
+        LOG.define(FIX_LATENCY_TAIL, "GetSpeedService.fixLatencyTail", ARG_FLOAT, ARG_FLOAT);
+
+        LOG.define(FUSED_LOCATION_RESULT, "FusedLocationSource.onLocationResult", ARG_LONG, ARG_NONE);
+        LOG.define(FUSED_LOCATION_RESULT_NULL, "FusedLocationSource.locationResultNull", ARG_NONE, ARG_NONE);
+        LOG.define(FUSED_REQUEST_UPDATES, "FusedLocationSource.requestUpdates", ARG_LONG, ARG_LONG);
+        LOG.define(FUSED_REMOVE_UPDATES, "FusedLocationSource.removeUpdates", ARG_NONE, ARG_NONE);
+        LOG.define(GPS_LOCATION_CHANGED, "GpsLocationSource.onLocationChanged", ARG_NONE, ARG_NONE);
+        LOG.define(GPS_ENABLED, "GpsLocationSource.enabled", ARG_BOOLEAN, ARG_NONE);
+        LOG.define(GPS_REQUEST_UPDATES, "GpsLocationSource.requestUpdates", ARG_LONG, ARG_NONE);
+        LOG.define(GPS_REMOVE_UPDATES, "GpsLocationSource.removeUpdates", ARG_NONE, ARG_NONE);
+        LOG.define(TRACE_REPLAYED, "TraceLocationSource.replayed", ARG_LONG, ARG_NONE);
+        LOG.define(CREATE_SOURCE, "LocationSources.create", ARG_LONG, ARG_NONE);
+
+        LOG.define(MAIN_CREATE, "MainActivity.onCreate", ARG_NONE, ARG_NONE);
+        LOG.define(MAIN_START, "MainActivity.onStart", ARG_NONE, ARG_NONE);
+        LOG.define(MAIN_RESUME, "MainActivity.onResume", ARG_NONE, ARG_NONE);
+        LOG.define(MAIN_PAUSE, "MainActivity.onPause", ARG_NONE, ARG_NONE);
+        LOG.define(MAIN_DESTROY, "MainActivity.onDestroy", ARG_NONE, ARG_NONE);
+        LOG.define(CHECK_PERMISSIONS, "MainActivity.checkPermissions", ARG_NONE, ARG_NONE);
+        LOG.define(SETUP_PREFERENCES, "MainActivity.setupSharedPreferences", ARG_NONE, ARG_NONE);
+        LOG.define(SHOW_SETTINGS, "MainActivity.showSettings", ARG_NONE, ARG_NONE);
+        LOG.define(SHOW_TRIP_STATISTICS, "MainActivity.showTripStatistics", ARG_NONE, ARG_NONE);
+        LOG.define(SHUT_DOWN, "MainActivity.shutDown", ARG_NONE, ARG_NONE);
+        LOG.define(SEND_RATE, "MainActivity.sendRateToService", ARG_LONG, ARG_BOOLEAN);
+        LOG.define(START_SERVICE, "MainActivity.getMyLocation", ARG_NONE, ARG_NONE);
+        LOG.define(PERMISSIONS_RESULT, "MainActivity.onRequestPermissionsResult", ARG_LONG, ARG_NONE);
+        LOG.define(CREATE_OPTIONS_MENU, "MainActivity.onCreateOptionsMenu", ARG_NONE, ARG_NONE);
+        LOG.define(PREFERENCE_CHANGED, "MainActivity.onSharedPreferenceChanged", ARG_NONE, ARG_NONE);
+        LOG.define(OPTIONS_ITEM_SELECTED, "MainActivity.onOptionsItemSelected", ARG_LONG, ARG_NONE);
+        LOG.define(FRAME, "MySpeedListener.doFrame", ARG_FLOAT, ARG_FLOAT);
+        LOG.define(STARTUP, "MySpeedListener.startup", ARG_LONG, ARG_LONG);
+        LOG.define(PREFETCH, "SpeedConfig.prefetch", ARG_LONG, ARG_NONE);
+    }
+
+    private Events() {
+    }
+
+    /**
+     * @param enabled false to stop logging events, the events already logged are kept
+     */
+    static void setEnabled(boolean enabled) {
+        LOG.setEnabled(enabled);
+    }
+
+    /**
+     * @return the event log, to be saved
+     */
+    static EventLog getLog() {
+        return LOG;
+    }
+
+    static void log(int id) {
+        LOG.log(id);
+    }
+
+    static void log(int id, long arg0) {
+        LOG.log(id, arg0);
+    }
+
+    static void log(int id, long arg0, long arg1) {
+        LOG.log(id, arg0, arg1);
+    }
+
+    static void log(int id, long arg0, float arg1) {
+        LOG.log(id, arg0, arg1);
+    }
+
+    static void log(int id, long arg0, boolean arg1) {
+        LOG.log(id, arg0, arg1);
+    }
+
+    static void log(int id, float arg0) {
+        LOG.log(id, arg0);
+    }
+
+    static void log(int id, float arg0, float arg1) {
+        LOG.log(id, arg0, arg1);
+    }
+
+    static void log(int id, double arg0) {
+        LOG.log(id, arg0);
+    }
+
+    static void log(int id, boolean arg0) {
+        LOG.log(id, arg0);
+    }
+}
@@ -0,0 +1,127 @@
+package kk.speeddisplay;
+
+import android.content.Context;
+import android.location.Location;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationResult;
+import com.google.android.gms.location.LocationServices;
+import com.google.android.gms.tasks.OnSuccessListener;
+
+import java.util.concurrent.Executor;
+
+import kk.speeddisplay.core.AdaptiveRateScheduler;
+import kk.speeddisplay.core.LocationSource;
+
+/**
+ * Gets the locations from the Fused Location provider of Google Play services.
+ * The provider can hold the fixes and deliver them in batches, and can lower the accuracy
+ * to save power, but its smoothing adds to the time from a fix to its callback,
+ * and it needs Google Play services on the device.
+ */
+class FusedLocationSource implements LocationSource {
+    private final FusedLocationProviderClient mFusedLocationClient;
+    private final LocationRequest mLocationRequest = new LocationRequest();
+    private final Looper mLooper;
+    private Listener mListener;
+
+    /* runs the last location callback on the looper the location results are delivered on,
+     * rather than the main thread */
+    private final Executor mExecutor;
+    private final OnSuccessListener<Location> mLastLocationListener = new OnSuccessListener<Location>() {
+        @Override
+        public void onSuccess(Location location) {
+            LocationSources.deliverLastFix(mListener, location);
+        }
+    };
+
+    /* LocationResult a data class representing a geographic location result
+     * from the fused location provider */
+    private final LocationCallback mLocationCallback = new LocationCallback() {
+        @Override
+        public void onLocationResult(LocationResult locationResult) {
+            if (locationResult == null) {
+                Events.log(Events.FUSED_LOCATION_RESULT_NULL);
+                return;
+            }
+            Events.log(Events.FUSED_LOCATION_RESULT, locationResult.getLocations().size());
+            //process all locations provided as one batch
+            LocationSources.deliver(mListener, locationResult.getLocations());
+        }
+    };
+
+    /**
+     * @param context context used to get the fused location client
+     * @param looper  looper the location results are delivered on
+     */
+    FusedLocationSource(Context context, Looper looper) {
+        //set up fused location client, which is API from Google Play Services
+        mFusedLocationClient = LocationServices.getFusedLocationProviderClient(context);
+        mLooper = looper;
+        final Handler handler = new Handler(looper);
+        mExecutor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                handler.post(command);
+            }
+        };
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Updates the location request for the rate and accuracy and passes it to the provider,
+     * replacing the request already made
+     *
+     * @throws SecurityException if the location permission has not been granted
+     */
+    @Override
+    public void requestUpdates(long intervalMillis, int priority, long maxWaitMillis) {
+        Events.log(Events.FUSED_REQUEST_UPDATES, intervalMillis, maxWaitMillis);
+
+        mLocationRequest.setInterval(intervalMillis);
+        mLocationRequest.setFastestInterval(intervalMillis);
+        if (priority == AdaptiveRateScheduler.PRIORITY_BALANCED_POWER) {
+            mLocationRequest.setPriority(LocationRequest.PRIORITY_BALANCED_POWER_ACCURACY);
+        } else {
+            mLocationRequest.setPriority(LocationRequest.PRIORITY_HIGH_ACCURACY);
+        }
+        mLocationRequest.setMaxWaitTime(maxWaitMillis);
+        mFusedLocationClient.requestLocationUpdates(mLocationRequest, mLocationCallback, mLooper);
+    }
+
+    /**
+     * Asks the provider for its last location, which it has straight away if any app
+     * has had a fix recently, the callback is made when the provider answers
+     *
+     * @throws SecurityException if the location permission has not been granted
+     */
+    @Override
+    public void requestLastFix() {
+        mFusedLocationClient.getLastLocation().addOnSuccessListener(mExecutor, mLastLocationListener);
+    }
+
+    @Override
+    public void removeUpdates() {
+        Events.log(Events.FUSED_REMOVE_UPDATES);
+
+        mFusedLocationClient.removeLocationUpdates(mLocationCallback);
+    }
+
+    @Override
+    public void flush() {
+        mFusedLocationClient.flushLocations();
+    }
+
+    @Override
+    public boolean isLive() {
+        return true;
+    }
+}
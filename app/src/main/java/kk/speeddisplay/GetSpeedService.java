@@ -12,90 +12,252 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.graphics.Color;
-import android.location.Location;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.IBinder;
 import android.os.Looper;
 import android.os.Message;
 import android.os.Process;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.support.annotation.Nullable;
 import android.support.v4.app.NotificationCompat;
 import android.support.v4.content.LocalBroadcastManager;
 import android.util.Log;
 
-import com.google.android.gms.location.LocationCallback;
-import com.google.android.gms.location.LocationRequest;
-import com.google.android.gms.location.LocationResult;
-import com.google.android.gms.location.LocationServices;
-import com.google.android.gms.location.LocationSettingsRequest;
+import java.io.File;
+import java.io.IOException;
+
+import kk.speeddisplay.core.AdaptiveRateScheduler;
+import kk.speeddisplay.core.LatencyTracker;
+import kk.speeddisplay.core.LocationSource;
+import kk.speeddisplay.core.SampleGate;
+import kk.speeddisplay.core.SessionJournal;
+import kk.speeddisplay.core.SpeedBandHistogram;
+import kk.speeddisplay.core.SpeedChannel;
+import kk.speeddisplay.core.SpeedDiagnostics;
+import kk.speeddisplay.core.SpeedEstimator;
+import kk.speeddisplay.core.SpeedFilters;
+import kk.speeddisplay.core.SpeedPipeline;
+import kk.speeddisplay.core.SpeedProcessor;
+import kk.speeddisplay.core.SpeedRecords;
+import kk.speeddisplay.core.StartupTimer;
+import kk.speeddisplay.core.TraceReaders;
+import kk.speeddisplay.core.TripCompactor;
+import kk.speeddisplay.core.TripRecorder;
+import kk.speeddisplay.core.TripStatistics;
+import kk.speeddisplay.core.TripStatisticsChannel;
+import kk.speeddisplay.core.WarmStart;
 
 /*
- * Implements a foreground service to get speed from the Fused Location provider.
+ * Implements a foreground service to get speed from the location source selected in the settings,
+ * the Fused Location provider or the GPS receiver, or from a trace being replayed.
  * This services runs continuously until stopped by the user.
+ * The speed processing is done by the {@link SpeedProcessor}, which smooths the speed with the
+ * filter selected in the settings, this service passes it the speeds estimated from the
+ * Doppler speed and the positions by the {@link SpeedEstimator}, with the
+ * locations and acts on the results. Locations with poor accuracy or an impossible
+ * acceleration are rejected by the {@link SampleGate} first.
  * Checks if the speed is above the previous maximum, and if it is saves the new maximum
- * in the preferences.
- * Sends current speed via a broadcast to the main activity.
- * If the main activity is not visible, the current speed is not sent to the main activity.
+ * in the preferences. While the maximum keeps increasing the saves are coalesced, the latest
+ * maximum is saved once the speed drops, when the flush interval has passed,
+ * on low memory and when the service is destroyed.
+ * The highest speed held for the window chosen in the settings, the sustained maximum,
+ * is saved in the same way.
+ * Each location is recorded to the trip files by the {@link TripRecorder}, if selected in settings.
+ * The time from each fix to its callback is measured by the {@link LatencyTracker},
+ * so the location sources can be compared. The timings of each fix and location result are
+ * recorded to the {@link SpeedDiagnostics}, shown on the diagnostics screen.
+ * Sends current speed to the main activity through the in-process speed channel.
+ * If the main activity is not visible, the current speed is not sent to the main activity,
+ * and the location provider delivers the locations in batches, processed in one pass.
  * Sets up a broadcast receiver to receive the update rate at which the the location provider
- * should provide location updates. The broadcast receiver also process two flags:
+ * should provide location updates. If the user has selected the adaptive update rate,
+ * the rate is chosen from the motion, the update rate received is the fastest rate used.
+ * The broadcast receiver also process two flags:
  *  1. if the main activity is visible or not visible,
  *  2. if user has requested a reset of max speed
+ * All speed processing runs on a single background handler thread. Location callbacks are
+ * delivered on its looper and the broadcast receiver forwards its requests to it as messages,
+ * so the speed, max speed and main activity running state are only touched by that thread.
  */
 
-public class GetSpeedService extends Service {
+public class GetSpeedService extends Service implements SpeedProcessor.Listener, LocationSource.Listener {
     //region Fields
     private static final String TAG = GetSpeedService.class.getSimpleName();
 
-    private com.google.android.gms.location.FusedLocationProviderClient mFusedLocationClient;
-    private LocationRequest mLocationRequest;
-    private LocationCallback mLocationCallback;
+    /* message codes processed by the ServiceHandler */
+    static final int MSG_RATE_CHANGE = 1;           // obj is the new update rate in milliseconds
+    static final int MSG_VISIBILITY_CHANGE = 2;     // arg1 is 1 if main activity visible, else 0
+    static final int MSG_RESET_MAX = 3;
+    static final int MSG_FLUSH_MAX = 4;
 
-    private float mSavedSpeed;
-    private float mMaxSpeed;
+    /* passes the latest speed and max speed to the main activity, only the latest value is kept */
+    private static final SpeedChannel sSpeedChannel = new SpeedChannel();
+
+    /* passes the latest trip statistics to the main activity, read when the user asks for them */
+    private static final TripStatisticsChannel sTripStatisticsChannel = new TripStatisticsChannel();
+
+    /* timings from the fixes to the speeds on the screen, the fix and location result timings are
+     * recorded on the handler thread, the display timings by the main activity */
+    private static final SpeedDiagnostics sDiagnostics = new SpeedDiagnostics();
+
+    /* times from the start of the process to the first speeds on the screen, the speeds sent
+     * are marked on the handler thread, the frames showing them by the main activity */
+    private static final StartupTimer sStartup = new StartupTimer(getProcessStartTime(), Constant.STARTUP_TARGET);
+
+    /* only accessed on mHandlerThread, once the service has been created
+     * the speed processor holds the latest speed and the max speed */
+    private SpeedProcessor mSpeedProcessor;
     private boolean mMainActivityRunning;
 
+    /* saves the max speed, the sustained max speed and the time in each speed band over all trips,
+     * nothing is saved while a trace is replayed */
+    private SpeedRecords mSpeedRecords;
+
+    /* time the highest speed must be held for the sustained max speed, the window in use */
+    private int mSustainedWindowInSecs;
+
+    /* chooses the update interval and accuracy from the motion, within the requested rate
+     * and the not running rate, mRequestedRate is the last rate received */
+    private AdaptiveRateScheduler mRateScheduler;
+    private long mRequestedRate;
+
+    /* speed filter in use, one of the SpeedFilters constants */
+    private int mSpeedFilter = SpeedFilters.NONE;
+
+    /* speed from the Doppler speed and the positions, blended by their accuracies */
+    private final SpeedEstimator mSpeedEstimator = new SpeedEstimator();
+
+    /* rejects locations with poor accuracy or impossible acceleration, such as multipath spikes */
+    private final SampleGate mSampleGate = new SampleGate();
+
+    /* average speeds, moving and stopped times and speed percentiles of the trip,
+     * from each speed processed, starts again when the service is created */
+    private final TripStatistics mTripStatistics = new TripStatistics();
+
+    /* time in each speed band from each speed processed since the service was created,
+     * saved by mSpeedRecords added to the totals of all trips */
+    private final SpeedBandHistogram mSpeedBands = new SpeedBandHistogram();
+
+    /* records each location to memory mapped trip files, null until the handler thread starts,
+     * mTripId is the trip being recorded, a new trip each time the service is created,
+     * unless the trip in the session journal is resumed */
+    private TripRecorder mTripRecorder;
+    private long mTripId;
+    /* set if the trip could not be written, recording is not retried until the setting is changed */
+    private boolean mTripRecordingFailed;
+
+    /* checkpoints the state of the trip, so a service killed and restarted by the system
+     * resumes the trip, null until the handler thread starts */
+    private SessionJournal mSessionJournal;
+    /* set if the journal could not be written, checkpoints are not retried */
+    private boolean mSessionJournalFailed;
+
+    /* the path each location takes to the speed processor, the same for the locations from
+     * each location source, created with the rate scheduler */
+    private SpeedPipeline mSpeedPipeline;
+
+    /* delivers the locations on the handler thread, the source selected in the settings or
+     * a trace being replayed, null until the handler thread starts,
+     * mRecordFixes is set while the fixes of the location result in progress are recorded */
+    private LocationSource mLocationSource;
+    private boolean mRecordFixes;
+    /* when the location result in progress reached the service, on the elapsed realtime clock */
+    private long mResultStartNanos;
+
+    /* shows the speed of a recent last known fix until the first fix is accepted,
+     * and decides when the first speeds are sent */
+    private final WarmStart mWarmStart = new WarmStart(Constant.WARM_START_MAX_AGE,
+            Constant.WARM_START_MAX_ACCURACY, sStartup);
+
+    /* time from each live fix to its callback, while each fix is delivered as soon as it is available */
+    private final LatencyTracker mFixLatency = new LatencyTracker();
+
     // gets update rate and other flags from the main activity
     BroadcastReceiver mRateBroadcastReceiver;
 
     private volatile HandlerThread mHandlerThread;
     private ServiceHandler mServiceHandler;
-
-    /* class that stores the update rate
-     * used her as a convenience to access methods in UpdateRate
-     * do not store the rate in mUpdateRate */
-    private UpdateRate mUpdateRate;
     //endregion
 
     //region Lifecycle
     public GetSpeedService() {
         super();
-        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "GetSpeedService()");
     }
 
 
     @Override
     public void onCreate() {
         super.onCreate();
-        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "onCreate()");
+        Events.log(Events.SERVICE_CREATE);
         //initially say main activity is running
         mMainActivityRunning = true;
 
         //display maximum speed obtained from saved value in preferences
-        mMaxSpeed = Preferences.getPrefMaxSpeed(getApplicationContext());
+        float maxSpeed = Preferences.getPrefMaxSpeed(getApplicationContext());
+        mSpeedProcessor = new SpeedProcessor(this);
+        mSpeedProcessor.setMaxSpeed(maxSpeed);
+        mSpeedProcessor.setStatistics(mTripStatistics);
+        mSpeedProcessor.setSpeedBands(mSpeedBands);
+
+        float sustainedMaxSpeed = Preferences.getPrefSustainedMaxSpeed(getApplicationContext());
+        mSpeedProcessor.setSustainedMaxSpeed(sustainedMaxSpeed);
+
+        //holds the max speeds in memory and saves them to the preferences
+        mSpeedRecords = new SpeedRecords(new SpeedRecords.Saver() {
+            @Override
+            public void saveMaxSpeed(float maxSpeed) {
+                GetSpeedService.this.saveMaxSpeed(maxSpeed);
+            }
+
+            @Override
+            public void saveSustainedMaxSpeed(float sustainedMaxSpeed) {
+                Preferences.saveSustainedMaxSpeed(getApplicationContext(), sustainedMaxSpeed);
+            }
+
+            @Override
+            public void saveSpeedBands(SpeedBandHistogram totals) {
+                Events.log(Events.SAVE_SPEED_BANDS);
+                SpeedBandStore.save(getApplicationContext(), totals);
+            }
+        }, Constant.MAX_SPEED_FLUSH_INTERVAL, Constant.SPEED_BANDS_SAVE_INTERVAL,
+                maxSpeed, sustainedMaxSpeed, mSpeedBands);
 
-        // An Android handler thread internally operates on a looper.
-        mHandlerThread = new HandlerThread("GetSpeed.HandlerThread");
+        long defaultRate = SpeedConfig.get(getApplicationContext()).getDefaultRunningRateInMilliSecs();
+        mRateScheduler = new AdaptiveRateScheduler(defaultRate, defaultRate);
+        mSpeedPipeline = new SpeedPipeline(mSpeedProcessor, mSpeedEstimator, mSampleGate, mRateScheduler);
+
+        /* An Android handler thread internally operates on a looper.
+         * set background priority so CPU-intensive work doesn't disrupt our UI */
+        mHandlerThread = new HandlerThread("GetSpeed.HandlerThread",
+                Process.THREAD_PRIORITY_BACKGROUND);
         mHandlerThread.start();
         // An Android service handler is a handler running on a specific background thread.
         mServiceHandler = new ServiceHandler(mHandlerThread.getLooper());
 
-        //set background priority so CPU-intensive work doesn't disrupt our UI
-        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        /* set up the location source on the handler thread before any messages
+         * from the broadcast receiver are processed */
+        mServiceHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mLocationSource = createLocationSource();
+                /* a replayed trace is not a real drive, so it is kept out of the records
+                 * and the session journal, a trip left unfinished is resumed by the next live start */
+                if (mLocationSource.isLive()) {
+                    mTripId = resumeSession();
+                } else {
+                    mSpeedRecords.setLive(false);
+                    mTripId = System.currentTimeMillis();
+                }
+                SpeedBandStore.load(getApplicationContext(), mSpeedRecords.getStoredSpeedBands());
+                mSpeedRecords.setSpeedBandsLoaded(SystemClock.elapsedRealtime());
+                mTripRecorder = new TripRecorder(new File(getFilesDir(), Constant.TRIP_DIRECTORY),
+                        TripRecorder.DEFAULT_SEGMENT_SIZE);
 
-        //initialise new update rate which stores the update rates
-        mUpdateRate = new UpdateRate();
+                mLocationSource.setListener(GetSpeedService.this);
+            }
+        });
 
         //register broadcast receiver to receive rate updates from main activity
         registerBroadcastReceiver();
@@ -105,7 +267,7 @@ public class GetSpeedService extends Service {
     /**
      * Builds a notification intent and,
      * runs the service in the foreground,
-     * request location updates form Fused location client,
+     * request location updates from the location source,
      *
      * @param intent  called by intent
      * @param flags   flags from intent
@@ -114,7 +276,7 @@ public class GetSpeedService extends Service {
      */
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
-        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "onStartCommand");
+        Events.log(Events.SERVICE_START_COMMAND, startId);
 
         mServiceHandler.post(new Runnable() {
             @Override
@@ -123,22 +285,22 @@ public class GetSpeedService extends Service {
                 //send notification to the main activity and run as a foreground service
                 sendNotification();
 
-                //send speed to main activity so it is displayed on startup
-                sendToMain(0.0F, mMaxSpeed);
-
-                //set up fused location client, which is API from Google Play Services
-                mFusedLocationClient = LocationServices.getFusedLocationProviderClient(getApplicationContext());
-                /* use the location request to set up the parameters for the fused location provider */
-                mLocationRequest = new LocationRequest();
-                startLocationService();
+                /* send speed to main activity so it is displayed on startup, 0 until the first fix,
+                 * and ask for the last known fix, whose speed is shown instead if it is recent */
+                sendToMain(getShownSpeed(), mSpeedProcessor.getMaxSpeed());
+                if (!mWarmStart.hasRealSpeed()) {
+                    try {
+                        mLocationSource.requestLastFix();
+                    } catch (SecurityException securityException) {
+                        Log.e(TAG, getString(R.string.permission_denied));
+                    }
+                }
 
                 /* set the update rate in  milliseconds for the location provider to the default value.
                  * The broadcasts from the main activity will update with the real update rate,
                  * the onResume() method in MainActivity sends the update rate to ths service.
                  */
-                Context context = getApplicationContext();
-
-                long rate = mUpdateRate.getDefaultRunningRateInMilliSecs(context);
+                long rate = SpeedConfig.get(getApplicationContext()).getDefaultRunningRateInMilliSecs();
                 // start the updates from the location provider
                 requestUpdates(rate);
             }
@@ -152,58 +314,98 @@ public class GetSpeedService extends Service {
 
     @Override
     public void onDestroy() {
-        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "onDestroy()");
+        Events.log(Events.SERVICE_DESTROY);
         super.onDestroy();
 
-        /* stop location updates */
-        if (mLocationCallback != null)
-            mFusedLocationClient.removeLocationUpdates(mLocationCallback);
-
         //unregister broadcast receiver for update rate for location provider
         LocalBroadcastManager.getInstance(getApplicationContext())
                 .unregisterReceiver(mRateBroadcastReceiver);
 
-        // Cleanup service before destruction
-        mHandlerThread.quit();
+        /* stop location updates, save any max speed not yet saved and cleanup service
+         * on the handler thread, after any messages already queued have been processed */
+        mServiceHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mLocationSource != null) mLocationSource.removeUpdates();
+                mServiceHandler.removeMessages(MSG_FLUSH_MAX);
+                mSpeedRecords.flushMaxSpeeds(SystemClock.elapsedRealtime());
+                if (mTripRecorder != null) {
+                    mTripRecorder.close();
+                    compactTrip(mTripId);
+                }
+                mSpeedRecords.saveSpeedBands(SystemClock.elapsedRealtime());
+                //the trip has ended normally, so it is not resumed
+                if (mSessionJournal != null) mSessionJournal.clear();
+                logSummary();
+                mHandlerThread.quit();
+            }
+        });
+    }
+
+
+    /**
+     * On low memory save any max speed not yet saved, in case the process is killed
+     */
+    @Override
+    public void onLowMemory() {
+        Events.log(Events.SERVICE_LOW_MEMORY);
+        super.onLowMemory();
+
+        mServiceHandler.sendEmptyMessage(MSG_FLUSH_MAX);
+    }
+
+
+    @Override
+    public void onTrimMemory(int level) {
+        Events.log(Events.SERVICE_TRIM_MEMORY, level);
+        super.onTrimMemory(level);
+
+        mServiceHandler.sendEmptyMessage(MSG_FLUSH_MAX);
     }
     //endregion
 
     //region Methods
     /**
-     * Start the updates from the location provider
+     * Start the updates from the location provider,
+     * location results are delivered on the looper of the service handler thread
+     *
+     * @param rate requested update rate, the fastest rate if the adaptive update rate is used
      */
     void requestUpdates(long rate) {
-        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "requestUpdates()");
+        Events.log(Events.REQUEST_UPDATES, rate);
 
-        //set the updates rates into the LocationRequest mLocationRequest
-        setLocationUpdateRate(rate);
+        //adaptive rate is bounded by the requested rate and the not running rate
+        mRequestedRate = rate;
+        long slowestRate = SpeedConfig.get(getApplicationContext()).getNotRunningRateInMilliSecs();
+        mRateScheduler.setBounds(rate, slowestRate);
 
-        try {
-            mFusedLocationClient.requestLocationUpdates(mLocationRequest, mLocationCallback, null);
-        } catch (
-                SecurityException securityException) {
-            Log.e(TAG, getString(R.string.permission_denied));
-        }
+        applyUpdateRate();
     }
 
 
     /**
-     * Updates the LocationRequest for the rate at which the location provider provides updates
-     * always sets the accuracy to high
-     * update rate is sent from the activity at startup, or
-     * when the activity state changes, or when it has been changed by the user
-     *
-     * @param rate rate at which location provider provides updates
+     * Chooses the update rate and accuracy, from the adaptive scheduler or the requested rate,
+     * and passes them to the location source
      */
-    private void setLocationUpdateRate(long rate) {
-        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "setLocationUpdateRate()");
-
-        mLocationRequest.setInterval(rate);
-        mLocationRequest.setFastestInterval(rate);
-        mLocationRequest.setPriority(LocationRequest.PRIORITY_HIGH_ACCURACY);
+    private void applyUpdateRate() {
+        long rate = mRequestedRate;
+        int priority = AdaptiveRateScheduler.PRIORITY_HIGH_ACCURACY;
+        if (SpeedConfig.get(getApplicationContext()).isAdaptiveRate()) {
+            rate = mRateScheduler.getInterval();
+            priority = mRateScheduler.getPriority();
+        }
+        /* when the main activity is not running nothing is displayed,
+         * so let the location source batch the fixes to reduce the wakeups,
+         * when it is running deliver each fix immediately */
+        long maxWait = mMainActivityRunning ? 0 : rate * Constant.BACKGROUND_BATCH_FIXES;
 
-        LocationSettingsRequest.Builder builder = new LocationSettingsRequest.Builder()
-                .addLocationRequest(mLocationRequest);
+        Events.log(Events.APPLY_UPDATE_RATE, rate, priority);
+        sDiagnostics.setExpectedInterval(rate);
+        try {
+            mLocationSource.requestUpdates(rate, priority, maxWait);
+        } catch (SecurityException securityException) {
+            Log.e(TAG, getString(R.string.permission_denied));
+        }
     }
 
 
@@ -211,7 +413,7 @@ public class GetSpeedService extends Service {
      * send notification to the main activity and run as a foreground service
      */
     private void sendNotification() {
-        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "sendNotification()");
+        Events.log(Events.SEND_NOTIFICATION);
 
         /* send notification to the main activity and run as a foreground service */
         Intent notificationIntent = new Intent(getApplicationContext(), MainActivity.class);
@@ -249,48 +451,384 @@ public class GetSpeedService extends Service {
 
 
     /**
+     * Creates the location source, a trace set in the settings is replayed in place of the
+     * source selected, the trace is read from the traces directory of the app's external
+     * files directory, if it cannot be opened the selected source is used
      *
+     * @return location source
      */
-    private void startLocationService() {
-        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "startLocationService()");
+    private LocationSource createLocationSource() {
+        SpeedConfig config = SpeedConfig.get(getApplicationContext());
+        if (!config.getReplayTrace().isEmpty()) {
+            File directory = getExternalFilesDir(Constant.TRACE_DIRECTORY);
+            try {
+                if (directory == null) {
+                    throw new IOException("external storage not available");
+                }
+                LocationSource source = new TraceLocationSource(getApplicationContext(), mServiceHandler,
+                        TraceReaders.open(new File(directory, config.getReplayTrace())), config.getReplaySpeed());
+                Events.log(Events.REPLAY_TRACE, config.getReplaySpeed());
+                return source;
+            } catch (IOException e) {
+                Log.e(TAG, getString(R.string.trace_replay_failed), e);
+            }
+        }
+        Events.log(Events.CREATE_LOCATION_SOURCE, config.getLocationSource());
+        return LocationSources.create(getApplicationContext(), config.getLocationSource(),
+                mHandlerThread.getLooper());
+    }
 
-        /* set up the location callback for when the location has changed */
-        mLocationCallback = new LocationCallback() {
-            /* LocationResult a data class representing a geographic location result
-             * from the fused location provider */
-            @Override
-            public void onLocationResult(LocationResult locationResult) {
-                if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "onLocationResult()");
 
-                if (locationResult == null) {
-                    if (MyDebug.DEBUG_LOCATION_SERVICE) Log.d(TAG, "LocationResult = null");
-                    return;
-                }
-                /* process all locations provided */
-                for (Location location : locationResult.getLocations()) {
-                    float speed = location.getSpeed();
-
-                    /* convert speed from metres/sec to km/hour */
-                    speed = speed * 3600F / 1000F;
-                    if (MyDebug.DEBUG_LOCATION_SERVICE)
-                        Log.d(TAG, "Speed = " + Float.toString(speed));
-
-                    //check if speed has changed, only process if there has been a change
-                    if (mSavedSpeed != speed) {
-                        mSavedSpeed = speed;
-                        //check if previous max speed has been exceeded
-                        if (speed > mMaxSpeed) {
-                            mMaxSpeed = speed;
-                            saveMaxSpeed(speed);
-                        }
-                        //sends speed to main activity only if main activity is running
-                        if (mMainActivityRunning) {
-                            sendToMain(mSavedSpeed, mMaxSpeed);
-                        }
-                    }
+    /**
+     * Called by the location source before the locations of a location result,
+     * all locations provided are processed as one batch, so a batch delivered in the
+     * background is advised and saved once
+     */
+    @Override
+    public void onLocationResultStart() {
+        Events.log(Events.LOCATION_RESULT_START);
+
+        mResultStartNanos = SystemClock.elapsedRealtimeNanos();
+        //replayed fixes are not recorded to the trip files, so a trip only ever holds real drives
+        mRecordFixes = mLocationSource.isLive() && updateTripRecording();
+        mSpeedPipeline.begin();
+    }
+
+
+    /**
+     * Called by the location source for each location of a location result,
+     * records it, measures its age and latency and adds it to the speed pipeline
+     */
+    @Override
+    public void onFix(long elapsedNanos, long time, boolean hasSpeed, float speedMps, float speedAccuracy,
+                      float accuracy, double latitude, double longitude) {
+        Events.log(Events.FIX, speedMps, accuracy);
+
+        if (mRecordFixes) {
+            mRecordFixes = recordLocation(time, latitude, longitude, speedMps, accuracy);
+        }
+        if (mLocationSource.isLive()) {
+            long now = SystemClock.elapsedRealtimeNanos();
+            sDiagnostics.onFix(elapsedNanos, now);
+            /* fixes held back in a batch are late on purpose, so only the fixes delivered immediately
+             * are measured, so the sources are compared on the same terms */
+            if (mMainActivityRunning) {
+                mFixLatency.add(now - elapsedNanos);
+            }
+        }
+        mSpeedPipeline.add(elapsedNanos, time, hasSpeed, speedMps, speedAccuracy, accuracy,
+                latitude, longitude);
+    }
+
+
+    /**
+     * Called by the location source after the locations of a location result,
+     * records the time taken to process the result
+     */
+    @Override
+    public void onLocationResultEnd() {
+        finishLocationResult();
+        long duration = SystemClock.elapsedRealtimeNanos() - mResultStartNanos;
+        sDiagnostics.getTiming(SpeedDiagnostics.LOCATION_RESULT).record(duration);
+        Events.log(Events.LOCATION_RESULT_END, duration / 1000L);
+    }
+
+
+    /**
+     * Called by the location source with its last known fix, shows its speed until the first fix
+     * if it is recent, accurate and has a speed, it is not added to the trip or the max speed
+     */
+    @Override
+    public void onLastFix(long elapsedNanos, long time, boolean hasSpeed, float speedMps, float accuracy) {
+        long now = SystemClock.elapsedRealtimeNanos();
+        boolean send = mWarmStart.onLastFix(elapsedNanos, now, hasSpeed, speedMps, accuracy, mMainActivityRunning);
+        Events.log(Events.LAST_FIX, (now - elapsedNanos) / 1000000L, mWarmStart.isShowingLastFix());
+        if (send) {
+            sendToMain(mWarmStart.getSpeed(), mSpeedProcessor.getMaxSpeed());
+        }
+    }
+
+
+    /**
+     * Processes the locations added to the speed pipeline as one batch, sends the speeds to the
+     * main activity, publishes the statistics, checkpoints the trip, and updates the location
+     * request if the motion has changed the update rate
+     */
+    private void finishLocationResult() {
+        updateSpeedFilter();
+        updateSustainedWindow();
+        int sent = mWarmStart.endResult(mSpeedPipeline, mMainActivityRunning);
+        //the first speed replaces the last known speed or the 0 shown, even if the speed has not changed
+        if (sent == WarmStart.RESULT_SEND) {
+            sendToMain(mSpeedProcessor.getSpeed(), mSpeedProcessor.getMaxSpeed());
+        }
+        updateSustainedMaxSpeed(sent != WarmStart.RESULT_NOT_SENT);
+        sTripStatisticsChannel.publish(mTripStatistics);
+        checkpointSession();
+        mSpeedRecords.saveSpeedBandsIfDue(SystemClock.elapsedRealtime());
+
+        //motion has changed, update the location request with the new rate
+        if (mSpeedPipeline.isRateChanged() && SpeedConfig.get(getApplicationContext()).isAdaptiveRate()) {
+            applyUpdateRate();
+        }
+    }
+
+
+    /**
+     * Starts or stops recording the trip if the user has changed the setting
+     *
+     * @return true if the locations should be recorded
+     */
+    private boolean updateTripRecording() {
+        boolean record = SpeedConfig.get(getApplicationContext()).isRecordTrips();
+        if (!record) {
+            mTripRecorder.close();
+            mTripRecordingFailed = false;
+            return false;
+        }
+        if (mTripRecorder.isRecording() || mTripRecordingFailed) {
+            return !mTripRecordingFailed;
+        }
+        try {
+            mTripRecorder.start(mTripId);
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, getString(R.string.trip_recording_failed), e);
+            mTripRecordingFailed = true;
+            return false;
+        }
+    }
+
+
+    /**
+     * Records the raw location to the trip, recording is stopped if the trip cannot be written
+     *
+     * @param time      time of the location in milliseconds since the epoch
+     * @param latitude  latitude in degrees
+     * @param longitude longitude in degrees
+     * @param speed     Doppler speed in metres/sec
+     * @param accuracy  horizontal accuracy in metres
+     * @return true if recorded
+     */
+    private boolean recordLocation(long time, double latitude, double longitude, float speed, float accuracy) {
+        try {
+            mTripRecorder.append(time, latitude, longitude, speed, accuracy);
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, getString(R.string.trip_recording_failed), e);
+            mTripRecorder.close();
+            mTripRecordingFailed = true;
+            return false;
+        }
+    }
+
+
+    /**
+     * Converts the segments recorded for the trip to the compressed trip file,
+     * about a fifth of the size, the segments are kept if the conversion fails
+     *
+     * @param tripId trip to be compressed
+     */
+    private void compactTrip(long tripId) {
+        Events.log(Events.COMPACT_TRIP, tripId);
+
+        try {
+            long samples = TripCompactor.compact(new File(getFilesDir(), Constant.TRIP_DIRECTORY), tripId);
+            Events.log(Events.TRIP_COMPACTED, samples);
+        } catch (IOException e) {
+            Log.e(TAG, getString(R.string.trip_compacting_failed), e);
+        }
+    }
+
+
+    /**
+     * Replays the session journal, if the service was killed part way through a trip and
+     * restarted soon after, the trip is resumed with its distance and the totals of its statistics,
+     * otherwise a new trip is started, and a trip left unfinished is compressed
+     *
+     * @return trip to be recorded
+     */
+    private long resumeSession() {
+        Events.log(Events.RESUME_SESSION);
+
+        mSessionJournal = new SessionJournal(new File(getFilesDir(), Constant.SESSION_JOURNAL_FILE),
+                SessionJournal.DEFAULT_FORCE_INTERVAL);
+        try {
+            if (mSessionJournal.replay()) {
+                if (System.currentTimeMillis() - mSessionJournal.getLastTime() < Constant.SESSION_RESUME_WINDOW) {
+                    mSpeedProcessor.restoreSession(mSessionJournal.getDistance(), mSessionJournal.getLastTime(),
+                            mSessionJournal.getLatitude(), mSessionJournal.getLongitude());
+                    mTripStatistics.restore(mSessionJournal.getMovingTime(), mSessionJournal.getStoppedTime(),
+                            mSessionJournal.getSpeedTime(), mSessionJournal.getLastTime());
+                    sTripStatisticsChannel.publish(mTripStatistics);
+                    Events.log(Events.SESSION_RESUMED, mSessionJournal.getTripId(),
+                            (float) mSessionJournal.getDistance());
+                    return mSessionJournal.getTripId();
                 }
+                //too long ago to carry on, the trip was not ended normally so compress it now
+                compactTrip(mSessionJournal.getTripId());
             }
-        };
+        } catch (IOException e) {
+            Log.e(TAG, getString(R.string.session_journal_failed), e);
+        }
+        return System.currentTimeMillis();
+    }
+
+
+    /**
+     * Logs the counters of the service to the event log, so they are in the saved log
+     */
+    private void logSummary() {
+        Events.log(Events.MAX_SPEED_WRITES_SAVED, mSpeedRecords.getSavedWriteCount());
+        Events.log(Events.RATE_SAVING, (float) (mRateScheduler.getDutyCycleSaving() * 100));
+        Events.log(Events.SPEED_SOURCES, mSpeedEstimator.getSourceCount(SpeedEstimator.SOURCE_DOPPLER),
+                mSpeedEstimator.getSourceCount(SpeedEstimator.SOURCE_POSITION));
+        Events.log(Events.SPEED_SOURCES_BLENDED, mSpeedEstimator.getSourceCount(SpeedEstimator.SOURCE_BLENDED),
+                mSpeedEstimator.getRejectedDopplerCount());
+        Events.log(Events.LOCATIONS_REJECTED, mSampleGate.getRejectedAccuracyCount(),
+                mSampleGate.getRejectedAccelerationCount());
+        Events.log(Events.LOCATIONS_PROCESSED, mSpeedProcessor.getSampleCount(), mSpeedProcessor.getBatchCount());
+        Events.log(Events.FIX_LATENCY, SpeedConfig.get(getApplicationContext()).getLocationSource(),
+                mFixLatency.getCount());
+        Events.log(Events.FIX_LATENCY_MEAN, (float) mFixLatency.getMeanMillis(),
+                (float) mFixLatency.getMedianMillis());
+        Events.log(Events.FIX_LATENCY_TAIL, (float) mFixLatency.getP95Millis(),
+                (float) mFixLatency.getMaxMillis());
+    }
+
+
+    /**
+     * Forces any checkpoint not yet forced to storage
+     */
+    private void flushSessionJournal() {
+        if (mSessionJournalFailed || mSessionJournal == null) {
+            return;
+        }
+        try {
+            mSessionJournal.flush(SystemClock.elapsedRealtime());
+        } catch (IOException e) {
+            Log.e(TAG, getString(R.string.session_journal_failed), e);
+        }
+    }
+
+
+    /**
+     * Writes the state of the trip to the session journal, checkpoints are not retried
+     * if the journal cannot be written, there is no journal while a trace is replayed
+     */
+    private void checkpointSession() {
+        if (mSessionJournalFailed || mSessionJournal == null || mSpeedProcessor.getLastTime() == 0) {
+            return;
+        }
+        try {
+            mSessionJournal.checkpoint(mTripId, mSpeedProcessor.getDistance(), mTripStatistics.getMovingTime(),
+                    mTripStatistics.getStoppedTime(), mTripStatistics.getSpeedTime(),
+                    mSpeedProcessor.getLastTime(), mSpeedProcessor.getLastLatitude(),
+                    mSpeedProcessor.getLastLongitude(), mSpeedProcessor.getSpeed(), SystemClock.elapsedRealtime());
+        } catch (IOException e) {
+            Log.e(TAG, getString(R.string.session_journal_failed), e);
+            mSessionJournal.close();
+            mSessionJournalFailed = true;
+        }
+    }
+
+
+    /**
+     * Changes the filter used to smooth the speeds if the user has selected a different one,
+     * the filter is only created when the setting changes
+     */
+    private void updateSpeedFilter() {
+        int speedFilter = SpeedConfig.get(getApplicationContext()).getSpeedFilter();
+        if (speedFilter != mSpeedFilter) {
+            Events.log(Events.SPEED_FILTER, speedFilter);
+            mSpeedFilter = speedFilter;
+            mSpeedProcessor.setFilter(SpeedFilters.create(speedFilter));
+        }
+    }
+
+
+    /**
+     * Changes the time the sustained maximum speed must be held for if the user has changed it
+     */
+    private void updateSustainedWindow() {
+        int window = SpeedConfig.get(getApplicationContext()).getSustainedWindowInSecs();
+        if (window != mSustainedWindowInSecs) {
+            mSustainedWindowInSecs = window;
+            mSpeedProcessor.setSustainedWindow(window * 1000L);
+        }
+    }
+
+
+    /**
+     * Saves the sustained maximum speed if it has increased, coalescing the writes as for
+     * the max speed, and sends it to the main activity if the speeds were not already sent
+     *
+     * @param speedSent true if the latest speeds have already been sent to the main activity
+     */
+    private void updateSustainedMaxSpeed(boolean speedSent) {
+        long now = SystemClock.elapsedRealtime();
+        if (!mSpeedRecords.updateSustainedMaxSpeed(mSpeedProcessor.getSustainedMaxSpeed(), now)) {
+            return;
+        }
+        scheduleFlush(now);
+        if (mMainActivityRunning && !speedSent) {
+            sendToMain(mSpeedProcessor.getSpeed(), mSpeedProcessor.getMaxSpeed());
+        }
+    }
+
+
+    /**
+     * Called by the speed processor when the previous max speed has been exceeded,
+     * passes it to the max speed store, if the store holds it back to coalesce with later
+     * updates, schedules a flush for when the flush interval has passed
+     *
+     * @param maxSpeed new max speed
+     */
+    @Override
+    public void onNewMaxSpeed(float maxSpeed) {
+        Events.log(Events.NEW_MAX_SPEED, maxSpeed);
+
+        long now = SystemClock.elapsedRealtime();
+        if (!mSpeedRecords.updateMaxSpeed(maxSpeed, now)) {
+            scheduleFlush(now);
+        }
+    }
+
+
+    /**
+     * Schedules a flush of the max speeds held by the records, for when the flush interval has passed,
+     * unless one is already scheduled
+     *
+     * @param now current elapsed realtime in milliseconds
+     */
+    private void scheduleFlush(long now) {
+        long delay = mSpeedRecords.getFlushDelay(now);
+        if (delay >= 0 && !mServiceHandler.hasMessages(MSG_FLUSH_MAX)) {
+            mServiceHandler.sendEmptyMessageDelayed(MSG_FLUSH_MAX, delay);
+        }
+    }
+
+
+    /**
+     * Called by the speed processor when the speed has changed,
+     * sends speed to main activity only if main activity is running
+     *
+     * @param speed    latest speed
+     * @param maxSpeed max speed
+     */
+    @Override
+    public void onSpeedChanged(float speed, float maxSpeed) {
+        Events.log(Events.SPEED_CHANGED, speed, maxSpeed);
+
+        /* peak has passed, save the max speed now rather than wait for the flush interval,
+         * any flush already scheduled is left, it also saves the other stores */
+        if (speed < maxSpeed) {
+            mSpeedRecords.flushMaxSpeed(SystemClock.elapsedRealtime());
+        }
+
+        if (mMainActivityRunning) {
+            sendToMain(speed, maxSpeed);
+        }
     }
 
 
@@ -298,7 +836,7 @@ public class GetSpeedService extends Service {
      * @param maxSpeed new max speed to be saved
      */
     private void saveMaxSpeed(float maxSpeed) {
-        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "saveMaxSpeed()");
+        Events.log(Events.SAVE_MAX_SPEED, maxSpeed);
 
         //save new maximum speed to shared preferences
         Preferences.saveMaxSpeed(getApplicationContext(), maxSpeed);
@@ -308,29 +846,84 @@ public class GetSpeedService extends Service {
     @Nullable
     @Override
     public IBinder onBind(Intent intent) {
-        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "onBind()");
+        Events.log(Events.SERVICE_BIND);
 
         return null;
     }
 
 
     /**
-     * set up broadcast to pass the speed
+     * Returns the channel the service publishes the speeds to,
+     * the main activity listens on it to display the speeds
      *
-     * @param speed latest speed
+     * @return speed channel
      */
+    static SpeedChannel getSpeedChannel() {
+        return sSpeedChannel;
+    }
 
-    private void sendToMain(float speed, float maxSpeed) {
-        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "sendToMain()");
 
-        Intent updateSpeedIntent = new Intent();
-        updateSpeedIntent.setAction(getString(R.string.ACTION_SendSpeedToMain));
-        updateSpeedIntent.putExtra(getString(R.string.extra_key_speed), speed);
-        updateSpeedIntent.putExtra(getString(R.string.extra_key_max_speed), maxSpeed);
+    /**
+     * Returns the channel the service publishes the trip statistics to
+     *
+     * @return trip statistics channel
+     */
+    static TripStatisticsChannel getTripStatisticsChannel() {
+        return sTripStatisticsChannel;
+    }
 
-        /* send the message to main activity */
-        LocalBroadcastManager.getInstance(getApplicationContext())
-                .sendBroadcast(updateSpeedIntent);
+
+    /**
+     * Returns the timings of the path from the fixes to the speeds on the screen
+     *
+     * @return speed diagnostics
+     */
+    static SpeedDiagnostics getDiagnostics() {
+        return sDiagnostics;
+    }
+
+
+    /**
+     * @return speed to be shown, the speed of the last known fix until the first fix is accepted
+     */
+    private float getShownSpeed() {
+        return mWarmStart.isShowingLastFix() ? mWarmStart.getSpeed() : mSpeedProcessor.getSpeed();
+    }
+
+
+    /**
+     * Returns the times from the start of the process to the first speeds on the screen
+     *
+     * @return startup timer
+     */
+    static StartupTimer getStartup() {
+        return sStartup;
+    }
+
+
+    /**
+     * @return time the process started in milliseconds on the elapsed realtime clock, before
+     * Android 7.0 when this class was loaded, which the main activity does in onCreate
+     */
+    private static long getProcessStartTime() {
+        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.N) {
+            return Process.getStartElapsedRealtime();
+        }
+        return SystemClock.elapsedRealtime();
+    }
+
+
+    /**
+     * publish the speed to the main activity, replacing any speed it has not yet displayed,
+     * the sustained maximum speed is sent with them
+     *
+     * @param speed    latest speed
+     * @param maxSpeed max speed
+     */
+    private void sendToMain(float speed, float maxSpeed) {
+        Events.log(Events.SEND_TO_MAIN, speed, maxSpeed);
+
+        sSpeedChannel.publish(speed, maxSpeed, mSpeedProcessor.getSustainedMaxSpeed());
     }
 
 
@@ -340,7 +933,7 @@ public class GetSpeedService extends Service {
      */
 
     private void registerBroadcastReceiver() {
-        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "registerBroadcastReceiver()");
+        Events.log(Events.REGISTER_RECEIVER);
 
         mRateBroadcastReceiver = new MyRateBroadcastReceiver();
         IntentFilter intentFilter = new IntentFilter();
@@ -352,46 +945,29 @@ public class GetSpeedService extends Service {
 
     //region InnerClasses
     public class MyRateBroadcastReceiver extends BroadcastReceiver {
-        private final String TAG = MyRateBroadcastReceiver.class.getSimpleName();
-
         /**
-         * gets the update rate from the intent and updates the location provider
-         * updates flag indicating if main activity is running or not running
-         * checks if reset max speed requested by the user
+         * gets the update rate and flags from the intent and forwards them
+         * as messages to the service handler thread, which does all the processing
          *
          * @param context context
          * @param intent  broadcast intent
          */
         @Override
         public void onReceive(Context context, Intent intent) {
-            if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "onReceive()");
+            //visibility first, the rate change uses it to choose immediate or batched delivery
+            boolean mainRunning = intent.getBooleanExtra(getString(R.string.extra_key_main_running), false);
+            mServiceHandler.obtainMessage(MSG_VISIBILITY_CHANGE, mainRunning ? 1 : 0, 0).sendToTarget();
 
             //get the default update running rate
-            long defaultRate = mUpdateRate.getDefaultRunningRateInMilliSecs(context);
+            long defaultRate = SpeedConfig.get(context).getDefaultRunningRateInMilliSecs();
             //get the update rate from the intent
             long rate = intent.getLongExtra(getString(R.string.extra_key_rate_value), defaultRate);
+            Events.log(Events.RATE_RECEIVED, rate, mainRunning);
+            mServiceHandler.obtainMessage(MSG_RATE_CHANGE, rate).sendToTarget();
 
-            //request updates form the fusion provider with the new update rate
-            requestUpdates(rate);
-
-            /* update status of mMainActivityRunning
-             * if UI was not running & changed to running, send the latest speeds to be displayed */
-            if (!mMainActivityRunning && intent.getBooleanExtra(getString(R.string.extra_key_main_running), false)) {
-                sendToMain(mSavedSpeed, mMaxSpeed);
-            }
-            //update running flag
-            mMainActivityRunning = intent.getBooleanExtra(getString(R.string.extra_key_main_running), false);
-
-            /* check if maxSpeed reset by the user
-             * if it has clear maxSpeed, save it in the preferences,
-             * as MainActivity does not do any processing on maxSpeed, it only displays it.
-             * Send back to MainActivity so MainActivity displays the new reset maxSpeed.
-             */
+            //check if maxSpeed reset by the user
             if (intent.getBooleanExtra(getString(R.string.extra_key_max_speed_reset), false)) {
-                mMaxSpeed = 0.0F;
-                saveMaxSpeed(mMaxSpeed);
-                //send updated max speed back to the user
-                sendToMain(mSavedSpeed, mMaxSpeed);
+                mServiceHandler.sendEmptyMessage(MSG_RESET_MAX);
             }
         }
     }
@@ -399,18 +975,56 @@ public class GetSpeedService extends Service {
 
     // Define how the handler will process messages
     private final class ServiceHandler extends Handler {
-        private final String TAG = ServiceHandler.class.getSimpleName();
-
         private ServiceHandler(Looper looper) {
             super(looper);
-            if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "ServiceHandler()");
+            Events.log(Events.SERVICE_HANDLER);
         }
 
 
         // Define how to handle any incoming messages here
         @Override
         public void handleMessage(Message message) {
-            if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "handleMessage()");
+            Events.log(Events.HANDLE_MESSAGE, message.what);
+
+            switch (message.what) {
+                case MSG_RATE_CHANGE:
+                    //request updates from the location source with the new update rate
+                    requestUpdates((Long) message.obj);
+                    break;
+
+                case MSG_VISIBILITY_CHANGE:
+                    boolean mainRunning = message.arg1 != 0;
+                    /* if UI was not running & changed to running, send the latest speeds to be displayed,
+                     * and deliver any fixes the location provider is holding in a batch */
+                    if (!mMainActivityRunning && mainRunning) {
+                        sendToMain(getShownSpeed(), mSpeedProcessor.getMaxSpeed());
+                        if (mLocationSource != null) mLocationSource.flush();
+                    }
+                    //update running flag
+                    mMainActivityRunning = mainRunning;
+                    break;
+
+                case MSG_RESET_MAX:
+                    /* user has reset max speed, clear maxSpeed, save it in the preferences,
+                     * as MainActivity does not do any processing on maxSpeed, it only displays it.
+                     * Send back to MainActivity so MainActivity displays the new reset maxSpeed.
+                     */
+                    mSpeedProcessor.resetMaxSpeed();
+                    mSpeedRecords.reset(mSpeedProcessor.getMaxSpeed(), mSpeedProcessor.getSustainedMaxSpeed(),
+                            SystemClock.elapsedRealtime());
+                    sendToMain(getShownSpeed(), mSpeedProcessor.getMaxSpeed());
+                    break;
+
+                case MSG_FLUSH_MAX:
+                    //save the max speeds if not yet saved, and force the session journal to storage
+                    mSpeedRecords.flushMaxSpeeds(SystemClock.elapsedRealtime());
+                    flushSessionJournal();
+                    mSpeedRecords.saveSpeedBands(SystemClock.elapsedRealtime());
+                    break;
+
+                default:
+                    super.handleMessage(message);
+            }
         }
     }
     //endregion
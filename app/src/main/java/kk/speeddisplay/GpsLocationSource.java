@@ -0,0 +1,116 @@
+package kk.speeddisplay;
+
+import android.content.Context;
+import android.location.Location;
+import android.location.LocationListener;
+import android.location.LocationManager;
+import android.os.Bundle;
+import android.os.Looper;
+
+import kk.speeddisplay.core.LocationSource;
+
+/**
+ * Gets the locations straight from the GPS receiver, with LocationManager.GPS_PROVIDER.
+ * Each fix is delivered as soon as the receiver has it, without the smoothing of the
+ * fused provider, so the time from a fix to its callback is shorter, and it runs on
+ * devices without Google Play services. The receiver is always used at full accuracy and
+ * the fixes are not batched, so the priority and the maximum wait time are ignored.
+ */
+class GpsLocationSource implements LocationSource {
+    private final LocationManager mLocationManager;
+    private final Looper mLooper;
+    private Listener mListener;
+
+    /* interval of the updates requested, 0 if not requested */
+    private long mIntervalMillis;
+
+    private final LocationListener mLocationListener = new LocationListener() {
+        @Override
+        public void onLocationChanged(Location location) {
+            Events.log(Events.GPS_LOCATION_CHANGED);
+
+            LocationSources.deliver(mListener, location);
+        }
+
+        @Override
+        public void onStatusChanged(String provider, int status, Bundle extras) {
+        }
+
+        @Override
+        public void onProviderEnabled(String provider) {
+            Events.log(Events.GPS_ENABLED, true);
+        }
+
+        @Override
+        public void onProviderDisabled(String provider) {
+            Events.log(Events.GPS_ENABLED, false);
+        }
+    };
+
+    /**
+     * @param context context used to get the location manager
+     * @param looper  looper the locations are delivered on
+     */
+    GpsLocationSource(Context context, Looper looper) {
+        mLocationManager = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
+        mLooper = looper;
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Requests the updates from the GPS receiver, the request is only replaced if the interval
+     * has changed, as the priority and maximum wait time make no difference to the receiver
+     *
+     * @throws SecurityException if the location permission has not been granted
+     */
+    @Override
+    public void requestUpdates(long intervalMillis, int priority, long maxWaitMillis) {
+        Events.log(Events.GPS_REQUEST_UPDATES, intervalMillis);
+
+        if (intervalMillis == mIntervalMillis || mLocationManager == null) {
+            return;
+        }
+        mLocationManager.requestLocationUpdates(LocationManager.GPS_PROVIDER, intervalMillis, 0,
+                mLocationListener, mLooper);
+        mIntervalMillis = intervalMillis;
+    }
+
+    /**
+     * Gives the last fix of the GPS receiver, straight away
+     *
+     * @throws SecurityException if the location permission has not been granted
+     */
+    @Override
+    public void requestLastFix() {
+        if (mLocationManager != null) {
+            LocationSources.deliverLastFix(mListener,
+                    mLocationManager.getLastKnownLocation(LocationManager.GPS_PROVIDER));
+        }
+    }
+
+    @Override
+    public void removeUpdates() {
+        Events.log(Events.GPS_REMOVE_UPDATES);
+
+        if (mLocationManager != null) {
+            mLocationManager.removeUpdates(mLocationListener);
+        }
+        mIntervalMillis = 0;
+    }
+
+    /**
+     * Nothing to do, each fix is delivered as soon as the receiver has it
+     */
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public boolean isLive() {
+        return true;
+    }
+}
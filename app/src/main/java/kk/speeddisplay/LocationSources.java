@@ -0,0 +1,101 @@
+package kk.speeddisplay;
+
+import android.content.Context;
+import android.location.Location;
+import android.os.Looper;
+
+import java.util.List;
+
+import kk.speeddisplay.core.LocationSource;
+
+/**
+ * Creates the location source selected in the settings, and gives the Android locations
+ * to the listener of a source, the same way for each source.
+ */
+final class LocationSources {
+    /* location sources, FUSED and GPS are selected in the settings, TRACE when a trace is replayed */
+    static final int FUSED = 0;
+    static final int GPS = 1;
+    static final int TRACE = 2;
+
+    private LocationSources() {
+    }
+
+    /**
+     * Creates a location source for the device's location
+     *
+     * @param context context used to get the location services
+     * @param source  FUSED or GPS
+     * @param looper  looper the fixes are delivered on
+     * @return location source
+     */
+    static LocationSource create(Context context, int source, Looper looper) {
+        Events.log(Events.CREATE_SOURCE, source);
+
+        if (source == GPS) {
+            return new GpsLocationSource(context, looper);
+        }
+        return new FusedLocationSource(context, looper);
+    }
+
+    /**
+     * Gives the locations of a location result to the listener,
+     * indexed loop so no iterator is allocated for each result
+     *
+     * @param listener  listener of the location source
+     * @param locations locations of the result, in time order
+     */
+    static void deliver(LocationSource.Listener listener, List<Location> locations) {
+        listener.onLocationResultStart();
+        for (int i = 0, size = locations.size(); i < size; i++) {
+            deliverFix(listener, locations.get(i));
+        }
+        listener.onLocationResultEnd();
+    }
+
+    /**
+     * Gives a single location to the listener as a location result
+     *
+     * @param listener listener of the location source
+     * @param location latest location
+     */
+    static void deliver(LocationSource.Listener listener, Location location) {
+        listener.onLocationResultStart();
+        deliverFix(listener, location);
+        listener.onLocationResultEnd();
+    }
+
+    /**
+     * Gives the last known location to the listener, if there is one
+     *
+     * @param listener listener of the location source
+     * @param location last known location, null if the provider has none
+     */
+    static void deliverLastFix(LocationSource.Listener listener, Location location) {
+        if (location == null) {
+            return;
+        }
+        listener.onLastFix(location.getElapsedRealtimeNanos(), location.getTime(), location.hasSpeed(),
+                location.getSpeed(), location.getAccuracy());
+    }
+
+    private static void deliverFix(LocationSource.Listener listener, Location location) {
+        listener.onFix(location.getElapsedRealtimeNanos(), location.getTime(), location.hasSpeed(),
+                location.getSpeed(), getSpeedAccuracy(location), location.getAccuracy(),
+                location.getLatitude(), location.getLongitude());
+    }
+
+    /**
+     * Gets the accuracy of the Doppler speed of a location, only reported from Android 8.0
+     *
+     * @param location latest location
+     * @return accuracy of the speed in metres/sec, NaN if not known
+     */
+    private static float getSpeedAccuracy(Location location) {
+        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.O
+                && location.hasSpeedAccuracy()) {
+            return location.getSpeedAccuracyMetersPerSecond();
+        }
+        return Float.NaN;
+    }
+}
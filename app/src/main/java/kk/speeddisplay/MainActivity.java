@@ -4,29 +4,35 @@ package kk.speeddisplay;
  */
 
 import android.Manifest;
-import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.graphics.Typeface;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.support.annotation.NonNull;
 import android.support.v4.app.ActivityCompat;
 import android.support.v4.content.LocalBroadcastManager;
+import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.Toolbar;
 import android.text.SpannableString;
-import android.util.Log;
+import android.text.format.DateUtils;
+import android.view.Choreographer;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import kk.speeddisplay.core.SpeedChannel;
+import kk.speeddisplay.core.SpeedDiagnostics;
+import kk.speeddisplay.core.StartupTimer;
+import kk.speeddisplay.core.TripStatisticsChannel;
+
 /**
  * MainActivity
  * <p>
@@ -46,32 +52,26 @@ import android.widget.Toast;
 public class MainActivity extends AppCompatActivity implements
         SharedPreferences.OnSharedPreferenceChangeListener {
     //region Fields
-    // get a tag for output debugging
-    private final static String TAG = MainActivity.class.getSimpleName();
-
     // used to start foreground service
     Intent mService;
 
     /* displays current speed from the location provider in the foreground service */
-    private TextView mCurrentSpeedTextView;
-    private TextView mCurrentSpeedUnitsTextView;
+    private SpeedView mCurrentSpeedView;
 
     /* displays maximum speed recorded to date */
-    private TextView mMaxSpeedTextView;
-    private TextView mMaxSpeedUnitsTextView;
-
-    /* gets speed updates from foreground service */
-    private MySpeedBroadcastReceiver mSpeedBroadcastReceiver;
-
-    /* update intervals at which the activity will receive location updates,
-     * separate update intervals for when the activity is running and not running
-     * the update interval is saved in the shared preferences
-     * and can be changed by the user in settings
-     * if changed by the user or if the activity state changes,
-     * the appropriate rate sent to the service to set the update rate in the location provider.
-     */
-    private UpdateRate mRunningUpdateRate = new UpdateRate();
-    private UpdateRate mNotRunningUpdateRate = new UpdateRate();
+    private SpeedView mMaxSpeedView;
+
+    /* displays highest speed held for the window chosen in settings, the title shows the window */
+    private SpeedView mSustainedMaxSpeedView;
+    private TextView mSustainedMaxSpeedTitle;
+
+    /* gets speed updates from foreground service through the speed channel,
+     * displays them on the next frame from the choreographer */
+    private MySpeedListener mSpeedListener;
+    private Choreographer mChoreographer;
+
+    /* copy of the trip statistics from the service, filled in when the user asks for them */
+    private final TripStatisticsChannel.Summary mTripSummary = new TripStatisticsChannel.Summary();
     //endregion
 
     //region Lifecycle
@@ -79,31 +79,30 @@ public class MainActivity extends AppCompatActivity implements
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
-        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "onCreate()");
+        Events.log(Events.MAIN_CREATE);
+
+        //read the settings on another thread while the layout is inflated
+        SpeedConfig.prefetch(this);
 
         setContentView(R.layout.activity_main);
         Toolbar toolbar = findViewById(R.id.toolbar);
         setSupportActionBar(toolbar);
 
-        mCurrentSpeedTextView = findViewById(R.id.tv_CurrentSpeed);
-        mCurrentSpeedUnitsTextView = findViewById(R.id.tv_CurrentSpeedUnits);
-        mMaxSpeedTextView = findViewById(R.id.tv_MaxSpeed);
-        mMaxSpeedUnitsTextView = findViewById(R.id.tv_MaxSpeed_units);
-
-
-        // Typeface typeface = Typeface.createFromAsset(getAssets(), "fonts/DSEGClassic-BoldItalic.ttf");
-        //mMaxSpeedTextView.setTypeface(typeface);
-
-        //register broadcast receiver to receive speed updates from service
-        mSpeedBroadcastReceiver = new MySpeedBroadcastReceiver();
-        IntentFilter intentFilter = new IntentFilter();
-        intentFilter.addAction(getString(R.string.ACTION_SendSpeedToMain));
-        LocalBroadcastManager.getInstance(this)
-                .registerReceiver(mSpeedBroadcastReceiver, intentFilter);
+        mCurrentSpeedView = findViewById(R.id.sv_CurrentSpeed);
+        mMaxSpeedView = findViewById(R.id.sv_MaxSpeed);
+        mSustainedMaxSpeedView = findViewById(R.id.sv_SustainedMaxSpeed);
+        mSustainedMaxSpeedTitle = findViewById(R.id.tv_SustainedMaxSpeedTitle);
+        //time from a new speed to it being drawn, for the diagnostics screen
+        mCurrentSpeedView.setDrawTiming(GetSpeedService.getDiagnostics().getTiming(SpeedDiagnostics.DRAW));
 
         //read settings from shared preferences
         setupSharedPreferences();
 
+        //listen for speed updates from service, the choreographer belongs to the main thread
+        mChoreographer = Choreographer.getInstance();
+        mSpeedListener = new MySpeedListener();
+        GetSpeedService.getSpeedChannel().setListener(mSpeedListener);
+
         //check permissions and if ok start foreground service
         checkPermissions();
     }
@@ -112,35 +111,38 @@ public class MainActivity extends AppCompatActivity implements
     @Override
     protected void onStart() {
         super.onStart();
-        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "onStart()");
+        Events.log(Events.MAIN_START);
     }
 
     @Override
     protected void onResume() {
         super.onResume();
-        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "onResume()");
+        Events.log(Events.MAIN_RESUME);
 
         /* screen now visible, send:
          * flag saying activity is running
-         * flag saying not to reset max speed*/
-        sendRateToService(mRunningUpdateRate.getRateInMilliSecs(), true, false);
+         * flag saying not to reset max speed
+         * the rates are read from the SpeedConfig snapshot, which is reloaded when a setting changes */
+        sendRateToService(SpeedConfig.get(getApplicationContext()).getRunningRateInMilliSecs(),
+                true, false);
     }
 
     @Override
     protected void onPause() {
         super.onPause();
-        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "onPause()");
+        Events.log(Events.MAIN_PAUSE);
 
         /* screen now not visible, send:
          * flag saying activity is not running
          * flag saying not to reset max speed */
-        sendRateToService(mNotRunningUpdateRate.getRateInMilliSecs(), false, false);
+        sendRateToService(SpeedConfig.get(getApplicationContext()).getNotRunningRateInMilliSecs(),
+                false, false);
     }
 
 
     @Override
     protected void onDestroy() {
-        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "onDestroy()");
+        Events.log(Events.MAIN_DESTROY);
 
         super.onDestroy();
         shutDown();
@@ -157,7 +159,7 @@ public class MainActivity extends AppCompatActivity implements
      * If permission denied puts out a message and then exits.
      */
     private void checkPermissions() {
-        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "checkPermissions()");
+        Events.log(Events.CHECK_PERMISSIONS);
 
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
             if (ActivityCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION)
@@ -178,19 +180,16 @@ public class MainActivity extends AppCompatActivity implements
 
 
     /**
-     * Retrieves from shared preferences update rates for when activity is running and not running.
+     * Loads the settings snapshot from shared preferences, which holds the update rates
+     * for when activity is running and not running, and the units.
      * Registers listener for any changes to shared preferences,
      * (listener unregistered in onDestroy)
      */
     private void setupSharedPreferences() {
-        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "setupSharedPreferences()");
+        Events.log(Events.SETUP_PREFERENCES);
 
-        String rate;
-
-        rate = Preferences.getPrefRunningRate(getApplicationContext());
-        mRunningUpdateRate.setRate(rate);
-        rate = Preferences.getPrefNotRunningRate(getApplicationContext());
-        mNotRunningUpdateRate.setRate(rate);
+        //the settings prefetched in onCreate, waits for them if they are still being read
+        showSettings(SpeedConfig.get(getApplicationContext()));
 
         // register listener
         SharedPreferences pref = PreferenceManager.getDefaultSharedPreferences(getApplicationContext());
@@ -198,16 +197,57 @@ public class MainActivity extends AppCompatActivity implements
     }
 
 
+    /**
+     * Shows the speeds in the units from the settings, and the sustained window in its title
+     *
+     * @param config current settings
+     */
+    private void showSettings(SpeedConfig config) {
+        Events.log(Events.SHOW_SETTINGS);
+
+        mCurrentSpeedView.setMetric(config.isMetric());
+        mMaxSpeedView.setMetric(config.isMetric());
+        mSustainedMaxSpeedView.setMetric(config.isMetric());
+        mSustainedMaxSpeedTitle.setText(getString(R.string.sustained_max_speed_title,
+                config.getSustainedWindowInSecs()));
+    }
+
+
+    /**
+     * Shows the statistics of the trip so far in a dialog, in the units from the settings
+     */
+    private void showTripStatistics() {
+        Events.log(Events.SHOW_TRIP_STATISTICS);
+
+        GetSpeedService.getTripStatisticsChannel().read(mTripSummary);
+        Context context = getApplicationContext();
+        String message = getString(R.string.trip_statistics_message,
+                Utilities.formatSpeed(context, mTripSummary.getAverageSpeed()),
+                Utilities.formatSpeed(context, mTripSummary.getMovingAverageSpeed()),
+                Utilities.formatSpeed(context, mTripSummary.getMedianSpeed()),
+                Utilities.formatSpeed(context, mTripSummary.getP90Speed()),
+                Utilities.formatSpeed(context, mTripSummary.getP99Speed()),
+                DateUtils.formatElapsedTime(mTripSummary.getMovingTime() / 1000),
+                DateUtils.formatElapsedTime(mTripSummary.getStoppedTime() / 1000),
+                Utilities.formatUnits(context));
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.trip_statistics_title)
+                .setMessage(message)
+                .setPositiveButton(android.R.string.ok, null)
+                .show();
+    }
+
+
     private void shutDown() {
-        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "shutDown()");
+        Events.log(Events.SHUT_DOWN);
 
         // unregister OnSharedPreferenceChangeListener
         PreferenceManager.getDefaultSharedPreferences(getApplicationContext())
                 .unregisterOnSharedPreferenceChangeListener(this);
 
-        // unregister broadcast receiver for speed updates
-        LocalBroadcastManager.getInstance(this)
-                .unregisterReceiver(mSpeedBroadcastReceiver);
+        // stop listening for speed updates
+        GetSpeedService.getSpeedChannel().setListener(null);
+        mChoreographer.removeFrameCallback(mSpeedListener);
 
         //Stop background service
         if (mService != null) {
@@ -224,8 +264,7 @@ public class MainActivity extends AppCompatActivity implements
      * @param rate update rate to be sent to the location provider
      */
     private void sendRateToService(long rate, boolean activityRunning, boolean maxSpeedReset) {
-        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "sendRateToService()");
-
+        Events.log(Events.SEND_RATE, rate, activityRunning);
 
         /* set up broadcast to pass the running update rate to the service*/
         Intent updateService = new Intent();
@@ -246,7 +285,7 @@ public class MainActivity extends AppCompatActivity implements
      */
 
     private void getMyLocation() {
-        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "getMyLocation()");
+        Events.log(Events.START_SERVICE);
 
         mService = new Intent(this, GetSpeedService.class);
         startService(mService);
@@ -256,7 +295,7 @@ public class MainActivity extends AppCompatActivity implements
     @Override
     public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions,
                                            @NonNull int[] grantResults) {
-        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "onRequestPermissionsResult()");
+        Events.log(Events.PERMISSIONS_RESULT, requestCode);
 
         switch (requestCode) {
             case 10:
@@ -280,7 +319,7 @@ public class MainActivity extends AppCompatActivity implements
      **/
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
-        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "onCreateOptionsMenu()");
+        Events.log(Events.CREATE_OPTIONS_MENU);
 
         /* Use AppCompatActivity's method getMenuInflater to get a handle on the menu inflater */
         MenuInflater inflater = getMenuInflater();
@@ -295,47 +334,37 @@ public class MainActivity extends AppCompatActivity implements
 
     /**
      * Check which preference changed,
-     * gets the new value which is returned as a float in seconds,
-     * stores it in the appropriate global
-     * the new rate will be sent to the service by the on resume() method
+     * if it is one of the settings, reloads the settings snapshot,
+     * a new rate will be sent to the service by the on resume() method,
+     * the speed views redisplay the speeds, in case the units changed
      *
      * @param sharedPreferences preference object with the change
      * @param keyInPrefs        key for preference that changed
      */
     @Override
     public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String keyInPrefs) {
-        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "onSharedPreferenceChanged()");
+        Events.log(Events.PREFERENCE_CHANGED);
 
         String key;
-        String rate;
 
-        //check if running update rate has changed
-        key = getString(R.string.pref_key_running_update_rate);
-        if (keyInPrefs.equals(key)) {
-            rate = Preferences.getPrefRunningRate(getApplicationContext());
-            mRunningUpdateRate.setRate(rate);
+        //check if update rates or units have changed
+        if (SpeedConfig.isConfigKey(getApplicationContext(), keyInPrefs)) {
+            showSettings(SpeedConfig.reload(getApplicationContext()));
             return;
         }
-        //check if not running update rate has changed
-        key = getString(R.string.pref_key_not_running_update_rate);
-        if (keyInPrefs.equals(key)) {
-            rate = Preferences.getPrefNotRunningRate(getApplicationContext());
-            mNotRunningUpdateRate.setRate(rate);
-        }
 
         //check if maximum speed has changed
         key = getString(R.string.pref_key_saved_max_speed);
         if (keyInPrefs.equals(key)) {
             float maxSpeed = Preferences.getPrefMaxSpeed(getApplicationContext());
-            String formattedMAxSpeed = Utilities.formatSpeed(getApplicationContext(), maxSpeed);
-            mMaxSpeedTextView.setText(formattedMAxSpeed);
+            mMaxSpeedView.setSpeed(maxSpeed);
         }
     }
 
 
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
-        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "onOptionsItemSelected()");
+        Events.log(Events.OPTIONS_ITEM_SELECTED, item.getItemId());
 
         // Handle action bar item clicks here. The action bar will
         // automatically handle clicks on the Home/Up button, so long
@@ -351,7 +380,23 @@ public class MainActivity extends AppCompatActivity implements
              * service saves maximum speed in preferences,
              * max speed will be displayed when service sends next speed and max speed update
              */
-            sendRateToService(mRunningUpdateRate.getRateInMilliSecs(), true, true);
+            sendRateToService(SpeedConfig.get(getApplicationContext()).getRunningRateInMilliSecs(),
+                    true, true);
+            return true;
+        }
+        /* check if request to show the statistics of the trip */
+        if (id == R.id.trip_statistics) {
+            showTripStatistics();
+            return true;
+        }
+        /* check if request to show the time in each speed band */
+        if (id == R.id.speed_bands) {
+            startActivity(new Intent(this, SpeedBandsActivity.class));
+            return true;
+        }
+        /* check if request to show the timings from the fixes to the screen */
+        if (id == R.id.diagnostics) {
+            startActivity(new Intent(this, DiagnosticsActivity.class));
             return true;
         }
         /* check if request to navigate to the settings screen */
@@ -373,31 +418,45 @@ public class MainActivity extends AppCompatActivity implements
 //endregion
 
 //region InnerClasses
-public class MySpeedBroadcastReceiver extends BroadcastReceiver {
-    private final String TAG = MySpeedBroadcastReceiver.class.getSimpleName();
+
+/**
+ * Listens on the speed channel, when speeds are available asks the choreographer for
+ * a callback on the next frame, which takes the latest speeds and displays them.
+ * Speeds published before the frame are conflated, so the views are updated at most once a frame,
+ * and a view is only redrawn if one of its digits has changed.
+ */
+public class MySpeedListener implements SpeedChannel.Listener, Choreographer.FrameCallback {
+    /**
+     * Called on the service thread when speeds are available,
+     * the choreographer accepts callbacks from any thread and runs them on the main thread
+     */
+    @Override
+    public void onSpeedAvailable() {
+        mChoreographer.postFrameCallback(this);
+    }
 
     /**
-     * Retrieves speed and displays speed
-     * ensures the correct units are displayed with the correct format
+     * Retrieves speed, max speed and sustained max speed and passes them to the speed views,
+     * which redraw without a layout pass, records the time the speeds took to arrive
      *
-     * @param context context
-     * @param intent  source of broadcast
+     * @param frameTimeNanos time the frame started rendering
      */
     @Override
-    public void onReceive(Context context, Intent intent) {
-        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "onReceive()");
-
-        // get the speed, format the speed, display it and display the units
-        Float speed = intent.getFloatExtra(getString(R.string.extra_key_speed), 0.0F);
-        String formattedSpeed = Utilities.formatSpeed(context, speed);
-        mCurrentSpeedTextView.setText(formattedSpeed);
-        mCurrentSpeedUnitsTextView.setText(Utilities.formatUnits(context));
-
-        //get the max speed, format the speed, display it and display units
-        float maxSpeed = intent.getFloatExtra(getString(R.string.extra_key_max_speed), 0.0F);
-        String formattedMaxSpeed = Utilities.formatSpeed(context, maxSpeed);
-        mMaxSpeedTextView.setText(formattedMaxSpeed);
-        mMaxSpeedUnitsTextView.setText(Utilities.formatUnits(context));
+    public void doFrame(long frameTimeNanos) {
+        SpeedChannel channel = GetSpeedService.getSpeedChannel();
+        long speeds = channel.take();
+        Events.log(Events.FRAME, SpeedChannel.speedOf(speeds), SpeedChannel.maxSpeedOf(speeds));
+        GetSpeedService.getDiagnostics().getTiming(SpeedDiagnostics.DELIVERY)
+                .record(System.nanoTime() - channel.getPublishNanos());
+        mCurrentSpeedView.setSpeed(SpeedChannel.speedOf(speeds));
+        mMaxSpeedView.setSpeed(SpeedChannel.maxSpeedOf(speeds));
+        mSustainedMaxSpeedView.setSpeed(channel.getSustainedMaxSpeed());
+
+        //time from the start of the process until the first speed from a fix is shown
+        StartupTimer startup = GetSpeedService.getStartup();
+        if (startup.onFrame(SystemClock.elapsedRealtime())) {
+            Events.log(Events.STARTUP, startup.getFirstSpeedMillis(), startup.getRealSpeedMillis());
+        }
     }
     //endregion
 }
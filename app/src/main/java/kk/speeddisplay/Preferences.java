@@ -5,6 +5,8 @@ import android.content.SharedPreferences;
 import android.support.v7.preference.PreferenceManager;
 import android.util.Log;
 
+import kk.speeddisplay.core.SpeedFilters;
+
 public class Preferences {
 
     /* get a tag for output debugging */
@@ -67,6 +69,94 @@ public class Preferences {
         return metric.equals(preferredUnits);
     }
 
+    /**
+     * Returns true if the user has selected the adaptive update rate,
+     * where the update rate is chosen from the motion, within the user's update rates
+     *
+     * @param context Context used to get the SharedPreferences
+     * @return true if the adaptive update rate should be used
+     */
+    protected static boolean isAdaptiveRate(Context context) {
+        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "isAdaptiveRate()");
+
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String key = context.getString(R.string.pref_key_adaptive_rate);
+        boolean defaultAdaptive = Boolean.parseBoolean(context.getString(R.string.pref_default_adaptive_rate));
+        return prefs.getBoolean(key, defaultAdaptive);
+    }
+
+    /**
+     * Returns true if the user has selected to record the trips
+     *
+     * @param context Context used to get the SharedPreferences
+     * @return true if the locations should be recorded
+     */
+    protected static boolean isRecordTrips(Context context) {
+        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "isRecordTrips()");
+
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String key = context.getString(R.string.pref_key_record_trips);
+        boolean defaultRecord = Boolean.parseBoolean(context.getString(R.string.pref_default_record_trips));
+        return prefs.getBoolean(key, defaultRecord);
+    }
+
+    /**
+     * Returns true if the user has selected to keep the event log
+     *
+     * @param context Context used to get the SharedPreferences
+     * @return true if the events should be logged
+     */
+    protected static boolean isEventLog(Context context) {
+        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "isEventLog()");
+
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String key = context.getString(R.string.pref_key_event_log);
+        boolean defaultEventLog = Boolean.parseBoolean(context.getString(R.string.pref_default_event_log));
+        return prefs.getBoolean(key, defaultEventLog);
+    }
+
+    /**
+     * Returns the speed filter selected by the user
+     *
+     * @param context Context used to get the SharedPreferences
+     * @return one of the SpeedFilters constants
+     */
+    protected static int getPrefSpeedFilter(Context context) {
+        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "getPrefSpeedFilter()");
+
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String key = context.getString(R.string.pref_key_speed_filter);
+        String filter = prefs.getString(key, context.getString(R.string.pref_value_speed_filter_none));
+
+        if (filter.equals(context.getString(R.string.pref_value_speed_filter_ema))) {
+            return SpeedFilters.EMA;
+        } else if (filter.equals(context.getString(R.string.pref_value_speed_filter_kalman))) {
+            return SpeedFilters.KALMAN;
+        } else if (filter.equals(context.getString(R.string.pref_value_speed_filter_median))) {
+            return SpeedFilters.MEDIAN;
+        }
+        return SpeedFilters.NONE;
+    }
+
+    /**
+     * Returns the location source selected by the user
+     *
+     * @param context Context used to get the SharedPreferences
+     * @return one of the LocationSources constants, LocationSources.FUSED or LocationSources.GPS
+     */
+    protected static int getPrefLocationSource(Context context) {
+        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "getPrefLocationSource()");
+
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String key = context.getString(R.string.pref_key_location_source);
+        String source = prefs.getString(key, context.getString(R.string.pref_value_location_source_fused));
+
+        if (source.equals(context.getString(R.string.pref_value_location_source_gps))) {
+            return LocationSources.GPS;
+        }
+        return LocationSources.FUSED;
+    }
+
     /**
      * Retrieves saved maximum speed from Shared preferences
      *
@@ -97,7 +187,90 @@ public class Preferences {
 
         /* save maximum speed to shared preferences */
         SharedPreferences.Editor mEditor = sharedPref.edit();
-        mEditor.clear().putFloat(context.getString(R.string.pref_key_saved_max_speed),
+        mEditor.putFloat(context.getString(R.string.pref_key_saved_max_speed),
                 maxSpeed).apply();
     }
+
+    /**
+     * Retrieves saved sustained maximum speed from Shared preferences
+     *
+     * @param context context used to get the shared preferences
+     * @return sustained maximum speed
+     */
+    protected static float getPrefSustainedMaxSpeed(Context context) {
+        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "getPrefSustainedMaxSpeed()");
+
+        SharedPreferences sharedPref = context.getSharedPreferences(
+                context.getString(R.string.shared_pref_storage_file), Context.MODE_PRIVATE);
+
+        String key = context.getString(R.string.pref_key_saved_sustained_max_speed);
+        return sharedPref.getFloat(key, 0.0F);
+    }
+
+    /**
+     * save sustained maximum speed to shared preferences
+     *
+     * @param sustainedMaxSpeed sustained maximum speed to be saved
+     */
+    public static void saveSustainedMaxSpeed(Context context, float sustainedMaxSpeed) {
+        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "saveSustainedMaxSpeed()");
+
+        SharedPreferences sharedPref = context.getSharedPreferences(
+                context.getString(R.string.shared_pref_storage_file), Context.MODE_PRIVATE);
+
+        sharedPref.edit().putFloat(context.getString(R.string.pref_key_saved_sustained_max_speed),
+                sustainedMaxSpeed).apply();
+    }
+
+    /**
+     * Returns the time the sustained maximum speed must be held for
+     *
+     * @param context Context used to get the SharedPreferences
+     * @return window in seconds
+     */
+    protected static int getPrefSustainedWindow(Context context) {
+        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "getPrefSustainedWindow()");
+
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String key = context.getString(R.string.pref_key_sustained_window);
+        String window = prefs.getString(key, context.getString(R.string.pref_value_sustained_window_5));
+        try {
+            return Integer.parseInt(window);
+        } catch (NumberFormatException e) {
+            return Integer.parseInt(context.getString(R.string.pref_value_sustained_window_5));
+        }
+    }
+
+    /**
+     * Returns the name of the trace to be replayed instead of the location provider
+     *
+     * @param context Context used to get the SharedPreferences
+     * @return file name in the traces directory, empty if the location provider is used
+     */
+    protected static String getPrefReplayTrace(Context context) {
+        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "getPrefReplayTrace()");
+
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String key = context.getString(R.string.pref_key_replay_trace);
+        return prefs.getString(key, "").trim();
+    }
+
+    /**
+     * Returns how many times faster than real time a trace is replayed
+     *
+     * @param context Context used to get the SharedPreferences
+     * @return speed factor, 0 for as fast as possible
+     */
+    protected static double getPrefReplaySpeed(Context context) {
+        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "getPrefReplaySpeed()");
+
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String key = context.getString(R.string.pref_key_replay_speed);
+        String speed = prefs.getString(key, context.getString(R.string.pref_value_replay_speed_1));
+        try {
+            return Double.parseDouble(speed);
+        } catch (NumberFormatException e) {
+            return Double.parseDouble(context.getString(R.string.pref_value_replay_speed_1));
+        }
+    }
 }
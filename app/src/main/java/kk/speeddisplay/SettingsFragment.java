@@ -15,6 +15,8 @@ import android.view.View;
 import android.widget.EditText;
 import android.widget.Toast;
 
+import kk.speeddisplay.core.TraceReaders;
+
 public class SettingsFragment extends PreferenceFragmentCompat implements
         SharedPreferences.OnSharedPreferenceChangeListener, Preference.OnPreferenceChangeListener {
 
@@ -48,6 +50,9 @@ public class SettingsFragment extends PreferenceFragmentCompat implements
 
         preference = findPreference(getString(R.string.pref_key_not_running_update_rate));
         preference.setOnPreferenceChangeListener(this);
+
+        preference = findPreference(getString(R.string.pref_key_replay_trace));
+        preference.setOnPreferenceChangeListener(this);
     }
 
     /**
@@ -67,8 +72,9 @@ public class SettingsFragment extends PreferenceFragmentCompat implements
                 // Set the summary to that label
                 listPreference.setSummary(listPreference.getEntries()[prefIndex]);
             }
-        } else if (preference instanceof EditTextPreference) {
-            // For EditTextPreferences, set the summary to the value's simple string representation.
+        } else if (preference instanceof EditTextPreference && !value.isEmpty()) {
+            /* For EditTextPreferences, set the summary to the value's simple string representation,
+             * an empty value keeps the summary from the xml, which says what to enter */
             preference.setSummary(value);
         }
     }
@@ -114,6 +120,15 @@ public class SettingsFragment extends PreferenceFragmentCompat implements
                 return false;
             }
         }
+        /* check the trace is a format that can be replayed, empty to use the location provider */
+        if (preference.getKey().equals(getString(R.string.pref_key_replay_trace))) {
+            String trace = ((String) newValue).trim();
+            if (trace.isEmpty() || TraceReaders.getFormat(trace) >= 0) {
+                return true;
+            }
+            Toast.makeText(getContext(), R.string.trace_format_invalid, Toast.LENGTH_SHORT).show();
+            return false;
+        }
         return true;
     }
 
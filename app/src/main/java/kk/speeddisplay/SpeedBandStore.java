@@ -0,0 +1,97 @@
+package kk.speeddisplay;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import kk.speeddisplay.core.SpeedBandHistogram;
+
+/**
+ * Saves and loads the time spent in each speed band, totalled over all trips,
+ * in a file under the app's files directory.
+ * <p>
+ * The file is written to a temporary file, forced to storage and renamed, so it is always
+ * a complete histogram.
+ * Written by the service, read by the service when it starts and by the speed bands screen.
+ */
+final class SpeedBandStore {
+    private final static String TAG = SpeedBandStore.class.getSimpleName();
+
+    private SpeedBandStore() {
+    }
+
+    private static File getFile(Context context) {
+        return new File(context.getFilesDir(), Constant.SPEED_BANDS_FILE);
+    }
+
+    /**
+     * Loads the saved times, if none have been saved the histogram is cleared
+     *
+     * @param context    context used to get the files directory
+     * @param histogram  filled in with the saved times
+     * @return true if loaded, false if there are no saved times or they cannot be read
+     */
+    static boolean load(Context context, SpeedBandHistogram histogram) {
+        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "load()");
+
+        histogram.clear();
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(getFile(context))));
+            try {
+                histogram.readFrom(in);
+                return true;
+            } finally {
+                in.close();
+            }
+        } catch (FileNotFoundException e) {
+            return false;
+        } catch (IOException e) {
+            Log.e(TAG, context.getString(R.string.speed_bands_failed), e);
+            histogram.clear();
+            return false;
+        }
+    }
+
+    /**
+     * Saves the times
+     *
+     * @param context   context used to get the files directory
+     * @param histogram times to be saved
+     * @return true if saved
+     */
+    static boolean save(Context context, SpeedBandHistogram histogram) {
+        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "save()");
+
+        File file = getFile(context);
+        File temporary = new File(file.getPath() + ".tmp");
+        try {
+            FileOutputStream file = new FileOutputStream(temporary);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file));
+            try {
+                histogram.writeTo(out);
+                //the data must be on storage before the rename, or a crash could leave an empty file
+                out.flush();
+                file.getFD().sync();
+            } finally {
+                out.close();
+            }
+            if (!temporary.renameTo(file)) {
+                throw new IOException("cannot rename " + temporary);
+            }
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, context.getString(R.string.speed_bands_failed), e);
+            return false;
+        }
+    }
+}
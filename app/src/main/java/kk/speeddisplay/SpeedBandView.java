@@ -0,0 +1,128 @@
+package kk.speeddisplay;
+
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.support.v4.content.ContextCompat;
+import android.text.format.DateUtils;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.view.View;
+
+import kk.speeddisplay.core.SpeedBandHistogram;
+
+/**
+ * Displays the time spent in each speed band as a horizontal bar chart,
+ * one row for each band, with the band on the left and the time on the right.
+ * <p>
+ * The bars are scaled to the longest time, the labels are built when the histogram
+ * or the units are set, so drawing a frame does not allocate.
+ */
+public class SpeedBandView extends View {
+    private final static String TAG = SpeedBandView.class.getSimpleName();
+
+    /* proportions of a row, relative to the text size */
+    private final static float ROW_HEIGHT = 1.8F;
+    private final static float LABEL_WIDTH = 5.0F;
+    private final static float TIME_WIDTH = 5.0F;
+    private final static float BAR_HEIGHT = 1.0F;
+
+    private final SpeedBandHistogram mHistogram = new SpeedBandHistogram();
+    private boolean mMetric = true;
+
+    private final String[] mBandLabels = new String[SpeedBandHistogram.METRIC_BANDS];
+    private final String[] mTimeLabels = new String[SpeedBandHistogram.METRIC_BANDS];
+    private int mBands;
+    private long mMaxTime;
+
+    private final Paint mBarPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final float mTextSize;
+
+    public SpeedBandView(Context context) {
+        this(context, null);
+    }
+
+    public SpeedBandView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "SpeedBandView()");
+
+        TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.SpeedBandView);
+        try {
+            mBarPaint.setColor(a.getColor(R.styleable.SpeedBandView_barColor,
+                    ContextCompat.getColor(context, R.color.Red)));
+            mTextSize = a.getDimension(R.styleable.SpeedBandView_labelTextSize,
+                    getResources().getDimension(R.dimen.small_text_size));
+        } finally {
+            a.recycle();
+        }
+        mTextPaint.setColor(mBarPaint.getColor());
+        mTextPaint.setTextSize(mTextSize);
+        buildLabels();
+    }
+
+    /**
+     * Displays the times in a histogram
+     *
+     * @param histogram times to be displayed, copied so it can be changed afterwards
+     * @param metric    true if the bands are to be displayed in km/hour, else miles/hour
+     */
+    public void setHistogram(SpeedBandHistogram histogram, boolean metric) {
+        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "setHistogram()");
+
+        mHistogram.copyFrom(histogram);
+        boolean bandsChanged = metric != mMetric;
+        mMetric = metric;
+        buildLabels();
+        if (bandsChanged) {
+            requestLayout();
+        }
+        invalidate();
+    }
+
+    private void buildLabels() {
+        Context context = getContext();
+        String units = context.getString(mMetric ? R.string.units_metric : R.string.units_imperial);
+        mBands = SpeedBandHistogram.getBandCount(mMetric);
+        mMaxTime = mHistogram.getMaxTime(mMetric);
+        for (int band = 0; band < mBands; band++) {
+            int low = band * SpeedBandHistogram.BAND_WIDTH;
+            mBandLabels[band] = band == mBands - 1
+                    ? context.getString(R.string.speed_band_above, low, units)
+                    : context.getString(R.string.speed_band, low, low + SpeedBandHistogram.BAND_WIDTH, units);
+            mTimeLabels[band] = DateUtils.formatElapsedTime(mHistogram.getTime(mMetric, band) / 1000);
+        }
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int width = (int) Math.ceil(getPaddingLeft() + (LABEL_WIDTH + TIME_WIDTH) * mTextSize * 2
+                + getPaddingRight());
+        int height = (int) Math.ceil(getPaddingTop() + mBands * ROW_HEIGHT * mTextSize + getPaddingBottom());
+        setMeasuredDimension(resolveSize(width, widthMeasureSpec), resolveSize(height, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+
+        float rowHeight = ROW_HEIGHT * mTextSize;
+        float barLeft = getPaddingLeft() + LABEL_WIDTH * mTextSize;
+        float timeLeft = getWidth() - getPaddingRight() - TIME_WIDTH * mTextSize;
+        float barSpace = Math.max(0, timeLeft - barLeft - mTextSize / 2);
+        float barInset = (rowHeight - BAR_HEIGHT * mTextSize) / 2;
+
+        for (int band = 0; band < mBands; band++) {
+            float top = getPaddingTop() + band * rowHeight;
+            float baseline = top + (rowHeight + mTextSize) / 2 - mTextPaint.descent();
+            canvas.drawText(mBandLabels[band], getPaddingLeft(), baseline, mTextPaint);
+            long time = mHistogram.getTime(mMetric, band);
+            if (mMaxTime > 0 && time > 0) {
+                float barWidth = barSpace * time / mMaxTime;
+                canvas.drawRect(barLeft, top + barInset, barLeft + barWidth, top + rowHeight - barInset, mBarPaint);
+            }
+            canvas.drawText(mTimeLabels[band], timeLeft, baseline, mTextPaint);
+        }
+    }
+}
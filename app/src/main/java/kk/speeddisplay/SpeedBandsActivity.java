@@ -0,0 +1,65 @@
+package kk.speeddisplay;
+
+import android.annotation.SuppressLint;
+import android.os.Bundle;
+import android.support.v4.app.NavUtils;
+import android.support.v7.app.ActionBar;
+import android.support.v7.app.AppCompatActivity;
+import android.text.format.DateUtils;
+import android.util.Log;
+import android.view.MenuItem;
+import android.widget.TextView;
+
+import kk.speeddisplay.core.SpeedBandHistogram;
+
+/**
+ * Shows the time spent in each speed band over all trips, as a bar chart,
+ * in the units from the settings. The times are those last saved by the service,
+ * which saves them every minute while running.
+ */
+public class SpeedBandsActivity extends AppCompatActivity {
+    private final static String TAG = SpeedBandsActivity.class.getSimpleName();
+
+    private final SpeedBandHistogram mHistogram = new SpeedBandHistogram();
+
+    /* use to suppress error for line 'actionBar.setDefaultDisplayHomeAsUpEnabled(true);' */
+    @SuppressLint("RestrictedApi")
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "onCreate()");
+
+        setContentView(R.layout.activity_speed_bands);
+        ActionBar actionBar = this.getSupportActionBar();
+
+        // Set the action bar back button to look like an up button
+        if (actionBar != null) {
+            actionBar.setDefaultDisplayHomeAsUpEnabled(true);
+        }
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "onResume()");
+
+        SpeedBandStore.load(getApplicationContext(), mHistogram);
+        SpeedBandView speedBandView = findViewById(R.id.sbv_SpeedBands);
+        speedBandView.setHistogram(mHistogram, SpeedConfig.get(getApplicationContext()).isMetric());
+        TextView totalView = findViewById(R.id.tv_SpeedBandsTotal);
+        totalView.setText(getString(R.string.speed_bands_total,
+                DateUtils.formatElapsedTime(mHistogram.getTotalTime() / 1000)));
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "onOptionsItemSelected()");
+
+        int id = item.getItemId();
+        // When the home button is pressed, take the user back to the MainActivity
+        if (id == android.R.id.home) {
+            NavUtils.navigateUpFromSameTask(this);
+        }
+        return super.onOptionsItemSelected(item);
+    }
+}
@@ -0,0 +1,224 @@
+package kk.speeddisplay;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Immutable snapshot of the user's settings, read from the shared preferences.
+ * <p>
+ * The preferences are read and the rates parsed once, when the snapshot is built,
+ * so the service and the activity can read the settings on every update without any
+ * preference lookups or parsing.
+ * The snapshot is rebuilt and published when a setting is changed, by calling
+ * {@link #reload} from onSharedPreferenceChanged.
+ * As the snapshot is immutable and published through a volatile field,
+ * it can be read from any thread. Loading is serialised on the class, so a thread which
+ * asks for the settings while they are being prefetched waits for them rather than
+ * reading the preferences again.
+ */
+public final class SpeedConfig {
+    private final static String TAG = SpeedConfig.class.getSimpleName();
+
+    /* latest snapshot, null until first loaded */
+    private static volatile SpeedConfig sCurrent;
+
+    /* location update rates in milliseconds */
+    private final long mRunningRateInMilliSecs;
+    private final long mNotRunningRateInMilliSecs;
+    private final long mDefaultRunningRateInMilliSecs;
+
+    private final boolean mMetric;
+    private final boolean mAdaptiveRate;
+    private final int mSpeedFilter;
+    private final int mSustainedWindowInSecs;
+    private final boolean mRecordTrips;
+    private final int mLocationSource;
+    private final String mReplayTrace;
+    private final double mReplaySpeed;
+    private final boolean mEventLog;
+
+    private SpeedConfig(Context context) {
+        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "SpeedConfig()");
+
+        UpdateRate updateRate = new UpdateRate();
+        updateRate.setRate(Preferences.getPrefRunningRate(context));
+        mRunningRateInMilliSecs = updateRate.getRateInMilliSecs();
+        updateRate.setRate(Preferences.getPrefNotRunningRate(context));
+        mNotRunningRateInMilliSecs = updateRate.getRateInMilliSecs();
+        mDefaultRunningRateInMilliSecs = updateRate.getDefaultRunningRateInMilliSecs(context);
+
+        mMetric = Preferences.isMetric(context);
+        mAdaptiveRate = Preferences.isAdaptiveRate(context);
+        mSpeedFilter = Preferences.getPrefSpeedFilter(context);
+        mSustainedWindowInSecs = Preferences.getPrefSustainedWindow(context);
+        mRecordTrips = Preferences.isRecordTrips(context);
+        mLocationSource = Preferences.getPrefLocationSource(context);
+        mReplayTrace = Preferences.getPrefReplayTrace(context);
+        mReplaySpeed = Preferences.getPrefReplaySpeed(context);
+        mEventLog = Preferences.isEventLog(context);
+    }
+
+    /**
+     * Returns the current snapshot, loading it from the preferences if not yet loaded,
+     * or waiting for it if it is being loaded by {@link #prefetch}
+     *
+     * @param context context used to get the shared preferences
+     * @return current settings
+     */
+    static SpeedConfig get(Context context) {
+        SpeedConfig config = sCurrent;
+        if (config == null) {
+            synchronized (SpeedConfig.class) {
+                config = sCurrent;
+                if (config == null) {
+                    config = reload(context);
+                }
+            }
+        }
+        return config;
+    }
+
+    /**
+     * Loads the snapshot on a background thread, so the shared preferences file is read and
+     * parsed while the main activity inflates its layout, rather than on the main thread when
+     * the settings are first read, call as early as possible in the start up
+     *
+     * @param context context used to get the shared preferences
+     */
+    static void prefetch(Context context) {
+        final Context applicationContext = context.getApplicationContext();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long start = SystemClock.elapsedRealtimeNanos();
+                //the max speeds the service reads when it is created are in the same file
+                get(applicationContext);
+                Events.log(Events.PREFETCH, (SystemClock.elapsedRealtimeNanos() - start) / 1000L);
+            }
+        }, "SpeedConfig.prefetch").start();
+    }
+
+    /**
+     * Builds a new snapshot from the preferences and publishes it, and switches the event log
+     * on or off, call when the preferences have changed
+     *
+     * @param context context used to get the shared preferences
+     * @return new settings
+     */
+    static synchronized SpeedConfig reload(Context context) {
+        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "reload()");
+
+        SpeedConfig config = new SpeedConfig(context.getApplicationContext());
+        sCurrent = config;
+        Events.setEnabled(config.isEventLog());
+        return config;
+    }
+
+    /**
+     * Checks if the preference is one held in the snapshot
+     *
+     * @param context context used to get the preference keys
+     * @param key     key of the preference
+     * @return true if the snapshot needs to be reloaded when the preference changes
+     */
+    static boolean isConfigKey(Context context, String key) {
+        return key.equals(context.getString(R.string.pref_key_running_update_rate))
+                || key.equals(context.getString(R.string.pref_key_not_running_update_rate))
+                || key.equals(context.getString(R.string.pref_key_units))
+                || key.equals(context.getString(R.string.pref_key_adaptive_rate))
+                || key.equals(context.getString(R.string.pref_key_speed_filter))
+                || key.equals(context.getString(R.string.pref_key_sustained_window))
+                || key.equals(context.getString(R.string.pref_key_record_trips))
+                || key.equals(context.getString(R.string.pref_key_location_source))
+                || key.equals(context.getString(R.string.pref_key_replay_trace))
+                || key.equals(context.getString(R.string.pref_key_replay_speed))
+                || key.equals(context.getString(R.string.pref_key_event_log));
+    }
+
+    /**
+     * @return location update rate for when activity is running in milliseconds
+     */
+    long getRunningRateInMilliSecs() {
+        return mRunningRateInMilliSecs;
+    }
+
+    /**
+     * @return location update rate for when activity is not running in milliseconds
+     */
+    long getNotRunningRateInMilliSecs() {
+        return mNotRunningRateInMilliSecs;
+    }
+
+    /**
+     * @return default location update rate for when activity is running in milliseconds
+     */
+    long getDefaultRunningRateInMilliSecs() {
+        return mDefaultRunningRateInMilliSecs;
+    }
+
+    /**
+     * @return true if metric display should be used
+     */
+    boolean isMetric() {
+        return mMetric;
+    }
+
+    /**
+     * @return true if the update rate is chosen from the motion, within the update rates
+     */
+    boolean isAdaptiveRate() {
+        return mAdaptiveRate;
+    }
+
+    /**
+     * @return speed filter, one of the SpeedFilters constants
+     */
+    int getSpeedFilter() {
+        return mSpeedFilter;
+    }
+
+    /**
+     * @return time the sustained maximum speed must be held for in seconds
+     */
+    int getSustainedWindowInSecs() {
+        return mSustainedWindowInSecs;
+    }
+
+    /**
+     * @return true if the locations are recorded to the trip files
+     */
+    boolean isRecordTrips() {
+        return mRecordTrips;
+    }
+
+    /**
+     * @return location source, one of the LocationSources constants, a trace being replayed
+     * takes its place
+     */
+    int getLocationSource() {
+        return mLocationSource;
+    }
+
+    /**
+     * @return name of the trace in the traces directory replayed instead of the location provider,
+     * empty if the location provider is used
+     */
+    String getReplayTrace() {
+        return mReplayTrace;
+    }
+
+    /**
+     * @return how many times faster than real time the trace is replayed, 0 for as fast as possible
+     */
+    double getReplaySpeed() {
+        return mReplaySpeed;
+    }
+
+    /**
+     * @return true if the events are logged to the event log
+     */
+    boolean isEventLog() {
+        return mEventLog;
+    }
+}
@@ -0,0 +1,239 @@
+package kk.speeddisplay;
+
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.RectF;
+import android.support.v4.content.ContextCompat;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.view.View;
+
+import kk.speeddisplay.core.SevenSegment;
+import kk.speeddisplay.core.SpeedFormatter;
+import kk.speeddisplay.core.TimingHistogram;
+
+/**
+ * Displays a speed as seven-segment digits followed by the units, drawn directly on the canvas.
+ * <p>
+ * The digits are laid out in a fixed number of cells, so the size of the view never changes
+ * with the speed or the units, room is left for the wider of the metric and imperial units.
+ * Changing the speed only calls invalidate() and never requestLayout(),
+ * and only if a digit has changed.
+ * The segment paths are built once, when the view is created, drawing a frame draws the
+ * pre-built paths and the cached units string, so nothing is allocated.
+ * <p>
+ * Used for both the current speed and the maximum speed.
+ */
+public class SpeedView extends View {
+    private final static String TAG = SpeedView.class.getSimpleName();
+
+    /* proportions of a digit, relative to the digit height */
+    private final static float DIGIT_WIDTH = 0.5F;
+    private final static float SEGMENT_THICKNESS = 0.1F;
+    private final static float SEGMENT_GAP = 0.01F;
+    private final static float DIGIT_GAP = 0.18F;
+    private final static float UNITS_GAP = 0.15F;
+    // horizontal skew of the digits, negative leans the digits to the right like italic text
+    private final static float SLANT = -0.1F;
+
+    private final static int DEFAULT_DIGITS = 4;
+
+    /* segments lit for each digit cell, the last cell is the decimal place */
+    private final int[] mCells;
+    private final SpeedFormatter mFormatter;
+    private float mSpeed;
+
+    /* paths for each segment of a digit, with the top left of the digit at 0,0 */
+    private final Path[] mSegmentPaths = new Path[SevenSegment.SEGMENT_COUNT];
+    private final RectF mDecimalPoint = new RectF();
+
+    private final Paint mLitPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mUnlitPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mUnitsPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+    /* records the time from a new speed to it being drawn, if set,
+     * mInvalidateNanos is when the view was invalidated for a new speed, 0 if not waiting to draw */
+    private TimingHistogram mDrawTiming;
+    private long mInvalidateNanos;
+
+    private final float mDigitHeight;
+    private final float mCellWidth;
+    private final float mDigitsWidth;
+    private final float mUnitsWidth;
+
+    public SpeedView(Context context) {
+        this(context, null);
+    }
+
+    public SpeedView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        if (MyDebug.DEBUG_METHOD_ENTRY) Log.d(TAG, "SpeedView()");
+
+        TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.SpeedView);
+        int digits;
+        try {
+            digits = a.getInt(R.styleable.SpeedView_digits, DEFAULT_DIGITS);
+            mDigitHeight = a.getDimension(R.styleable.SpeedView_digitHeight,
+                    getResources().getDimension(R.dimen.large_text_size));
+            mLitPaint.setColor(a.getColor(R.styleable.SpeedView_segmentColor,
+                    ContextCompat.getColor(context, R.color.Red)));
+            mUnlitPaint.setColor(a.getColor(R.styleable.SpeedView_unlitSegmentColor, 0));
+            mUnitsPaint.setTextSize(a.getDimension(R.styleable.SpeedView_unitsTextSize,
+                    getResources().getDimension(R.dimen.medium_text_size)));
+        } finally {
+            a.recycle();
+        }
+        mUnitsPaint.setColor(mLitPaint.getColor());
+
+        mCells = new int[digits];
+        mFormatter = new SpeedFormatter(context.getString(R.string.units_metric),
+                context.getString(R.string.units_imperial), true);
+        SevenSegment.layout(mFormatter.getChars(), mFormatter.format(0.0F), mCells);
+
+        float digitWidth = mDigitHeight * DIGIT_WIDTH;
+        mCellWidth = digitWidth + mDigitHeight * DIGIT_GAP;
+        mDigitsWidth = digits * mCellWidth - mDigitHeight * DIGIT_GAP - SLANT * mDigitHeight;
+        mUnitsWidth = mDigitHeight * UNITS_GAP + Math.max(
+                mUnitsPaint.measureText(context.getString(R.string.units_metric)),
+                mUnitsPaint.measureText(context.getString(R.string.units_imperial)));
+
+        buildSegmentPaths(digitWidth, mDigitHeight, mDigitHeight * SEGMENT_THICKNESS);
+    }
+
+    /**
+     * Builds the path of each segment, as a hexagon with pointed ends
+     *
+     * @param width     digit width
+     * @param height    digit height
+     * @param thickness segment thickness
+     */
+    private void buildSegmentPaths(float width, float height, float thickness) {
+        float half = thickness / 2;
+        float gap = mDigitHeight * SEGMENT_GAP;
+        float left = half;
+        float right = width - half;
+        float top = half;
+        float middle = height / 2;
+        float bottom = height - half;
+
+        mSegmentPaths[0] = horizontalSegment(left + gap, right - gap, top, half);       // a
+        mSegmentPaths[1] = verticalSegment(right, top + gap, middle - gap, half);      // b
+        mSegmentPaths[2] = verticalSegment(right, middle + gap, bottom - gap, half);   // c
+        mSegmentPaths[3] = horizontalSegment(left + gap, right - gap, bottom, half);   // d
+        mSegmentPaths[4] = verticalSegment(left, middle + gap, bottom - gap, half);    // e
+        mSegmentPaths[5] = verticalSegment(left, top + gap, middle - gap, half);       // f
+        mSegmentPaths[6] = horizontalSegment(left + gap, right - gap, middle, half);   // g
+
+        // decimal point sits in the gap before the last digit, on the baseline
+        float pointX = (mCells.length - 1) * mCellWidth - mDigitHeight * DIGIT_GAP / 2;
+        mDecimalPoint.set(pointX - half, height - thickness, pointX + half, height);
+    }
+
+    private static Path horizontalSegment(float x0, float x1, float y, float half) {
+        Path path = new Path();
+        path.moveTo(x0, y);
+        path.lineTo(x0 + half, y - half);
+        path.lineTo(x1 - half, y - half);
+        path.lineTo(x1, y);
+        path.lineTo(x1 - half, y + half);
+        path.lineTo(x0 + half, y + half);
+        path.close();
+        return path;
+    }
+
+    private static Path verticalSegment(float x, float y0, float y1, float half) {
+        Path path = new Path();
+        path.moveTo(x, y0);
+        path.lineTo(x + half, y0 + half);
+        path.lineTo(x + half, y1 - half);
+        path.lineTo(x, y1);
+        path.lineTo(x - half, y1 - half);
+        path.lineTo(x - half, y0 + half);
+        path.close();
+        return path;
+    }
+
+    /**
+     * Displays a new speed, only redraws if a digit has changed
+     *
+     * @param speedKph speed in kilometres per hour
+     */
+    public void setSpeed(float speedKph) {
+        mSpeed = speedKph;
+        if (SevenSegment.layout(mFormatter.getChars(), mFormatter.format(speedKph), mCells)) {
+            if (mDrawTiming != null && mInvalidateNanos == 0) {
+                mInvalidateNanos = System.nanoTime();
+            }
+            invalidate();
+        }
+    }
+
+    /**
+     * Records the time from each new speed to it being drawn
+     *
+     * @param drawTiming histogram recorded to on the main thread, null to stop recording
+     */
+    public void setDrawTiming(TimingHistogram drawTiming) {
+        mDrawTiming = drawTiming;
+        mInvalidateNanos = 0;
+    }
+
+    /**
+     * Changes the units, redraws the speed in the new units
+     *
+     * @param metric true if speeds are to be displayed in metric units
+     */
+    public void setMetric(boolean metric) {
+        if (metric == mFormatter.isMetric()) {
+            return;
+        }
+        mFormatter.setMetric(metric);
+        SevenSegment.layout(mFormatter.getChars(), mFormatter.format(mSpeed), mCells);
+        invalidate();
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int width = (int) Math.ceil(getPaddingLeft() + mDigitsWidth + mUnitsWidth + getPaddingRight());
+        int height = (int) Math.ceil(getPaddingTop() + mDigitHeight + getPaddingBottom());
+        setMeasuredDimension(resolveSize(width, widthMeasureSpec), resolveSize(height, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+
+        boolean drawUnlit = mUnlitPaint.getAlpha() != 0;
+
+        canvas.save();
+        // skew about the bottom of the digits, so the bottom left of the first digit stays in place
+        canvas.translate(getPaddingLeft(), getPaddingTop() + mDigitHeight);
+        canvas.skew(SLANT, 0);
+        canvas.translate(0, -mDigitHeight);
+
+        canvas.drawRect(mDecimalPoint, mLitPaint);
+        for (int cell : mCells) {
+            for (int segment = 0; segment < SevenSegment.SEGMENT_COUNT; segment++) {
+                if ((cell & (1 << segment)) != 0) {
+                    canvas.drawPath(mSegmentPaths[segment], mLitPaint);
+                } else if (drawUnlit) {
+                    canvas.drawPath(mSegmentPaths[segment], mUnlitPaint);
+                }
+            }
+            canvas.translate(mCellWidth, 0);
+        }
+        canvas.restore();
+
+        // units on the baseline of the digits
+        float unitsX = getPaddingLeft() + mDigitsWidth + mDigitHeight * UNITS_GAP;
+        canvas.drawText(mFormatter.getUnits(), unitsX, getPaddingTop() + mDigitHeight, mUnitsPaint);
+
+        if (mInvalidateNanos != 0) {
+            mDrawTiming.record(System.nanoTime() - mInvalidateNanos);
+            mInvalidateNanos = 0;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package kk.speeddisplay;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+
+import kk.speeddisplay.core.LocationSource;
+import kk.speeddisplay.core.TraceFix;
+import kk.speeddisplay.core.TraceReader;
+import kk.speeddisplay.core.TraceReplayer;
+
+/**
+ * Replays a recorded trace in place of the device's location, paced by the trace times,
+ * at the replay speed chosen in the settings. The replay starts when the updates are first
+ * requested and is not affected by the rate, it stops at the end of the trace.
+ * The fixes are not live, so they are not recorded to the trips.
+ */
+class TraceLocationSource implements LocationSource {
+    private final static String TAG = TraceLocationSource.class.getSimpleName();
+
+    private final Context mContext;
+    private final Handler mHandler;
+    private final TraceReader mTraceReader;
+    private final TraceReplayer mTraceReplayer;
+    private Listener mListener;
+
+    /* when the replay started on the elapsed realtime clock, 0 until started */
+    private long mReplayStartNanos;
+    private final Runnable mReplayRunnable = new Runnable() {
+        @Override
+        public void run() {
+            replayTrace();
+        }
+    };
+
+    /**
+     * @param context     context used to get the error message
+     * @param handler     handler of the thread the fixes are delivered on
+     * @param traceReader trace to be replayed, closed when the updates are removed
+     * @param speedFactor how many times faster than real time the trace is replayed,
+     *                    0 for as fast as possible
+     */
+    TraceLocationSource(Context context, Handler handler, TraceReader traceReader, double speedFactor) {
+        mContext = context;
+        mHandler = handler;
+        mTraceReader = traceReader;
+        mTraceReplayer = new TraceReplayer(traceReader, speedFactor);
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Starts replaying the trace, if not already started
+     */
+    @Override
+    public void requestUpdates(long intervalMillis, int priority, long maxWaitMillis) {
+        if (mReplayStartNanos == 0) {
+            mReplayStartNanos = SystemClock.elapsedRealtimeNanos();
+            mHandler.post(mReplayRunnable);
+        }
+    }
+
+    /**
+     * Nothing to do, a trace has no fix before its first
+     */
+    @Override
+    public void requestLastFix() {
+    }
+
+    /**
+     * Stops replaying the trace and closes it
+     */
+    @Override
+    public void removeUpdates() {
+        mHandler.removeCallbacks(mReplayRunnable);
+        try {
+            mTraceReader.close();
+        } catch (IOException e) {
+            // nothing more can be done, the trace was only read
+        }
+    }
+
+    /**
+     * Nothing to do, the fixes are delivered when they are due
+     */
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public boolean isLive() {
+        return false;
+    }
+
+    /**
+     * Gives the fixes of the trace which are due to the listener as a location result,
+     * then schedules itself for when the next fix is due
+     */
+    private void replayTrace() {
+        try {
+            long replayNanos = SystemClock.elapsedRealtimeNanos() - mReplayStartNanos;
+            int count = 0;
+            while (count < Constant.REPLAY_BATCH_FIXES && mTraceReplayer.next(replayNanos)) {
+                if (count == 0) {
+                    mListener.onLocationResultStart();
+                }
+                TraceFix fix = mTraceReplayer.getFix();
+                mListener.onFix(fix.getElapsedNanos(), fix.getTime(), fix.hasSpeed(), fix.getSpeed(),
+                        fix.getSpeedAccuracy(), fix.getAccuracy(), fix.getLatitude(), fix.getLongitude());
+                count++;
+            }
+            if (count > 0) {
+                mListener.onLocationResultEnd();
+            }
+            long delayNanos = mTraceReplayer.getDelayNanos(SystemClock.elapsedRealtimeNanos() - mReplayStartNanos);
+            if (delayNanos < 0) {
+                Events.log(Events.TRACE_REPLAYED, mTraceReplayer.getFixCount());
+                removeUpdates();
+                return;
+            }
+            //post rather than loop, so messages from the main activity are handled during a fast replay
+            mHandler.postDelayed(mReplayRunnable, delayNanos / 1000000L);
+        } catch (IOException e) {
+            Log.e(TAG, mContext.getString(R.string.trace_replay_failed), e);
+            removeUpdates();
+        }
+    }
+}
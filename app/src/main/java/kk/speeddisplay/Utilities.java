@@ -35,7 +35,7 @@ public final class Utilities {
         //get the default format to display speed
         String formatSpeed = context.getString(R.string.speed_format);
 
-        if (!Preferences.isMetric(context)) {
+        if (!SpeedConfig.get(context).isMetric()) {
             speed = kphToMph(speed);
         }
         return String.format(Locale.UK, formatSpeed, speed);
@@ -54,7 +54,7 @@ public final class Utilities {
         //get the default format to display speed
         int formatResourceId = R.string.units_metric;
 
-        if (!Preferences.isMetric(context)) {
+        if (!SpeedConfig.get(context).isMetric()) {
             formatResourceId = R.string.units_imperial;
         }
         return context.getString(formatResourceId);
@@ -0,0 +1,69 @@
+package kk.speeddisplay.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import kk.speeddisplay.core.EventLog;
+import kk.speeddisplay.core.SpeedDiagnostics;
+import kk.speeddisplay.core.TimingHistogram;
+
+/**
+ * Cost of the timings and events recorded on the hot path, which are left enabled: one operation
+ * records one duration in a histogram, or the age and interval of one fix, or logs one event.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DiagnosticsBenchmark {
+
+    /* fix ages and interval jitter in nanoseconds, cycled through so each call sees a different value */
+    private static final int SAMPLES = 1024;
+    private final long[] mDurations = new long[SAMPLES];
+    private int mIndex;
+    private long mFixNanos;
+
+    private TimingHistogram mHistogram;
+    private SpeedDiagnostics mDiagnostics;
+    private EventLog mEventLog;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(1);
+        for (int i = 0; i < SAMPLES; i++) {
+            mDurations[i] = (long) (Math.abs(random.nextGaussian()) * 50000000L);
+        }
+        mHistogram = new TimingHistogram();
+        mDiagnostics = new SpeedDiagnostics();
+        mDiagnostics.setExpectedInterval(1000L);
+        mEventLog = new EventLog(16384);
+        mEventLog.define(1, "fix", EventLog.ARG_FLOAT, EventLog.ARG_FLOAT);
+    }
+
+    @Benchmark
+    public void recordDuration() {
+        mIndex = (mIndex + 1) & (SAMPLES - 1);
+        mHistogram.record(mDurations[mIndex]);
+    }
+
+    @Benchmark
+    public void recordFix() {
+        mIndex = (mIndex + 1) & (SAMPLES - 1);
+        mFixNanos += 1000000000L + mDurations[mIndex] / 10;
+        mDiagnostics.onFix(mFixNanos, mFixNanos + mDurations[mIndex]);
+    }
+
+    @Benchmark
+    public void logEvent() {
+        mIndex = (mIndex + 1) & (SAMPLES - 1);
+        mEventLog.log(1, mDurations[mIndex] * 1e-9F, 5.0F);
+    }
+}
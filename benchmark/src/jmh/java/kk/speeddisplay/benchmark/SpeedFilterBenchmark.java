@@ -0,0 +1,69 @@
+package kk.speeddisplay.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import kk.speeddisplay.core.SpeedFilter;
+import kk.speeddisplay.core.SpeedFilters;
+
+/**
+ * Throughput of each speed filter, one operation filters one sample.
+ * <p>
+ * The accuracy of the filters is scored against drive traces by SpeedFilterTest in speedcore.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SpeedFilterBenchmark {
+
+    /* noisy speeds in metres/sec, cycled through so each call sees a different value */
+    private static final int SAMPLES = 1024;
+    private final float[] mSpeeds = new float[SAMPLES];
+    private int mIndex;
+    private long mTime;
+
+    @Param({"none", "ema", "kalman", "median"})
+    public String filter;
+
+    private SpeedFilter mFilter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(1);
+        for (int i = 0; i < SAMPLES; i++) {
+            mSpeeds[i] = (float) (20.0 + 10.0 * Math.sin(i * 0.05) + random.nextGaussian() * 0.7);
+        }
+        int type;
+        switch (filter) {
+            case "ema":
+                type = SpeedFilters.EMA;
+                break;
+            case "kalman":
+                type = SpeedFilters.KALMAN;
+                break;
+            case "median":
+                type = SpeedFilters.MEDIAN;
+                break;
+            default:
+                type = SpeedFilters.NONE;
+        }
+        mFilter = SpeedFilters.create(type);
+    }
+
+    @Benchmark
+    public float filterSpeed() {
+        mIndex = (mIndex + 1) & (SAMPLES - 1);
+        mTime += 1000L;
+        return mFilter.filter(mTime, mSpeeds[mIndex]);
+    }
+}
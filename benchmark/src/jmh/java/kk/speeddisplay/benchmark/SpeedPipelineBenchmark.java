@@ -0,0 +1,169 @@
+package kk.speeddisplay.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import kk.speeddisplay.core.SpeedEstimator;
+import kk.speeddisplay.core.SpeedFormatter;
+import kk.speeddisplay.core.SpeedProcessor;
+
+/**
+ * Benchmarks each stage of the path a location fix takes to the display:
+ * <p>
+ * onLocationResult -> SpeedEstimator -> sendToMain -> MySpeedBroadcastReceiver.onReceive ->
+ * Utilities.formatSpeed / formatUnits / spanSpeed
+ * <p>
+ * The Android classes cannot be run on the JVM, so the stages which use them are modelled:
+ * the preference lookup in formatUnits is a synchronized map lookup and string compare,
+ * as done by SharedPreferences, and the span construction is the string search and copy
+ * done by spanSpeed, without the Android span objects.
+ * <p>
+ * Run with the gc profiler so the bytes allocated per operation are reported.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SpeedPipelineBenchmark {
+
+    /* same format as R.string.speed_format */
+    private static final String SPEED_FORMAT = "%1$.1f";
+    private static final String KEY_UNITS = "Units";
+    private static final String UNITS_METRIC = "metric";
+
+    /* recorded speeds in metres/sec, cycled through so each call sees a different value */
+    private static final int SAMPLES = 1024;
+    private final float[] mSpeeds = new float[SAMPLES];
+    private int mIndex;
+
+    private SpeedProcessor mProcessor;
+    private SpeedFormatter mFormatter;
+    private SpeedEstimator mEstimator;
+    private long mElapsedNanos;
+    private double mLatitude;
+
+    /* stands in for the shared preferences */
+    private final Map<String, Object> mPrefs = new HashMap<>();
+
+    private String mFormattedSpeed;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        for (int i = 0; i < SAMPLES; i++) {
+            // 0 to 40 m/s, with repeats as a real drive has
+            mSpeeds[i] = (i / 3 % 400) * 0.1F;
+        }
+        mProcessor = new SpeedProcessor(new SpeedProcessor.Listener() {
+            @Override
+            public void onNewMaxSpeed(float maxSpeed) {
+            }
+
+            @Override
+            public void onSpeedChanged(float speed, float maxSpeed) {
+            }
+        });
+        mFormatter = new SpeedFormatter("km/h", "mph", true);
+        mEstimator = new SpeedEstimator();
+        mLatitude = -33.8;
+        mPrefs.put(KEY_UNITS, UNITS_METRIC);
+        mFormattedSpeed = String.format(Locale.UK, SPEED_FORMAT, 123.4F) + " km/h";
+    }
+
+    private float nextSpeed() {
+        mIndex = (mIndex + 1) & (SAMPLES - 1);
+        return mSpeeds[mIndex];
+    }
+
+    @Benchmark
+    public float convert() {
+        return SpeedProcessor.mpsToKph(nextSpeed());
+    }
+
+    /**
+     * Doppler and positional speeds blended for a fix moving north at the Doppler speed
+     */
+    @Benchmark
+    public float estimateSpeed() {
+        float speed = nextSpeed();
+        mElapsedNanos += 1000000000L;
+        mLatitude += speed / 111195.0;
+        if (mLatitude > -33.0) {
+            mLatitude = -33.8;
+        }
+        return mEstimator.estimate(mElapsedNanos, true, speed, 0.5F, 4.0F, mLatitude, 151.2);
+    }
+
+    @Benchmark
+    public boolean trackMax() {
+        int i = mIndex;
+        return mProcessor.process(i, nextSpeed(), 4.0F, -33.8, 151.2);
+    }
+
+    @Benchmark
+    public String formatSpeed() {
+        return String.format(Locale.UK, SPEED_FORMAT, SpeedProcessor.mpsToKph(nextSpeed()));
+    }
+
+    @Benchmark
+    public int formatSpeedCached() {
+        return mFormatter.format(SpeedProcessor.mpsToKph(nextSpeed()));
+    }
+
+    @Benchmark
+    public String formatUnitsCached() {
+        return mFormatter.getUnits();
+    }
+
+    @Benchmark
+    public String formatUnits() {
+        Object units;
+        synchronized (mPrefs) {
+            units = mPrefs.get(KEY_UNITS);
+        }
+        return UNITS_METRIC.equals(units) ? "km/h" : "mph";
+    }
+
+    @Benchmark
+    public void spanSpeed(Blackhole blackhole) {
+        String speed = mFormattedSpeed;
+        int start = speed.indexOf(' ');
+        blackhole.consume(start);
+        blackhole.consume(speed.substring(start));
+    }
+
+    /**
+     * The whole path for one fix: current and max speed are each formatted and given units,
+     * as done by the broadcast receiver
+     */
+    @Benchmark
+    public void receiveAndFormat(Blackhole blackhole) {
+        mProcessor.process(mIndex, nextSpeed(), 4.0F, -33.8, 151.2);
+        blackhole.consume(String.format(Locale.UK, SPEED_FORMAT, mProcessor.getSpeed()));
+        blackhole.consume(formatUnits());
+        blackhole.consume(String.format(Locale.UK, SPEED_FORMAT, mProcessor.getMaxSpeed()));
+        blackhole.consume(formatUnits());
+    }
+
+    /**
+     * The whole path for one fix using the cached formatter, as done by the broadcast receiver
+     */
+    @Benchmark
+    public void receiveAndFormatCached(Blackhole blackhole) {
+        mProcessor.process(mIndex, nextSpeed(), 4.0F, -33.8, 151.2);
+        blackhole.consume(mFormatter.format(mProcessor.getSpeed()));
+        blackhole.consume(mFormatter.getUnits());
+        blackhole.consume(mFormatter.format(mProcessor.getMaxSpeed()));
+        blackhole.consume(mFormatter.getUnits());
+    }
+}
@@ -0,0 +1,116 @@
+package kk.speeddisplay.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import kk.speeddisplay.core.AdaptiveRateScheduler;
+import kk.speeddisplay.core.SampleGate;
+import kk.speeddisplay.core.SpeedEstimator;
+import kk.speeddisplay.core.SpeedPipeline;
+import kk.speeddisplay.core.SpeedProcessor;
+import kk.speeddisplay.core.Trace;
+import kk.speeddisplay.core.TraceFix;
+import kk.speeddisplay.core.TraceReader;
+import kk.speeddisplay.core.TraceReaders;
+import kk.speeddisplay.core.TraceReplayer;
+import kk.speeddisplay.core.TripStatistics;
+
+/**
+ * Throughput of replaying a recorded trace through the whole speed pipeline,
+ * one operation replays or parses one fix.
+ * <p>
+ * The trace is an hour of driving at one fix a second. The replay is from the trace parsed
+ * into memory, as fast as possible, ten fixes to a location result, so it measures the
+ * pipeline: estimator, gate, rate scheduler, filter, processor and statistics.
+ * The parsing of the GPX and CSV text is measured separately.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TraceReplayBenchmark {
+
+    private static final int FIXES = 3600;
+
+    private String mCsv;
+    private String mGpx;
+    private Trace mTrace;
+    private SpeedPipeline mPipeline;
+    private final TraceFix mFix = new TraceFix();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Random random = new Random(1);
+        StringBuilder csv = new StringBuilder("time,latitude,longitude,speed,accuracy\n");
+        StringBuilder gpx = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<gpx version=\"1.0\"><trk><trkseg>\n");
+        double lat = -33.8688;
+        double lon = 151.2093;
+        for (int i = 0; i < FIXES; i++) {
+            float speed = (float) Math.max(0, 20.0 + 15.0 * Math.sin(i * 0.01) + random.nextGaussian() * 0.7);
+            double heading = i * 0.002;
+            lat += Math.cos(heading) * speed / 111320.0;
+            lon += Math.sin(heading) * speed / 92000.0;
+            long time = 1500000000000L + i * 1000L;
+            float accuracy = 3.0F + random.nextInt(40) * 0.1F;
+            csv.append(String.format(Locale.US, "%d,%.7f,%.7f,%.2f,%.1f\n", time, lat, lon, speed, accuracy));
+            gpx.append(String.format(Locale.US, "<trkpt lat=\"%.7f\" lon=\"%.7f\"><time>%tFT%<tTZ</time>"
+                    + "<speed>%.2f</speed><hdop>%.1f</hdop></trkpt>\n", lat, lon, time, speed, accuracy / 5));
+        }
+        gpx.append("</trkseg></trk></gpx>\n");
+        mCsv = csv.toString();
+        mGpx = gpx.toString();
+        mTrace = Trace.load(TraceReaders.create(new StringReader(mCsv), TraceReaders.CSV));
+
+        SpeedProcessor processor = new SpeedProcessor(new SpeedProcessor.Listener() {
+            @Override
+            public void onNewMaxSpeed(float maxSpeed) {
+            }
+
+            @Override
+            public void onSpeedChanged(float speed, float maxSpeed) {
+            }
+        });
+        processor.setStatistics(new TripStatistics());
+        mPipeline = new SpeedPipeline(processor, new SpeedEstimator(), new SampleGate(),
+                new AdaptiveRateScheduler(1000L, 10000L));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FIXES)
+    public long replayTrace() throws IOException, InterruptedException {
+        return new TraceReplayer(mTrace.newReader(), TraceReplayer.AS_FAST_AS_POSSIBLE).run(mPipeline, 10);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FIXES)
+    public long parseCsv() throws IOException {
+        return parse(TraceReaders.create(new StringReader(mCsv), TraceReaders.CSV));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FIXES)
+    public long parseGpx() throws IOException {
+        return parse(TraceReaders.create(new StringReader(mGpx), TraceReaders.GPX));
+    }
+
+    private long parse(TraceReader reader) throws IOException {
+        long sum = 0;
+        while (reader.next(mFix)) {
+            sum += mFix.getTime();
+        }
+        return sum;
+    }
+}
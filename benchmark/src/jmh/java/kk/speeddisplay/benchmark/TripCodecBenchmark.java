@@ -0,0 +1,138 @@
+package kk.speeddisplay.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import kk.speeddisplay.core.TripDecoder;
+import kk.speeddisplay.core.TripEncoder;
+
+/**
+ * Throughput of the compressed trip format, one operation encodes or decodes one sample.
+ * <p>
+ * The trip is an hour of driving at one fix a second, held in memory,
+ * so the decode measures the decoder and not the storage. decodeTrip reads every field
+ * of each sample through the getters, decodeTripBlocks reads every field a block at a time
+ * into arrays, and stepTrip only steps through the samples without reading them, so it measures
+ * the block decoding alone. Seek does not decode the blocks it passes, so none of these measure it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TripCodecBenchmark {
+
+    private static final int SAMPLES = 3600;
+
+    private final long[] mTimes = new long[SAMPLES];
+    private final double[] mLatitudes = new double[SAMPLES];
+    private final double[] mLongitudes = new double[SAMPLES];
+    private final float[] mSpeeds = new float[SAMPLES];
+    private final float[] mAccuracies = new float[SAMPLES];
+
+    /* a block of samples read by decodeTripBlocks */
+    private final long[] mBlockTimes = new long[TripDecoder.MAX_BLOCK_SAMPLES];
+    private final double[] mBlockLatitudes = new double[TripDecoder.MAX_BLOCK_SAMPLES];
+    private final double[] mBlockLongitudes = new double[TripDecoder.MAX_BLOCK_SAMPLES];
+    private final float[] mBlockSpeeds = new float[TripDecoder.MAX_BLOCK_SAMPLES];
+    private final float[] mBlockAccuracies = new float[TripDecoder.MAX_BLOCK_SAMPLES];
+
+    private byte[] mEncoded;
+    private final ByteArrayOutputStream mOut = new ByteArrayOutputStream(SAMPLES * 16);
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Random random = new Random(1);
+        double lat = -33.8688;
+        double lon = 151.2093;
+        for (int i = 0; i < SAMPLES; i++) {
+            float speed = (float) (20.0 + 10.0 * Math.sin(i * 0.05) + random.nextGaussian() * 0.7);
+            double heading = i * 0.002;
+            lat += Math.cos(heading) * speed / 111320.0;
+            lon += Math.sin(heading) * speed / 92000.0;
+            mTimes[i] = 1500000000000L + i * 1000L + random.nextInt(20);
+            mLatitudes[i] = lat;
+            mLongitudes[i] = lon;
+            mSpeeds[i] = speed;
+            mAccuracies[i] = 3.0F + random.nextInt(40) * 0.1F;
+        }
+        mEncoded = encode();
+    }
+
+    private byte[] encode() throws IOException {
+        mOut.reset();
+        TripEncoder encoder = new TripEncoder(mOut);
+        for (int i = 0; i < SAMPLES; i++) {
+            encoder.append(mTimes[i], mLatitudes[i], mLongitudes[i], mSpeeds[i], mAccuracies[i]);
+        }
+        encoder.finish();
+        return mOut.toByteArray();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public int encodeTrip() throws IOException {
+        return encode().length;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public double decodeTrip() throws IOException {
+        TripDecoder decoder = new TripDecoder(new ByteArrayInputStream(mEncoded));
+        // separate sums so the additions do not wait on each other
+        long time = 0;
+        double position = 0;
+        float speed = 0;
+        float accuracy = 0;
+        while (decoder.next()) {
+            time += decoder.getTime();
+            position += decoder.getLatitude() - decoder.getLongitude();
+            speed += decoder.getSpeed();
+            accuracy += decoder.getAccuracy();
+        }
+        return time + position + speed + accuracy;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public double decodeTripBlocks() throws IOException {
+        TripDecoder decoder = new TripDecoder(new ByteArrayInputStream(mEncoded));
+        long time = 0;
+        double position = 0;
+        float speed = 0;
+        float accuracy = 0;
+        int count;
+        while ((count = decoder.nextBlock(mBlockTimes, mBlockLatitudes, mBlockLongitudes, mBlockSpeeds,
+                mBlockAccuracies)) > 0) {
+            for (int i = 0; i < count; i++) {
+                time += mBlockTimes[i];
+                position += mBlockLatitudes[i] - mBlockLongitudes[i];
+                speed += mBlockSpeeds[i];
+                accuracy += mBlockAccuracies[i];
+            }
+        }
+        return time + position + speed + accuracy;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public int stepTrip() throws IOException {
+        TripDecoder decoder = new TripDecoder(new ByteArrayInputStream(mEncoded));
+        int count = 0;
+        while (decoder.next()) {
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,194 @@
+package kk.speeddisplay.core;
+
+/**
+ * Chooses the location update interval and accuracy from the recent motion.
+ * <p>
+ * From each sample it tracks a smoothed acceleration and the variance of the speed,
+ * and classifies the motion as:
+ * <ul>
+ * <li>accelerating, or speed varying, uses the fastest interval so the display keeps up,</li>
+ * <li>cruising at a steady speed, uses a relaxed interval,</li>
+ * <li>stationary, uses the longest interval with balanced power accuracy.</li>
+ * </ul>
+ * The relaxed intervals are multiples of the fastest interval, so they are always within the
+ * bounds set by the user, the fastest and slowest intervals. The state only leaves
+ * accelerating once the motion has been steady for a hold time, so the rate does not flap.
+ * <p>
+ * Also estimates the number of fixes requested, compared to always using the fastest interval,
+ * so the reduction in GPS duty cycle can be measured.
+ * Not thread safe, all calls must be made from the same thread.
+ */
+public class AdaptiveRateScheduler {
+
+    public static final int STATE_ACCELERATING = 0;
+    public static final int STATE_CRUISING = 1;
+    public static final int STATE_STATIONARY = 2;
+
+    public static final int PRIORITY_HIGH_ACCURACY = 0;
+    public static final int PRIORITY_BALANCED_POWER = 1;
+
+    /* relaxed intervals as multiples of the fastest interval, limited by the slowest interval */
+    static final int CRUISE_MULTIPLIER = 2;
+    static final int STATIONARY_MULTIPLIER = 5;
+
+    /* thresholds in metres/sec and metres/sec/sec */
+    static final float STATIONARY_SPEED = 0.5F;
+    static final float ACCELERATION_THRESHOLD = 0.5F;
+    static final float SPEED_DEVIATION_THRESHOLD = 1.5F;
+
+    /* weight of the latest sample in the smoothed values */
+    static final float SMOOTHING = 0.3F;
+
+    /* time motion must be steady before leaving the accelerating state */
+    static final long HOLD_MILLIS = 10000L;
+
+    private long mFastestInterval;
+    private long mSlowestInterval;
+
+    private int mState = STATE_ACCELERATING;
+    private long mLastAccelerationTime;
+
+    /* last sample */
+    private boolean mHasSample;
+    private long mLastTime;
+    private float mLastSpeed;
+
+    /* smoothed values */
+    private float mAcceleration;
+    private float mMeanSpeed;
+    private float mSpeedVariance;
+
+    /* fixes requested, and fixes if the fastest interval had always been used */
+    private double mFixes;
+    private double mFastestFixes;
+
+    /**
+     * @param fastestInterval fastest update interval in milliseconds, used while accelerating
+     * @param slowestInterval slowest update interval in milliseconds, used while stationary
+     */
+    public AdaptiveRateScheduler(long fastestInterval, long slowestInterval) {
+        setBounds(fastestInterval, slowestInterval);
+    }
+
+    /**
+     * Sets the user's bounds for the interval, the slowest is raised to the fastest if less
+     *
+     * @param fastestInterval fastest update interval in milliseconds
+     * @param slowestInterval slowest update interval in milliseconds
+     */
+    public void setBounds(long fastestInterval, long slowestInterval) {
+        mFastestInterval = fastestInterval;
+        mSlowestInterval = Math.max(fastestInterval, slowestInterval);
+    }
+
+    /**
+     * Updates the motion state with a new sample
+     *
+     * @param time  time of the sample in milliseconds
+     * @param speed speed in metres/sec
+     * @return true if the interval or priority has changed and the location request should be updated
+     */
+    public boolean update(long time, float speed) {
+        long interval = getInterval();
+        int priority = getPriority();
+
+        if (!mHasSample) {
+            mHasSample = true;
+            mMeanSpeed = speed;
+            mLastAccelerationTime = time;
+        } else if (time > mLastTime) {
+            long elapsed = time - mLastTime;
+            float acceleration = (speed - mLastSpeed) * 1000F / elapsed;
+            mAcceleration += SMOOTHING * (acceleration - mAcceleration);
+
+            float deviation = speed - mMeanSpeed;
+            mMeanSpeed += SMOOTHING * deviation;
+            mSpeedVariance = (1 - SMOOTHING) * (mSpeedVariance + SMOOTHING * deviation * deviation);
+
+            mFixes += (double) elapsed / interval;
+            mFastestFixes += (double) elapsed / mFastestInterval;
+        }
+        mLastTime = time;
+        mLastSpeed = speed;
+
+        mState = classify(time);
+        return interval != getInterval() || priority != getPriority();
+    }
+
+    /**
+     * Returns to the accelerating state, with the fastest interval and high accuracy,
+     * used when the fixes have been rejected and cannot be relied on to show the motion,
+     * such as balanced power fixes once parked, which are not accurate enough to show driving off
+     *
+     * @param time current time in milliseconds
+     * @return true if the interval or priority has changed and the location request should be updated
+     */
+    public boolean wake(long time) {
+        mLastAccelerationTime = time;
+        if (mState == STATE_ACCELERATING) {
+            return false;
+        }
+        long interval = getInterval();
+        int priority = getPriority();
+        mState = STATE_ACCELERATING;
+        return interval != getInterval() || priority != getPriority();
+    }
+
+    private int classify(long time) {
+        boolean varying = Math.abs(mAcceleration) > ACCELERATION_THRESHOLD
+                || mSpeedVariance > SPEED_DEVIATION_THRESHOLD * SPEED_DEVIATION_THRESHOLD;
+        if (varying) {
+            mLastAccelerationTime = time;
+            return STATE_ACCELERATING;
+        }
+        if (mState == STATE_ACCELERATING && time - mLastAccelerationTime < HOLD_MILLIS) {
+            return STATE_ACCELERATING;
+        }
+        if (mMeanSpeed < STATIONARY_SPEED && mLastSpeed < STATIONARY_SPEED) {
+            return STATE_STATIONARY;
+        }
+        return STATE_CRUISING;
+    }
+
+    /**
+     * @return motion state, one of the STATE_ constants
+     */
+    public int getState() {
+        return mState;
+    }
+
+    /**
+     * @return location update interval in milliseconds for the current motion
+     */
+    public long getInterval() {
+        switch (mState) {
+            case STATE_CRUISING:
+                return Math.min(mFastestInterval * CRUISE_MULTIPLIER, mSlowestInterval);
+            case STATE_STATIONARY:
+                return Math.min(mFastestInterval * STATIONARY_MULTIPLIER, mSlowestInterval);
+            default:
+                return mFastestInterval;
+        }
+    }
+
+    /**
+     * @return location accuracy for the current motion, one of the PRIORITY_ constants
+     */
+    public int getPriority() {
+        return mState == STATE_STATIONARY ? PRIORITY_BALANCED_POWER : PRIORITY_HIGH_ACCURACY;
+    }
+
+    /**
+     * @return estimated number of fixes requested so far
+     */
+    public double getFixCount() {
+        return mFixes;
+    }
+
+    /**
+     * @return fraction of the fixes saved compared to always using the fastest interval
+     */
+    public double getDutyCycleSaving() {
+        return mFastestFixes == 0 ? 0 : 1 - mFixes / mFastestFixes;
+    }
+}
@@ -0,0 +1,121 @@
+package kk.speeddisplay.core;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Locale;
+
+/**
+ * Reads a trace from comma separated values, one fix per line, with a header line
+ * naming the columns, in any order:
+ * <ul>
+ * <li>time, milliseconds since the epoch or an ISO 8601 time, required,</li>
+ * <li>latitude or lat, and longitude, lon or lng, in degrees, required,</li>
+ * <li>speed, the Doppler speed in metres/sec,</li>
+ * <li>accuracy, the horizontal accuracy in metres,</li>
+ * <li>speed_accuracy, the accuracy of the speed in metres/sec.</li>
+ * </ul>
+ * Other columns are ignored, as are blank lines and lines starting with #.
+ * An empty optional value is taken as not known.
+ */
+class CsvTraceReader implements TraceReader {
+
+    private final BufferedReader mReader;
+    private int mLine;
+
+    /* index of each column, -1 if the trace does not have it */
+    private int mTimeColumn = -1;
+    private int mLatitudeColumn = -1;
+    private int mLongitudeColumn = -1;
+    private int mSpeedColumn = -1;
+    private int mAccuracyColumn = -1;
+    private int mSpeedAccuracyColumn = -1;
+    private boolean mHasHeader;
+
+    CsvTraceReader(Reader reader) {
+        mReader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+    }
+
+    @Override
+    public boolean next(TraceFix fix) throws IOException {
+        String line;
+        while ((line = mReader.readLine()) != null) {
+            mLine++;
+            line = line.trim();
+            if (line.isEmpty() || line.charAt(0) == '#') {
+                continue;
+            }
+            String[] values = line.split(",", -1);
+            if (!mHasHeader) {
+                readHeader(values);
+                continue;
+            }
+            try {
+                fix.set(parseTime(value(values, mTimeColumn)),
+                        Double.parseDouble(value(values, mLatitudeColumn)),
+                        Double.parseDouble(value(values, mLongitudeColumn)));
+                if (has(values, mSpeedColumn)) {
+                    fix.setSpeed(Float.parseFloat(value(values, mSpeedColumn)));
+                }
+                if (has(values, mAccuracyColumn)) {
+                    fix.setAccuracy(Float.parseFloat(value(values, mAccuracyColumn)));
+                }
+                if (has(values, mSpeedAccuracyColumn)) {
+                    fix.setSpeedAccuracy(Float.parseFloat(value(values, mSpeedAccuracyColumn)));
+                }
+            } catch (NumberFormatException e) {
+                throw new IOException("bad value on line " + mLine + ": " + line);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private void readHeader(String[] names) throws IOException {
+        for (int i = 0; i < names.length; i++) {
+            String name = names[i].trim().toLowerCase(Locale.US);
+            if (name.equals("time") || name.equals("timestamp")) {
+                mTimeColumn = i;
+            } else if (name.equals("latitude") || name.equals("lat")) {
+                mLatitudeColumn = i;
+            } else if (name.equals("longitude") || name.equals("lon") || name.equals("lng")) {
+                mLongitudeColumn = i;
+            } else if (name.equals("speed")) {
+                mSpeedColumn = i;
+            } else if (name.equals("accuracy")) {
+                mAccuracyColumn = i;
+            } else if (name.equals("speed_accuracy")) {
+                mSpeedAccuracyColumn = i;
+            }
+        }
+        if (mTimeColumn < 0 || mLatitudeColumn < 0 || mLongitudeColumn < 0) {
+            throw new IOException("header on line " + mLine + " needs time, latitude and longitude columns");
+        }
+        mHasHeader = true;
+    }
+
+    private String value(String[] values, int column) throws IOException {
+        if (column >= values.length) {
+            throw new IOException("missing value on line " + mLine);
+        }
+        return values[column].trim();
+    }
+
+    private static boolean has(String[] values, int column) {
+        return column >= 0 && column < values.length && !values[column].trim().isEmpty();
+    }
+
+    private static long parseTime(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            if (!Character.isDigit(text.charAt(i))) {
+                return TraceReaders.parseTime(text);
+            }
+        }
+        return Long.parseLong(text);
+    }
+
+    @Override
+    public void close() throws IOException {
+        mReader.close();
+    }
+}
@@ -0,0 +1,45 @@
+package kk.speeddisplay.core;
+
+/**
+ * Exponential moving average of the speed.
+ * <p>
+ * The weight of each sample depends on the time since the previous sample, so the
+ * smoothing is the same whatever the location update rate.
+ */
+public class EmaSpeedFilter implements SpeedFilter {
+
+    /* time constant in milliseconds */
+    static final long DEFAULT_TIME_CONSTANT = 1000L;
+
+    private final float mTimeConstant;
+
+    private boolean mHasSample;
+    private long mLastTime;
+    private float mSpeed;
+
+    /**
+     * @param timeConstant time in milliseconds for the average to move most of the way to a new speed
+     */
+    public EmaSpeedFilter(long timeConstant) {
+        mTimeConstant = timeConstant;
+    }
+
+    @Override
+    public float filter(long time, float speedMps) {
+        if (!mHasSample) {
+            mHasSample = true;
+            mSpeed = speedMps;
+        } else if (time > mLastTime) {
+            float elapsed = time - mLastTime;
+            float alpha = elapsed / (mTimeConstant + elapsed);
+            mSpeed += alpha * (speedMps - mSpeed);
+        }
+        mLastTime = time;
+        return mSpeed;
+    }
+
+    @Override
+    public void reset() {
+        mHasSample = false;
+    }
+}
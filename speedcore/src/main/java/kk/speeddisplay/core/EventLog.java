@@ -0,0 +1,242 @@
+package kk.speeddisplay.core;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Binary event log held in memory, in a ring buffer of fixed size, so the latest events
+ * can be dumped after a problem in the field, without building a log string for each event.
+ * <p>
+ * Each event is its id, the System.nanoTime() it was logged at, and up to two primitive
+ * arguments, written into slots allocated when the log is created. The events are defined
+ * once, with a name and the type of each argument, and only turned into text when dumped.
+ * When the buffer is full the oldest events are overwritten.
+ * Logging takes constant time and does not allocate, and can be switched off at runtime,
+ * when it returns straight away.
+ * <p>
+ * Any thread can log. A slot is claimed with an atomic counter, and its sequence number is
+ * written last, so the dump skips an event overwritten or still being written while it reads.
+ */
+public class EventLog {
+
+    /* types of the arguments of an event */
+    public static final int ARG_NONE = 0;
+    public static final int ARG_LONG = 1;
+    public static final int ARG_FLOAT = 2;
+    public static final int ARG_DOUBLE = 3;
+    public static final int ARG_BOOLEAN = 4;
+
+    /* highest event id plus one */
+    public static final int MAX_EVENTS = 256;
+
+    /* words of a slot: sequence number plus one, 0 while being written, time, id, arguments */
+    private static final int SEQUENCE = 0;
+    private static final int TIME = 1;
+    private static final int ID = 2;
+    private static final int ARG0 = 3;
+    private static final int ARG1 = 4;
+    private static final int WORDS = 5;
+
+    private final int mCapacity;
+    private final AtomicLongArray mSlots;
+    private final AtomicLong mNext = new AtomicLong();
+    private volatile boolean mEnabled = true;
+
+    private final String[] mNames = new String[MAX_EVENTS];
+    private final int[] mArg0Types = new int[MAX_EVENTS];
+    private final int[] mArg1Types = new int[MAX_EVENTS];
+
+    /**
+     * @param capacity number of events held, the oldest are overwritten by new events
+     */
+    public EventLog(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        mCapacity = capacity;
+        mSlots = new AtomicLongArray(capacity * WORDS);
+    }
+
+    /**
+     * Defines an event, before it is logged
+     *
+     * @param id       event id, from 0 to MAX_EVENTS - 1
+     * @param name     name of the event in the dump
+     * @param arg0Type type of the first argument, one of the ARG constants
+     * @param arg1Type type of the second argument, one of the ARG constants
+     */
+    public void define(int id, String name, int arg0Type, int arg1Type) {
+        mNames[id] = name;
+        mArg0Types[id] = arg0Type;
+        mArg1Types[id] = arg1Type;
+    }
+
+    /**
+     * @param enabled false to stop logging, the events already logged are kept
+     */
+    public void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    /**
+     * @return true if events are being logged
+     */
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /* log an event, with arguments of the types it was defined with, floats and doubles
+     * are held as their raw bits, there is an overload for each pair of types used,
+     * so a long is never widened to a float */
+
+    public void log(int id) {
+        if (mEnabled) {
+            write(id, 0, 0);
+        }
+    }
+
+    public void log(int id, long arg0) {
+        if (mEnabled) {
+            write(id, arg0, 0);
+        }
+    }
+
+    public void log(int id, long arg0, long arg1) {
+        if (mEnabled) {
+            write(id, arg0, arg1);
+        }
+    }
+
+    public void log(int id, float arg0) {
+        if (mEnabled) {
+            write(id, Float.floatToRawIntBits(arg0), 0);
+        }
+    }
+
+    public void log(int id, float arg0, float arg1) {
+        if (mEnabled) {
+            write(id, Float.floatToRawIntBits(arg0), Float.floatToRawIntBits(arg1));
+        }
+    }
+
+    public void log(int id, long arg0, float arg1) {
+        if (mEnabled) {
+            write(id, arg0, Float.floatToRawIntBits(arg1));
+        }
+    }
+
+    public void log(int id, float arg0, long arg1) {
+        if (mEnabled) {
+            write(id, Float.floatToRawIntBits(arg0), arg1);
+        }
+    }
+
+    public void log(int id, long arg0, boolean arg1) {
+        if (mEnabled) {
+            write(id, arg0, arg1 ? 1 : 0);
+        }
+    }
+
+    public void log(int id, double arg0) {
+        if (mEnabled) {
+            write(id, Double.doubleToRawLongBits(arg0), 0);
+        }
+    }
+
+    public void log(int id, boolean arg0) {
+        if (mEnabled) {
+            write(id, arg0 ? 1 : 0, 0);
+        }
+    }
+
+    private void write(int id, long arg0, long arg1) {
+        long sequence = mNext.getAndIncrement();
+        int base = (int) (sequence % mCapacity) * WORDS;
+        mSlots.lazySet(base + SEQUENCE, 0);
+        mSlots.lazySet(base + TIME, System.nanoTime());
+        mSlots.lazySet(base + ID, id);
+        mSlots.lazySet(base + ARG0, arg0);
+        mSlots.lazySet(base + ARG1, arg1);
+        // written last, and volatile, so a reader that sees it sees the event
+        mSlots.set(base + SEQUENCE, sequence + 1);
+    }
+
+    /**
+     * @return number of events logged, including those overwritten
+     */
+    public long getCount() {
+        return mNext.get();
+    }
+
+    /**
+     * Writes the events held as text, oldest first, one a line, with the time of each in UTC,
+     * its name and its arguments
+     *
+     * @param out          output to be written to
+     * @param maxAgeMillis only the events logged within this time of now are written,
+     *                     0 for all the events held
+     * @throws IOException if the output cannot be written
+     */
+    public void dump(Appendable out, long maxAgeMillis) throws IOException {
+        long nowNanos = System.nanoTime();
+        long nowMillis = System.currentTimeMillis();
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        Date date = new Date();
+
+        long end = mNext.get();
+        long start = Math.max(0, end - mCapacity);
+        for (long sequence = start; sequence < end; sequence++) {
+            int base = (int) (sequence % mCapacity) * WORDS;
+            if (mSlots.get(base + SEQUENCE) != sequence + 1) {
+                continue;
+            }
+            long time = mSlots.get(base + TIME);
+            int id = (int) mSlots.get(base + ID);
+            long arg0 = mSlots.get(base + ARG0);
+            long arg1 = mSlots.get(base + ARG1);
+            if (mSlots.get(base + SEQUENCE) != sequence + 1) {
+                // overwritten while it was read
+                continue;
+            }
+            long ageMillis = (nowNanos - time) / 1000000L;
+            if (maxAgeMillis > 0 && ageMillis > maxAgeMillis) {
+                continue;
+            }
+            date.setTime(nowMillis - ageMillis);
+            out.append(format.format(date)).append(' ');
+            if (id >= 0 && id < MAX_EVENTS && mNames[id] != null) {
+                out.append(mNames[id]);
+                appendArgument(out, mArg0Types[id], arg0);
+                appendArgument(out, mArg1Types[id], arg1);
+            } else {
+                out.append("event ").append(Integer.toString(id));
+            }
+            out.append('\n');
+        }
+    }
+
+    private static void appendArgument(Appendable out, int type, long value) throws IOException {
+        switch (type) {
+            case ARG_LONG:
+                out.append(' ').append(Long.toString(value));
+                break;
+            case ARG_FLOAT:
+                out.append(' ').append(Float.toString(Float.intBitsToFloat((int) value)));
+                break;
+            case ARG_DOUBLE:
+                out.append(' ').append(Double.toString(Double.longBitsToDouble(value)));
+                break;
+            case ARG_BOOLEAN:
+                out.append(' ').append(value != 0 ? "true" : "false");
+                break;
+            default:
+                break;
+        }
+    }
+}
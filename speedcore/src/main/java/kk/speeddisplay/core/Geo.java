@@ -0,0 +1,53 @@
+package kk.speeddisplay.core;
+
+/**
+ * Distance calculations between positions, using primitives so nothing is allocated.
+ */
+public final class Geo {
+
+    /* mean radius of the earth in metres */
+    public static final double EARTH_RADIUS = 6371008.8;
+
+    private Geo() {
+    }
+
+    /**
+     * Great circle distance between two positions, using the haversine formula
+     *
+     * @param latitude1  latitude of the first position in degrees
+     * @param longitude1 longitude of the first position in degrees
+     * @param latitude2  latitude of the second position in degrees
+     * @param longitude2 longitude of the second position in degrees
+     * @return distance in metres
+     */
+    public static double distance(double latitude1, double longitude1,
+                                  double latitude2, double longitude2) {
+        double phi1 = Math.toRadians(latitude1);
+        double phi2 = Math.toRadians(latitude2);
+        double sinDeltaPhi = Math.sin((phi2 - phi1) / 2);
+        double sinDeltaLambda = Math.sin(Math.toRadians(longitude2 - longitude1) / 2);
+        double a = sinDeltaPhi * sinDeltaPhi
+                + Math.cos(phi1) * Math.cos(phi2) * sinDeltaLambda * sinDeltaLambda;
+        return 2 * EARTH_RADIUS * Math.asin(Math.min(1.0, Math.sqrt(a)));
+    }
+
+    /**
+     * Distance between two nearby positions, using the equirectangular approximation,
+     * accurate to well under 0.1% for positions less than a few kilometres apart.
+     * The cosine of the latitude is passed in so it can be cached by the caller,
+     * as the latitude changes little between fixes, the distance then takes no trigonometry.
+     *
+     * @param latitude1   latitude of the first position in degrees
+     * @param longitude1  longitude of the first position in degrees
+     * @param latitude2   latitude of the second position in degrees
+     * @param longitude2  longitude of the second position in degrees
+     * @param cosLatitude cosine of a latitude near the positions
+     * @return distance in metres
+     */
+    public static double fastDistance(double latitude1, double longitude1,
+                                      double latitude2, double longitude2, double cosLatitude) {
+        double x = (longitude2 - longitude1) * cosLatitude;
+        double y = latitude2 - latitude1;
+        return Math.toRadians(Math.sqrt(x * x + y * y)) * EARTH_RADIUS;
+    }
+}
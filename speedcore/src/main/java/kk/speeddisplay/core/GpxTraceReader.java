@@ -0,0 +1,246 @@
+package kk.speeddisplay.core;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads a trace from the track points of a GPX file, GPX 1.0 or 1.1.
+ * <p>
+ * Each trkpt with a time is a fix, with its lat and lon attributes, and if present its
+ * speed in metres/sec, from the GPX 1.0 speed element or an extension element named speed,
+ * such as the Garmin TrackPointExtension, and its hdop for the accuracy.
+ * Track points without a time cannot be paced, so are skipped.
+ * <p>
+ * The file is scanned with a small streaming tag scanner rather than an XML parser,
+ * so it runs the same on Android and on the JVM, it only handles what a GPX file needs:
+ * elements, attributes, text, comments and processing instructions.
+ */
+class GpxTraceReader implements TraceReader {
+
+    private final Reader mReader;
+    /* characters read from the reader, read in blocks rather than one call per character */
+    private final char[] mBuffer = new char[8192];
+    private int mPosition;
+    private int mLimit;
+    private final StringBuilder mTag = new StringBuilder();
+    private final StringBuilder mText = new StringBuilder();
+
+    /* track point being read */
+    private boolean mInPoint;
+    private boolean mHasTime;
+    private long mTime;
+    private double mLatitude;
+    private double mLongitude;
+    private float mSpeed;
+    private float mHdop;
+
+    GpxTraceReader(Reader reader) {
+        mReader = reader;
+    }
+
+    @Override
+    public boolean next(TraceFix fix) throws IOException {
+        int c;
+        while ((c = read()) >= 0) {
+            if (c != '<') {
+                if (mInPoint) {
+                    mText.append((char) c);
+                }
+                continue;
+            }
+            readTag();
+            if (mTag.length() == 0 || mTag.charAt(0) == '!' || mTag.charAt(0) == '?') {
+                continue;
+            }
+            boolean closing = mTag.charAt(0) == '/';
+            boolean empty = mTag.charAt(mTag.length() - 1) == '/';
+            int nameStart = localNameStart(closing);
+            if (!closing) {
+                if (isName(nameStart, "trkpt")) {
+                    startPoint();
+                    if (empty) {
+                        //no time, so skipped
+                        mInPoint = false;
+                    }
+                }
+                mText.setLength(0);
+                continue;
+            }
+            if (!mInPoint) {
+                continue;
+            }
+            try {
+                if (isName(nameStart, "time")) {
+                    mTime = TraceReaders.parseTime(text());
+                    mHasTime = true;
+                } else if (isName(nameStart, "speed") && hasText()) {
+                    mSpeed = Float.parseFloat(text());
+                } else if (isName(nameStart, "hdop") && hasText()) {
+                    mHdop = Float.parseFloat(text());
+                }
+            } catch (NumberFormatException e) {
+                throw new IOException("bad value in <" + mTag + ">: " + text());
+            }
+            mText.setLength(0);
+            if (isName(nameStart, "trkpt")) {
+                mInPoint = false;
+                if (mHasTime) {
+                    fix.set(mTime, mLatitude, mLongitude);
+                    if (!Float.isNaN(mSpeed)) {
+                        fix.setSpeed(mSpeed);
+                    }
+                    if (mHdop > 0) {
+                        fix.setAccuracy(mHdop * TraceFix.HDOP_ACCURACY);
+                    }
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void startPoint() throws IOException {
+        mInPoint = true;
+        mHasTime = false;
+        mSpeed = Float.NaN;
+        mHdop = Float.NaN;
+        String latitude = attribute("lat");
+        String longitude = attribute("lon");
+        if (latitude == null || longitude == null) {
+            throw new IOException("trkpt without lat and lon: <" + mTag + ">");
+        }
+        try {
+            mLatitude = Double.parseDouble(latitude);
+            mLongitude = Double.parseDouble(longitude);
+        } catch (NumberFormatException e) {
+            throw new IOException("bad trkpt: <" + mTag + ">");
+        }
+    }
+
+    /**
+     * Reads the rest of a tag, up to its closing >, into mTag, comments are read whole
+     */
+    private void readTag() throws IOException {
+        mTag.setLength(0);
+        int c;
+        while ((c = read()) >= 0) {
+            if (c == '>' && !isOpenComment()) {
+                return;
+            }
+            mTag.append((char) c);
+        }
+        throw new IOException("unexpected end of GPX file in <" + mTag);
+    }
+
+    /**
+     * @return start in mTag of the name of the tag, after any namespace prefix
+     */
+    private int localNameStart(boolean closing) {
+        int start = closing ? 1 : 0;
+        for (int i = start; i < mTag.length(); i++) {
+            char c = mTag.charAt(i);
+            if (c == ':') {
+                start = i + 1;
+            } else if (c == '/' || Character.isWhitespace(c)) {
+                break;
+            }
+        }
+        return start;
+    }
+
+    /**
+     * @return true if the name of the tag in mTag, starting at start, is the name,
+     * compared in place so no string is made for each tag
+     */
+    private boolean isName(int start, String name) {
+        int end = start + name.length();
+        if (end > mTag.length()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (mTag.charAt(start + i) != name.charAt(i)) {
+                return false;
+            }
+        }
+        return end == mTag.length() || mTag.charAt(end) == '/' || Character.isWhitespace(mTag.charAt(end));
+    }
+
+    private boolean hasText() {
+        for (int i = 0; i < mText.length(); i++) {
+            if (!Character.isWhitespace(mText.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String text() {
+        return mText.toString().trim();
+    }
+
+    /**
+     * @return value of an attribute of the tag in mTag, null if it does not have it
+     */
+    private String attribute(String name) {
+        int i = 0;
+        int length = mTag.length();
+        // skip the tag name
+        while (i < length && !Character.isWhitespace(mTag.charAt(i))) {
+            i++;
+        }
+        while (i < length) {
+            while (i < length && Character.isWhitespace(mTag.charAt(i))) {
+                i++;
+            }
+            int nameStart = i;
+            while (i < length && mTag.charAt(i) != '=' && !Character.isWhitespace(mTag.charAt(i))) {
+                i++;
+            }
+            int nameEnd = i;
+            while (i < length && (mTag.charAt(i) == '=' || Character.isWhitespace(mTag.charAt(i)))) {
+                i++;
+            }
+            if (i >= length || (mTag.charAt(i) != '"' && mTag.charAt(i) != '\'')) {
+                return null;
+            }
+            char quote = mTag.charAt(i++);
+            int valueStart = i;
+            while (i < length && mTag.charAt(i) != quote) {
+                i++;
+            }
+            if (nameEnd - nameStart == name.length() && mTag.indexOf(name, nameStart) == nameStart) {
+                return mTag.substring(valueStart, i);
+            }
+            i++;
+        }
+        return null;
+    }
+
+    /**
+     * @return true if mTag is a comment not yet ended by --, a > within it does not end it
+     */
+    private boolean isOpenComment() {
+        int length = mTag.length();
+        if (length < 3 || mTag.charAt(0) != '!' || mTag.charAt(1) != '-' || mTag.charAt(2) != '-') {
+            return false;
+        }
+        return length < 5 || mTag.charAt(length - 1) != '-' || mTag.charAt(length - 2) != '-';
+    }
+
+    private int read() throws IOException {
+        if (mPosition == mLimit) {
+            mLimit = mReader.read(mBuffer, 0, mBuffer.length);
+            mPosition = 0;
+            if (mLimit <= 0) {
+                mLimit = 0;
+                return -1;
+            }
+        }
+        return mBuffer[mPosition++];
+    }
+
+    @Override
+    public void close() throws IOException {
+        mReader.close();
+    }
+}
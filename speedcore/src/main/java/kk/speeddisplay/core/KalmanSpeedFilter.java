@@ -0,0 +1,89 @@
+package kk.speeddisplay.core;
+
+/**
+ * Kalman filter with a constant acceleration model, the state is the speed and the acceleration,
+ * only the speed is measured.
+ * <p>
+ * The process noise is a random jerk, so the filter follows steady acceleration without lag,
+ * and the time step is taken from the samples. The 2x2 covariance is held in primitive fields.
+ */
+public class KalmanSpeedFilter implements SpeedFilter {
+
+    /* standard deviation of the measured speed in metres/sec */
+    static final float DEFAULT_MEASUREMENT_NOISE = 0.7F;
+    /* spectral density of the jerk in metres/sec/sec/sec */
+    static final float DEFAULT_JERK_NOISE = 0.5F;
+
+    private final double mMeasurementVariance;
+    private final double mJerkVariance;
+
+    private boolean mHasSample;
+    private long mLastTime;
+
+    /* state, speed and acceleration */
+    private double mSpeed;
+    private double mAcceleration;
+
+    /* state covariance, symmetric so p10 = p01 */
+    private double mP00;
+    private double mP01;
+    private double mP11;
+
+    /**
+     * @param measurementNoise standard deviation of the measured speed in metres/sec
+     * @param jerkNoise        spectral density of the jerk in metres/sec/sec/sec
+     */
+    public KalmanSpeedFilter(float measurementNoise, float jerkNoise) {
+        mMeasurementVariance = measurementNoise * measurementNoise;
+        mJerkVariance = jerkNoise * jerkNoise;
+    }
+
+    @Override
+    public float filter(long time, float speedMps) {
+        if (!mHasSample) {
+            mHasSample = true;
+            mLastTime = time;
+            mSpeed = speedMps;
+            mAcceleration = 0;
+            mP00 = mMeasurementVariance;
+            mP01 = 0;
+            mP11 = 1;
+            return speedMps;
+        }
+        double dt = Math.max(0, time - mLastTime) / 1000.0;
+        mLastTime = time;
+
+        //predict, x = F x, P = F P F' + Q
+        mSpeed += mAcceleration * dt;
+        double dt2 = dt * dt;
+        double p00 = mP00 + 2 * dt * mP01 + dt2 * mP11 + mJerkVariance * dt2 * dt / 3;
+        double p01 = mP01 + dt * mP11 + mJerkVariance * dt2 / 2;
+        double p11 = mP11 + mJerkVariance * dt;
+
+        //update with the measured speed
+        double innovation = speedMps - mSpeed;
+        double s = p00 + mMeasurementVariance;
+        double k0 = p00 / s;
+        double k1 = p01 / s;
+        mSpeed += k0 * innovation;
+        mAcceleration += k1 * innovation;
+        mP00 = (1 - k0) * p00;
+        mP01 = (1 - k0) * p01;
+        mP11 = p11 - k1 * p01;
+
+        //the estimate can overshoot below zero when stopping
+        return (float) Math.max(0, mSpeed);
+    }
+
+    @Override
+    public void reset() {
+        mHasSample = false;
+    }
+
+    /**
+     * @return estimated acceleration in metres/sec/sec
+     */
+    public float getAcceleration() {
+        return (float) mAcceleration;
+    }
+}
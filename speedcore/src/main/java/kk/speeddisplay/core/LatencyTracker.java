@@ -0,0 +1,78 @@
+package kk.speeddisplay.core;
+
+/**
+ * Streaming summary of the latency from each location fix to its callback, the mean, maximum,
+ * median and 95th percentile, so the location sources can be compared.
+ * <p>
+ * The percentiles are estimated with {@link P2Quantile} sketches, in constant memory,
+ * nothing is allocated per fix. Not thread safe.
+ */
+public class LatencyTracker {
+
+    private final P2Quantile mMedian = new P2Quantile(0.5);
+    private final P2Quantile mP95 = new P2Quantile(0.95);
+    private long mCount;
+    private long mTotalNanos;
+    private long mMaxNanos;
+
+    /**
+     * Adds the latency of a fix
+     *
+     * @param latencyNanos time from the fix to its callback in nanoseconds, a negative latency,
+     *                     from a fix timed on a different clock, is counted as 0
+     */
+    public void add(long latencyNanos) {
+        long latency = Math.max(0, latencyNanos);
+        mCount++;
+        mTotalNanos += latency;
+        mMaxNanos = Math.max(mMaxNanos, latency);
+        mMedian.add(latency);
+        mP95.add(latency);
+    }
+
+    /**
+     * Forgets all the latencies
+     */
+    public void reset() {
+        mCount = 0;
+        mTotalNanos = 0;
+        mMaxNanos = 0;
+        mMedian.reset();
+        mP95.reset();
+    }
+
+    /**
+     * @return number of fixes
+     */
+    public long getCount() {
+        return mCount;
+    }
+
+    /**
+     * @return mean latency in milliseconds
+     */
+    public double getMeanMillis() {
+        return mCount == 0 ? 0 : mTotalNanos / 1e6 / mCount;
+    }
+
+    /**
+     * @return highest latency in milliseconds
+     */
+    public double getMaxMillis() {
+        return mMaxNanos / 1e6;
+    }
+
+    /**
+     * @return estimated median latency in milliseconds
+     */
+    public double getMedianMillis() {
+        return mMedian.getQuantile() / 1e6;
+    }
+
+    /**
+     * @return estimated 95th percentile of the latencies in milliseconds
+     */
+    public double getP95Millis() {
+        return mP95.getQuantile() / 1e6;
+    }
+}
@@ -0,0 +1,86 @@
+package kk.speeddisplay.core;
+
+import java.util.Arrays;
+
+/**
+ * A batch of location samples held as primitive arrays, one array per field,
+ * so a batch delivered by the location provider can be processed in one pass.
+ * <p>
+ * The arrays only grow, so once the batch has reached the size of the largest batch
+ * delivered, refilling it does not allocate. Not thread safe.
+ */
+public class LocationBatch {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] mTimes = new long[INITIAL_CAPACITY];
+    private float[] mSpeeds = new float[INITIAL_CAPACITY];
+    private float[] mAccuracies = new float[INITIAL_CAPACITY];
+    private double[] mLatitudes = new double[INITIAL_CAPACITY];
+    private double[] mLongitudes = new double[INITIAL_CAPACITY];
+    private int mSize;
+
+    /**
+     * Empties the batch, keeps the arrays
+     */
+    public void clear() {
+        mSize = 0;
+    }
+
+    /**
+     * Adds a sample to the end of the batch
+     *
+     * @param time      time of the sample in milliseconds
+     * @param speedMps  speed in metres/sec
+     * @param accuracy  horizontal accuracy in metres
+     * @param latitude  latitude in degrees
+     * @param longitude longitude in degrees
+     */
+    public void add(long time, float speedMps, float accuracy, double latitude, double longitude) {
+        if (mSize == mTimes.length) {
+            grow();
+        }
+        mTimes[mSize] = time;
+        mSpeeds[mSize] = speedMps;
+        mAccuracies[mSize] = accuracy;
+        mLatitudes[mSize] = latitude;
+        mLongitudes[mSize] = longitude;
+        mSize++;
+    }
+
+    private void grow() {
+        int capacity = mTimes.length * 2;
+        mTimes = Arrays.copyOf(mTimes, capacity);
+        mSpeeds = Arrays.copyOf(mSpeeds, capacity);
+        mAccuracies = Arrays.copyOf(mAccuracies, capacity);
+        mLatitudes = Arrays.copyOf(mLatitudes, capacity);
+        mLongitudes = Arrays.copyOf(mLongitudes, capacity);
+    }
+
+    /**
+     * @return number of samples in the batch
+     */
+    public int size() {
+        return mSize;
+    }
+
+    public long getTime(int index) {
+        return mTimes[index];
+    }
+
+    public float getSpeed(int index) {
+        return mSpeeds[index];
+    }
+
+    public float getAccuracy(int index) {
+        return mAccuracies[index];
+    }
+
+    public double getLatitude(int index) {
+        return mLatitudes[index];
+    }
+
+    public double getLongitude(int index) {
+        return mLongitudes[index];
+    }
+}
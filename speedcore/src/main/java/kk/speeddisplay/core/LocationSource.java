@@ -0,0 +1,93 @@
+package kk.speeddisplay.core;
+
+/**
+ * A source of location fixes for the speed service, such as the fused location provider,
+ * the GPS receiver, a trace being replayed, or a fake in the tests.
+ * <p>
+ * The fixes are given to the listener as primitives, a location result at a time,
+ * so the service handles them the same way whichever source is used,
+ * and each fix carries its time on the elapsed realtime clock, so the latency from
+ * the fix to the callback can be measured and the sources compared.
+ * All calls, and the callbacks, are made on the service's handler thread.
+ */
+public interface LocationSource {
+
+    /**
+     * Receives the fixes from the source
+     */
+    interface Listener {
+        /**
+         * Called before the fixes of a location result
+         */
+        void onLocationResultStart();
+
+        /**
+         * Called for each fix of a location result, in time order
+         *
+         * @param elapsedNanos  time of the fix in nanoseconds since boot, monotonic
+         * @param time          time of the fix in milliseconds since the epoch
+         * @param hasSpeed      true if the fix has a Doppler speed
+         * @param speedMps      Doppler speed in metres/sec
+         * @param speedAccuracy accuracy of the Doppler speed in metres/sec, NaN if not known
+         * @param accuracy      horizontal accuracy in metres
+         * @param latitude      latitude in degrees
+         * @param longitude     longitude in degrees
+         */
+        void onFix(long elapsedNanos, long time, boolean hasSpeed, float speedMps, float speedAccuracy,
+                   float accuracy, double latitude, double longitude);
+
+        /**
+         * Called after the fixes of a location result
+         */
+        void onLocationResultEnd();
+
+        /**
+         * Called with the last fix the source had before the updates were requested,
+         * after {@link #requestLastFix}, it may be old, or arrive after the first live fix
+         *
+         * @param elapsedNanos time of the fix in nanoseconds since boot, monotonic
+         * @param time         time of the fix in milliseconds since the epoch
+         * @param hasSpeed     true if the fix has a Doppler speed
+         * @param speedMps     Doppler speed in metres/sec
+         * @param accuracy     horizontal accuracy in metres
+         */
+        void onLastFix(long elapsedNanos, long time, boolean hasSpeed, float speedMps, float accuracy);
+    }
+
+    /**
+     * @param listener receives the fixes
+     */
+    void setListener(Listener listener);
+
+    /**
+     * Starts the updates, or changes the rate of the updates already started
+     *
+     * @param intervalMillis time between fixes in milliseconds
+     * @param priority       one of the AdaptiveRateScheduler priorities, a source may ignore it
+     * @param maxWaitMillis  longest time fixes may be held to be delivered together,
+     *                       0 to deliver each fix as soon as it is available
+     */
+    void requestUpdates(long intervalMillis, int priority, long maxWaitMillis);
+
+    /**
+     * Asks for the last fix the source has, which is given to {@link Listener#onLastFix},
+     * nothing is given if the source has none
+     */
+    void requestLastFix();
+
+    /**
+     * Stops the updates
+     */
+    void removeUpdates();
+
+    /**
+     * Delivers any fixes being held straight away
+     */
+    void flush();
+
+    /**
+     * @return true if the fixes are live, as they happen, false if they are replayed,
+     * replayed fixes are not recorded to the trips and their latency is not measured
+     */
+    boolean isLive();
+}
@@ -0,0 +1,153 @@
+package kk.speeddisplay.core;
+
+/**
+ * Write-behind store for the maximum speed.
+ * <p>
+ * Keeps the latest maximum speed in memory and coalesces updates, so that during
+ * a hard acceleration, when there is a new maximum on nearly every fix,
+ * the maximum is written to storage at most once per flush interval.
+ * The first new maximum after a quiet period is written straight away,
+ * later ones are held until the interval has passed, or until {@link #flush} is called,
+ * which the owner should do when the peak has passed, on shutdown and on low memory.
+ * <p>
+ * The time passed in can be from any clock, as long as it is the same clock for all calls.
+ * Not thread safe, all calls must be made from the same thread.
+ */
+public class MaxSpeedStore {
+
+    /**
+     * Writes the maximum speed to storage
+     */
+    public interface Writer {
+        /**
+         * @param maxSpeed maximum speed to be saved
+         */
+        void write(float maxSpeed);
+    }
+
+    private final Writer mWriter;
+    private final long mFlushIntervalMillis;
+
+    private float mMaxSpeed;
+    private boolean mDirty;
+    private boolean mWritten;
+    private long mLastWriteTime;
+
+    /* statistics */
+    private long mUpdateCount;
+    private long mWriteCount;
+
+    /**
+     * @param writer              writes the maximum speed to storage
+     * @param flushIntervalMillis minimum time between writes of coalesced updates
+     * @param savedMaxSpeed       maximum speed already in storage
+     */
+    public MaxSpeedStore(Writer writer, long flushIntervalMillis, float savedMaxSpeed) {
+        mWriter = writer;
+        mFlushIntervalMillis = flushIntervalMillis;
+        mMaxSpeed = savedMaxSpeed;
+    }
+
+    /**
+     * Records a new maximum speed, writes it if the flush interval has passed since the last write
+     *
+     * @param maxSpeed new maximum speed
+     * @param now      current time in milliseconds
+     * @return true if written, false if held until the next flush
+     */
+    public boolean update(float maxSpeed, long now) {
+        mUpdateCount++;
+        mMaxSpeed = maxSpeed;
+        mDirty = true;
+        return flushIfDue(now);
+    }
+
+    /**
+     * Sets the maximum speed and writes it straight away, used when the user resets the maximum
+     *
+     * @param maxSpeed maximum speed
+     * @param now      current time in milliseconds
+     */
+    public void set(float maxSpeed, long now) {
+        mUpdateCount++;
+        mMaxSpeed = maxSpeed;
+        mDirty = true;
+        flush(now);
+    }
+
+    /**
+     * Writes the maximum speed if there is an update not yet written and the interval has passed
+     *
+     * @param now current time in milliseconds
+     * @return true if written
+     */
+    public boolean flushIfDue(long now) {
+        if (mDirty && (!mWritten || now - mLastWriteTime >= mFlushIntervalMillis)) {
+            flush(now);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Writes the maximum speed if there is an update not yet written
+     *
+     * @param now current time in milliseconds
+     */
+    public void flush(long now) {
+        if (!mDirty) {
+            return;
+        }
+        mDirty = false;
+        mWritten = true;
+        mLastWriteTime = now;
+        mWriteCount++;
+        mWriter.write(mMaxSpeed);
+    }
+
+    /**
+     * @param now current time in milliseconds
+     * @return milliseconds until an update not yet written is due, or -1 if nothing to write
+     */
+    public long getFlushDelay(long now) {
+        if (!mDirty) {
+            return -1;
+        }
+        if (!mWritten) {
+            return 0;
+        }
+        return Math.max(0, mLastWriteTime + mFlushIntervalMillis - now);
+    }
+
+    /**
+     * @return true if there is an update not yet written
+     */
+    public boolean isDirty() {
+        return mDirty;
+    }
+
+    public float getMaxSpeed() {
+        return mMaxSpeed;
+    }
+
+    /**
+     * @return number of updates recorded
+     */
+    public long getUpdateCount() {
+        return mUpdateCount;
+    }
+
+    /**
+     * @return number of writes to storage
+     */
+    public long getWriteCount() {
+        return mWriteCount;
+    }
+
+    /**
+     * @return number of writes avoided by coalescing updates
+     */
+    public long getSavedWriteCount() {
+        return mUpdateCount - mWriteCount;
+    }
+}
@@ -0,0 +1,59 @@
+package kk.speeddisplay.core;
+
+/**
+ * Median of the last few speeds, removes single sample spikes without smoothing steps.
+ * <p>
+ * The speeds are held in a fixed size ring buffer, the median is found by sorting a copy
+ * in a second fixed size array, as the window is small.
+ */
+public class MedianSpeedFilter implements SpeedFilter {
+
+    static final int DEFAULT_WINDOW = 5;
+
+    private final float[] mRing;
+    private final float[] mSorted;
+    private int mNext;
+    private int mCount;
+
+    /**
+     * @param window number of speeds the median is taken over
+     */
+    public MedianSpeedFilter(int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("window must be at least 1");
+        }
+        mRing = new float[window];
+        mSorted = new float[window];
+    }
+
+    @Override
+    public float filter(long time, float speedMps) {
+        mRing[mNext] = speedMps;
+        mNext = (mNext + 1) % mRing.length;
+        if (mCount < mRing.length) {
+            mCount++;
+        }
+
+        //insertion sort, the window is small
+        for (int i = 0; i < mCount; i++) {
+            float value = mRing[i];
+            int j = i - 1;
+            while (j >= 0 && mSorted[j] > value) {
+                mSorted[j + 1] = mSorted[j];
+                j--;
+            }
+            mSorted[j + 1] = value;
+        }
+        int middle = mCount / 2;
+        if ((mCount & 1) == 1) {
+            return mSorted[middle];
+        }
+        return (mSorted[middle - 1] + mSorted[middle]) / 2;
+    }
+
+    @Override
+    public void reset() {
+        mNext = 0;
+        mCount = 0;
+    }
+}
@@ -0,0 +1,118 @@
+package kk.speeddisplay.core;
+
+/**
+ * Sliding window minimum or maximum of timed values, using a monotonic deque
+ * held in primitive ring buffers.
+ * <p>
+ * The deque only keeps values which can still become the extreme of the window,
+ * so the minimum or maximum is always at the front, and each value is added and removed
+ * at most once, giving O(1) amortised updates.
+ * The ring buffers grow if the deque fills, they never shrink, so once sized
+ * for the window and update rate nothing is allocated. Not thread safe.
+ */
+public class MonotonicDeque {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final boolean mMaximum;
+
+    private long[] mTimes = new long[INITIAL_CAPACITY];
+    private float[] mValues = new float[INITIAL_CAPACITY];
+    private int mHead;
+    private int mSize;
+
+    /**
+     * @param maximum true for a sliding window maximum, false for a sliding window minimum
+     */
+    public MonotonicDeque(boolean maximum) {
+        mMaximum = maximum;
+    }
+
+    /**
+     * Adds a value at the back of the window,
+     * removes the values it makes redundant
+     *
+     * @param time  time of the value, not before the previous value
+     * @param value value
+     */
+    public void push(long time, float value) {
+        // drop values from the back which the new value beats, they can never be the extreme
+        while (mSize > 0) {
+            float last = mValues[index(mSize - 1)];
+            if (mMaximum ? last > value : last < value) {
+                break;
+            }
+            mSize--;
+        }
+        if (mSize == mTimes.length) {
+            grow();
+        }
+        int i = index(mSize);
+        mTimes[i] = time;
+        mValues[i] = value;
+        mSize++;
+    }
+
+    /**
+     * Removes the values from the front of the window which are before the time
+     *
+     * @param time start of the window
+     */
+    public void removeBefore(long time) {
+        while (mSize > 0 && mTimes[mHead] < time) {
+            mHead = index(1);
+            mSize--;
+        }
+    }
+
+    /**
+     * @return minimum or maximum value in the window, only valid if not empty
+     */
+    public float peek() {
+        return mValues[mHead];
+    }
+
+    /**
+     * @return true if there are no values in the window
+     */
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * @return number of values held, at most the number in the window
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Empties the window
+     */
+    public void clear() {
+        mHead = 0;
+        mSize = 0;
+    }
+
+    private int index(int offset) {
+        int i = mHead + offset;
+        return i < mTimes.length ? i : i - mTimes.length;
+    }
+
+    /**
+     * Doubles the ring buffers, unwrapping them so the front is at index 0
+     */
+    private void grow() {
+        int capacity = mTimes.length * 2;
+        long[] times = new long[capacity];
+        float[] values = new float[capacity];
+        int first = Math.min(mSize, mTimes.length - mHead);
+        System.arraycopy(mTimes, mHead, times, 0, first);
+        System.arraycopy(mValues, mHead, values, 0, first);
+        System.arraycopy(mTimes, 0, times, first, mSize - first);
+        System.arraycopy(mValues, 0, values, first, mSize - first);
+        mTimes = times;
+        mValues = values;
+        mHead = 0;
+    }
+}
@@ -0,0 +1,132 @@
+package kk.speeddisplay.core;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads a trace from NMEA 0183 sentences, as logged by a GPS receiver.
+ * <p>
+ * Each valid RMC sentence is a fix, with its position, date and time, and its speed over
+ * ground, which is the receiver's Doppler speed. The horizontal dilution of precision of a
+ * GGA sentence with the same time gives the accuracy of the fix.
+ * Sentences from any talker are read, such as GPRMC and GNRMC. Other sentences,
+ * sentences with a bad checksum and RMC sentences without a valid fix are skipped,
+ * as a receiver log often has some damaged lines.
+ */
+class NmeaTraceReader implements TraceReader {
+
+    private static final float KNOTS_TO_MPS = 1852.0F / 3600.0F;
+
+    private final BufferedReader mReader;
+
+    /* time of day and horizontal dilution of precision of the last GGA sentence */
+    private String mGgaTime;
+    private float mHdop = Float.NaN;
+
+    private long mSkippedCount;
+
+    NmeaTraceReader(Reader reader) {
+        mReader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+    }
+
+    @Override
+    public boolean next(TraceFix fix) throws IOException {
+        String line;
+        while ((line = mReader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            if (!isValid(line)) {
+                mSkippedCount++;
+                continue;
+            }
+            int end = line.indexOf('*');
+            String[] fields = line.substring(1, end < 0 ? line.length() : end).split(",", -1);
+            String type = fields[0].length() == 5 ? fields[0].substring(2) : "";
+            try {
+                if (type.equals("GGA") && fields.length > 8) {
+                    mGgaTime = fields[1];
+                    mHdop = fields[8].isEmpty() ? Float.NaN : Float.parseFloat(fields[8]);
+                } else if (type.equals("RMC") && fields.length > 9 && fields[2].equals("A")) {
+                    readRmc(fields, fix);
+                    return true;
+                }
+            } catch (NumberFormatException e) {
+                mSkippedCount++;
+            } catch (IndexOutOfBoundsException e) {
+                mSkippedCount++;
+            }
+        }
+        return false;
+    }
+
+    private void readRmc(String[] fields, TraceFix fix) {
+        String time = fields[1];
+        String date = fields[9];
+        int hour = Integer.parseInt(time.substring(0, 2));
+        int minute = Integer.parseInt(time.substring(2, 4));
+        double second = Double.parseDouble(time.substring(4));
+        int day = Integer.parseInt(date.substring(0, 2));
+        int month = Integer.parseInt(date.substring(2, 4));
+        // two digit years, the GPS era starts in 1980
+        int year = Integer.parseInt(date.substring(4, 6));
+        year += year < 80 ? 2000 : 1900;
+        long millis = TraceReaders.daysFromCivil(year, month, day) * 86400000L
+                + (hour * 3600L + minute * 60L) * 1000L + Math.round(second * 1000);
+
+        fix.set(millis, coordinate(fields[3], fields[4], 'S'), coordinate(fields[5], fields[6], 'W'));
+        if (!fields[7].isEmpty()) {
+            fix.setSpeed(Float.parseFloat(fields[7]) * KNOTS_TO_MPS);
+        }
+        if (time.equals(mGgaTime) && mHdop > 0) {
+            fix.setAccuracy(mHdop * TraceFix.HDOP_ACCURACY);
+        }
+    }
+
+    /**
+     * Converts a coordinate in degrees and minutes, ddmm.mmmm or dddmm.mmmm, to degrees
+     */
+    private static double coordinate(String value, String hemisphere, char negative) {
+        int point = value.indexOf('.');
+        int degreeDigits = (point < 0 ? value.length() : point) - 2;
+        double degrees = Integer.parseInt(value.substring(0, degreeDigits))
+                + Double.parseDouble(value.substring(degreeDigits)) / 60.0;
+        return hemisphere.length() == 1 && hemisphere.charAt(0) == negative ? -degrees : degrees;
+    }
+
+    /**
+     * @return true if the line is a sentence with a correct checksum, or without a checksum
+     */
+    static boolean isValid(String line) {
+        if (line.charAt(0) != '$') {
+            return false;
+        }
+        int star = line.indexOf('*');
+        if (star < 0) {
+            return true;
+        }
+        if (star + 3 > line.length()) {
+            return false;
+        }
+        int checksum = 0;
+        for (int i = 1; i < star; i++) {
+            checksum ^= line.charAt(i);
+        }
+        return Character.digit(line.charAt(star + 1), 16) == (checksum >> 4)
+                && Character.digit(line.charAt(star + 2), 16) == (checksum & 0xF);
+    }
+
+    /**
+     * @return number of lines skipped because they are damaged
+     */
+    long getSkippedCount() {
+        return mSkippedCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mReader.close();
+    }
+}
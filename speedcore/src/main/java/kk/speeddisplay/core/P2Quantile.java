@@ -0,0 +1,142 @@
+package kk.speeddisplay.core;
+
+/**
+ * Streaming estimate of a quantile with the P-square algorithm of Jain and Chlamtac,
+ * in constant memory, without keeping the samples.
+ * <p>
+ * Five markers track the minimum, the quantile, the maximum, and half way either side of
+ * the quantile. Each sample moves the marker positions, and a marker whose position drifts
+ * from where it should be is adjusted with a parabolic fit through its neighbours.
+ * Adding a sample takes a few comparisons and no allocation.
+ * Until five samples have been added the quantile is taken from the samples themselves.
+ * Not thread safe.
+ */
+public class P2Quantile {
+
+    private static final int MARKERS = 5;
+
+    private final double mQuantile;
+
+    /* marker heights, actual positions, desired positions and their increments */
+    private final double[] mHeights = new double[MARKERS];
+    private final double[] mPositions = new double[MARKERS];
+    private final double[] mDesired = new double[MARKERS];
+    private final double[] mIncrements = new double[MARKERS];
+
+    private long mCount;
+
+    /**
+     * @param quantile quantile to be estimated, between 0 and 1, such as 0.9 for the 90th percentile
+     */
+    public P2Quantile(double quantile) {
+        if (!(quantile > 0 && quantile < 1)) {
+            throw new IllegalArgumentException("quantile must be between 0 and 1");
+        }
+        mQuantile = quantile;
+        mIncrements[0] = 0;
+        mIncrements[1] = quantile / 2;
+        mIncrements[2] = quantile;
+        mIncrements[3] = (1 + quantile) / 2;
+        mIncrements[4] = 1;
+        reset();
+    }
+
+    /**
+     * Forgets all the samples
+     */
+    public void reset() {
+        mCount = 0;
+        for (int i = 0; i < MARKERS; i++) {
+            mPositions[i] = i;
+            mDesired[i] = 4 * mIncrements[i];
+        }
+    }
+
+    /**
+     * Adds a sample to the estimate
+     *
+     * @param x sample
+     */
+    public void add(double x) {
+        double[] q = mHeights;
+        double[] n = mPositions;
+        if (mCount < MARKERS) {
+            // insertion sort of the first samples, they become the initial marker heights
+            int i = (int) mCount++;
+            while (i > 0 && q[i - 1] > x) {
+                q[i] = q[i - 1];
+                i--;
+            }
+            q[i] = x;
+            return;
+        }
+        mCount++;
+
+        // find the cell the sample falls in, extending the extremes if outside them
+        int k;
+        if (x < q[0]) {
+            q[0] = x;
+            k = 0;
+        } else if (x >= q[4]) {
+            q[4] = Math.max(q[4], x);
+            k = 3;
+        } else {
+            k = 0;
+            while (x >= q[k + 1]) {
+                k++;
+            }
+        }
+        for (int i = k + 1; i < MARKERS; i++) {
+            n[i]++;
+        }
+        for (int i = 0; i < MARKERS; i++) {
+            mDesired[i] += mIncrements[i];
+        }
+
+        // adjust the middle markers that are a whole position or more from where they should be
+        for (int i = 1; i < MARKERS - 1; i++) {
+            double d = mDesired[i] - n[i];
+            if ((d >= 1 && n[i + 1] - n[i] > 1) || (d <= -1 && n[i - 1] - n[i] < -1)) {
+                int s = d >= 0 ? 1 : -1;
+                double parabolic = q[i] + s / (n[i + 1] - n[i - 1])
+                        * ((n[i] - n[i - 1] + s) * (q[i + 1] - q[i]) / (n[i + 1] - n[i])
+                        + (n[i + 1] - n[i] - s) * (q[i] - q[i - 1]) / (n[i] - n[i - 1]));
+                if (q[i - 1] < parabolic && parabolic < q[i + 1]) {
+                    q[i] = parabolic;
+                } else {
+                    q[i] += s * (q[i + s] - q[i]) / (n[i + s] - n[i]);
+                }
+                n[i] += s;
+            }
+        }
+    }
+
+    /**
+     * @return estimate of the quantile, 0 if there are no samples
+     */
+    public double getQuantile() {
+        if (mCount >= MARKERS) {
+            return mHeights[2];
+        }
+        if (mCount == 0) {
+            return 0;
+        }
+        // the first samples are held sorted, take the nearest rank
+        int index = (int) Math.round(mQuantile * (mCount - 1));
+        return mHeights[index];
+    }
+
+    /**
+     * @return quantile being estimated
+     */
+    public double getQuantileLevel() {
+        return mQuantile;
+    }
+
+    /**
+     * @return number of samples added
+     */
+    public long getCount() {
+        return mCount;
+    }
+}
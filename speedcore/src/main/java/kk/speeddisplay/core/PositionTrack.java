@@ -0,0 +1,57 @@
+package kk.speeddisplay.core;
+
+/**
+ * Follows successive positions and gives the distance moved from the previous position.
+ * <p>
+ * Uses the equirectangular approximation, the cosine of the latitude is cached and only
+ * recalculated when the latitude has moved more than a small step, so following a position
+ * takes no trigonometry. Not thread safe.
+ */
+public class PositionTrack {
+
+    /* change in latitude in degrees before the cached cosine is recalculated */
+    static final double COS_LATITUDE_STEP = 0.05;
+
+    private boolean mHasPosition;
+    private double mLatitude;
+    private double mLongitude;
+
+    private double mCosLatitude;
+    private double mCosLatitudeAt = Double.NaN;
+
+    /**
+     * Moves to a new position
+     *
+     * @param latitude  latitude in degrees
+     * @param longitude longitude in degrees
+     * @return distance from the previous position in metres, 0 for the first position
+     */
+    public double moveTo(double latitude, double longitude) {
+        double distance = 0;
+        if (mHasPosition) {
+            if (!(Math.abs(latitude - mCosLatitudeAt) < COS_LATITUDE_STEP)) {
+                mCosLatitudeAt = latitude;
+                mCosLatitude = Math.cos(Math.toRadians(latitude));
+            }
+            distance = Geo.fastDistance(mLatitude, mLongitude, latitude, longitude, mCosLatitude);
+        }
+        mHasPosition = true;
+        mLatitude = latitude;
+        mLongitude = longitude;
+        return distance;
+    }
+
+    /**
+     * @return true if there is a previous position
+     */
+    public boolean hasPosition() {
+        return mHasPosition;
+    }
+
+    /**
+     * Forgets the previous position
+     */
+    public void reset() {
+        mHasPosition = false;
+    }
+}
@@ -0,0 +1,157 @@
+package kk.speeddisplay.core;
+
+/**
+ * Rejects location samples which cannot be trusted, so a single spike, such as a multipath
+ * speed at a tunnel exit, does not become the maximum speed.
+ * <p>
+ * A sample is rejected if:
+ * <ul>
+ * <li>its horizontal accuracy or speed accuracy is worse than the limits, a speed derived from
+ * positions has its own limit,</li>
+ * <li>the acceleration implied from the last accepted sample is beyond what a vehicle can do.</li>
+ * </ul>
+ * So the gate does not lock out a genuine change, such as after a gap in the fixes,
+ * samples rejected for acceleration which are consistent with each other are accepted
+ * once there have been enough of them in a row.
+ * <p>
+ * With no accepted sample to check against, the first sample, and the first after a reset,
+ * is held back until the next sample agrees with it, the next sample is then accepted,
+ * so an outlier first fix is never accepted.
+ * <p>
+ * O(1) per sample with a fixed amount of state. Not thread safe.
+ */
+public class SampleGate {
+
+    /* worst accuracies accepted, horizontal in metres and speed in metres/sec */
+    static final float MAX_HORIZONTAL_ACCURACY = 50.0F;
+    static final float MAX_SPEED_ACCURACY = 5.0F;
+
+    /* worst accuracy in metres/sec accepted for a speed derived from positions, whose accuracy
+     * is that of the two positions over the fix interval, 14 m/s for 10 m fixes a second apart,
+     * though most of the error of successive positions is shared and cancels out */
+    static final float MAX_POSITION_SPEED_ACCURACY = 20.0F;
+
+    /* highest acceleration or braking accepted in metres/sec/sec, over 1g */
+    static final float MAX_ACCELERATION = 12.0F;
+
+    /* shortest time used to work out the acceleration in milliseconds,
+     * so fixes close together are not rejected for timing jitter */
+    static final long MIN_ELAPSED = 200L;
+
+    /* consistent samples in a row, all rejected for acceleration, before they are accepted */
+    static final int REACQUIRE_SAMPLES = 3;
+
+    private boolean mHasAccepted;
+    private long mAcceptedTime;
+    private float mAcceptedSpeed;
+
+    /* run of samples rejected for acceleration which are consistent with each other */
+    private int mPendingCount;
+    private long mPendingTime;
+    private float mPendingSpeed;
+
+    private long mRejectedAccuracyCount;
+    private long mRejectedAccelerationCount;
+
+    /**
+     * Checks a sample with a Doppler speed
+     *
+     * @param time               time of the sample in milliseconds, monotonic
+     * @param speedMps           speed in metres/sec
+     * @param speedAccuracy      accuracy of the speed in metres/sec, NaN if not known
+     * @param horizontalAccuracy horizontal accuracy in metres
+     * @return true if the sample is accepted
+     */
+    public boolean accept(long time, float speedMps, float speedAccuracy, float horizontalAccuracy) {
+        return accept(time, speedMps, speedAccuracy, horizontalAccuracy, false);
+    }
+
+    /**
+     * Checks a sample
+     *
+     * @param time               time of the sample in milliseconds, monotonic
+     * @param speedMps           speed in metres/sec
+     * @param speedAccuracy      accuracy of the speed in metres/sec, NaN if not known
+     * @param horizontalAccuracy horizontal accuracy in metres
+     * @param positional         true if the speed is derived from positions, alone or blended with
+     *                           the Doppler speed
+     * @return true if the sample is accepted
+     */
+    public boolean accept(long time, float speedMps, float speedAccuracy, float horizontalAccuracy,
+                          boolean positional) {
+        float maxSpeedAccuracy = positional ? MAX_POSITION_SPEED_ACCURACY : MAX_SPEED_ACCURACY;
+        if (horizontalAccuracy > MAX_HORIZONTAL_ACCURACY || speedAccuracy > maxSpeedAccuracy) {
+            mRejectedAccuracyCount++;
+            return false;
+        }
+
+        if (!mHasAccepted) {
+            // one sample look ahead, the held sample must agree with this one
+            if (mPendingCount == 0 || !isPlausible(mPendingTime, mPendingSpeed, time, speedMps)) {
+                if (mPendingCount > 0) {
+                    //the sample held was not confirmed
+                    mRejectedAccelerationCount++;
+                }
+                mPendingCount = 1;
+                mPendingTime = time;
+                mPendingSpeed = speedMps;
+                return false;
+            }
+        } else if (!isPlausible(mAcceptedTime, mAcceptedSpeed, time, speedMps)) {
+            if (mPendingCount > 0 && isPlausible(mPendingTime, mPendingSpeed, time, speedMps)) {
+                mPendingCount++;
+            } else {
+                mPendingCount = 1;
+            }
+            mPendingTime = time;
+            mPendingSpeed = speedMps;
+            if (mPendingCount < REACQUIRE_SAMPLES) {
+                mRejectedAccelerationCount++;
+                return false;
+            }
+        }
+
+        mHasAccepted = true;
+        mAcceptedTime = time;
+        mAcceptedSpeed = speedMps;
+        mPendingCount = 0;
+        return true;
+    }
+
+    /**
+     * @return true if the acceleration between the two samples is within the limit
+     */
+    private static boolean isPlausible(long time1, float speed1, long time2, float speed2) {
+        long elapsed = Math.max(MIN_ELAPSED, time2 - time1);
+        return Math.abs(speed2 - speed1) * 1000F <= MAX_ACCELERATION * elapsed;
+    }
+
+    /**
+     * Clears the accepted samples, the next sample is held until the one after agrees with it
+     */
+    public void reset() {
+        mHasAccepted = false;
+        mPendingCount = 0;
+    }
+
+    /**
+     * @return number of samples rejected
+     */
+    public long getRejectedCount() {
+        return mRejectedAccuracyCount + mRejectedAccelerationCount;
+    }
+
+    /**
+     * @return number of samples rejected for their accuracy
+     */
+    public long getRejectedAccuracyCount() {
+        return mRejectedAccuracyCount;
+    }
+
+    /**
+     * @return number of samples rejected for the implied acceleration
+     */
+    public long getRejectedAccelerationCount() {
+        return mRejectedAccelerationCount;
+    }
+}
@@ -0,0 +1,299 @@
+package kk.speeddisplay.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Crash-safe journal of the state of the session in progress, so a service killed and
+ * restarted by the system can carry on the trip where it was, see {@link #replay}.
+ * <p>
+ * Each checkpoint is written as a fixed size record with a sequence number and a CRC,
+ * to the next of a small ring of slots in the file, so a write torn by a crash only
+ * damages the slot being written, the previous checkpoint is still intact.
+ * Replay takes the valid record with the highest sequence number.
+ * <p>
+ * Every checkpoint is written to the file straight away, which survives the process being
+ * killed, but the file is only forced to storage, which survives the device losing power,
+ * at most once per force interval, or when {@link #flush} is called.
+ * The time passed in can be from any clock, as long as it is the same clock for all calls.
+ * Nothing is allocated per checkpoint. Not thread safe.
+ */
+public class SessionJournal {
+
+    static final int SLOTS = 8;
+    static final int RECORD_SIZE = 80;
+    /* bytes of the record covered by the CRC, the CRC is the last int */
+    private static final int CRC_OFFSET = RECORD_SIZE - 4;
+
+    /* default minimum time between forces to storage in milliseconds */
+    public static final long DEFAULT_FORCE_INTERVAL = 5000L;
+
+    private final File mFile;
+    private final long mForceIntervalMillis;
+    private final ByteBuffer mRecord = ByteBuffer.allocate(RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final CRC32 mCrc = new CRC32();
+
+    private RandomAccessFile mRandomAccessFile;
+    private FileChannel mChannel;
+
+    private long mSequence;
+    private boolean mDirty;
+    private long mLastForceTime;
+
+    /* state read by replay */
+    private long mTripId;
+    private double mDistance;
+    private long mMovingTime;
+    private long mStoppedTime;
+    private double mSpeedTime;
+    private long mLastTime;
+    private double mLatitude;
+    private double mLongitude;
+    private float mSpeed;
+
+    /* statistics */
+    private long mCheckpointCount;
+    private long mForceCount;
+
+    /**
+     * @param file                journal file, created on the first checkpoint
+     * @param forceIntervalMillis minimum time between forces to storage
+     */
+    public SessionJournal(File file, long forceIntervalMillis) {
+        mFile = file;
+        mForceIntervalMillis = forceIntervalMillis;
+    }
+
+    /**
+     * Reads the latest checkpoint, later checkpoints continue from its sequence number
+     *
+     * @return true if there is a checkpoint, its state can then be read with the getters
+     * @throws IOException if the journal exists but cannot be read
+     */
+    public boolean replay() throws IOException {
+        if (!mFile.exists()) {
+            return false;
+        }
+        open();
+        boolean found = false;
+        long latest = 0;
+        for (int slot = 0; slot < SLOTS; slot++) {
+            if (!readSlot(slot)) {
+                continue;
+            }
+            long sequence = mRecord.getLong(0);
+            if (!found || sequence > latest) {
+                found = true;
+                latest = sequence;
+                mTripId = mRecord.getLong(8);
+                mDistance = mRecord.getDouble(16);
+                mMovingTime = mRecord.getLong(24);
+                mLastTime = mRecord.getLong(32);
+                mLatitude = mRecord.getDouble(40);
+                mLongitude = mRecord.getDouble(48);
+                mSpeed = mRecord.getFloat(56);
+                mStoppedTime = mRecord.getLong(60);
+                mSpeedTime = mRecord.getDouble(68);
+            }
+        }
+        mSequence = found ? latest : 0;
+        return found;
+    }
+
+    /**
+     * @return true if the slot holds a whole record with a valid CRC
+     */
+    private boolean readSlot(int slot) throws IOException {
+        mRecord.clear();
+        long position = (long) slot * RECORD_SIZE;
+        while (mRecord.hasRemaining()) {
+            if (mChannel.read(mRecord, position + mRecord.position()) < 0) {
+                return false;
+            }
+        }
+        mCrc.reset();
+        mCrc.update(mRecord.array(), 0, CRC_OFFSET);
+        return mRecord.getLong(0) > 0 && (int) mCrc.getValue() == mRecord.getInt(CRC_OFFSET);
+    }
+
+    /**
+     * Writes the state of the session, and forces it to storage if the force interval has passed
+     *
+     * @param tripId      trip being recorded
+     * @param distance    distance travelled in metres
+     * @param movingTime  time spent moving in milliseconds
+     * @param stoppedTime time spent stopped in milliseconds
+     * @param speedTime   speed integrated over time in km/hour milliseconds, see {@link TripStatistics}
+     * @param lastTime    time of the last location in milliseconds
+     * @param latitude    latitude of the last location in degrees
+     * @param longitude   longitude of the last location in degrees
+     * @param speed       latest speed in km/hour
+     * @param now         current time in milliseconds
+     * @return true if forced to storage
+     * @throws IOException if the journal cannot be written
+     */
+    public boolean checkpoint(long tripId, double distance, long movingTime, long stoppedTime, double speedTime,
+                              long lastTime, double latitude, double longitude, float speed, long now)
+            throws IOException {
+        open();
+        mSequence++;
+        mRecord.clear();
+        mRecord.putLong(0, mSequence);
+        mRecord.putLong(8, tripId);
+        mRecord.putDouble(16, distance);
+        mRecord.putLong(24, movingTime);
+        mRecord.putLong(32, lastTime);
+        mRecord.putDouble(40, latitude);
+        mRecord.putDouble(48, longitude);
+        mRecord.putFloat(56, speed);
+        mRecord.putLong(60, stoppedTime);
+        mRecord.putDouble(68, speedTime);
+        mCrc.reset();
+        mCrc.update(mRecord.array(), 0, CRC_OFFSET);
+        mRecord.putInt(CRC_OFFSET, (int) mCrc.getValue());
+
+        long position = (mSequence % SLOTS) * RECORD_SIZE;
+        while (mRecord.hasRemaining()) {
+            mChannel.write(mRecord, position + mRecord.position());
+        }
+        mCheckpointCount++;
+        mDirty = true;
+        if (mForceCount > 0 && now - mLastForceTime < mForceIntervalMillis) {
+            return false;
+        }
+        force(now);
+        return true;
+    }
+
+    /**
+     * Forces any checkpoint not yet forced to storage, call on shutdown and on low memory
+     *
+     * @param now current time in milliseconds
+     * @throws IOException if the journal cannot be forced
+     */
+    public void flush(long now) throws IOException {
+        if (mDirty) {
+            force(now);
+        }
+    }
+
+    private void force(long now) throws IOException {
+        mChannel.force(false);
+        mDirty = false;
+        mLastForceTime = now;
+        mForceCount++;
+    }
+
+    /**
+     * Ends the session, the journal is deleted so the next replay finds no checkpoint
+     */
+    public void clear() {
+        close();
+        mFile.delete();
+        mSequence = 0;
+    }
+
+    private void open() throws IOException {
+        if (mChannel == null) {
+            mRandomAccessFile = new RandomAccessFile(mFile, "rw");
+            mChannel = mRandomAccessFile.getChannel();
+        }
+    }
+
+    /**
+     * Closes the journal file, checkpoints not yet forced are left to the system to write
+     */
+    public void close() {
+        if (mRandomAccessFile != null) {
+            try {
+                mRandomAccessFile.close();
+            } catch (IOException e) {
+                // nothing more can be done, the checkpoints are already written
+            }
+            mRandomAccessFile = null;
+            mChannel = null;
+        }
+    }
+
+    /**
+     * @return trip of the checkpoint replayed
+     */
+    public long getTripId() {
+        return mTripId;
+    }
+
+    /**
+     * @return distance travelled in metres, of the checkpoint replayed
+     */
+    public double getDistance() {
+        return mDistance;
+    }
+
+    /**
+     * @return time spent moving in milliseconds, of the checkpoint replayed
+     */
+    public long getMovingTime() {
+        return mMovingTime;
+    }
+
+    /**
+     * @return time spent stopped in milliseconds, of the checkpoint replayed
+     */
+    public long getStoppedTime() {
+        return mStoppedTime;
+    }
+
+    /**
+     * @return speed integrated over time in km/hour milliseconds, of the checkpoint replayed
+     */
+    public double getSpeedTime() {
+        return mSpeedTime;
+    }
+
+    /**
+     * @return time of the last location in milliseconds, of the checkpoint replayed
+     */
+    public long getLastTime() {
+        return mLastTime;
+    }
+
+    /**
+     * @return latitude of the last location in degrees, of the checkpoint replayed
+     */
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    /**
+     * @return longitude of the last location in degrees, of the checkpoint replayed
+     */
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    /**
+     * @return latest speed in km/hour, of the checkpoint replayed
+     */
+    public float getSpeed() {
+        return mSpeed;
+    }
+
+    /**
+     * @return number of checkpoints written
+     */
+    public long getCheckpointCount() {
+        return mCheckpointCount;
+    }
+
+    /**
+     * @return number of times the journal was forced to storage
+     */
+    public long getForceCount() {
+        return mForceCount;
+    }
+}
@@ -0,0 +1,91 @@
+package kk.speeddisplay.core;
+
+/**
+ * Seven-segment encoding of formatted speeds, used by the speed view to draw the digits.
+ * <p>
+ * Segments are numbered as bits, in the usual order:
+ * <pre>
+ *      a
+ *    f   b
+ *      g
+ *    e   c
+ *      d
+ * </pre>
+ * A speed is laid out in a fixed number of digit cells, right aligned, with one decimal place,
+ * so the layout never changes as the speed changes. Cells to the left of the speed are blank.
+ */
+public final class SevenSegment {
+
+    public static final int SEGMENT_A = 1;
+    public static final int SEGMENT_B = 1 << 1;
+    public static final int SEGMENT_C = 1 << 2;
+    public static final int SEGMENT_D = 1 << 3;
+    public static final int SEGMENT_E = 1 << 4;
+    public static final int SEGMENT_F = 1 << 5;
+    public static final int SEGMENT_G = 1 << 6;
+    public static final int SEGMENT_COUNT = 7;
+    public static final int ALL_SEGMENTS = (1 << SEGMENT_COUNT) - 1;
+
+    /* segments lit for the digits 0 to 9 */
+    private static final int[] DIGITS = {
+            SEGMENT_A | SEGMENT_B | SEGMENT_C | SEGMENT_D | SEGMENT_E | SEGMENT_F,
+            SEGMENT_B | SEGMENT_C,
+            SEGMENT_A | SEGMENT_B | SEGMENT_D | SEGMENT_E | SEGMENT_G,
+            SEGMENT_A | SEGMENT_B | SEGMENT_C | SEGMENT_D | SEGMENT_G,
+            SEGMENT_B | SEGMENT_C | SEGMENT_F | SEGMENT_G,
+            SEGMENT_A | SEGMENT_C | SEGMENT_D | SEGMENT_F | SEGMENT_G,
+            SEGMENT_A | SEGMENT_C | SEGMENT_D | SEGMENT_E | SEGMENT_F | SEGMENT_G,
+            SEGMENT_A | SEGMENT_B | SEGMENT_C,
+            ALL_SEGMENTS,
+            SEGMENT_A | SEGMENT_B | SEGMENT_C | SEGMENT_D | SEGMENT_F | SEGMENT_G
+    };
+
+    private SevenSegment() {
+    }
+
+    /**
+     * @param c character to be displayed
+     * @return segments lit for the character, digits and '-' are supported, others are blank
+     */
+    public static int segmentsFor(char c) {
+        if (c >= '0' && c <= '9') {
+            return DIGITS[c - '0'];
+        }
+        if (c == '-') {
+            return SEGMENT_G;
+        }
+        return 0;
+    }
+
+    /**
+     * Lays out a formatted speed with one decimal place, such as "123.4", into digit cells.
+     * The last cell is the decimal place, the decimal point is after the second last cell.
+     * If the speed has more whole digits than there are cells, all cells are set to '-'.
+     *
+     * @param text   formatted speed, starting at index 0
+     * @param length number of characters in the formatted speed
+     * @param cells  segments for each cell, filled in by this method
+     * @return true if the segments of any cell changed
+     */
+    public static boolean layout(char[] text, int length, int[] cells) {
+        boolean changed = false;
+        int cell = cells.length - 1;
+        // one character of the text is the decimal point, which does not take a cell
+        boolean fits = length - 1 <= cells.length;
+        for (int i = length - 1; i >= 0 && cell >= 0; i--) {
+            char c = text[i];
+            if (c == '.') {
+                continue;
+            }
+            int segments = fits ? segmentsFor(c) : SEGMENT_G;
+            changed |= cells[cell] != segments;
+            cells[cell--] = segments;
+        }
+        for (; cell >= 0; cell--) {
+            int segments = fits ? 0 : SEGMENT_G;
+            changed |= cells[cell] != segments;
+            cells[cell] = segments;
+        }
+        return changed;
+    }
+}
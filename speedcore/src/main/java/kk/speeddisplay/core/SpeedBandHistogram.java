@@ -0,0 +1,178 @@
+package kk.speeddisplay.core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Time spent in each speed band, in bands of 10 km/hour up to 200 km/hour, and in bands of
+ * 10 miles/hour up to 130 miles/hour, with a last band for all higher speeds.
+ * <p>
+ * The time between two samples is credited to the band of the later sample, as it is by
+ * {@link TripStatistics}, gaps longer than {@link SpeedProcessor#MAX_MOVING_GAP} are not counted.
+ * Both unit systems are kept, as a band in one does not divide into bands of the other.
+ * Adding a sample is constant time and does not allocate, histograms can be merged,
+ * so the times of several trips can be combined, and written to and read from storage.
+ * Not thread safe.
+ */
+public class SpeedBandHistogram {
+
+    static final int MAGIC = 0x53444248;                 // "SDBH"
+    static final int VERSION = 1;
+
+    /* width of a band in km/hour or miles/hour */
+    public static final int BAND_WIDTH = 10;
+    /* bands up to 200 km/hour and 130 miles/hour, plus one band for all higher speeds */
+    public static final int METRIC_BANDS = 200 / BAND_WIDTH + 1;
+    public static final int IMPERIAL_BANDS = 130 / BAND_WIDTH + 1;
+
+    /* time in each band in milliseconds */
+    private final long[] mMetricTimes = new long[METRIC_BANDS];
+    private final long[] mImperialTimes = new long[IMPERIAL_BANDS];
+
+    private boolean mHasSample;
+    private long mLastTime;
+
+    /**
+     * Adds a sample, the time since the previous sample is added to the band of its speed
+     *
+     * @param time  time of the sample in milliseconds
+     * @param speed speed in km/hour
+     */
+    public void add(long time, float speed) {
+        long elapsed = time - mLastTime;
+        if (mHasSample && elapsed > 0 && elapsed <= SpeedProcessor.MAX_MOVING_GAP) {
+            mMetricTimes[band(speed, METRIC_BANDS)] += elapsed;
+            mImperialTimes[band(speed * SpeedFormatter.KPH_TO_MPH, IMPERIAL_BANDS)] += elapsed;
+        }
+        mHasSample = true;
+        mLastTime = time;
+    }
+
+    private static int band(float speed, int bands) {
+        // negative and NaN speeds fall in the first band
+        int band = (int) (speed / BAND_WIDTH);
+        return band < 0 ? 0 : Math.min(band, bands - 1);
+    }
+
+    /**
+     * Adds the times of another histogram to this one, the previous sample is unchanged
+     *
+     * @param other histogram to be added
+     */
+    public void merge(SpeedBandHistogram other) {
+        for (int i = 0; i < METRIC_BANDS; i++) {
+            mMetricTimes[i] += other.mMetricTimes[i];
+        }
+        for (int i = 0; i < IMPERIAL_BANDS; i++) {
+            mImperialTimes[i] += other.mImperialTimes[i];
+        }
+    }
+
+    /**
+     * Copies the times of another histogram, the previous sample is unchanged
+     *
+     * @param other histogram to be copied
+     */
+    public void copyFrom(SpeedBandHistogram other) {
+        System.arraycopy(other.mMetricTimes, 0, mMetricTimes, 0, METRIC_BANDS);
+        System.arraycopy(other.mImperialTimes, 0, mImperialTimes, 0, IMPERIAL_BANDS);
+    }
+
+    /**
+     * Clears the times and forgets the previous sample
+     */
+    public void clear() {
+        for (int i = 0; i < METRIC_BANDS; i++) {
+            mMetricTimes[i] = 0;
+        }
+        for (int i = 0; i < IMPERIAL_BANDS; i++) {
+            mImperialTimes[i] = 0;
+        }
+        mHasSample = false;
+    }
+
+    /**
+     * @param metric true for bands in km/hour, false for miles/hour
+     * @return number of bands, the last is for all speeds above the others
+     */
+    public static int getBandCount(boolean metric) {
+        return metric ? METRIC_BANDS : IMPERIAL_BANDS;
+    }
+
+    /**
+     * @param metric true for bands in km/hour, false for miles/hour
+     * @param band   band, from 0 for the slowest
+     * @return time spent in the band in milliseconds
+     */
+    public long getTime(boolean metric, int band) {
+        return metric ? mMetricTimes[band] : mImperialTimes[band];
+    }
+
+    /**
+     * @param metric true for bands in km/hour, false for miles/hour
+     * @return longest time spent in any band in milliseconds
+     */
+    public long getMaxTime(boolean metric) {
+        long[] times = metric ? mMetricTimes : mImperialTimes;
+        long max = 0;
+        for (long time : times) {
+            max = Math.max(max, time);
+        }
+        return max;
+    }
+
+    /**
+     * @return total time in all bands in milliseconds
+     */
+    public long getTotalTime() {
+        long total = 0;
+        for (long time : mMetricTimes) {
+            total += time;
+        }
+        return total;
+    }
+
+    /**
+     * Writes the times, the previous sample is not written
+     *
+     * @param out output to be written to
+     * @throws IOException if the output cannot be written
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        writeTimes(out, mMetricTimes);
+        writeTimes(out, mImperialTimes);
+    }
+
+    private static void writeTimes(DataOutput out, long[] times) throws IOException {
+        out.writeInt(times.length);
+        for (long time : times) {
+            out.writeLong(time);
+        }
+    }
+
+    /**
+     * Reads times written by {@link #writeTo}, replacing the times held
+     *
+     * @param in input to be read from
+     * @throws IOException if the input cannot be read or is not a speed band histogram
+     */
+    public void readFrom(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("not a speed band histogram");
+        }
+        readTimes(in, mMetricTimes);
+        readTimes(in, mImperialTimes);
+    }
+
+    private static void readTimes(DataInput in, long[] times) throws IOException {
+        if (in.readInt() != times.length) {
+            throw new IOException("speed bands do not match");
+        }
+        for (int i = 0; i < times.length; i++) {
+            times[i] = in.readLong();
+        }
+    }
+}
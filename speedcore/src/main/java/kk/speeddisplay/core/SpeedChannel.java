@@ -0,0 +1,149 @@
+package kk.speeddisplay.core;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process channel passing the latest speed and maximum speed from the service to the display,
+ * along with the sustained maximum speed.
+ * <p>
+ * Holds only the latest value, in a single lock-free slot with both speeds packed in a long,
+ * the sustained maximum, which changes rarely, is held in its own slot and set first,
+ * so a slow consumer never builds up a queue, it just takes the newest value when it is ready.
+ * The listener is signalled once when a value is published, and is not signalled again
+ * until the consumer has taken the value, so the consumer has at most one pending
+ * notification however fast the speeds are published.
+ * <p>
+ * Publishing and taking do not allocate.
+ * Any thread can publish, the value should be taken by a single consumer thread.
+ */
+public class SpeedChannel {
+
+    /**
+     * Signalled when a new value is available to be taken
+     */
+    public interface Listener {
+        /**
+         * Called on the publishing thread, must be quick, typically posts to the consumer thread
+         * which then calls {@link #take}
+         */
+        void onSpeedAvailable();
+    }
+
+    private final AtomicLong mSlot = new AtomicLong(pack(0.0F, 0.0F));
+    private final AtomicInteger mSustainedSlot = new AtomicInteger(Float.floatToRawIntBits(0.0F));
+
+    /* true from a value being published until it is taken */
+    private final AtomicBoolean mPending = new AtomicBoolean();
+
+    private volatile Listener mListener;
+
+    /* statistics, and when the latest value was published on the System.nanoTime() clock,
+     * so the time the value took to reach the consumer can be measured */
+    private final AtomicLong mPublishCount = new AtomicLong();
+    private final AtomicLong mPublishNanos = new AtomicLong();
+
+    /**
+     * Sets the listener, if a value is already waiting the listener is signalled straight away
+     *
+     * @param listener listener, or null to remove the listener
+     */
+    public void setListener(Listener listener) {
+        mListener = listener;
+        if (listener != null && mPending.get()) {
+            listener.onSpeedAvailable();
+        }
+    }
+
+    /**
+     * Publishes the latest speeds, replacing any value not yet taken
+     *
+     * @param speed             current speed in km/hour
+     * @param maxSpeed          maximum speed in km/hour
+     * @param sustainedMaxSpeed sustained maximum speed in km/hour
+     */
+    public void publish(float speed, float maxSpeed, float sustainedMaxSpeed) {
+        mSustainedSlot.set(Float.floatToRawIntBits(sustainedMaxSpeed));
+        publish(speed, maxSpeed);
+    }
+
+    /**
+     * Publishes the latest speeds, replacing any value not yet taken,
+     * the sustained maximum speed is left unchanged
+     *
+     * @param speed    current speed in km/hour
+     * @param maxSpeed maximum speed in km/hour
+     */
+    public void publish(float speed, float maxSpeed) {
+        mPublishNanos.lazySet(System.nanoTime());
+        mSlot.set(pack(speed, maxSpeed));
+        mPublishCount.incrementAndGet();
+        if (mPending.compareAndSet(false, true)) {
+            Listener listener = mListener;
+            if (listener != null) {
+                listener.onSpeedAvailable();
+            }
+        }
+    }
+
+    /**
+     * Takes the latest value, after this the listener is signalled by the next publish
+     *
+     * @return latest speeds packed in a long, unpack with {@link #speedOf} and {@link #maxSpeedOf}
+     */
+    public long take() {
+        // clear before reading, so a value published after the read signals the listener again
+        mPending.set(false);
+        return mSlot.get();
+    }
+
+    /**
+     * @return latest speeds packed in a long, without taking the value
+     */
+    public long peek() {
+        return mSlot.get();
+    }
+
+    /**
+     * @return latest sustained maximum speed in km/hour, read after {@link #take}
+     */
+    public float getSustainedMaxSpeed() {
+        return Float.intBitsToFloat(mSustainedSlot.get());
+    }
+
+    /**
+     * @return number of values published
+     */
+    public long getPublishCount() {
+        return mPublishCount.get();
+    }
+
+    /**
+     * @return time the latest value was published, from System.nanoTime(), read after {@link #take}
+     */
+    public long getPublishNanos() {
+        return mPublishNanos.get();
+    }
+
+    static long pack(float speed, float maxSpeed) {
+        return ((long) Float.floatToRawIntBits(speed) << 32)
+                | (Float.floatToRawIntBits(maxSpeed) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @param packed speeds returned by {@link #take}
+     * @return current speed in km/hour
+     */
+    public static float speedOf(long packed) {
+        return Float.intBitsToFloat((int) (packed >>> 32));
+    }
+
+    /**
+     * @param packed speeds returned by {@link #take}
+     * @return maximum speed in km/hour
+     */
+    public static float maxSpeedOf(long packed) {
+        return Float.intBitsToFloat((int) packed);
+    }
+}
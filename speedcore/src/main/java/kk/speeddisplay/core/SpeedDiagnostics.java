@@ -0,0 +1,160 @@
+package kk.speeddisplay.core;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Timings of the path from a location fix to the speed on the screen, each held in a
+ * {@link TimingHistogram}: the age of each fix when it reaches the service, the time the
+ * service takes to process a location result, the time from the service publishing a speed
+ * to the display taking it, the time from the display taking it to the speed being drawn,
+ * and the jitter of the interval between the fixes, the difference from the interval requested.
+ * The fixes missing from a gap longer than the interval requested are counted as dropped,
+ * and a fix no later than the previous one is counted as a duplicate.
+ * <p>
+ * Recording does not allocate and takes a few atomic stores, so the timings can be left
+ * enabled. Each timing is recorded by a single thread, the fix timings by the service thread and
+ * the display timings by the main thread, any thread can read them or write the report.
+ */
+public class SpeedDiagnostics {
+
+    /* timings */
+    public static final int FIX_AGE = 0;
+    public static final int LOCATION_RESULT = 1;
+    public static final int DELIVERY = 2;
+    public static final int DRAW = 3;
+    public static final int FIX_JITTER = 4;
+    public static final int TIMINGS = 5;
+
+    private static final String[] NAMES = {
+            "Fix age at callback",
+            "Location result processing",
+            "Service to display delivery",
+            "Display to draw",
+            "Fix interval jitter"
+    };
+
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99};
+
+    private final TimingHistogram[] mTimings = new TimingHistogram[TIMINGS];
+
+    /* interval between fixes requested, and the time of the last fix, on the service thread */
+    private long mExpectedIntervalNanos;
+    private long mLastFixNanos;
+
+    private final AtomicLong mFixCount = new AtomicLong();
+    private final AtomicLong mDroppedCount = new AtomicLong();
+    private final AtomicLong mDuplicateCount = new AtomicLong();
+
+    public SpeedDiagnostics() {
+        for (int i = 0; i < TIMINGS; i++) {
+            mTimings[i] = new TimingHistogram();
+        }
+    }
+
+    /**
+     * Sets the interval between fixes requested from the location source, from the service thread
+     *
+     * @param intervalMillis interval in milliseconds, 0 if not known
+     */
+    public void setExpectedInterval(long intervalMillis) {
+        mExpectedIntervalNanos = intervalMillis * 1000000L;
+    }
+
+    /**
+     * Records the age and the interval of a live fix when it reaches the service,
+     * from the service thread
+     *
+     * @param elapsedNanos time of the fix on the elapsed realtime clock
+     * @param nowNanos     time now on the same clock
+     */
+    public void onFix(long elapsedNanos, long nowNanos) {
+        if (mLastFixNanos != 0 && elapsedNanos <= mLastFixNanos) {
+            mDuplicateCount.lazySet(mDuplicateCount.get() + 1);
+            return;
+        }
+        mFixCount.lazySet(mFixCount.get() + 1);
+        mTimings[FIX_AGE].record(nowNanos - elapsedNanos);
+        long expected = mExpectedIntervalNanos;
+        if (mLastFixNanos != 0 && expected > 0) {
+            long interval = elapsedNanos - mLastFixNanos;
+            mTimings[FIX_JITTER].record(Math.abs(interval - expected));
+            // a gap of one and a half intervals or more is missing at least one fix
+            long missing = (interval + expected / 2) / expected - 1;
+            if (missing > 0) {
+                mDroppedCount.lazySet(mDroppedCount.get() + missing);
+            }
+        }
+        mLastFixNanos = elapsedNanos;
+    }
+
+    /**
+     * @param timing one of the timings, such as FIX_AGE
+     * @return histogram of the timing, recorded to by the thread the timing belongs to
+     */
+    public TimingHistogram getTiming(int timing) {
+        return mTimings[timing];
+    }
+
+    /**
+     * @param timing one of the timings, such as FIX_AGE
+     * @return name of the timing for the report
+     */
+    public static String getName(int timing) {
+        return NAMES[timing];
+    }
+
+    /**
+     * @return number of live fixes, not counting duplicates
+     */
+    public long getFixCount() {
+        return mFixCount.get();
+    }
+
+    /**
+     * @return number of fixes missing from the gaps between the fixes
+     */
+    public long getDroppedCount() {
+        return mDroppedCount.get();
+    }
+
+    /**
+     * @return number of fixes no later than the fix before them
+     */
+    public long getDuplicateCount() {
+        return mDuplicateCount.get();
+    }
+
+    /**
+     * Writes a report of the timings, the count, mean, percentiles and maximum of each,
+     * in milliseconds, with the fix counts, for the diagnostics screen and the dump file
+     *
+     * @param report  appended to
+     * @param buckets true to add the count in each bucket of each histogram
+     */
+    public void appendReport(StringBuilder report, boolean buckets) {
+        report.append(String.format(Locale.US, "Fixes %d, dropped %d, duplicate %d%n",
+                getFixCount(), getDroppedCount(), getDuplicateCount()));
+        for (int i = 0; i < TIMINGS; i++) {
+            TimingHistogram histogram = mTimings[i];
+            report.append(String.format(Locale.US, "%n%s%n  count %d, mean %.2f ms%n",
+                    NAMES[i], histogram.getCount(), histogram.getMeanMillis()));
+            report.append(" ");
+            for (double percentile : PERCENTILES) {
+                report.append(String.format(Locale.US, " p%d %.2f ms,", Math.round(percentile * 100),
+                        histogram.getPercentileMillis(percentile)));
+            }
+            report.append(String.format(Locale.US, " max %.2f ms%n", histogram.getMaxMillis()));
+            if (buckets) {
+                for (int bucket = 0; bucket < TimingHistogram.BUCKETS; bucket++) {
+                    long count = histogram.getBucketCount(bucket);
+                    if (count > 0) {
+                        report.append(String.format(Locale.US, "  %.3f-%.3f ms: %d%n",
+                                TimingHistogram.getLowerMicros(bucket) / 1000.0,
+                                TimingHistogram.getUpperMicros(bucket) / 1000.0, count));
+                    }
+                }
+            }
+        }
+    }
+}
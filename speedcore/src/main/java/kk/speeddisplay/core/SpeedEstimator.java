@@ -0,0 +1,158 @@
+package kk.speeddisplay.core;
+
+/**
+ * Estimates the speed from both the Doppler speed reported by the receiver and the speed
+ * derived from successive positions, and picks or blends them by their accuracies.
+ * <p>
+ * The positional speed is the distance from the previous fix over the elapsed time,
+ * using the equirectangular approximation with a cached cosine of the latitude,
+ * see {@link PositionTrack}.
+ * Its accuracy comes from the horizontal accuracy of the two fixes.
+ * When both speeds are available they are blended, weighted by the inverse of their variance,
+ * so a fix without a Doppler speed, or with a poor one, falls back to the positional speed.
+ * A Doppler speed which disagrees with the positional speed by more than their combined
+ * accuracies allow, such as a zero or stale speed while moving, is not used.
+ * <p>
+ * Nothing is allocated per fix. Not thread safe, all calls must be made from the same thread.
+ */
+public class SpeedEstimator {
+
+    public static final int SOURCE_NONE = 0;
+    public static final int SOURCE_DOPPLER = 1;
+    public static final int SOURCE_POSITION = 2;
+    public static final int SOURCE_BLENDED = 3;
+
+    /* accuracy in metres/sec assumed for a Doppler speed when the receiver does not report it */
+    static final float DEFAULT_DOPPLER_ACCURACY = 0.5F;
+
+    /* positional speeds are not used over gaps longer than this, in nanoseconds */
+    static final long MAX_POSITION_GAP_NANOS = 30000000000L;
+
+    /* standard deviations the Doppler and positional speeds may differ by before
+     * the Doppler speed is rejected */
+    static final double CONSISTENCY_SIGMAS = 2.5;
+
+    private final PositionTrack mTrack = new PositionTrack();
+    private long mLastNanos;
+    private float mLastAccuracy;
+
+    private float mSpeed;
+    private float mSpeedAccuracy;
+    private int mSource = SOURCE_NONE;
+
+    /* number of fixes which used each source, indexed by the SOURCE_ constants */
+    private final long[] mSourceCounts = new long[4];
+    private long mRejectedDopplerCount;
+
+    /**
+     * Estimates the speed for a new fix
+     *
+     * @param elapsedNanos  time of the fix in nanoseconds since boot, monotonic
+     * @param hasSpeed      true if the fix has a Doppler speed
+     * @param speedMps      Doppler speed in metres/sec
+     * @param speedAccuracy accuracy of the Doppler speed in metres/sec, NaN if not known
+     * @param accuracy      horizontal accuracy of the position in metres
+     * @param latitude      latitude in degrees
+     * @param longitude     longitude in degrees
+     * @return estimated speed in metres/sec, the previous estimate if the fix gives no speed,
+     * when {@link #getSource} is {@link #SOURCE_NONE}, which must not be used as the speed of this fix
+     */
+    public float estimate(long elapsedNanos, boolean hasSpeed, float speedMps, float speedAccuracy,
+                          float accuracy, double latitude, double longitude) {
+        // variances of the two speeds, infinite if not available
+        float dopplerSpeed = speedMps;
+        double dopplerVariance = Double.POSITIVE_INFINITY;
+        if (hasSpeed) {
+            float sigma = speedAccuracy > 0 ? speedAccuracy : DEFAULT_DOPPLER_ACCURACY;
+            dopplerVariance = sigma * sigma;
+        }
+
+        float positionSpeed = 0;
+        double positionVariance = Double.POSITIVE_INFINITY;
+        long elapsed = elapsedNanos - mLastNanos;
+        boolean hadPosition = mTrack.hasPosition();
+        double distance = mTrack.moveTo(latitude, longitude);
+        if (hadPosition && elapsed > 0 && elapsed <= MAX_POSITION_GAP_NANOS) {
+            double seconds = elapsed / 1e9;
+            positionSpeed = (float) (distance / seconds);
+            positionVariance = ((double) accuracy * accuracy + (double) mLastAccuracy * mLastAccuracy)
+                    / (seconds * seconds);
+        }
+        mLastNanos = elapsedNanos;
+        mLastAccuracy = accuracy;
+
+        //reject a Doppler speed which is inconsistent with the positions
+        if (positionVariance != Double.POSITIVE_INFINITY && dopplerVariance != Double.POSITIVE_INFINITY) {
+            double difference = dopplerSpeed - positionSpeed;
+            double limit = CONSISTENCY_SIGMAS * CONSISTENCY_SIGMAS * (dopplerVariance + positionVariance);
+            if (difference * difference > limit) {
+                dopplerVariance = Double.POSITIVE_INFINITY;
+                mRejectedDopplerCount++;
+            }
+        }
+
+        if (dopplerVariance == Double.POSITIVE_INFINITY && positionVariance == Double.POSITIVE_INFINITY) {
+            mSource = SOURCE_NONE;
+        } else if (positionVariance == Double.POSITIVE_INFINITY) {
+            mSource = SOURCE_DOPPLER;
+            mSpeed = dopplerSpeed;
+            mSpeedAccuracy = (float) Math.sqrt(dopplerVariance);
+        } else if (dopplerVariance == Double.POSITIVE_INFINITY) {
+            mSource = SOURCE_POSITION;
+            mSpeed = positionSpeed;
+            mSpeedAccuracy = (float) Math.sqrt(positionVariance);
+        } else {
+            mSource = SOURCE_BLENDED;
+            double dopplerWeight = positionVariance / (dopplerVariance + positionVariance);
+            mSpeed = (float) (dopplerWeight * dopplerSpeed + (1 - dopplerWeight) * positionSpeed);
+            mSpeedAccuracy = (float) Math.sqrt(dopplerVariance * positionVariance
+                    / (dopplerVariance + positionVariance));
+        }
+        mSourceCounts[mSource]++;
+        return mSpeed;
+    }
+
+    /**
+     * Clears the previous fix, the next fix can only use its Doppler speed
+     */
+    public void reset() {
+        mTrack.reset();
+        mSource = SOURCE_NONE;
+    }
+
+    /**
+     * @return latest estimated speed in metres/sec
+     */
+    public float getSpeed() {
+        return mSpeed;
+    }
+
+    /**
+     * @return accuracy of the latest estimated speed in metres/sec
+     */
+    public float getSpeedAccuracy() {
+        return mSpeedAccuracy;
+    }
+
+    /**
+     * @return source of the latest estimate, one of the SOURCE_ constants
+     */
+    public int getSource() {
+        return mSource;
+    }
+
+    /**
+     * @param source one of the SOURCE_ constants
+     * @return number of fixes whose estimate came from the source
+     */
+    public long getSourceCount(int source) {
+        return mSourceCounts[source];
+    }
+
+    /**
+     * @return number of Doppler speeds not used as they disagreed with the positions
+     */
+    public long getRejectedDopplerCount() {
+        return mRejectedDopplerCount;
+    }
+}
@@ -0,0 +1,26 @@
+package kk.speeddisplay.core;
+
+/**
+ * A smoothing stage for the speeds reported by the location provider, removes the jitter
+ * before the speed is displayed and checked against the maximum.
+ * <p>
+ * Implementations keep their state in fixed size primitive fields and arrays,
+ * nothing is allocated when a sample is filtered.
+ * Not thread safe, all calls must be made from the same thread.
+ */
+public interface SpeedFilter {
+
+    /**
+     * Filters one sample
+     *
+     * @param time     time of the sample in milliseconds
+     * @param speedMps raw speed in metres/sec
+     * @return filtered speed in metres/sec
+     */
+    float filter(long time, float speedMps);
+
+    /**
+     * Clears the filter state, the next sample starts the filter again
+     */
+    void reset();
+}
@@ -0,0 +1,49 @@
+package kk.speeddisplay.core;
+
+/**
+ * The speed filters that can be selected in the settings
+ */
+public final class SpeedFilters {
+
+    public static final int NONE = 0;
+    public static final int EMA = 1;
+    public static final int KALMAN = 2;
+    public static final int MEDIAN = 3;
+
+    private SpeedFilters() {
+    }
+
+    /**
+     * Creates a filter with its default tuning
+     *
+     * @param type one of the filter constants
+     * @return new filter, unknown types give a filter that passes the speed through
+     */
+    public static SpeedFilter create(int type) {
+        switch (type) {
+            case EMA:
+                return new EmaSpeedFilter(EmaSpeedFilter.DEFAULT_TIME_CONSTANT);
+            case KALMAN:
+                return new KalmanSpeedFilter(KalmanSpeedFilter.DEFAULT_MEASUREMENT_NOISE,
+                        KalmanSpeedFilter.DEFAULT_JERK_NOISE);
+            case MEDIAN:
+                return new MedianSpeedFilter(MedianSpeedFilter.DEFAULT_WINDOW);
+            default:
+                return new PassThrough();
+        }
+    }
+
+    /**
+     * Filter that returns the raw speed
+     */
+    static final class PassThrough implements SpeedFilter {
+        @Override
+        public float filter(long time, float speedMps) {
+            return speedMps;
+        }
+
+        @Override
+        public void reset() {
+        }
+    }
+}
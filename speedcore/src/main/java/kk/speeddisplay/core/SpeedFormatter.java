@@ -0,0 +1,140 @@
+package kk.speeddisplay.core;
+
+/**
+ * Formats speeds for display with one decimal place, in the user's preferred units.
+ * <p>
+ * Gives the same text as String.format(Locale.UK, "%1$.1f", speed), but uses integer arithmetic
+ * and writes into a reusable char array, so no objects are allocated for each speed formatted.
+ * The units are cached and only change when {@link #setMetric} is called, which should be done
+ * when the user changes the units preference.
+ * <p>
+ * Not thread safe, the char array is overwritten by each call to {@link #format}.
+ */
+public class SpeedFormatter {
+
+    /* conversion factor from kilometres/hour to miles/hour */
+    public static final float KPH_TO_MPH = .6214F;
+
+    /* enough for the sign, the digits of a long and the decimal point */
+    private static final int MAX_CHARS = 24;
+
+    private final char[] mChars = new char[MAX_CHARS];
+    private int mLength;
+
+    private final String mMetricUnits;
+    private final String mImperialUnits;
+    private boolean mMetric;
+
+    /**
+     * @param metricUnits   units displayed for metric speeds, eg "km/h"
+     * @param imperialUnits units displayed for imperial speeds, eg "mph"
+     * @param metric        true if speeds are displayed in metric units
+     */
+    public SpeedFormatter(String metricUnits, String imperialUnits, boolean metric) {
+        mMetricUnits = metricUnits;
+        mImperialUnits = imperialUnits;
+        mMetric = metric;
+    }
+
+    /**
+     * @param metric true if speeds are to be displayed in metric units
+     */
+    public void setMetric(boolean metric) {
+        mMetric = metric;
+    }
+
+    public boolean isMetric() {
+        return mMetric;
+    }
+
+    /**
+     * @return units for the speeds being displayed
+     */
+    public String getUnits() {
+        return mMetric ? mMetricUnits : mImperialUnits;
+    }
+
+    /**
+     * Speed is stored km/hour in app, converts it to the speed to be displayed
+     *
+     * @param speedKph speed in kilometres per hour
+     * @return speed in the display units
+     */
+    public float toDisplayUnits(float speedKph) {
+        return mMetric ? speedKph : speedKph * KPH_TO_MPH;
+    }
+
+    /**
+     * Formats the speed in the display units with one decimal place,
+     * the result is available from {@link #getChars()} and {@link #length()}
+     * until the next call
+     *
+     * @param speedKph speed in kilometres per hour
+     * @return number of characters written
+     */
+    public int format(float speedKph) {
+        float speed = toDisplayUnits(speedKph);
+
+        /* round half up on the tenths, as done by String.format,
+         * using double so the float value is not rounded again before the decimal rounding */
+        double value = speed;
+        boolean negative = value < 0;
+        if (negative) {
+            value = -value;
+        }
+        long tenths = (long) Math.floor(value * 10.0 + 0.5);
+
+        // write digits from the end of the buffer backwards, then move them to the start
+        int pos = MAX_CHARS;
+        mChars[--pos] = (char) ('0' + (int) (tenths % 10));
+        mChars[--pos] = '.';
+        long whole = tenths / 10;
+        do {
+            mChars[--pos] = (char) ('0' + (int) (whole % 10));
+            whole /= 10;
+        } while (whole != 0);
+        if (negative && tenths != 0) {
+            mChars[--pos] = '-';
+        }
+        mLength = MAX_CHARS - pos;
+        System.arraycopy(mChars, pos, mChars, 0, mLength);
+        return mLength;
+    }
+
+    /**
+     * Formats the speed and appends it to the builder
+     *
+     * @param builder  destination of the formatted speed
+     * @param speedKph speed in kilometres per hour
+     * @return the builder
+     */
+    public StringBuilder append(StringBuilder builder, float speedKph) {
+        format(speedKph);
+        return builder.append(mChars, 0, mLength);
+    }
+
+    /**
+     * Formats the speed as a new string, for use off the hot path
+     *
+     * @param speedKph speed in kilometres per hour
+     * @return formatted speed
+     */
+    public String formatToString(float speedKph) {
+        format(speedKph);
+        return new String(mChars, 0, mLength);
+    }
+
+    /**
+     * @return characters of the last speed formatted, starting at index 0
+     */
+    public char[] getChars() {
+        return mChars;
+    }
+
+    /**
+     * @return number of characters in the last speed formatted
+     */
+    public int length() {
+        return mLength;
+    }
+}
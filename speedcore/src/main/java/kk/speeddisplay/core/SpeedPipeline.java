@@ -0,0 +1,143 @@
+package kk.speeddisplay.core;
+
+/**
+ * The path each location fix takes from the location provider to the {@link SpeedProcessor}:
+ * the speed is estimated with the {@link SpeedEstimator}, checked by the {@link SampleGate},
+ * added to a {@link LocationBatch} and to the {@link AdaptiveRateScheduler},
+ * then the batch is processed in one pass.
+ * <p>
+ * The scheduler only sees accepted speeds, so if the fixes are rejected several times in a row,
+ * such as the balanced power fixes it asks for while stationary, it is woken to the fastest
+ * interval and high accuracy, otherwise it would never see the speed to leave the stationary state.
+ * <p>
+ * The fixes of a location result are added between {@link #begin} and {@link #end},
+ * so fixes from each {@link LocationSource} and fixes replayed from a trace,
+ * see {@link TraceReplayer}, are processed the same way, on the device or on the JVM.
+ * Nothing is allocated per fix. Not thread safe, all calls must be made from the same thread.
+ */
+public class SpeedPipeline {
+
+    /* fixes not accepted in a row before the rate scheduler is woken */
+    static final int WAKE_REJECTED_FIXES = 3;
+
+    private final SpeedProcessor mProcessor;
+    private final SpeedEstimator mEstimator;
+    private final SampleGate mGate;
+    private final AdaptiveRateScheduler mRateScheduler;
+
+    /* fixes accepted for the location result in progress */
+    private final LocationBatch mBatch = new LocationBatch();
+    private boolean mRateChanged;
+    /* fixes not accepted since the last accepted fix, over all location results */
+    private int mRejectedRun;
+
+    /**
+     * @param processor     processes the accepted speeds
+     * @param estimator     estimates the speed of each fix
+     * @param gate          rejects fixes with poor accuracy or impossible acceleration
+     * @param rateScheduler chooses the location update rate from the speeds
+     */
+    public SpeedPipeline(SpeedProcessor processor, SpeedEstimator estimator, SampleGate gate,
+                         AdaptiveRateScheduler rateScheduler) {
+        mProcessor = processor;
+        mEstimator = estimator;
+        mGate = gate;
+        mRateScheduler = rateScheduler;
+    }
+
+    /**
+     * Starts a new location result
+     */
+    public void begin() {
+        mBatch.clear();
+        mRateChanged = false;
+    }
+
+    /**
+     * Adds a fix of the location result
+     *
+     * @param elapsedNanos  time of the fix in nanoseconds, monotonic
+     * @param time          time of the fix in milliseconds since the epoch
+     * @param hasSpeed      true if the fix has a Doppler speed
+     * @param speedMps      Doppler speed in metres/sec
+     * @param speedAccuracy accuracy of the Doppler speed in metres/sec, NaN if not known
+     * @param accuracy      horizontal accuracy in metres
+     * @param latitude      latitude in degrees
+     * @param longitude     longitude in degrees
+     * @return true if the fix was accepted, false if rejected or it gives no speed
+     */
+    public boolean add(long elapsedNanos, long time, boolean hasSpeed, float speedMps, float speedAccuracy,
+                       float accuracy, double latitude, double longitude) {
+        float speed = mEstimator.estimate(elapsedNanos, hasSpeed, speedMps, speedAccuracy, accuracy,
+                latitude, longitude);
+        if (mEstimator.getSource() == SpeedEstimator.SOURCE_NONE) {
+            //no Doppler speed and no previous position, the estimate is the stale one of an earlier fix
+            return reject(elapsedNanos);
+        }
+        long elapsedMillis = elapsedNanos / 1000000L;
+        boolean positional = mEstimator.getSource() != SpeedEstimator.SOURCE_DOPPLER;
+        if (!mGate.accept(elapsedMillis, speed, mEstimator.getSpeedAccuracy(), accuracy, positional)) {
+            //do not derive the next speed from a rejected position
+            mEstimator.reset();
+            return reject(elapsedNanos);
+        }
+        mBatch.add(time, speed, accuracy, latitude, longitude);
+        mRateChanged |= mRateScheduler.update(elapsedMillis, speed);
+        mRejectedRun = 0;
+        return true;
+    }
+
+    /**
+     * Counts a fix not accepted, waking the rate scheduler after too many in a row
+     *
+     * @return false
+     */
+    private boolean reject(long elapsedNanos) {
+        mRejectedRun++;
+        if (mRejectedRun >= WAKE_REJECTED_FIXES) {
+            mRateChanged |= mRateScheduler.wake(elapsedNanos / 1000000L);
+        }
+        return false;
+    }
+
+    /**
+     * Adds a fix read from a trace
+     *
+     * @param fix fix to be added
+     * @return true if the fix was accepted
+     */
+    public boolean add(TraceFix fix) {
+        return add(fix.getElapsedNanos(), fix.getTime(), fix.hasSpeed(), fix.getSpeed(), fix.getSpeedAccuracy(),
+                fix.getAccuracy(), fix.getLatitude(), fix.getLongitude());
+    }
+
+    /**
+     * Ends the location result, processing the accepted fixes as one batch
+     *
+     * @return true if the speed changed and the processor's listener was advised
+     */
+    public boolean end() {
+        return mProcessor.processBatch(mBatch);
+    }
+
+    /**
+     * @return number of fixes of the location result accepted so far
+     */
+    public int getAcceptedCount() {
+        return mBatch.size();
+    }
+
+    /**
+     * @return true if the fixes of the location result changed the update rate
+     */
+    public boolean isRateChanged() {
+        return mRateChanged;
+    }
+
+    /**
+     * @return speed processor the fixes are processed by
+     */
+    public SpeedProcessor getProcessor() {
+        return mProcessor;
+    }
+}
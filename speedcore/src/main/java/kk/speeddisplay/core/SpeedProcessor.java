@@ -0,0 +1,325 @@
+package kk.speeddisplay.core;
+
+/**
+ * Speed processing engine used by the speed service.
+ * <p>
+ * Takes location samples as primitives, smooths the speed with the selected {@link SpeedFilter},
+ * converts the speed from metres/sec to km/hour,
+ * checks if the speed has changed and if a new maximum speed has been reached,
+ * and advises the listener. Also totals the distance travelled between the samples,
+ * which can be restored after a restart with {@link #restoreSession}, and tracks the highest speed held for a window of time, with a {@link SustainedSpeedTracker}.
+ * The speed of each sample can also be added to {@link TripStatistics} and to a
+ * {@link SpeedBandHistogram}.
+ * <p>
+ * Samples delivered together by the location provider can be processed as a batch, in one
+ * pass over the batch, the listener is then advised once for the whole batch, with the
+ * maximum speed of any sample in the batch and the speed of the last sample.
+ * <p>
+ * No objects are allocated when a sample is processed, so it can be used on the
+ * location hot path on the device, and can be run with millions of samples on the JVM.
+ * Not thread safe, all calls must be made from the same thread.
+ */
+public class SpeedProcessor {
+
+    /**
+     * Receives the results of processing the samples
+     */
+    public interface Listener {
+        /**
+         * Called when a sample exceeds the previous maximum speed,
+         * called before {@link #onSpeedChanged}
+         *
+         * @param maxSpeed new maximum speed in km/hour
+         */
+        void onNewMaxSpeed(float maxSpeed);
+
+        /**
+         * Called when the speed is different to the previous sample
+         *
+         * @param speed    current speed in km/hour
+         * @param maxSpeed maximum speed in km/hour
+         */
+        void onSpeedChanged(float speed, float maxSpeed);
+    }
+
+    /* default time a speed must be held for the sustained maximum, in milliseconds */
+    public static final long DEFAULT_SUSTAINED_WINDOW = 5000L;
+
+    /* speed in metres/sec at or above which the time between samples counts as moving */
+    static final float MOVING_SPEED = 0.5F;
+    /* longest time between samples counted as moving, a longer gap is a loss of signal */
+    static final long MAX_MOVING_GAP = 30000L;
+
+    private final Listener mListener;
+    private final SustainedSpeedTracker mSustained = new SustainedSpeedTracker(DEFAULT_SUSTAINED_WINDOW);
+    private SpeedFilter mFilter = SpeedFilters.create(SpeedFilters.NONE);
+    private TripStatistics mStatistics;
+    private SpeedBandHistogram mSpeedBands;
+
+    /* speeds in km/hour */
+    private float mSavedSpeed;
+    private float mMaxSpeed;
+
+    /* last sample processed */
+    private long mLastTime;
+    private float mLastAccuracy;
+    private double mLastLatitude;
+    private double mLastLongitude;
+
+    private long mSampleCount;
+    private long mBatchCount;
+
+    /* distance travelled in metres, the times moving and stopped are totalled by the trip statistics */
+    private final PositionTrack mTrack = new PositionTrack();
+    private double mDistance;
+
+    /**
+     * @param listener receives speed changes and new maximum speeds
+     */
+    public SpeedProcessor(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Process one location sample
+     *
+     * @param time      time of the sample in milliseconds
+     * @param speedMps  speed in metres/sec
+     * @param accuracy  horizontal accuracy in metres
+     * @param latitude  latitude in degrees
+     * @param longitude longitude in degrees
+     * @return true if the speed changed and the listener was advised
+     */
+    public boolean process(long time, float speedMps, float accuracy,
+                           double latitude, double longitude) {
+        addSample(time, accuracy, latitude, longitude);
+        float speed = mpsToKph(mFilter.filter(time, speedMps));
+        mSustained.update(time, speed);
+        if (mStatistics != null) {
+            mStatistics.add(time, speed);
+        }
+        if (mSpeedBands != null) {
+            mSpeedBands.add(time, speed);
+        }
+        return advise(speed, 0.0F);
+    }
+
+    /**
+     * Process a batch of location samples in one pass,
+     * the listener is advised at most once for the batch.
+     * The maximum speed is exact, it is the maximum of every sample in the batch.
+     *
+     * @param batch samples in time order
+     * @return true if the speed changed and the listener was advised
+     */
+    public boolean processBatch(LocationBatch batch) {
+        int size = batch.size();
+        if (size == 0) {
+            return false;
+        }
+        mBatchCount++;
+        float batchMaxSpeedMps = 0.0F;
+        float speedMps = 0.0F;
+        for (int i = 0; i < size; i++) {
+            long time = batch.getTime(i);
+            addSample(time, batch.getAccuracy(i), batch.getLatitude(i), batch.getLongitude(i));
+            speedMps = mFilter.filter(time, batch.getSpeed(i));
+            batchMaxSpeedMps = Math.max(batchMaxSpeedMps, speedMps);
+            float speed = mpsToKph(speedMps);
+            mSustained.update(time, speed);
+            if (mStatistics != null) {
+                mStatistics.add(time, speed);
+            }
+            if (mSpeedBands != null) {
+                mSpeedBands.add(time, speed);
+            }
+        }
+        return advise(mpsToKph(speedMps), mpsToKph(batchMaxSpeedMps));
+    }
+
+    /**
+     * Records the position of a sample and adds the distance from the previous sample
+     */
+    private void addSample(long time, float accuracy, double latitude, double longitude) {
+        mDistance += mTrack.moveTo(latitude, longitude);
+        mSampleCount++;
+        mLastTime = time;
+        mLastAccuracy = accuracy;
+        mLastLatitude = latitude;
+        mLastLongitude = longitude;
+    }
+
+    /**
+     * Advises the listener of a new maximum speed and of a change in speed
+     *
+     * @param speed         latest speed in km/hour
+     * @param batchMaxSpeed highest speed in km/hour in the batch, 0 for a single sample
+     * @return true if the speed changed and the listener was advised
+     */
+    private boolean advise(float speed, float batchMaxSpeed) {
+        //check if previous max speed has been exceeded
+        float highest = Math.max(speed, batchMaxSpeed);
+        boolean newMax = highest > mMaxSpeed;
+        if (newMax) {
+            mMaxSpeed = highest;
+            mListener.onNewMaxSpeed(highest);
+        }
+        //check if speed has changed, only process if there has been a change
+        if (mSavedSpeed == speed && !newMax) {
+            return false;
+        }
+        mSavedSpeed = speed;
+        mListener.onSpeedChanged(mSavedSpeed, mMaxSpeed);
+        return true;
+    }
+
+    /**
+     * Sets the filter used to smooth the speeds, the filter is reset
+     *
+     * @param filter speed filter
+     */
+    public void setFilter(SpeedFilter filter) {
+        filter.reset();
+        mFilter = filter;
+    }
+
+    /**
+     * Sets the statistics each processed speed is added to
+     *
+     * @param statistics trip statistics, or null for none
+     */
+    public void setStatistics(TripStatistics statistics) {
+        mStatistics = statistics;
+    }
+
+    /**
+     * Sets the histogram the time at each processed speed is added to
+     *
+     * @param speedBands time in speed band histogram, or null for none
+     */
+    public void setSpeedBands(SpeedBandHistogram speedBands) {
+        mSpeedBands = speedBands;
+    }
+
+    /**
+     * Converts speed from metres/sec to km/hour
+     *
+     * @param speedMps speed in metres/sec
+     * @return speed in km/hour
+     */
+    public static float mpsToKph(float speedMps) {
+        return speedMps * 3600F / 1000F;
+    }
+
+    /**
+     * Sets the maximum speed, used to restore the saved maximum on startup
+     *
+     * @param maxSpeed maximum speed in km/hour
+     */
+    public void setMaxSpeed(float maxSpeed) {
+        mMaxSpeed = maxSpeed;
+    }
+
+    /**
+     * Clears the maximum speed and the sustained maximum speed, does not advise the listener
+     */
+    public void resetMaxSpeed() {
+        mMaxSpeed = 0.0F;
+        mSustained.resetSustainedMaxSpeed();
+    }
+
+    /**
+     * Sets the sustained maximum speed, used to restore the saved value on startup
+     *
+     * @param sustainedMaxSpeed sustained maximum speed in km/hour
+     */
+    public void setSustainedMaxSpeed(float sustainedMaxSpeed) {
+        mSustained.setSustainedMaxSpeed(sustainedMaxSpeed);
+    }
+
+    /**
+     * Sets the time a speed must be held for the sustained maximum
+     *
+     * @param windowMillis window in milliseconds
+     */
+    public void setSustainedWindow(long windowMillis) {
+        mSustained.setWindow(windowMillis);
+    }
+
+    /**
+     * @return highest speed in km/hour held for the sustained window
+     */
+    public float getSustainedMaxSpeed() {
+        return mSustained.getSustainedMaxSpeed();
+    }
+
+    /**
+     * @return latest speed in km/hour
+     */
+    public float getSpeed() {
+        return mSavedSpeed;
+    }
+
+    /**
+     * @return maximum speed in km/hour
+     */
+    public float getMaxSpeed() {
+        return mMaxSpeed;
+    }
+
+    public long getLastTime() {
+        return mLastTime;
+    }
+
+    public float getLastAccuracy() {
+        return mLastAccuracy;
+    }
+
+    public double getLastLatitude() {
+        return mLastLatitude;
+    }
+
+    public double getLastLongitude() {
+        return mLastLongitude;
+    }
+
+    /**
+     * @return number of samples processed
+     */
+    public long getSampleCount() {
+        return mSampleCount;
+    }
+
+    /**
+     * @return number of batches processed
+     */
+    public long getBatchCount() {
+        return mBatchCount;
+    }
+
+    /**
+     * @return distance travelled between the samples in metres
+     */
+    public double getDistance() {
+        return mDistance;
+    }
+
+    /**
+     * Restores the state of a session interrupted by a restart, so the distance carries on
+     * from the last sample processed before the restart, the trip statistics are restored separately,
+     * see {@link TripStatistics#restore}
+     *
+     * @param distance  distance travelled in metres
+     * @param lastTime  time of the last sample in milliseconds
+     * @param latitude  latitude of the last sample in degrees
+     * @param longitude longitude of the last sample in degrees
+     */
+    public void restoreSession(double distance, long lastTime, double latitude, double longitude) {
+        mDistance = distance;
+        mLastTime = lastTime;
+        mLastLatitude = latitude;
+        mLastLongitude = longitude;
+        mTrack.reset();
+        mTrack.moveTo(latitude, longitude);
+    }
+}
@@ -0,0 +1,230 @@
+package kk.speeddisplay.core;
+
+/**
+ * The records the service keeps from trip to trip: the maximum speed, the sustained maximum speed
+ * and the time in each speed band over all trips, and when they are saved.
+ * <p>
+ * The maximum speeds are saved through {@link MaxSpeedStore}s, which coalesce the writes,
+ * the speed band totals, the totals loaded plus the time of this trip, at most once per save interval.
+ * While the fixes are not live, such as a trace being replayed, the records are only kept
+ * in memory and nothing is saved, so a replay cannot change the user's records.
+ * <p>
+ * The time passed in can be from any clock, as long as it is the same clock for all calls.
+ * Not thread safe, all calls must be made from the same thread.
+ */
+public class SpeedRecords {
+
+    /**
+     * Saves the records to storage
+     */
+    public interface Saver {
+        /**
+         * @param maxSpeed maximum speed to be saved
+         */
+        void saveMaxSpeed(float maxSpeed);
+
+        /**
+         * @param sustainedMaxSpeed sustained maximum speed to be saved
+         */
+        void saveSustainedMaxSpeed(float sustainedMaxSpeed);
+
+        /**
+         * @param totals time in each speed band over all trips, only valid during the call
+         */
+        void saveSpeedBands(SpeedBandHistogram totals);
+    }
+
+    private final Saver mSaver;
+    private final MaxSpeedStore mMaxSpeedStore;
+    private final MaxSpeedStore mSustainedMaxSpeedStore;
+    private final long mBandsSaveIntervalMillis;
+
+    /* mTripBands from each speed processed, added by the speed processor, mStoredBands the totals
+     * over all trips loaded from storage, and mSavedBands reused to combine the two for saving */
+    private final SpeedBandHistogram mTripBands;
+    private final SpeedBandHistogram mStoredBands = new SpeedBandHistogram();
+    private final SpeedBandHistogram mSavedBands = new SpeedBandHistogram();
+    private long mBandsSaveTime;
+
+    private boolean mLive = true;
+    /* latest sustained maximum speed, live or not */
+    private float mSustainedMaxSpeed;
+
+    /**
+     * @param saver                   saves the records
+     * @param flushIntervalMillis     minimum time between writes of coalesced maximum speeds
+     * @param bandsSaveIntervalMillis minimum time between saves of the speed band totals
+     * @param maxSpeed                maximum speed already in storage
+     * @param sustainedMaxSpeed       sustained maximum speed already in storage
+     * @param tripBands               time in each speed band of this trip, added to by the speed processor
+     */
+    public SpeedRecords(final Saver saver, long flushIntervalMillis, long bandsSaveIntervalMillis,
+                        float maxSpeed, float sustainedMaxSpeed, SpeedBandHistogram tripBands) {
+        mSaver = saver;
+        mMaxSpeedStore = new MaxSpeedStore(new MaxSpeedStore.Writer() {
+            @Override
+            public void write(float maxSpeed) {
+                saver.saveMaxSpeed(maxSpeed);
+            }
+        }, flushIntervalMillis, maxSpeed);
+        mSustainedMaxSpeedStore = new MaxSpeedStore(new MaxSpeedStore.Writer() {
+            @Override
+            public void write(float maxSpeed) {
+                saver.saveSustainedMaxSpeed(maxSpeed);
+            }
+        }, flushIntervalMillis, sustainedMaxSpeed);
+        mBandsSaveIntervalMillis = bandsSaveIntervalMillis;
+        mTripBands = tripBands;
+        mSustainedMaxSpeed = sustainedMaxSpeed;
+    }
+
+    /**
+     * @return speed band totals over all trips, to be loaded from storage before the first save
+     */
+    public SpeedBandHistogram getStoredSpeedBands() {
+        return mStoredBands;
+    }
+
+    /**
+     * Stops saving the records, for fixes which are not live, the records already saved are kept,
+     * and the maximum speeds held but not yet written are dropped
+     *
+     * @param live false if the fixes are not live
+     */
+    public void setLive(boolean live) {
+        mLive = live;
+    }
+
+    /**
+     * @return true if the records are saved
+     */
+    public boolean isLive() {
+        return mLive;
+    }
+
+    /**
+     * Records a new maximum speed
+     *
+     * @param maxSpeed new maximum speed
+     * @param now      current time in milliseconds
+     * @return true if written or not to be saved, false if held until the next flush,
+     * see {@link #getFlushDelay}
+     */
+    public boolean updateMaxSpeed(float maxSpeed, long now) {
+        return !mLive || mMaxSpeedStore.update(maxSpeed, now);
+    }
+
+    /**
+     * Records the sustained maximum speed if it has changed
+     *
+     * @param sustainedMaxSpeed latest sustained maximum speed
+     * @param now               current time in milliseconds
+     * @return true if it has changed
+     */
+    public boolean updateSustainedMaxSpeed(float sustainedMaxSpeed, long now) {
+        if (sustainedMaxSpeed == mSustainedMaxSpeed) {
+            return false;
+        }
+        mSustainedMaxSpeed = sustainedMaxSpeed;
+        if (mLive) {
+            mSustainedMaxSpeedStore.update(sustainedMaxSpeed, now);
+        }
+        return true;
+    }
+
+    /**
+     * Sets both maximum speeds and writes them straight away, used when the user resets the maximum
+     *
+     * @param maxSpeed          maximum speed
+     * @param sustainedMaxSpeed sustained maximum speed
+     * @param now               current time in milliseconds
+     */
+    public void reset(float maxSpeed, float sustainedMaxSpeed, long now) {
+        mSustainedMaxSpeed = sustainedMaxSpeed;
+        if (mLive) {
+            mMaxSpeedStore.set(maxSpeed, now);
+            mSustainedMaxSpeedStore.set(sustainedMaxSpeed, now);
+        }
+    }
+
+    /**
+     * Writes the maximum speed straight away if it is held, called when the peak has passed
+     *
+     * @param now current time in milliseconds
+     */
+    public void flushMaxSpeed(long now) {
+        if (mLive) {
+            mMaxSpeedStore.flush(now);
+        }
+    }
+
+    /**
+     * Writes both maximum speeds if they are held
+     *
+     * @param now current time in milliseconds
+     */
+    public void flushMaxSpeeds(long now) {
+        if (mLive) {
+            mMaxSpeedStore.flush(now);
+            mSustainedMaxSpeedStore.flush(now);
+        }
+    }
+
+    /**
+     * @param now current time in milliseconds
+     * @return milliseconds until a maximum speed held is due to be written, or -1 if nothing is held
+     */
+    public long getFlushDelay(long now) {
+        if (!mLive) {
+            return -1;
+        }
+        long delay = mMaxSpeedStore.getFlushDelay(now);
+        long sustainedDelay = mSustainedMaxSpeedStore.getFlushDelay(now);
+        if (delay < 0 || (sustainedDelay >= 0 && sustainedDelay < delay)) {
+            return sustainedDelay;
+        }
+        return delay;
+    }
+
+    /**
+     * Saves the speed band totals if the save interval has passed since they were last saved
+     *
+     * @param now current time in milliseconds
+     */
+    public void saveSpeedBandsIfDue(long now) {
+        if (now - mBandsSaveTime >= mBandsSaveIntervalMillis) {
+            saveSpeedBands(now);
+        }
+    }
+
+    /**
+     * Saves the speed band totals, the totals loaded plus the time of this trip
+     *
+     * @param now current time in milliseconds
+     */
+    public void saveSpeedBands(long now) {
+        mBandsSaveTime = now;
+        if (!mLive) {
+            return;
+        }
+        mSavedBands.copyFrom(mStoredBands);
+        mSavedBands.merge(mTripBands);
+        mSaver.saveSpeedBands(mSavedBands);
+    }
+
+    /**
+     * Starts the save interval of the speed band totals, called when they are loaded
+     *
+     * @param now current time in milliseconds
+     */
+    public void setSpeedBandsLoaded(long now) {
+        mBandsSaveTime = now;
+    }
+
+    /**
+     * @return number of maximum speed writes saved by coalescing
+     */
+    public long getSavedWriteCount() {
+        return mMaxSpeedStore.getSavedWriteCount();
+    }
+}
@@ -0,0 +1,128 @@
+package kk.speeddisplay.core;
+
+import java.util.Locale;
+
+/**
+ * Measures the start of the app, from the start of the process to the first speed on the screen,
+ * which may be 0 or the speed of the last known fix, see {@link WarmStart}, and to the first
+ * speed from a live fix on the screen, which is compared with a target.
+ * <p>
+ * The service says when it sends the speed of the last fix and the first real speed, before
+ * publishing them, and the main activity calls {@link #onFrame} each frame it displays speeds,
+ * so a speed is timed to within a frame of being drawn. Only the first start of the process is
+ * measured. The service and the main activity may call from different threads, one each.
+ */
+public class StartupTimer {
+
+    /* time not yet measured */
+    public static final long NOT_YET = -1;
+
+    private final long mStartMillis;
+    private final long mTargetMillis;
+
+    /* set by the service */
+    private volatile boolean mLastFixSent;
+    private volatile boolean mRealSpeedSent;
+
+    /* set by the main activity */
+    private volatile long mFirstSpeedMillis = NOT_YET;
+    private volatile long mRealSpeedMillis = NOT_YET;
+    private volatile boolean mLastFixShown;
+
+    /**
+     * @param startMillis  time the process started, in milliseconds on the clock given to {@link #onFrame}
+     * @param targetMillis longest time from the start of the process to the first real speed on the screen
+     */
+    public StartupTimer(long startMillis, long targetMillis) {
+        mStartMillis = startMillis;
+        mTargetMillis = targetMillis;
+    }
+
+    /**
+     * Called by the service before it publishes the speed of the last known fix
+     */
+    public void onLastFixSent() {
+        mLastFixSent = true;
+    }
+
+    /**
+     * Called by the service before it publishes the first speed from a fix
+     */
+    public void onRealSpeedSent() {
+        mRealSpeedSent = true;
+    }
+
+    /**
+     * Called by the main activity on each frame it displays speeds
+     *
+     * @param nowMillis time of the frame in milliseconds
+     * @return true if this is the frame showing the first real speed
+     */
+    public boolean onFrame(long nowMillis) {
+        if (mRealSpeedMillis != NOT_YET) {
+            return false;
+        }
+        if (mFirstSpeedMillis == NOT_YET) {
+            mFirstSpeedMillis = nowMillis - mStartMillis;
+        }
+        if (mRealSpeedSent) {
+            mRealSpeedMillis = nowMillis - mStartMillis;
+            return true;
+        }
+        if (mLastFixSent) {
+            mLastFixShown = true;
+        }
+        return false;
+    }
+
+    /**
+     * @return time in milliseconds from the start of the process to the first speed on the screen,
+     * {@link #NOT_YET} if none has been shown
+     */
+    public long getFirstSpeedMillis() {
+        return mFirstSpeedMillis;
+    }
+
+    /**
+     * @return time in milliseconds from the start of the process to the first real speed on the screen,
+     * {@link #NOT_YET} if none has been shown
+     */
+    public long getRealSpeedMillis() {
+        return mRealSpeedMillis;
+    }
+
+    /**
+     * @return true if the speed of the last known fix was shown before the first real speed
+     */
+    public boolean isLastFixShown() {
+        return mLastFixShown;
+    }
+
+    public long getTargetMillis() {
+        return mTargetMillis;
+    }
+
+    /**
+     * @return true if the first real speed has been shown within the target
+     */
+    public boolean isWithinTarget() {
+        return mRealSpeedMillis != NOT_YET && mRealSpeedMillis <= mTargetMillis;
+    }
+
+    /**
+     * Appends the startup times, as text, one a line
+     *
+     * @param report appended to
+     */
+    public void appendReport(StringBuilder report) {
+        report.append(String.format(Locale.US, "Startup%n  first speed %s, last fix shown %b%n",
+                format(mFirstSpeedMillis), mLastFixShown));
+        report.append(String.format(Locale.US, "  first real speed %s, target %d ms%s%n",
+                format(mRealSpeedMillis), mTargetMillis,
+                mRealSpeedMillis == NOT_YET ? "" : isWithinTarget() ? ", met" : ", missed"));
+    }
+
+    private static String format(long millis) {
+        return millis == NOT_YET ? "-" : millis + " ms";
+    }
+}
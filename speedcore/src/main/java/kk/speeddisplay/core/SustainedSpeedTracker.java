@@ -0,0 +1,112 @@
+package kk.speeddisplay.core;
+
+/**
+ * Tracks the highest speed held for a window of time, the sustained maximum,
+ * as well as the highest single speed.
+ * <p>
+ * The speed held over the window is the minimum speed in the window, kept with a sliding
+ * window minimum {@link MonotonicDeque}, the sustained maximum is the highest of these.
+ * A speed only counts as held once the samples cover the whole window, so a gap in the samples
+ * longer than the window starts the window again.
+ * O(1) amortised per sample. Not thread safe.
+ */
+public class SustainedSpeedTracker {
+
+    private final MonotonicDeque mWindowMinimum = new MonotonicDeque(false);
+    private long mWindowMillis;
+
+    /* time of the first sample since the window was started */
+    private boolean mStarted;
+    private long mStartTime;
+    private long mLastTime;
+
+    private float mHeldSpeed;
+    private float mSustainedMaxSpeed;
+
+    /**
+     * @param windowMillis time a speed must be held for in milliseconds
+     */
+    public SustainedSpeedTracker(long windowMillis) {
+        mWindowMillis = windowMillis;
+    }
+
+    /**
+     * Adds a speed
+     *
+     * @param time  time of the speed in milliseconds
+     * @param speed speed, in any units
+     * @return true if the sustained maximum increased
+     */
+    public boolean update(long time, float speed) {
+        if (!mStarted || time - mLastTime > mWindowMillis || time < mLastTime) {
+            restart(time);
+        }
+        mLastTime = time;
+        mWindowMinimum.push(time, speed);
+        mWindowMinimum.removeBefore(time - mWindowMillis);
+
+        if (time - mStartTime < mWindowMillis) {
+            mHeldSpeed = 0.0F;
+            return false;
+        }
+        mHeldSpeed = mWindowMinimum.peek();
+        if (mHeldSpeed > mSustainedMaxSpeed) {
+            mSustainedMaxSpeed = mHeldSpeed;
+            return true;
+        }
+        return false;
+    }
+
+    private void restart(long time) {
+        mStarted = true;
+        mStartTime = time;
+        mWindowMinimum.clear();
+    }
+
+    /**
+     * Changes the window, the window is started again
+     *
+     * @param windowMillis time a speed must be held for in milliseconds
+     */
+    public void setWindow(long windowMillis) {
+        mWindowMillis = windowMillis;
+        mStarted = false;
+    }
+
+    /**
+     * @return time a speed must be held for in milliseconds
+     */
+    public long getWindow() {
+        return mWindowMillis;
+    }
+
+    /**
+     * @return speed held over the latest window, 0 until the samples cover the window
+     */
+    public float getHeldSpeed() {
+        return mHeldSpeed;
+    }
+
+    /**
+     * @return highest speed held for the window
+     */
+    public float getSustainedMaxSpeed() {
+        return mSustainedMaxSpeed;
+    }
+
+    /**
+     * Sets the sustained maximum, used to restore the saved value on startup
+     *
+     * @param sustainedMaxSpeed sustained maximum speed
+     */
+    public void setSustainedMaxSpeed(float sustainedMaxSpeed) {
+        mSustainedMaxSpeed = sustainedMaxSpeed;
+    }
+
+    /**
+     * Clears the sustained maximum
+     */
+    public void resetSustainedMaxSpeed() {
+        mSustainedMaxSpeed = 0.0F;
+    }
+}
@@ -0,0 +1,153 @@
+package kk.speeddisplay.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations, in a fixed number of buckets of microseconds, for timing the
+ * hot path cheaply enough to be left enabled.
+ * <p>
+ * The buckets are log-linear: one per microsecond below 8 microseconds, then 8 buckets for each
+ * power of two, so any duration is held to within an eighth, about 12%, up to 2^36 microseconds,
+ * about 19 hours, longer durations go in the last bucket.
+ * Recording takes constant time and does not allocate, the bucket is found from the leading
+ * zeros of the duration. Only one thread can record, any thread can read, the counts are
+ * held in atomics so a reader never sees a torn count, though it can see a recording
+ * part way through, which is fine for diagnostics.
+ */
+public class TimingHistogram {
+
+    /* sub-buckets for each power of two */
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    /* highest power of two of microseconds with its own buckets */
+    private static final int MAX_EXPONENT = 36;
+    public static final int BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - SUB_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mTotalMicros = new AtomicLong();
+    private final AtomicLong mMaxMicros = new AtomicLong();
+
+    /**
+     * Records a duration, from the recording thread
+     *
+     * @param nanos duration in nanoseconds, a negative duration, from a time on a different clock,
+     *              is recorded as 0
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos) / 1000L;
+        int bucket = bucket(micros);
+        // a single writer, so a plain increment published with an ordered store is enough
+        mCounts.lazySet(bucket, mCounts.get(bucket) + 1);
+        mTotalMicros.lazySet(mTotalMicros.get() + micros);
+        if (micros > mMaxMicros.get()) {
+            mMaxMicros.lazySet(micros);
+        }
+        mCount.lazySet(mCount.get() + 1);
+    }
+
+    /**
+     * Forgets all the durations, from the recording thread
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            mCounts.lazySet(i, 0);
+        }
+        mTotalMicros.lazySet(0);
+        mMaxMicros.lazySet(0);
+        mCount.lazySet(0);
+    }
+
+    static int bucket(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int sub = (int) (micros >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (exponent - SUB_BITS) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @param bucket bucket, from 0 to BUCKETS - 1
+     * @return shortest duration in the bucket in microseconds
+     */
+    public static long getLowerMicros(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BITS;
+        int sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+    }
+
+    /**
+     * @param bucket bucket, from 0 to BUCKETS - 1
+     * @return duration in microseconds the bucket holds durations below,
+     * the last bucket also holds all longer durations
+     */
+    public static long getUpperMicros(int bucket) {
+        return bucket == BUCKETS - 1 ? 1L << (MAX_EXPONENT + 1) : getLowerMicros(bucket + 1);
+    }
+
+    /**
+     * @param bucket bucket, from 0 to BUCKETS - 1
+     * @return number of durations recorded in the bucket
+     */
+    public long getBucketCount(int bucket) {
+        return mCounts.get(bucket);
+    }
+
+    /**
+     * @return number of durations recorded
+     */
+    public long getCount() {
+        return mCount.get();
+    }
+
+    /**
+     * @return mean duration in milliseconds, 0 if none recorded
+     */
+    public double getMeanMillis() {
+        long count = mCount.get();
+        return count == 0 ? 0 : mTotalMicros.get() / 1000.0 / count;
+    }
+
+    /**
+     * @return longest duration in milliseconds
+     */
+    public double getMaxMillis() {
+        return mMaxMicros.get() / 1000.0;
+    }
+
+    /**
+     * Estimates a percentile from the buckets, as the middle of the bucket it falls in,
+     * to within the width of a bucket, and no more than the longest duration
+     *
+     * @param fraction percentile as a fraction, such as 0.99
+     * @return duration in milliseconds, 0 if none recorded
+     */
+    public double getPercentileMillis(double fraction) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += mCounts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += mCounts.get(i);
+            if (seen >= rank) {
+                long lower = getLowerMicros(i);
+                long middle = lower + (getUpperMicros(i) - lower) / 2;
+                return Math.min(middle, mMaxMicros.get()) / 1000.0;
+            }
+        }
+        return getMaxMillis();
+    }
+}
@@ -0,0 +1,109 @@
+package kk.speeddisplay.core;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A trace held in memory as primitive arrays, one array per field, so a long trace can be
+ * parsed once and replayed many times, by regression tests and benchmarks,
+ * without the replay being slowed by the parsing.
+ */
+public class Trace {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private long[] mTimes = new long[INITIAL_CAPACITY];
+    private double[] mLatitudes = new double[INITIAL_CAPACITY];
+    private double[] mLongitudes = new double[INITIAL_CAPACITY];
+    /* NaN if the fix has no Doppler speed */
+    private float[] mSpeeds = new float[INITIAL_CAPACITY];
+    private float[] mSpeedAccuracies = new float[INITIAL_CAPACITY];
+    private float[] mAccuracies = new float[INITIAL_CAPACITY];
+    private int mSize;
+
+    /**
+     * Reads a whole trace into memory
+     *
+     * @param reader trace to be read, not closed
+     * @return the fixes of the trace
+     * @throws IOException if the trace cannot be read
+     */
+    public static Trace load(TraceReader reader) throws IOException {
+        Trace trace = new Trace();
+        TraceFix fix = new TraceFix();
+        while (reader.next(fix)) {
+            trace.add(fix);
+        }
+        return trace;
+    }
+
+    /**
+     * Adds a fix to the end of the trace
+     *
+     * @param fix fix to be added
+     */
+    public void add(TraceFix fix) {
+        if (mSize == mTimes.length) {
+            grow();
+        }
+        mTimes[mSize] = fix.getTime();
+        mLatitudes[mSize] = fix.getLatitude();
+        mLongitudes[mSize] = fix.getLongitude();
+        mSpeeds[mSize] = fix.hasSpeed() ? fix.getSpeed() : Float.NaN;
+        mSpeedAccuracies[mSize] = fix.getSpeedAccuracy();
+        mAccuracies[mSize] = fix.getAccuracy();
+        mSize++;
+    }
+
+    private void grow() {
+        int capacity = mTimes.length * 2;
+        mTimes = Arrays.copyOf(mTimes, capacity);
+        mLatitudes = Arrays.copyOf(mLatitudes, capacity);
+        mLongitudes = Arrays.copyOf(mLongitudes, capacity);
+        mSpeeds = Arrays.copyOf(mSpeeds, capacity);
+        mSpeedAccuracies = Arrays.copyOf(mSpeedAccuracies, capacity);
+        mAccuracies = Arrays.copyOf(mAccuracies, capacity);
+    }
+
+    /**
+     * @return number of fixes in the trace
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return time from the first fix to the last in milliseconds
+     */
+    public long getDuration() {
+        return mSize == 0 ? 0 : mTimes[mSize - 1] - mTimes[0];
+    }
+
+    /**
+     * @return a reader of the fixes from the start of the trace, reading does not allocate
+     */
+    public TraceReader newReader() {
+        return new TraceReader() {
+            private int mIndex;
+
+            @Override
+            public boolean next(TraceFix fix) {
+                if (mIndex >= mSize) {
+                    return false;
+                }
+                int i = mIndex++;
+                fix.set(mTimes[i], mLatitudes[i], mLongitudes[i]);
+                if (!Float.isNaN(mSpeeds[i])) {
+                    fix.setSpeed(mSpeeds[i]);
+                }
+                fix.setSpeedAccuracy(mSpeedAccuracies[i]);
+                fix.setAccuracy(mAccuracies[i]);
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
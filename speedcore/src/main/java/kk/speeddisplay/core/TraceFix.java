@@ -0,0 +1,114 @@
+package kk.speeddisplay.core;
+
+/**
+ * A location fix read from a trace by a {@link TraceReader}, holding the fields a location
+ * from the location provider has. A reader fills in the same fix for each fix it reads,
+ * so reading a trace does not allocate a fix per location.
+ * <p>
+ * Fields the trace does not have are given the values a location without them has:
+ * no Doppler speed, speed accuracy not known and {@link #DEFAULT_ACCURACY}.
+ */
+public class TraceFix {
+
+    /* horizontal accuracy in metres used when the trace has none */
+    public static final float DEFAULT_ACCURACY = 5.0F;
+    /* horizontal accuracy in metres for each unit of horizontal dilution of precision */
+    static final float HDOP_ACCURACY = 5.0F;
+
+    private long mTime;
+    private long mElapsedNanos;
+    private double mLatitude;
+    private double mLongitude;
+    private boolean mHasSpeed;
+    private float mSpeed;
+    private float mSpeedAccuracy;
+    private float mAccuracy;
+
+    /**
+     * Sets the position and time and clears the other fields
+     */
+    void set(long time, double latitude, double longitude) {
+        mTime = time;
+        mElapsedNanos = 0;
+        mLatitude = latitude;
+        mLongitude = longitude;
+        mHasSpeed = false;
+        mSpeed = 0;
+        mSpeedAccuracy = Float.NaN;
+        mAccuracy = DEFAULT_ACCURACY;
+    }
+
+    void setSpeed(float speedMps) {
+        mHasSpeed = true;
+        mSpeed = speedMps;
+    }
+
+    void setSpeedAccuracy(float speedAccuracy) {
+        mSpeedAccuracy = speedAccuracy;
+    }
+
+    void setAccuracy(float accuracy) {
+        mAccuracy = accuracy;
+    }
+
+    void setElapsedNanos(long elapsedNanos) {
+        mElapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return time of the fix in milliseconds since the epoch
+     */
+    public long getTime() {
+        return mTime;
+    }
+
+    /**
+     * @return time of the fix in nanoseconds, monotonic, set by the {@link TraceReplayer}
+     * from the times of the trace
+     */
+    public long getElapsedNanos() {
+        return mElapsedNanos;
+    }
+
+    /**
+     * @return latitude in degrees
+     */
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    /**
+     * @return longitude in degrees
+     */
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    /**
+     * @return true if the fix has a Doppler speed
+     */
+    public boolean hasSpeed() {
+        return mHasSpeed;
+    }
+
+    /**
+     * @return Doppler speed in metres/sec, 0 if the fix has none
+     */
+    public float getSpeed() {
+        return mSpeed;
+    }
+
+    /**
+     * @return accuracy of the Doppler speed in metres/sec, NaN if not known
+     */
+    public float getSpeedAccuracy() {
+        return mSpeedAccuracy;
+    }
+
+    /**
+     * @return horizontal accuracy in metres
+     */
+    public float getAccuracy() {
+        return mAccuracy;
+    }
+}
@@ -0,0 +1,21 @@
+package kk.speeddisplay.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Reads the location fixes of a recorded trace, such as a GPX, NMEA or CSV file,
+ * one fix at a time, see {@link TraceReaders} for the formats.
+ * Not thread safe.
+ */
+public interface TraceReader extends Closeable {
+
+    /**
+     * Reads the next fix of the trace
+     *
+     * @param fix filled in with the fix read
+     * @return true if a fix was read, false at the end of the trace
+     * @throws IOException if the trace cannot be read or is not in the expected format
+     */
+    boolean next(TraceFix fix) throws IOException;
+}
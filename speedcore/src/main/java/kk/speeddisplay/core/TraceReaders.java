@@ -0,0 +1,138 @@
+package kk.speeddisplay.core;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+/**
+ * The trace formats that can be replayed, and the parsing they share
+ */
+public final class TraceReaders {
+
+    public static final int GPX = 0;
+    public static final int NMEA = 1;
+    public static final int CSV = 2;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private TraceReaders() {
+    }
+
+    /**
+     * Finds the format of a trace file from its extension, .gpx, .nmea or .nma, or .csv
+     *
+     * @param fileName name of the trace file
+     * @return one of the format constants, -1 if the extension is not a trace format
+     */
+    public static int getFormat(String fileName) {
+        String name = fileName.toLowerCase(Locale.US);
+        if (name.endsWith(".gpx")) {
+            return GPX;
+        } else if (name.endsWith(".nmea") || name.endsWith(".nma")) {
+            return NMEA;
+        } else if (name.endsWith(".csv")) {
+            return CSV;
+        }
+        return -1;
+    }
+
+    /**
+     * Opens a trace file, in the format given by its extension
+     *
+     * @param file trace file
+     * @return reader of the trace, to be closed by the caller
+     * @throws IOException if the file cannot be opened or is not a trace format
+     */
+    public static TraceReader open(File file) throws IOException {
+        int format = getFormat(file.getName());
+        if (format < 0) {
+            throw new IOException("not a trace file " + file);
+        }
+        return create(new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8)), format);
+    }
+
+    /**
+     * Creates a reader of a trace
+     *
+     * @param reader text of the trace, closed when the trace reader is closed
+     * @param format one of the format constants
+     * @return reader of the trace
+     */
+    public static TraceReader create(Reader reader, int format) {
+        switch (format) {
+            case GPX:
+                return new GpxTraceReader(reader);
+            case NMEA:
+                return new NmeaTraceReader(reader);
+            case CSV:
+                return new CsvTraceReader(reader);
+            default:
+                throw new IllegalArgumentException("unknown trace format " + format);
+        }
+    }
+
+    /**
+     * Parses an ISO 8601 date and time in UTC or with an offset, such as 2018-07-01T10:15:30.5Z,
+     * as used by GPX, a time without an offset is taken to be UTC
+     *
+     * @param text date and time
+     * @return time in milliseconds since the epoch
+     * @throws IOException if the text is not an ISO 8601 date and time
+     */
+    static long parseTime(String text) throws IOException {
+        try {
+            int year = Integer.parseInt(text.substring(0, 4));
+            int month = Integer.parseInt(text.substring(5, 7));
+            int day = Integer.parseInt(text.substring(8, 10));
+            int hour = Integer.parseInt(text.substring(11, 13));
+            int minute = Integer.parseInt(text.substring(14, 16));
+            int second = Integer.parseInt(text.substring(17, 19));
+            if (text.charAt(4) != '-' || text.charAt(7) != '-' || (text.charAt(10) != 'T' && text.charAt(10) != ' ')) {
+                throw new IOException("not an ISO 8601 time " + text);
+            }
+            int p = 19;
+            int millis = 0;
+            if (p < text.length() && text.charAt(p) == '.') {
+                // fraction of a second, only milliseconds are kept
+                int scale = 100;
+                for (p++; p < text.length() && Character.isDigit(text.charAt(p)); p++) {
+                    millis += (text.charAt(p) - '0') * scale;
+                    scale /= 10;
+                }
+            }
+            int offsetMinutes = 0;
+            if (p < text.length() && text.charAt(p) != 'Z') {
+                int sign = text.charAt(p) == '-' ? -1 : 1;
+                int offsetHour = Integer.parseInt(text.substring(p + 1, p + 3));
+                int colon = text.length() > p + 3 && text.charAt(p + 3) == ':' ? 1 : 0;
+                int offsetMinute = Integer.parseInt(text.substring(p + 3 + colon, p + 5 + colon));
+                offsetMinutes = sign * (offsetHour * 60 + offsetMinute);
+            }
+            long seconds = daysFromCivil(year, month, day) * 86400L
+                    + hour * 3600L + (minute - offsetMinutes) * 60L + second;
+            return seconds * 1000L + millis;
+        } catch (NumberFormatException e) {
+            throw new IOException("not an ISO 8601 time " + text);
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("not an ISO 8601 time " + text);
+        }
+    }
+
+    /**
+     * Days from 1970-01-01 to a date in the proleptic Gregorian calendar,
+     * the civil from days algorithm of Howard Hinnant
+     */
+    static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+}
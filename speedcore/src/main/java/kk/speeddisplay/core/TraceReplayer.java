@@ -0,0 +1,177 @@
+package kk.speeddisplay.core;
+
+import java.io.IOException;
+
+/**
+ * Replays the fixes of a {@link TraceReader} into a {@link SpeedPipeline}, paced by the times
+ * of the trace: in real time, accelerated by a speed factor, such as 100 times, or as fast
+ * as possible.
+ * <p>
+ * The replayer does not wait itself, the caller passes in the time since the replay started,
+ * on any monotonic clock, and a fix is only given once it is due. So on the device the
+ * service can schedule the next fix on its handler with {@link #getDelayNanos}, and on the JVM
+ * {@link #run} waits between the fixes, or a test can step the time without waiting.
+ * <p>
+ * The elapsed time of each fix, used by the speed estimator, is set from the times of the
+ * trace, not from the replay clock, so the speeds are the same at any pace.
+ * Nothing is allocated per fix, other than by the trace reader. Not thread safe.
+ */
+public class TraceReplayer {
+
+    public static final double REAL_TIME = 1.0;
+    public static final double AS_FAST_AS_POSSIBLE = 0.0;
+
+    private final TraceReader mReader;
+    private final double mSpeedFactor;
+    private final TraceFix mFix = new TraceFix();
+
+    /* fix read ahead that is not yet due */
+    private boolean mPending;
+    private boolean mFinished;
+    private boolean mStarted;
+    private long mFirstTime;
+    private long mFixCount;
+
+    /**
+     * @param reader      trace to be replayed
+     * @param speedFactor how many times faster than real time, such as {@link #REAL_TIME} or 100,
+     *                    or {@link #AS_FAST_AS_POSSIBLE}
+     */
+    public TraceReplayer(TraceReader reader, double speedFactor) {
+        if (!(speedFactor >= 0) || Double.isInfinite(speedFactor)) {
+            throw new IllegalArgumentException("bad speed factor " + speedFactor);
+        }
+        mReader = reader;
+        mSpeedFactor = speedFactor;
+    }
+
+    /**
+     * Moves to the next fix if it is due, the fix can then be read with {@link #getFix}
+     *
+     * @param replayNanos time since the replay started in nanoseconds
+     * @return true if there is a fix due, false if the next fix is not yet due or the trace has ended
+     * @throws IOException if the trace cannot be read
+     */
+    public boolean next(long replayNanos) throws IOException {
+        if (!peek() || getDueNanos() > replayNanos) {
+            return false;
+        }
+        mPending = false;
+        mFixCount++;
+        return true;
+    }
+
+    /**
+     * Adds the fixes that are due to the pipeline, as one location result
+     *
+     * @param pipeline    pipeline the fixes are added to
+     * @param replayNanos time since the replay started in nanoseconds
+     * @param maxFixes    most fixes to add, so a long run of fixes which are all due,
+     *                    such as when replaying as fast as possible, is split into location results
+     * @return number of fixes added
+     * @throws IOException if the trace cannot be read
+     */
+    public int replay(SpeedPipeline pipeline, long replayNanos, int maxFixes) throws IOException {
+        int count = 0;
+        while (count < maxFixes && next(replayNanos)) {
+            if (count == 0) {
+                pipeline.begin();
+            }
+            pipeline.add(mFix);
+            count++;
+        }
+        if (count > 0) {
+            pipeline.end();
+        }
+        return count;
+    }
+
+    /**
+     * Replays the whole trace to the pipeline, waiting for each fix to be due,
+     * for running the pipeline on the JVM
+     *
+     * @param pipeline pipeline the fixes are added to
+     * @param maxFixes most fixes to add as one location result
+     * @return number of fixes replayed
+     * @throws IOException          if the trace cannot be read
+     * @throws InterruptedException if interrupted while waiting for a fix
+     */
+    public long run(SpeedPipeline pipeline, int maxFixes) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        while (true) {
+            replay(pipeline, System.nanoTime() - start, maxFixes);
+            long delay = getDelayNanos(System.nanoTime() - start);
+            if (delay < 0) {
+                return mFixCount;
+            }
+            if (delay > 0) {
+                Thread.sleep(delay / 1000000L, (int) (delay % 1000000L));
+            }
+        }
+    }
+
+    /**
+     * @param replayNanos time since the replay started in nanoseconds
+     * @return nanoseconds until the next fix is due, 0 if it is due, -1 if the trace has ended
+     * @throws IOException if the trace cannot be read
+     */
+    public long getDelayNanos(long replayNanos) throws IOException {
+        if (!peek()) {
+            return -1;
+        }
+        return Math.max(0, getDueNanos() - replayNanos);
+    }
+
+    /**
+     * Reads the next fix ahead if not already read
+     *
+     * @return true if there is a fix read ahead
+     */
+    private boolean peek() throws IOException {
+        if (mPending || mFinished) {
+            return mPending;
+        }
+        if (!mReader.next(mFix)) {
+            mFinished = true;
+            return false;
+        }
+        if (!mStarted) {
+            mStarted = true;
+            mFirstTime = mFix.getTime();
+        }
+        mFix.setElapsedNanos((mFix.getTime() - mFirstTime) * 1000000L);
+        mPending = true;
+        return true;
+    }
+
+    /**
+     * @return time the fix read ahead is due, since the replay started in nanoseconds
+     */
+    private long getDueNanos() {
+        if (mSpeedFactor == AS_FAST_AS_POSSIBLE) {
+            return 0;
+        }
+        return (long) ((mFix.getTime() - mFirstTime) * 1000000.0 / mSpeedFactor);
+    }
+
+    /**
+     * @return latest fix given by {@link #next}
+     */
+    public TraceFix getFix() {
+        return mFix;
+    }
+
+    /**
+     * @return true once all the fixes have been given and the end of the trace has been read
+     */
+    public boolean isFinished() {
+        return mFinished && !mPending;
+    }
+
+    /**
+     * @return number of fixes given
+     */
+    public long getFixCount() {
+        return mFixCount;
+    }
+}
@@ -0,0 +1,86 @@
+package kk.speeddisplay.core;
+
+/**
+ * Constants and primitives shared by the compressed trip format,
+ * written by {@link TripEncoder} and read by {@link TripDecoder}.
+ * <p>
+ * The file starts with an int magic and an int version, followed by blocks of samples.
+ * Each block has a fixed size header, so a reader can skip whole blocks to find a time:
+ * <pre>
+ *   int sample count, int payload length in bytes,
+ *   long first time, int first latitude, int first longitude, int first speed, int first accuracy
+ * </pre>
+ * The header holds the first sample of the block, the payload holds the rest as a column
+ * for each field, time, latitude, longitude, speed then accuracy. Each value is stored as the
+ * zig-zag varint of its delta from the sample before, the time as the delta of its delta,
+ * so samples at a regular rate take one byte for the time. Decoding a column at a time keeps
+ * the varint lengths predictable, which is most of the decoding speed.
+ * Values are fixed point: latitude and longitude in 1e-7 degrees (about 1 cm),
+ * speed in cm/sec and accuracy in 0.1 metres. All ints are little endian.
+ */
+final class TripCodec {
+
+    static final int MAGIC = 0x43544453;                 // "SDTC"
+    static final int VERSION = 1;
+    static final int FILE_HEADER_SIZE = 8;
+    static final int BLOCK_HEADER_SIZE = 32;
+
+    /* fields of a sample, each a column of the block payload */
+    static final int FIELD_COUNT = 5;
+
+    /* samples in a full block */
+    static final int BLOCK_SAMPLES = 256;
+    /* longest encoding of one sample, a long varint and four int varints */
+    static final int MAX_SAMPLE_BYTES = 10 + 4 * 5;
+
+    static final double DEGREE_SCALE = 1e7;
+    static final float SPEED_SCALE = 100F;
+    static final float ACCURACY_SCALE = 10F;
+
+    /* fixed point units, decoding multiplies as it is faster than dividing by the scale */
+    static final double DEGREE_UNIT = 1e-7;
+    static final float SPEED_UNIT = 0.01F;
+    static final float ACCURACY_UNIT = 0.1F;
+
+    private TripCodec() {
+    }
+
+    static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static void putInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >>> 8);
+        buffer[offset + 2] = (byte) (value >>> 16);
+        buffer[offset + 3] = (byte) (value >>> 24);
+    }
+
+    static int getInt(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xFF)
+                | (buffer[offset + 1] & 0xFF) << 8
+                | (buffer[offset + 2] & 0xFF) << 16
+                | (buffer[offset + 3] & 0xFF) << 24;
+    }
+
+    static void putLong(byte[] buffer, int offset, long value) {
+        putInt(buffer, offset, (int) value);
+        putInt(buffer, offset + 4, (int) (value >>> 32));
+    }
+
+    static long getLong(byte[] buffer, int offset) {
+        return (getInt(buffer, offset) & 0xFFFFFFFFL) | ((long) getInt(buffer, offset + 4) << 32);
+    }
+}
@@ -0,0 +1,126 @@
+package kk.speeddisplay.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Converts the segments of a finished trip, written by {@link TripRecorder}, to the
+ * compressed trip format, written by {@link TripEncoder}, then deletes the segments.
+ * <p>
+ * If the trip already has a compressed file, from before the trip was continued,
+ * the new samples are added to the end of it. The file is written to a temporary file,
+ * forced to storage and renamed, so a failure part way through leaves the trip as it was.
+ * Samples of the segments which are not newer than the last sample of the compressed file
+ * are already in it, so a failure after the rename, before all the segments are deleted,
+ * does not add them again when the trip is next compacted.
+ */
+public final class TripCompactor {
+
+    private static final String PREFIX = "trip-";
+    private static final String SUFFIX = ".sdt";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final String BACKUP_SUFFIX = ".bak";
+
+    private TripCompactor() {
+    }
+
+    /**
+     * @param directory directory holding the trips
+     * @param tripId    trip
+     * @return compressed file of the trip
+     */
+    public static File compressedFile(File directory, long tripId) {
+        return new File(directory, PREFIX + tripId + SUFFIX);
+    }
+
+    /**
+     * Compresses the segments of the trip, the trip must not be being recorded
+     *
+     * @param directory directory holding the trips
+     * @param tripId    trip
+     * @return number of samples in the compressed file, 0 if the trip has no samples
+     * @throws IOException if the trip cannot be read or the compressed file cannot be written
+     */
+    public static long compact(File directory, long tripId) throws IOException {
+        File[] segments = TripRecorder.listSegments(directory, tripId);
+        File target = compressedFile(directory, tripId);
+        if (segments.length == 0) {
+            return 0;
+        }
+        File temporary = new File(directory, target.getName() + TEMPORARY_SUFFIX);
+        long count;
+        FileOutputStream file = new FileOutputStream(temporary);
+        OutputStream out = new BufferedOutputStream(file);
+        try {
+            TripEncoder encoder = new TripEncoder(out);
+            long lastTime = Long.MIN_VALUE;
+            if (target.exists()) {
+                InputStream in = new BufferedInputStream(new FileInputStream(target));
+                try {
+                    TripDecoder decoder = new TripDecoder(in);
+                    while (decoder.next()) {
+                        lastTime = decoder.getTime();
+                        encoder.append(lastTime, decoder.getLatitude(), decoder.getLongitude(),
+                                decoder.getSpeed(), decoder.getAccuracy());
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+            TripReader reader = new TripReader(directory, tripId);
+            while (reader.next()) {
+                if (reader.getTime() <= lastTime) {
+                    //compacted before, the segment was left by a failure after the rename
+                    continue;
+                }
+                encoder.append(reader.getTime(), reader.getLatitude(), reader.getLongitude(),
+                        reader.getSpeed(), reader.getAccuracy());
+            }
+            encoder.finish();
+            count = encoder.getSampleCount();
+            //the data must be on storage before the rename, or a crash could leave an empty trip
+            out.flush();
+            file.getFD().sync();
+        } finally {
+            out.close();
+        }
+        replace(temporary, target);
+        for (File segment : segments) {
+            segment.delete();
+        }
+        return count;
+    }
+
+    /**
+     * Renames the temporary file to the target, replacing it, the old target is moved aside
+     * rather than deleted, so it is restored if the rename fails
+     *
+     * @param temporary file written
+     * @param target    file to be replaced
+     * @throws IOException if the temporary file cannot be renamed, it is left for the next attempt
+     */
+    private static void replace(File temporary, File target) throws IOException {
+        if (temporary.renameTo(target)) {
+            return;
+        }
+        // rename does not replace an existing file on all platforms
+        File backup = new File(target.getParentFile(), target.getName() + BACKUP_SUFFIX);
+        backup.delete();
+        if (!target.renameTo(backup)) {
+            //the old trip is untouched, the temporary file is written again on the next attempt
+            temporary.delete();
+            throw new IOException("cannot rename " + target);
+        }
+        if (!temporary.renameTo(target)) {
+            backup.renameTo(target);
+            throw new IOException("cannot rename " + temporary);
+        }
+        backup.delete();
+    }
+}
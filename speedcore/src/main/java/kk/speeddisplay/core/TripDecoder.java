@@ -0,0 +1,354 @@
+package kk.speeddisplay.core;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Streaming decoder for the compressed trip format, see {@link TripCodec} for the layout.
+ * <p>
+ * Reads one block at a time into a fixed buffer and decodes it in a single pass
+ * into primitive arrays, {@link #next} then steps through the decoded samples,
+ * or {@link #nextBlock} copies them out a block at a time, for reading whole trips.
+ * {@link #seek} finds a time by the block headers, skipping over the payload of the blocks
+ * it passes without reading them, where the stream supports {@link InputStream#mark}.
+ * Nothing is allocated per sample. Not thread safe.
+ */
+public class TripDecoder {
+
+    /* most samples returned by nextBlock, the size of the arrays passed to it */
+    public static final int MAX_BLOCK_SAMPLES = TripCodec.BLOCK_SAMPLES;
+
+    private final InputStream mIn;
+    private final byte[] mHeader = new byte[TripCodec.BLOCK_HEADER_SIZE];
+    private final byte[] mPayload = new byte[(TripCodec.BLOCK_SAMPLES - 1) * TripCodec.MAX_SAMPLE_BYTES];
+
+    /* header read ahead by seek, used by the next block read */
+    private final byte[] mNextHeader = new byte[TripCodec.BLOCK_HEADER_SIZE];
+    private boolean mNextPending;
+
+    /* decoded samples of the current block in fixed point */
+    private final long[] mTimes = new long[TripCodec.BLOCK_SAMPLES];
+    private final int[] mLatitudes = new int[TripCodec.BLOCK_SAMPLES];
+    private final int[] mLongitudes = new int[TripCodec.BLOCK_SAMPLES];
+    private final int[] mSpeeds = new int[TripCodec.BLOCK_SAMPLES];
+    private final int[] mAccuracies = new int[TripCodec.BLOCK_SAMPLES];
+    private int mCount;
+    private int mIndex = -1;
+
+    /**
+     * Reads the file header
+     *
+     * @param in stream the trip is read from, buffering is not needed
+     * @throws IOException if the stream cannot be read or is not a compressed trip
+     */
+    public TripDecoder(InputStream in) throws IOException {
+        mIn = in;
+        byte[] header = new byte[TripCodec.FILE_HEADER_SIZE];
+        if (!readFully(header, header.length)
+                || TripCodec.getInt(header, 0) != TripCodec.MAGIC
+                || TripCodec.getInt(header, 4) != TripCodec.VERSION) {
+            throw new IOException("not a compressed trip");
+        }
+    }
+
+    /**
+     * Moves to the next sample
+     *
+     * @return true if there is a sample, false at the end of the trip
+     * @throws IOException if the stream cannot be read or is truncated
+     */
+    public boolean next() throws IOException {
+        if (++mIndex < mCount) {
+            return true;
+        }
+        if (!readHeader()) {
+            mIndex = mCount;
+            return false;
+        }
+        readPayload();
+        decodeBlock();
+        mIndex = 0;
+        return true;
+    }
+
+    /**
+     * Reads the samples left in the current block, or all the samples of the next block,
+     * into the arrays, in place of stepping through them with {@link #next} and the getters.
+     * The getters then return the last sample read.
+     *
+     * @param times      times in milliseconds
+     * @param latitudes  latitudes in degrees
+     * @param longitudes longitudes in degrees
+     * @param speeds     speeds in metres/sec
+     * @param accuracies horizontal accuracies in metres
+     * @return number of samples read into the start of each array, at most {@link #MAX_BLOCK_SAMPLES},
+     * 0 at the end of the trip
+     * @throws IOException if the stream cannot be read or is truncated
+     */
+    public int nextBlock(long[] times, double[] latitudes, double[] longitudes, float[] speeds,
+                         float[] accuracies) throws IOException {
+        int start = mIndex + 1;
+        if (start >= mCount) {
+            if (!readHeader()) {
+                mIndex = mCount;
+                return 0;
+            }
+            readPayload();
+            decodeBlock();
+            start = 0;
+        }
+        int count = mCount - start;
+        // a loop per column, so each converts the fixed point values in one simple pass
+        System.arraycopy(mTimes, start, times, 0, count);
+        int[] fixed = mLatitudes;
+        for (int i = 0; i < count; i++) {
+            latitudes[i] = fixed[start + i] * TripCodec.DEGREE_UNIT;
+        }
+        fixed = mLongitudes;
+        for (int i = 0; i < count; i++) {
+            longitudes[i] = fixed[start + i] * TripCodec.DEGREE_UNIT;
+        }
+        fixed = mSpeeds;
+        for (int i = 0; i < count; i++) {
+            speeds[i] = fixed[start + i] * TripCodec.SPEED_UNIT;
+        }
+        fixed = mAccuracies;
+        for (int i = 0; i < count; i++) {
+            accuracies[i] = fixed[start + i] * TripCodec.ACCURACY_UNIT;
+        }
+        mIndex = mCount - 1;
+        return count;
+    }
+
+    /**
+     * Skips forward to the block holding the time, the next call to {@link #next} returns
+     * the first sample of that block, step forward to the time with next.
+     * The payload of the blocks passed is skipped, the stream is marked before each payload
+     * so it can step back to the block found, streams which do not support mark read the
+     * payloads instead, but they are still not decoded.
+     *
+     * @param time time in milliseconds, if before the next block, seek moves to the next block
+     * @throws IOException if the stream cannot be read or is truncated
+     */
+    public void seek(long time) throws IOException {
+        mCount = 0;
+        mIndex = -1;
+        if (!readHeader()) {
+            return;
+        }
+        boolean markSupported = mIn.markSupported();
+        while (true) {
+            if (markSupported) {
+                int length = checkHeader();
+                mIn.mark(length + TripCodec.BLOCK_HEADER_SIZE);
+                skipFully(length);
+            } else {
+                readPayload();
+            }
+            boolean hasNext = readFully(mNextHeader, TripCodec.BLOCK_HEADER_SIZE);
+            if (!hasNext || TripCodec.getLong(mNextHeader, 8) > time) {
+                if (markSupported) {
+                    //step back to the payload of the block found, the next header is read again by next
+                    mIn.reset();
+                    readPayload();
+                } else {
+                    mNextPending = hasNext;
+                }
+                decodeBlock();
+                mIndex = -1;
+                return;
+            }
+            System.arraycopy(mNextHeader, 0, mHeader, 0, TripCodec.BLOCK_HEADER_SIZE);
+        }
+    }
+
+    private boolean readHeader() throws IOException {
+        if (mNextPending) {
+            mNextPending = false;
+            System.arraycopy(mNextHeader, 0, mHeader, 0, TripCodec.BLOCK_HEADER_SIZE);
+            return true;
+        }
+        return readFully(mHeader, TripCodec.BLOCK_HEADER_SIZE);
+    }
+
+    private void readPayload() throws IOException {
+        int length = checkHeader();
+        if (!readFully(mPayload, length) && length > 0) {
+            throw new EOFException("truncated block");
+        }
+    }
+
+    /**
+     * @return payload length of the block in mHeader
+     * @throws IOException if the header is corrupt
+     */
+    private int checkHeader() throws IOException {
+        int count = TripCodec.getInt(mHeader, 0);
+        int length = TripCodec.getInt(mHeader, 4);
+        if (count < 1 || count > TripCodec.BLOCK_SAMPLES || length < 0 || length > mPayload.length) {
+            throw new IOException("corrupt block header");
+        }
+        return length;
+    }
+
+    /**
+     * Skips the bytes without reading them where the stream allows
+     */
+    private void skipFully(long length) throws IOException {
+        while (length > 0) {
+            long n = mIn.skip(length);
+            if (n <= 0) {
+                // skip may stop short without being at the end, read a byte to find out
+                if (mIn.read() < 0) {
+                    throw new EOFException("truncated block");
+                }
+                n = 1;
+            }
+            length -= n;
+        }
+    }
+
+    /**
+     * Decodes the block in mHeader and mPayload into the sample arrays
+     */
+    private void decodeBlock() throws IOException {
+        byte[] in = mPayload;
+        long[] times = mTimes;
+        int[] latitudes = mLatitudes;
+        int[] longitudes = mLongitudes;
+        int[] speeds = mSpeeds;
+        int[] accuracies = mAccuracies;
+
+        int count = TripCodec.getInt(mHeader, 0);
+        int length = TripCodec.getInt(mHeader, 4);
+        long time = TripCodec.getLong(mHeader, 8);
+        int lat = TripCodec.getInt(mHeader, 16);
+        int lon = TripCodec.getInt(mHeader, 20);
+        int speed = TripCodec.getInt(mHeader, 24);
+        int acc = TripCodec.getInt(mHeader, 28);
+        long timeDelta = 0;
+        times[0] = time;
+
+        // a corrupt payload runs past the end of the buffer, or stops short of its length
+        int p = 0;
+        try {
+            for (int i = 1; i < count; i++) {
+                // delta of delta of the time, one byte at a regular rate, decoded without the long loop
+                int b = in[p++];
+                if (b >= 0) {
+                    timeDelta += (b >>> 1) ^ -(b & 1);
+                } else {
+                    long v = b & 0x7F;
+                    for (int shift = 7; b < 0; shift += 7) {
+                        b = in[p++];
+                        v |= (long) (b & 0x7F) << shift;
+                    }
+                    timeDelta += (v >>> 1) ^ -(v & 1);
+                }
+                time += timeDelta;
+                times[i] = time;
+            }
+            p = decodeColumn(in, p, count, lat, latitudes);
+            p = decodeColumn(in, p, count, lon, longitudes);
+            p = decodeColumn(in, p, count, speed, speeds);
+            p = decodeColumn(in, p, count, acc, accuracies);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("corrupt block");
+        }
+        if (p != length) {
+            throw new IOException("corrupt block");
+        }
+        mCount = count;
+    }
+
+    /**
+     * Decodes a column of int varints
+     *
+     * @param in     payload
+     * @param p      offset of the column in the payload
+     * @param count  samples in the block
+     * @param value  value of the first sample, from the header
+     * @param values decoded values, filled in by this method
+     * @return offset after the column
+     */
+    private static int decodeColumn(byte[] in, int p, int count, int value, int[] values) {
+        values[0] = value;
+        for (int i = 1; i < count; i++) {
+            int b = in[p++];
+            int v = b & 0x7F;
+            if (b < 0) {
+                b = in[p++];
+                v |= (b & 0x7F) << 7;
+                if (b < 0) {
+                    b = in[p++];
+                    v |= (b & 0x7F) << 14;
+                    if (b < 0) {
+                        b = in[p++];
+                        v |= (b & 0x7F) << 21;
+                        if (b < 0) {
+                            b = in[p++];
+                            v |= b << 28;
+                        }
+                    }
+                }
+            }
+            value += (v >>> 1) ^ -(v & 1);
+            values[i] = value;
+        }
+        return p;
+    }
+
+    /**
+     * @return true if the buffer was filled, false if at the end of the stream before any byte
+     */
+    private boolean readFully(byte[] buffer, int length) throws IOException {
+        int read = 0;
+        while (read < length) {
+            int n = mIn.read(buffer, read, length - read);
+            if (n < 0) {
+                if (read == 0) {
+                    return false;
+                }
+                throw new EOFException("truncated trip");
+            }
+            read += n;
+        }
+        return true;
+    }
+
+    /**
+     * @return time of the sample in milliseconds
+     */
+    public long getTime() {
+        return mTimes[mIndex];
+    }
+
+    /**
+     * @return latitude in degrees, to 1e-7 degrees
+     */
+    public double getLatitude() {
+        return mLatitudes[mIndex] * TripCodec.DEGREE_UNIT;
+    }
+
+    /**
+     * @return longitude in degrees, to 1e-7 degrees
+     */
+    public double getLongitude() {
+        return mLongitudes[mIndex] * TripCodec.DEGREE_UNIT;
+    }
+
+    /**
+     * @return speed in metres/sec, to 0.01 metres/sec
+     */
+    public float getSpeed() {
+        return mSpeeds[mIndex] * TripCodec.SPEED_UNIT;
+    }
+
+    /**
+     * @return horizontal accuracy in metres, to 0.1 metres
+     */
+    public float getAccuracy() {
+        return mAccuracies[mIndex] * TripCodec.ACCURACY_UNIT;
+    }
+}
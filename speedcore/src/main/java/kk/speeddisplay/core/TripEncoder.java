@@ -0,0 +1,155 @@
+package kk.speeddisplay.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Streaming encoder for the compressed trip format, see {@link TripCodec} for the layout.
+ * <p>
+ * Samples are delta encoded into a column buffer for each field, which are written to the
+ * stream as a block when full, so memory use is fixed and nothing is allocated per sample.
+ * {@link #finish} must be called to write the last block. Not thread safe.
+ */
+public class TripEncoder {
+
+    private final OutputStream mOut;
+    private final byte[] mHeader = new byte[TripCodec.BLOCK_HEADER_SIZE];
+
+    /* varints of each field of the block, the time column holds longs */
+    private final byte[][] mColumns = new byte[TripCodec.FIELD_COUNT][(TripCodec.BLOCK_SAMPLES - 1) * 10];
+    private final int[] mColumnLengths = new int[TripCodec.FIELD_COUNT];
+    private int mCount;
+
+    /* previous sample in fixed point */
+    private long mTime;
+    private long mTimeDelta;
+    private int mLatitude;
+    private int mLongitude;
+    private int mSpeed;
+    private int mAccuracy;
+
+    private long mSampleCount;
+    private long mBytesWritten;
+
+    /**
+     * Writes the file header
+     *
+     * @param out stream the trip is written to, buffering is not needed
+     * @throws IOException if the stream cannot be written
+     */
+    public TripEncoder(OutputStream out) throws IOException {
+        mOut = out;
+        byte[] header = new byte[TripCodec.FILE_HEADER_SIZE];
+        TripCodec.putInt(header, 0, TripCodec.MAGIC);
+        TripCodec.putInt(header, 4, TripCodec.VERSION);
+        mOut.write(header);
+        mBytesWritten = header.length;
+    }
+
+    /**
+     * Appends a sample
+     *
+     * @param time      time in milliseconds, samples must be in time order
+     * @param latitude  latitude in degrees
+     * @param longitude longitude in degrees
+     * @param speedMps  speed in metres/sec
+     * @param accuracy  horizontal accuracy in metres
+     * @throws IOException if a full block cannot be written
+     */
+    public void append(long time, double latitude, double longitude, float speedMps, float accuracy)
+            throws IOException {
+        int lat = (int) Math.round(latitude * TripCodec.DEGREE_SCALE);
+        int lon = (int) Math.round(longitude * TripCodec.DEGREE_SCALE);
+        int speed = Math.round(speedMps * TripCodec.SPEED_SCALE);
+        int acc = Math.round(accuracy * TripCodec.ACCURACY_SCALE);
+
+        if (mCount == 0) {
+            TripCodec.putLong(mHeader, 8, time);
+            TripCodec.putInt(mHeader, 16, lat);
+            TripCodec.putInt(mHeader, 20, lon);
+            TripCodec.putInt(mHeader, 24, speed);
+            TripCodec.putInt(mHeader, 28, acc);
+            mTimeDelta = 0;
+        } else {
+            long delta = time - mTime;
+            byte[][] columns = mColumns;
+            int[] lengths = mColumnLengths;
+            lengths[0] = putVarLong(columns[0], lengths[0], TripCodec.zigZag(delta - mTimeDelta));
+            lengths[1] = putVarInt(columns[1], lengths[1], TripCodec.zigZag(lat - mLatitude));
+            lengths[2] = putVarInt(columns[2], lengths[2], TripCodec.zigZag(lon - mLongitude));
+            lengths[3] = putVarInt(columns[3], lengths[3], TripCodec.zigZag(speed - mSpeed));
+            lengths[4] = putVarInt(columns[4], lengths[4], TripCodec.zigZag(acc - mAccuracy));
+            mTimeDelta = delta;
+        }
+        mTime = time;
+        mLatitude = lat;
+        mLongitude = lon;
+        mSpeed = speed;
+        mAccuracy = acc;
+        mSampleCount++;
+
+        if (++mCount == TripCodec.BLOCK_SAMPLES) {
+            writeBlock();
+        }
+    }
+
+    /**
+     * Writes the last block, the stream is not closed
+     *
+     * @throws IOException if the block cannot be written
+     */
+    public void finish() throws IOException {
+        if (mCount > 0) {
+            writeBlock();
+        }
+        mOut.flush();
+    }
+
+    private void writeBlock() throws IOException {
+        int length = 0;
+        for (int i = 0; i < TripCodec.FIELD_COUNT; i++) {
+            length += mColumnLengths[i];
+        }
+        TripCodec.putInt(mHeader, 0, mCount);
+        TripCodec.putInt(mHeader, 4, length);
+        mOut.write(mHeader);
+        for (int i = 0; i < TripCodec.FIELD_COUNT; i++) {
+            mOut.write(mColumns[i], 0, mColumnLengths[i]);
+            mColumnLengths[i] = 0;
+        }
+        mBytesWritten += TripCodec.BLOCK_HEADER_SIZE + length;
+        mCount = 0;
+    }
+
+    private static int putVarInt(byte[] buffer, int offset, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[offset++] = (byte) value;
+        return offset;
+    }
+
+    private static int putVarLong(byte[] buffer, int offset, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[offset++] = (byte) value;
+        return offset;
+    }
+
+    /**
+     * @return number of samples appended
+     */
+    public long getSampleCount() {
+        return mSampleCount;
+    }
+
+    /**
+     * @return number of bytes written to the stream, not including a block not yet finished
+     */
+    public long getBytesWritten() {
+        return mBytesWritten;
+    }
+}
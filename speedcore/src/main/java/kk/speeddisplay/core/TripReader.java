@@ -0,0 +1,107 @@
+package kk.speeddisplay.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads back the samples of a trip written by {@link TripRecorder}, segment by segment.
+ * <p>
+ * Call {@link #next} to move to each sample, then read its fields with the getters,
+ * nothing is allocated per sample. Not thread safe.
+ */
+public class TripReader {
+
+    private final File[] mSegments;
+    private int mSegmentIndex = -1;
+    private MappedByteBuffer mSegment;
+    private int mPosition;
+
+    private long mTime;
+    private double mLatitude;
+    private double mLongitude;
+    private float mSpeed;
+    private float mAccuracy;
+
+    /**
+     * @param directory directory holding the segments
+     * @param tripId    trip to be read
+     */
+    public TripReader(File directory, long tripId) {
+        mSegments = TripRecorder.listSegments(directory, tripId);
+    }
+
+    /**
+     * Moves to the next sample
+     *
+     * @return true if there is a sample, false at the end of the trip
+     * @throws IOException if a segment cannot be read or is not a trip segment
+     */
+    public boolean next() throws IOException {
+        while (true) {
+            if (mSegment != null && mPosition + TripRecorder.RECORD_SIZE <= mSegment.capacity()) {
+                long time = mSegment.getLong(mPosition);
+                if (time != 0) {
+                    mTime = time;
+                    mLatitude = mSegment.getDouble(mPosition + 8);
+                    mLongitude = mSegment.getDouble(mPosition + 16);
+                    mSpeed = mSegment.getFloat(mPosition + 24);
+                    mAccuracy = mSegment.getFloat(mPosition + 28);
+                    mPosition += TripRecorder.RECORD_SIZE;
+                    return true;
+                }
+            }
+            // end of this segment, move to the next
+            if (++mSegmentIndex >= mSegments.length) {
+                mSegment = null;
+                return false;
+            }
+            openSegment(mSegments[mSegmentIndex]);
+        }
+    }
+
+    private void openSegment(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            mSegment = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        } finally {
+            raf.close();
+        }
+        mSegment.order(ByteOrder.LITTLE_ENDIAN);
+        if (mSegment.capacity() < TripRecorder.HEADER_SIZE
+                || mSegment.getInt(0) != TripRecorder.MAGIC
+                || mSegment.getShort(6) != TripRecorder.RECORD_SIZE) {
+            throw new IOException("not a trip segment " + file);
+        }
+        mPosition = TripRecorder.HEADER_SIZE;
+    }
+
+    public long getTime() {
+        return mTime;
+    }
+
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    /**
+     * @return speed in metres/sec
+     */
+    public float getSpeed() {
+        return mSpeed;
+    }
+
+    /**
+     * @return horizontal accuracy in metres
+     */
+    public float getAccuracy() {
+        return mAccuracy;
+    }
+}
@@ -0,0 +1,202 @@
+package kk.speeddisplay.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Records the samples of a trip to append-only segment files, each memory mapped.
+ * <p>
+ * A segment starts with a header, followed by fixed width sample records:
+ * <pre>
+ *   header  int magic, short version, short record size, long trip id
+ *   record  long time, double latitude, double longitude, float speed, float accuracy
+ * </pre>
+ * The segment is created at its full size and mapped once, appending a sample is a single
+ * copy of the record into the mapping, with no system call and no allocation.
+ * The unused part of a segment is zero, so the records end at the first record with a time of 0.
+ * When a segment is full the recorder rolls to a new segment.
+ * The mapping is forced to storage when a segment is finished, when {@link #flush} is called
+ * and when the recorder is closed, the operating system writes the pages back in between.
+ * <p>
+ * Not thread safe, all calls must be made from the same thread.
+ */
+public class TripRecorder {
+
+    static final int MAGIC = 0x53445452;                 // "SDTR"
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 32;
+
+    /* default segment size, about 55 minutes at 10 samples a second */
+    public static final int DEFAULT_SEGMENT_SIZE = 1024 * 1024;
+
+    private static final String PREFIX = "trip-";
+    private static final String SUFFIX = ".seg";
+
+    private final File mDirectory;
+    private final int mSegmentSize;
+
+    private long mTripId;
+    private int mSegmentNumber;
+    private MappedByteBuffer mSegment;
+    private int mPosition;
+
+    private long mSampleCount;
+
+    /**
+     * @param directory   directory the segment files are written to, created if needed
+     * @param segmentSize size of each segment file in bytes
+     */
+    public TripRecorder(File directory, int segmentSize) {
+        if (segmentSize < HEADER_SIZE + RECORD_SIZE) {
+            throw new IllegalArgumentException("segment size too small " + segmentSize);
+        }
+        mDirectory = directory;
+        mSegmentSize = segmentSize;
+    }
+
+    /**
+     * Starts recording a trip, finishing any trip being recorded.
+     * If segments of the trip already exist, the recording carries on in a new segment.
+     *
+     * @param tripId identifies the trip, in the segment file names
+     * @throws IOException if the first segment cannot be created
+     */
+    public void start(long tripId) throws IOException {
+        close();
+        mTripId = tripId;
+        mSegmentNumber = 0;
+        while (segmentFile(mDirectory, tripId, mSegmentNumber).exists()) {
+            mSegmentNumber++;
+        }
+        openSegment();
+    }
+
+    /**
+     * Appends a sample to the trip
+     *
+     * @param time      time of the sample in milliseconds since the epoch, must not be 0
+     * @param latitude  latitude in degrees
+     * @param longitude longitude in degrees
+     * @param speedMps  speed in metres/sec
+     * @param accuracy  horizontal accuracy in metres
+     * @throws IOException if a new segment is needed and cannot be created
+     */
+    public void append(long time, double latitude, double longitude, float speedMps, float accuracy)
+            throws IOException {
+        if (mSegment == null) {
+            throw new IllegalStateException("not recording");
+        }
+        if (mPosition + RECORD_SIZE > mSegmentSize) {
+            finishSegment();
+            mSegmentNumber++;
+            openSegment();
+        }
+        MappedByteBuffer segment = mSegment;
+        int position = mPosition;
+        segment.putLong(position, time);
+        segment.putDouble(position + 8, latitude);
+        segment.putDouble(position + 16, longitude);
+        segment.putFloat(position + 24, speedMps);
+        segment.putFloat(position + 28, accuracy);
+        mPosition = position + RECORD_SIZE;
+        mSampleCount++;
+    }
+
+    /**
+     * Forces the samples recorded so far to storage
+     */
+    public void flush() {
+        if (mSegment != null) {
+            mSegment.force();
+        }
+    }
+
+    /**
+     * Finishes the trip, forcing the samples to storage
+     */
+    public void close() {
+        if (mSegment != null) {
+            finishSegment();
+        }
+    }
+
+    /**
+     * @return true if a trip is being recorded
+     */
+    public boolean isRecording() {
+        return mSegment != null;
+    }
+
+    /**
+     * @return trip being recorded
+     */
+    public long getTripId() {
+        return mTripId;
+    }
+
+    /**
+     * @return number of samples appended since the recorder was created
+     */
+    public long getSampleCount() {
+        return mSampleCount;
+    }
+
+    private void openSegment() throws IOException {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IOException("cannot create " + mDirectory);
+        }
+        RandomAccessFile file = new RandomAccessFile(segmentFile(mDirectory, mTripId, mSegmentNumber), "rw");
+        try {
+            file.setLength(mSegmentSize);
+            // the mapping stays valid after the file is closed
+            mSegment = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, mSegmentSize);
+        } finally {
+            file.close();
+        }
+        mSegment.order(ByteOrder.LITTLE_ENDIAN);
+        mSegment.putInt(0, MAGIC);
+        mSegment.putShort(4, VERSION);
+        mSegment.putShort(6, (short) RECORD_SIZE);
+        mSegment.putLong(8, mTripId);
+        mPosition = HEADER_SIZE;
+    }
+
+    private void finishSegment() {
+        mSegment.force();
+        mSegment = null;
+    }
+
+    /**
+     * @param directory     directory holding the segments
+     * @param tripId        trip
+     * @param segmentNumber number of the segment in the trip, from 0
+     * @return segment file
+     */
+    static File segmentFile(File directory, long tripId, int segmentNumber) {
+        return new File(directory, PREFIX + tripId + "-" + segmentNumber + SUFFIX);
+    }
+
+    /**
+     * Lists the segment files of a trip in order
+     *
+     * @param directory directory holding the segments
+     * @param tripId    trip
+     * @return segment files, empty if the trip has no segments
+     */
+    public static File[] listSegments(File directory, long tripId) {
+        int count = 0;
+        while (segmentFile(directory, tripId, count).exists()) {
+            count++;
+        }
+        File[] segments = new File[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = segmentFile(directory, tripId, i);
+        }
+        return segments;
+    }
+}
@@ -0,0 +1,196 @@
+package kk.speeddisplay.core;
+
+/**
+ * Streaming statistics of the speeds of a trip, in constant memory.
+ * <p>
+ * From each sample it totals the time moving and the time stopped, and the integral of the
+ * speed over time, giving the average speed over the whole trip and over the time moving.
+ * The speeds while moving are summarised by running moments, the mean and standard deviation,
+ * and by {@link P2Quantile} sketches of the median, 90th and 99th percentiles.
+ * The time between two samples is credited to the later sample, as it is by
+ * {@link SpeedProcessor}, gaps longer than {@link SpeedProcessor#MAX_MOVING_GAP} are not counted.
+ * The times and the speed integral can be checkpointed and restored after a restart,
+ * see {@link #restore}, the moments and quantiles start again.
+ * <p>
+ * Adding a sample does not allocate. Not thread safe, publish the results to other threads
+ * with a {@link TripStatisticsChannel}.
+ */
+public class TripStatistics {
+
+    /* speed in km/hour at or above which a sample is moving */
+    static final float MOVING_SPEED = SpeedProcessor.MOVING_SPEED * 3.6F;
+
+    private final P2Quantile mMedian = new P2Quantile(0.5);
+    private final P2Quantile mP90 = new P2Quantile(0.9);
+    private final P2Quantile mP99 = new P2Quantile(0.99);
+
+    private long mSampleCount;
+    /* time of the last sample, or of the session restored, the time to the next sample is counted once set */
+    private boolean mHasLastTime;
+    private long mLastTime;
+
+    /* times in milliseconds, and the speed integrated over time in km/hour milliseconds */
+    private long mMovingTime;
+    private long mStoppedTime;
+    private double mSpeedTime;
+
+    /* running moments of the moving speeds, Welford's method */
+    private long mMovingCount;
+    private double mMean;
+    private double mSquares;
+    private float mMaxSpeed;
+
+    /**
+     * Adds a sample
+     *
+     * @param time  time of the sample in milliseconds
+     * @param speed speed in km/hour
+     */
+    public void add(long time, float speed) {
+        boolean moving = speed >= MOVING_SPEED;
+        long elapsed = time - mLastTime;
+        if (mHasLastTime && elapsed > 0 && elapsed <= SpeedProcessor.MAX_MOVING_GAP) {
+            if (moving) {
+                mMovingTime += elapsed;
+                mSpeedTime += (double) speed * elapsed;
+            } else {
+                mStoppedTime += elapsed;
+            }
+        }
+        mSampleCount++;
+        mHasLastTime = true;
+        mLastTime = time;
+
+        if (moving) {
+            mMovingCount++;
+            double delta = speed - mMean;
+            mMean += delta / mMovingCount;
+            mSquares += delta * (speed - mMean);
+            mMaxSpeed = Math.max(mMaxSpeed, speed);
+            mMedian.add(speed);
+            mP90.add(speed);
+            mP99.add(speed);
+        }
+    }
+
+    /**
+     * Clears the statistics for a new trip
+     */
+    public void reset() {
+        mSampleCount = 0;
+        mHasLastTime = false;
+        mLastTime = 0;
+        mMovingTime = 0;
+        mStoppedTime = 0;
+        mSpeedTime = 0;
+        mMovingCount = 0;
+        mMean = 0;
+        mSquares = 0;
+        mMaxSpeed = 0;
+        mMedian.reset();
+        mP90.reset();
+        mP99.reset();
+    }
+
+    /**
+     * Restores the totals of a trip interrupted by a restart, so the times and average speeds carry on
+     * from the last sample before the restart
+     *
+     * @param movingTime  time moving in milliseconds
+     * @param stoppedTime time stopped in milliseconds
+     * @param speedTime   speed integrated over time in km/hour milliseconds, see {@link #getSpeedTime}
+     * @param lastTime    time of the last sample in milliseconds
+     */
+    public void restore(long movingTime, long stoppedTime, double speedTime, long lastTime) {
+        mMovingTime = movingTime;
+        mStoppedTime = stoppedTime;
+        mSpeedTime = speedTime;
+        mHasLastTime = true;
+        mLastTime = lastTime;
+    }
+
+    /**
+     * @return average speed in km/hour over the whole trip, including the time stopped
+     */
+    public float getAverageSpeed() {
+        long time = mMovingTime + mStoppedTime;
+        return time == 0 ? 0 : (float) (mSpeedTime / time);
+    }
+
+    /**
+     * @return average speed in km/hour over the time moving
+     */
+    public float getMovingAverageSpeed() {
+        return mMovingTime == 0 ? 0 : (float) (mSpeedTime / mMovingTime);
+    }
+
+    /**
+     * @return mean of the moving speeds in km/hour, each sample weighted equally
+     */
+    public float getMeanSpeed() {
+        return (float) mMean;
+    }
+
+    /**
+     * @return standard deviation of the moving speeds in km/hour
+     */
+    public float getSpeedDeviation() {
+        return mMovingCount < 2 ? 0 : (float) Math.sqrt(mSquares / (mMovingCount - 1));
+    }
+
+    /**
+     * @return highest moving speed in km/hour
+     */
+    public float getMaxSpeed() {
+        return mMaxSpeed;
+    }
+
+    /**
+     * @return estimated median of the moving speeds in km/hour
+     */
+    public float getMedianSpeed() {
+        return (float) mMedian.getQuantile();
+    }
+
+    /**
+     * @return estimated 90th percentile of the moving speeds in km/hour
+     */
+    public float getP90Speed() {
+        return (float) mP90.getQuantile();
+    }
+
+    /**
+     * @return estimated 99th percentile of the moving speeds in km/hour
+     */
+    public float getP99Speed() {
+        return (float) mP99.getQuantile();
+    }
+
+    /**
+     * @return time moving in milliseconds
+     */
+    public long getMovingTime() {
+        return mMovingTime;
+    }
+
+    /**
+     * @return time stopped in milliseconds
+     */
+    public long getStoppedTime() {
+        return mStoppedTime;
+    }
+
+    /**
+     * @return speed integrated over time in km/hour milliseconds, the distance moving in those units
+     */
+    public double getSpeedTime() {
+        return mSpeedTime;
+    }
+
+    /**
+     * @return number of samples added
+     */
+    public long getSampleCount() {
+        return mSampleCount;
+    }
+}
@@ -0,0 +1,175 @@
+package kk.speeddisplay.core;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * In-process channel passing the latest {@link TripStatistics} from the service to the display.
+ * <p>
+ * The values are held in a lock-free slot guarded by a sequence number, which is odd
+ * while a publish is in progress. A reader copies the values and retries if the sequence
+ * number changed while it was copying, so it always sees the values of a single publish.
+ * Publishing and reading take constant time and do not allocate, the reader copies into
+ * a {@link Summary} it owns. Only one thread can publish, any thread can read.
+ */
+public class TripStatisticsChannel {
+
+    /**
+     * Copy of the statistics of a trip, filled in by {@link #read}
+     */
+    public static class Summary {
+        private float mAverageSpeed;
+        private float mMovingAverageSpeed;
+        private float mMaxSpeed;
+        private float mSpeedDeviation;
+        private float mMedianSpeed;
+        private float mP90Speed;
+        private float mP99Speed;
+        private long mMovingTime;
+        private long mStoppedTime;
+        private long mSampleCount;
+
+        /**
+         * @return average speed in km/hour over the whole trip
+         */
+        public float getAverageSpeed() {
+            return mAverageSpeed;
+        }
+
+        /**
+         * @return average speed in km/hour over the time moving
+         */
+        public float getMovingAverageSpeed() {
+            return mMovingAverageSpeed;
+        }
+
+        /**
+         * @return highest moving speed in km/hour
+         */
+        public float getMaxSpeed() {
+            return mMaxSpeed;
+        }
+
+        /**
+         * @return standard deviation of the moving speeds in km/hour
+         */
+        public float getSpeedDeviation() {
+            return mSpeedDeviation;
+        }
+
+        /**
+         * @return median moving speed in km/hour
+         */
+        public float getMedianSpeed() {
+            return mMedianSpeed;
+        }
+
+        /**
+         * @return 90th percentile of the moving speeds in km/hour
+         */
+        public float getP90Speed() {
+            return mP90Speed;
+        }
+
+        /**
+         * @return 99th percentile of the moving speeds in km/hour
+         */
+        public float getP99Speed() {
+            return mP99Speed;
+        }
+
+        /**
+         * @return time moving in milliseconds
+         */
+        public long getMovingTime() {
+            return mMovingTime;
+        }
+
+        /**
+         * @return time stopped in milliseconds
+         */
+        public long getStoppedTime() {
+            return mStoppedTime;
+        }
+
+        /**
+         * @return number of samples in the statistics
+         */
+        public long getSampleCount() {
+            return mSampleCount;
+        }
+    }
+
+    /* slot indexes, floats are held as their raw int bits */
+    private static final int AVERAGE_SPEED = 0;
+    private static final int MOVING_AVERAGE_SPEED = 1;
+    private static final int MAX_SPEED = 2;
+    private static final int SPEED_DEVIATION = 3;
+    private static final int MEDIAN_SPEED = 4;
+    private static final int P90_SPEED = 5;
+    private static final int P99_SPEED = 6;
+    private static final int MOVING_TIME = 7;
+    private static final int STOPPED_TIME = 8;
+    private static final int SAMPLE_COUNT = 9;
+    private static final int SLOTS = 10;
+
+    private final AtomicLongArray mSlots = new AtomicLongArray(SLOTS);
+    private final AtomicInteger mSequence = new AtomicInteger();
+
+    /**
+     * Publishes the latest statistics, replacing the previous ones
+     *
+     * @param statistics statistics of the trip
+     */
+    public void publish(TripStatistics statistics) {
+        int sequence = mSequence.get();
+        mSequence.set(sequence + 1);
+        setFloat(AVERAGE_SPEED, statistics.getAverageSpeed());
+        setFloat(MOVING_AVERAGE_SPEED, statistics.getMovingAverageSpeed());
+        setFloat(MAX_SPEED, statistics.getMaxSpeed());
+        setFloat(SPEED_DEVIATION, statistics.getSpeedDeviation());
+        setFloat(MEDIAN_SPEED, statistics.getMedianSpeed());
+        setFloat(P90_SPEED, statistics.getP90Speed());
+        setFloat(P99_SPEED, statistics.getP99Speed());
+        mSlots.set(MOVING_TIME, statistics.getMovingTime());
+        mSlots.set(STOPPED_TIME, statistics.getStoppedTime());
+        mSlots.set(SAMPLE_COUNT, statistics.getSampleCount());
+        mSequence.set(sequence + 2);
+    }
+
+    /**
+     * Copies the latest statistics, all from the same publish
+     *
+     * @param summary filled in with the statistics
+     */
+    public void read(Summary summary) {
+        while (true) {
+            int sequence = mSequence.get();
+            if ((sequence & 1) != 0) {
+                // publish in progress, it is quick so spin
+                continue;
+            }
+            summary.mAverageSpeed = getFloat(AVERAGE_SPEED);
+            summary.mMovingAverageSpeed = getFloat(MOVING_AVERAGE_SPEED);
+            summary.mMaxSpeed = getFloat(MAX_SPEED);
+            summary.mSpeedDeviation = getFloat(SPEED_DEVIATION);
+            summary.mMedianSpeed = getFloat(MEDIAN_SPEED);
+            summary.mP90Speed = getFloat(P90_SPEED);
+            summary.mP99Speed = getFloat(P99_SPEED);
+            summary.mMovingTime = mSlots.get(MOVING_TIME);
+            summary.mStoppedTime = mSlots.get(STOPPED_TIME);
+            summary.mSampleCount = mSlots.get(SAMPLE_COUNT);
+            if (mSequence.get() == sequence) {
+                return;
+            }
+        }
+    }
+
+    private void setFloat(int slot, float value) {
+        mSlots.set(slot, Float.floatToRawIntBits(value));
+    }
+
+    private float getFloat(int slot) {
+        return Float.intBitsToFloat((int) mSlots.get(slot));
+    }
+}
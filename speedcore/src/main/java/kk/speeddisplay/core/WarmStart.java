@@ -0,0 +1,140 @@
+package kk.speeddisplay.core;
+
+/**
+ * Decides what is shown while the service waits for its first fix after starting.
+ * <p>
+ * The location provider usually has a last known fix, from this app or another, which is
+ * available straight away, long before the first high accuracy fix. If that fix is recent,
+ * has a Doppler speed and is accurate enough, its speed is shown in place of 0, until the first
+ * fix accepted by the speed pipeline replaces it. The last fix is only shown, it is not added to
+ * the maximum speed or the trip.
+ * <p>
+ * The service calls {@link #onLastFix} and {@link #endResult}, which decide when the speeds
+ * are sent to be displayed, and mark them on the {@link StartupTimer}.
+ * Not thread safe, all calls must be made from the same thread.
+ */
+public class WarmStart {
+
+    /* results of endResult */
+    public static final int RESULT_NOT_SENT = 0;
+    /* the speed changed and was sent by the speed processor's listener */
+    public static final int RESULT_SENT = 1;
+    /* the first real speed, which the caller must send even though it has not changed */
+    public static final int RESULT_SEND = 2;
+
+    private final long mMaxAgeNanos;
+    private final float mMaxAccuracy;
+    private final StartupTimer mTimer;
+
+    /* true once a fix has been accepted by the speed pipeline */
+    private boolean mRealSpeed;
+    private boolean mShowingLastFix;
+    private float mSpeed;
+
+    /**
+     * @param maxAgeMillis oldest last fix whose speed is shown, in milliseconds
+     * @param maxAccuracy  largest horizontal accuracy in metres of a last fix whose speed is shown
+     * @param timer        times the first speeds sent to be displayed
+     */
+    public WarmStart(long maxAgeMillis, float maxAccuracy, StartupTimer timer) {
+        mMaxAgeNanos = maxAgeMillis * 1000000L;
+        mMaxAccuracy = maxAccuracy;
+        mTimer = timer;
+    }
+
+    /**
+     * Called with the last fix of the location source, see {@link #offer}
+     *
+     * @param display true if the speeds are being displayed
+     * @return true if the speed of the last fix, see {@link #getSpeed}, must be sent to be displayed now,
+     * if it is not displayed it is shown once the speeds are, while {@link #isShowingLastFix}
+     */
+    public boolean onLastFix(long elapsedNanos, long nowNanos, boolean hasSpeed, float speedMps, float accuracy,
+                             boolean display) {
+        if (!offer(elapsedNanos, nowNanos, hasSpeed, speedMps, accuracy) || !display) {
+            return false;
+        }
+        mTimer.onLastFixSent();
+        return true;
+    }
+
+    /**
+     * Ends a location result, processing the fixes accepted with the speed pipeline, the speed processor's
+     * listener sends the speed if it has changed, the first result with an accepted fix must be sent
+     * even if it has not, to replace the last fix or the 0 shown
+     *
+     * @param pipeline speed pipeline the fixes of the result were added to
+     * @param display  true if the speeds are being displayed
+     * @return RESULT_SENT if the speed was sent by the listener, RESULT_SEND if the caller must send it,
+     * otherwise RESULT_NOT_SENT
+     */
+    public int endResult(SpeedPipeline pipeline, boolean display) {
+        //marked before the speed can be sent, so the frame showing it is timed
+        boolean first = onLocationResult(pipeline.getAcceptedCount() > 0);
+        if (first) {
+            mTimer.onRealSpeedSent();
+        }
+        if (pipeline.end() && display) {
+            return RESULT_SENT;
+        }
+        return first && display ? RESULT_SEND : RESULT_NOT_SENT;
+    }
+
+    /**
+     * Offers the last fix of the location source
+     *
+     * @param elapsedNanos time of the fix in nanoseconds since boot
+     * @param nowNanos     time now in nanoseconds since boot
+     * @param hasSpeed     true if the fix has a Doppler speed
+     * @param speedMps     Doppler speed in metres/sec
+     * @param accuracy     horizontal accuracy in metres
+     * @return true if its speed should be shown, see {@link #getSpeed}, false if it is too old,
+     * has no speed or is not accurate enough, or a fix has already been accepted
+     */
+    public boolean offer(long elapsedNanos, long nowNanos, boolean hasSpeed, float speedMps, float accuracy) {
+        long age = nowNanos - elapsedNanos;
+        if (mRealSpeed || !hasSpeed || age < 0 || age > mMaxAgeNanos || !(accuracy <= mMaxAccuracy)) {
+            return false;
+        }
+        mShowingLastFix = true;
+        mSpeed = SpeedProcessor.mpsToKph(speedMps);
+        return true;
+    }
+
+    /**
+     * Called for each location result, before the speed pipeline processes it
+     *
+     * @param accepted true if any fix of the result was accepted by the speed pipeline
+     * @return true for the first result with an accepted fix, whose speed must be sent
+     * to the main activity even if it has not changed, to replace the last fix or the 0 shown
+     */
+    public boolean onLocationResult(boolean accepted) {
+        if (!accepted || mRealSpeed) {
+            return false;
+        }
+        mRealSpeed = true;
+        mShowingLastFix = false;
+        return true;
+    }
+
+    /**
+     * @return true once a fix has been accepted by the speed pipeline
+     */
+    public boolean hasRealSpeed() {
+        return mRealSpeed;
+    }
+
+    /**
+     * @return true if the speed of the last fix is being shown
+     */
+    public boolean isShowingLastFix() {
+        return mShowingLastFix;
+    }
+
+    /**
+     * @return speed of the last fix in km/hour
+     */
+    public float getSpeed() {
+        return mSpeed;
+    }
+}
@@ -0,0 +1,102 @@
+package kk.speeddisplay.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveRateSchedulerTest {
+
+    private static final long FASTEST = 1000L;
+    private static final long SLOWEST = 30000L;
+
+    private final AdaptiveRateScheduler mScheduler = new AdaptiveRateScheduler(FASTEST, SLOWEST);
+    private long mTime;
+
+    /* feeds samples at the interval the scheduler asks for, as the location provider would */
+    private void drive(long duration, float startSpeed, float endSpeed, float noise, Random random) {
+        long end = mTime + duration;
+        long start = mTime;
+        while (mTime < end) {
+            float fraction = (float) (mTime - start) / duration;
+            float speed = startSpeed + (endSpeed - startSpeed) * fraction;
+            if (noise > 0) {
+                speed += (random.nextFloat() - 0.5F) * 2 * noise;
+            }
+            mScheduler.update(mTime, Math.max(0, speed));
+            mTime += mScheduler.getInterval();
+        }
+    }
+
+    @Test
+    public void usesFastestIntervalWhileAccelerating() {
+        drive(20000L, 0.0F, 25.0F, 0.0F, null);
+        assertEquals(AdaptiveRateScheduler.STATE_ACCELERATING, mScheduler.getState());
+        assertEquals(FASTEST, mScheduler.getInterval());
+        assertEquals(AdaptiveRateScheduler.PRIORITY_HIGH_ACCURACY, mScheduler.getPriority());
+    }
+
+    @Test
+    public void relaxesAtSteadyCruise() {
+        Random random = new Random(1);
+        drive(20000L, 0.0F, 25.0F, 0.0F, null);
+        drive(60000L, 25.0F, 25.0F, 0.2F, random);
+        assertEquals(AdaptiveRateScheduler.STATE_CRUISING, mScheduler.getState());
+        assertEquals(FASTEST * AdaptiveRateScheduler.CRUISE_MULTIPLIER, mScheduler.getInterval());
+    }
+
+    @Test
+    public void slowestWhenStationary() {
+        drive(30000L, 0.0F, 0.0F, 0.0F, null);
+        assertEquals(AdaptiveRateScheduler.STATE_STATIONARY, mScheduler.getState());
+        assertEquals(FASTEST * AdaptiveRateScheduler.STATIONARY_MULTIPLIER, mScheduler.getInterval());
+        assertEquals(AdaptiveRateScheduler.PRIORITY_BALANCED_POWER, mScheduler.getPriority());
+    }
+
+    @Test
+    public void returnsToFastestWhenSpeedChanges() {
+        Random random = new Random(2);
+        drive(20000L, 0.0F, 25.0F, 0.0F, null);
+        drive(60000L, 25.0F, 25.0F, 0.2F, random);
+        assertTrue(mScheduler.update(mTime + 2000L, 20.0F));
+        assertEquals(AdaptiveRateScheduler.STATE_ACCELERATING, mScheduler.getState());
+        assertEquals(FASTEST, mScheduler.getInterval());
+    }
+
+    @Test
+    public void wakeHoldsFastestInterval() {
+        drive(30000L, 0.0F, 0.0F, 0.0F, null);
+        assertTrue(mScheduler.wake(mTime));
+        assertEquals(FASTEST, mScheduler.getInterval());
+        assertEquals(AdaptiveRateScheduler.PRIORITY_HIGH_ACCURACY, mScheduler.getPriority());
+        assertFalse(mScheduler.wake(mTime));
+
+        // still stationary, but held at the fastest interval for the hold time
+        drive(AdaptiveRateScheduler.HOLD_MILLIS - FASTEST, 0.0F, 0.0F, 0.0F, null);
+        assertEquals(AdaptiveRateScheduler.STATE_ACCELERATING, mScheduler.getState());
+        drive(2 * FASTEST, 0.0F, 0.0F, 0.0F, null);
+        assertEquals(AdaptiveRateScheduler.STATE_STATIONARY, mScheduler.getState());
+    }
+
+    @Test
+    public void staysWithinUserBounds() {
+        mScheduler.setBounds(FASTEST, 3000L);
+        drive(30000L, 0.0F, 0.0F, 0.0F, null);
+        assertEquals(3000L, mScheduler.getInterval());
+
+        // slowest below fastest is raised to fastest
+        mScheduler.setBounds(5000L, 1000L);
+        assertEquals(5000L, mScheduler.getInterval());
+    }
+
+    @Test
+    public void cutsDutyCycleOnLongSteadyDrive() {
+        Random random = new Random(3);
+        drive(20000L, 0.0F, 30.0F, 0.0F, null);
+        drive(2 * 3600000L, 30.0F, 30.0F, 0.3F, random);
+        drive(20000L, 30.0F, 0.0F, 0.0F, null);
+        drive(600000L, 0.0F, 0.0F, 0.0F, null);
+        assertTrue("saving " + mScheduler.getDutyCycleSaving(), mScheduler.getDutyCycleSaving() > 0.4);
+    }
+}
@@ -0,0 +1,35 @@
+package kk.speeddisplay.core;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Test helper which measures the bytes allocated by the current thread,
+ * uses the HotSpot extension of ThreadMXBean, not available on all JVMs
+ */
+final class Allocations {
+
+    /* measurement noise, bytes allocated by the JVM itself while measuring,
+     * far less than a single object per sample in the tests */
+    static final long NOISE_BYTES = 16 * 1024;
+
+    private Allocations() {
+    }
+
+    /**
+     * @return true if allocation measurement is available on this JVM
+     */
+    static boolean isSupported() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        return bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported();
+    }
+
+    /**
+     * @return total bytes allocated by the current thread
+     */
+    static long allocatedBytes() {
+        com.sun.management.ThreadMXBean bean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,159 @@
+package kk.speeddisplay.core;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class EventLogTest {
+
+    private static final int START = 0;
+    private static final int FIX = 1;
+    private static final int SPEED = 2;
+    private static final int RATE = 3;
+    private static final int VISIBLE = 4;
+    private static final int POSITION = 5;
+    private static final int REQUEST = 6;
+
+    private static EventLog newLog(int capacity) {
+        EventLog log = new EventLog(capacity);
+        log.define(START, "start", EventLog.ARG_NONE, EventLog.ARG_NONE);
+        log.define(FIX, "fix", EventLog.ARG_LONG, EventLog.ARG_FLOAT);
+        log.define(SPEED, "speed", EventLog.ARG_FLOAT, EventLog.ARG_FLOAT);
+        log.define(RATE, "rate", EventLog.ARG_LONG, EventLog.ARG_LONG);
+        log.define(VISIBLE, "visible", EventLog.ARG_BOOLEAN, EventLog.ARG_NONE);
+        log.define(POSITION, "position", EventLog.ARG_DOUBLE, EventLog.ARG_NONE);
+        log.define(REQUEST, "request", EventLog.ARG_LONG, EventLog.ARG_BOOLEAN);
+        return log;
+    }
+
+    private static String[] dump(EventLog log, long maxAgeMillis) throws IOException {
+        StringBuilder out = new StringBuilder();
+        log.dump(out, maxAgeMillis);
+        return out.length() == 0 ? new String[0] : out.toString().split("\n");
+    }
+
+    /**
+     * @return the line without the time
+     */
+    private static String event(String line) {
+        // yyyy-MM-dd HH:mm:ss.SSS and a space
+        return line.substring(24);
+    }
+
+    @Test
+    public void dumpsTheEventsWithTheirArguments() throws IOException {
+        EventLog log = newLog(16);
+        log.log(START);
+        log.log(FIX, 12345L, 4.5F);
+        log.log(SPEED, 72.5F, 100.25F);
+        log.log(RATE, 1000L, 10000L);
+        log.log(VISIBLE, true);
+        log.log(POSITION, -33.8688);
+        log.log(REQUEST, 5000L, false);
+        log.log(99);
+
+        String[] lines = dump(log, 0);
+        assertEquals(8, lines.length);
+        assertTrue(lines[0].matches("\\d{4}-\\d\\d-\\d\\d \\d\\d:\\d\\d:\\d\\d\\.\\d{3} start"));
+        assertEquals("fix 12345 4.5", event(lines[1]));
+        assertEquals("speed 72.5 100.25", event(lines[2]));
+        assertEquals("rate 1000 10000", event(lines[3]));
+        assertEquals("visible true", event(lines[4]));
+        assertEquals("position -33.8688", event(lines[5]));
+        assertEquals("request 5000 false", event(lines[6]));
+        assertEquals("event 99", event(lines[7]));
+        assertEquals(8, log.getCount());
+    }
+
+    @Test
+    public void overwritesTheOldestEventsWhenFull() throws IOException {
+        EventLog log = newLog(4);
+        for (int i = 0; i < 10; i++) {
+            log.log(RATE, i, i * 10);
+        }
+
+        String[] lines = dump(log, 0);
+        assertEquals(4, lines.length);
+        assertEquals("rate 6 60", event(lines[0]));
+        assertEquals("rate 9 90", event(lines[3]));
+        assertEquals(10, log.getCount());
+    }
+
+    @Test
+    public void stopsLoggingWhenDisabled() throws IOException {
+        EventLog log = newLog(16);
+        log.log(RATE, 1, 2);
+        log.setEnabled(false);
+        log.log(RATE, 3, 4);
+        assertFalse(log.isEnabled());
+        log.setEnabled(true);
+        log.log(RATE, 5, 6);
+
+        String[] lines = dump(log, 0);
+        assertEquals(2, lines.length);
+        assertEquals("rate 1 2", event(lines[0]));
+        assertEquals("rate 5 6", event(lines[1]));
+    }
+
+    @Test
+    public void dumpsOnlyTheRecentEvents() throws IOException, InterruptedException {
+        EventLog log = newLog(16);
+        log.log(RATE, 1, 1);
+        Thread.sleep(200);
+        log.log(RATE, 2, 2);
+
+        assertEquals(2, dump(log, 60000L).length);
+        String[] lines = dump(log, 100L);
+        assertEquals(1, lines.length);
+        assertEquals("rate 2 2", event(lines[0]));
+    }
+
+    @Test
+    public void logsFromManyThreads() throws IOException, InterruptedException {
+        final EventLog log = newLog(1024);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int thread = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 100000; i++) {
+                        log.log(RATE, thread, thread * 1000L);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        String[] lines = dump(log, 0);
+        assertEquals(1024, lines.length);
+        // each event is whole, never the arguments of one thread with another's
+        for (String line : lines) {
+            String[] fields = event(line).split(" ");
+            assertEquals("rate", fields[0]);
+            assertEquals(Long.parseLong(fields[1]) * 1000L, Long.parseLong(fields[2]));
+        }
+        assertEquals(400000, log.getCount());
+    }
+
+    @Test
+    public void logsWithoutAllocating() {
+        assumeTrue(Allocations.isSupported());
+        EventLog log = newLog(1024);
+        for (int i = 0; i < 100000; i++) {
+            log.log(FIX, i, 4.5F);
+        }
+        long before = Allocations.allocatedBytes();
+        for (int i = 0; i < 1000000; i++) {
+            log.log(FIX, i, 4.5F);
+            log.log(SPEED, 72.5F, 100.25F);
+        }
+        assertTrue(Allocations.allocatedBytes() - before < Allocations.NOISE_BYTES);
+    }
+}
@@ -0,0 +1,185 @@
+package kk.speeddisplay.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * In-memory location source for the tests. The fixes added are delivered like a location
+ * provider delivers them: dropped while the updates are not requested, each delivered as soon
+ * as it is added when the maximum wait time is 0, otherwise held and delivered together once
+ * the oldest has waited the maximum wait time, or when flushed.
+ * A fix reaches the listener its delay after the time of the fix that caused the delivery,
+ * see {@link #getNowNanos}, so the latency a listener measures can be checked.
+ * The last fix, if one is set, is given to the listener when asked for.
+ */
+class FakeLocationSource implements LocationSource {
+
+    private static class Fix {
+        long mElapsedNanos;
+        long mTime;
+        boolean mHasSpeed;
+        float mSpeed;
+        float mSpeedAccuracy;
+        float mAccuracy;
+        double mLatitude;
+        double mLongitude;
+    }
+
+    private final boolean mLive;
+    private final long mDelayNanos;
+    private final List<Fix> mHeld = new ArrayList<Fix>();
+    private Listener mListener;
+
+    private boolean mRequested;
+    private long mIntervalMillis;
+    private int mPriority;
+    private long mMaxWaitMillis;
+    private int mRequestCount;
+    private int mFlushCount;
+    private long mDroppedCount;
+    private long mNowNanos;
+    private Fix mLastFix;
+    private int mLastFixRequestCount;
+
+    /**
+     * @param live       true if the fixes are live
+     * @param delayNanos time from a fix to its callback when it is delivered as soon as it is added
+     */
+    FakeLocationSource(boolean live, long delayNanos) {
+        mLive = live;
+        mDelayNanos = delayNanos;
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    @Override
+    public void requestUpdates(long intervalMillis, int priority, long maxWaitMillis) {
+        mRequested = true;
+        mIntervalMillis = intervalMillis;
+        mPriority = priority;
+        mMaxWaitMillis = maxWaitMillis;
+        mRequestCount++;
+    }
+
+    @Override
+    public void requestLastFix() {
+        mLastFixRequestCount++;
+        if (mLastFix != null) {
+            mListener.onLastFix(mLastFix.mElapsedNanos, mLastFix.mTime, mLastFix.mHasSpeed, mLastFix.mSpeed,
+                    mLastFix.mAccuracy);
+        }
+    }
+
+    @Override
+    public void removeUpdates() {
+        mRequested = false;
+        mHeld.clear();
+    }
+
+    @Override
+    public void flush() {
+        mFlushCount++;
+        deliver();
+    }
+
+    @Override
+    public boolean isLive() {
+        return mLive;
+    }
+
+    /**
+     * Adds a fix, as the receiver has it
+     */
+    void add(long elapsedNanos, long time, boolean hasSpeed, float speedMps, float speedAccuracy,
+             float accuracy, double latitude, double longitude) {
+        if (!mRequested) {
+            mDroppedCount++;
+            return;
+        }
+        Fix fix = new Fix();
+        fix.mElapsedNanos = elapsedNanos;
+        fix.mTime = time;
+        fix.mHasSpeed = hasSpeed;
+        fix.mSpeed = speedMps;
+        fix.mSpeedAccuracy = speedAccuracy;
+        fix.mAccuracy = accuracy;
+        fix.mLatitude = latitude;
+        fix.mLongitude = longitude;
+        mHeld.add(fix);
+        mNowNanos = elapsedNanos + mDelayNanos;
+        if ((elapsedNanos - mHeld.get(0).mElapsedNanos) / 1000000L >= mMaxWaitMillis) {
+            deliver();
+        }
+    }
+
+    /**
+     * Sets the last fix, which the source has before the updates are requested
+     */
+    void setLastFix(long elapsedNanos, long time, boolean hasSpeed, float speedMps, float accuracy) {
+        mLastFix = new Fix();
+        mLastFix.mElapsedNanos = elapsedNanos;
+        mLastFix.mTime = time;
+        mLastFix.mHasSpeed = hasSpeed;
+        mLastFix.mSpeed = speedMps;
+        mLastFix.mAccuracy = accuracy;
+    }
+
+    private void deliver() {
+        if (mHeld.isEmpty()) {
+            return;
+        }
+        mListener.onLocationResultStart();
+        for (Fix fix : mHeld) {
+            mListener.onFix(fix.mElapsedNanos, fix.mTime, fix.mHasSpeed, fix.mSpeed, fix.mSpeedAccuracy,
+                    fix.mAccuracy, fix.mLatitude, fix.mLongitude);
+        }
+        mHeld.clear();
+        mListener.onLocationResultEnd();
+    }
+
+    /**
+     * @return time the fixes being delivered reach the listener on the elapsed realtime clock
+     */
+    long getNowNanos() {
+        return mNowNanos;
+    }
+
+    boolean isRequested() {
+        return mRequested;
+    }
+
+    long getIntervalMillis() {
+        return mIntervalMillis;
+    }
+
+    int getPriority() {
+        return mPriority;
+    }
+
+    long getMaxWaitMillis() {
+        return mMaxWaitMillis;
+    }
+
+    int getRequestCount() {
+        return mRequestCount;
+    }
+
+    int getLastFixRequestCount() {
+        return mLastFixRequestCount;
+    }
+
+    int getFlushCount() {
+        return mFlushCount;
+    }
+
+    long getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    int getHeldCount() {
+        return mHeld.size();
+    }
+}
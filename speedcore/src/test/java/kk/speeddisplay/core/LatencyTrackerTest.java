@@ -0,0 +1,88 @@
+package kk.speeddisplay.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class LatencyTrackerTest {
+
+    private static final long MILLIS = 1000000L;
+
+    @Test
+    public void summarisesTheLatencies() {
+        LatencyTracker tracker = new LatencyTracker();
+        // 1 to 1000 ms in a shuffled order
+        int[] latencies = new int[1000];
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = i + 1;
+        }
+        Random random = new Random(1);
+        for (int i = latencies.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = latencies[i];
+            latencies[i] = latencies[j];
+            latencies[j] = swap;
+        }
+        for (int latency : latencies) {
+            tracker.add(latency * MILLIS);
+        }
+
+        assertEquals(1000, tracker.getCount());
+        assertEquals(500.5, tracker.getMeanMillis(), 1e-9);
+        assertEquals(1000.0, tracker.getMaxMillis(), 1e-9);
+        assertEquals(500.0, tracker.getMedianMillis(), 20.0);
+        assertEquals(950.0, tracker.getP95Millis(), 20.0);
+    }
+
+    @Test
+    public void isZeroWithoutLatencies() {
+        LatencyTracker tracker = new LatencyTracker();
+
+        assertEquals(0, tracker.getCount());
+        assertEquals(0.0, tracker.getMeanMillis(), 0.0);
+        assertEquals(0.0, tracker.getMaxMillis(), 0.0);
+    }
+
+    @Test
+    public void countsNegativeLatencyAsZero() {
+        LatencyTracker tracker = new LatencyTracker();
+        tracker.add(-5 * MILLIS);
+        tracker.add(10 * MILLIS);
+
+        assertEquals(2, tracker.getCount());
+        assertEquals(5.0, tracker.getMeanMillis(), 1e-9);
+        assertEquals(10.0, tracker.getMaxMillis(), 1e-9);
+    }
+
+    @Test
+    public void resetForgetsTheLatencies() {
+        LatencyTracker tracker = new LatencyTracker();
+        for (int i = 0; i < 100; i++) {
+            tracker.add(300 * MILLIS);
+        }
+        tracker.reset();
+        tracker.add(20 * MILLIS);
+
+        assertEquals(1, tracker.getCount());
+        assertEquals(20.0, tracker.getMeanMillis(), 1e-9);
+        assertEquals(20.0, tracker.getMaxMillis(), 1e-9);
+        assertEquals(20.0, tracker.getMedianMillis(), 1e-9);
+    }
+
+    @Test
+    public void addsWithoutAllocating() {
+        assumeTrue(Allocations.isSupported());
+        LatencyTracker tracker = new LatencyTracker();
+        for (int i = 0; i < 100000; i++) {
+            tracker.add((i % 500) * MILLIS);
+        }
+        long before = Allocations.allocatedBytes();
+        for (int i = 0; i < 1000000; i++) {
+            tracker.add((i % 500) * MILLIS);
+        }
+        assertTrue(Allocations.allocatedBytes() - before < Allocations.NOISE_BYTES);
+    }
+}
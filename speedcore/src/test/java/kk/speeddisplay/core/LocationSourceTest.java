@@ -0,0 +1,180 @@
+package kk.speeddisplay.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives the speed pipeline from a location source, through a listener like the service's,
+ * which measures the latency of each live fix, using the in-memory {@link FakeLocationSource}
+ */
+public class LocationSourceTest {
+
+    private static final long START = 1530440130000L;
+    private static final long MILLIS = 1000000L;
+
+    private static final SpeedProcessor.Listener PROCESSOR_LISTENER = new SpeedProcessor.Listener() {
+        @Override
+        public void onNewMaxSpeed(float maxSpeed) {
+        }
+
+        @Override
+        public void onSpeedChanged(float speed, float maxSpeed) {
+        }
+    };
+
+    /**
+     * Gives the fixes to the speed pipeline and measures the latency of the live fixes
+     */
+    private static class PipelineListener implements LocationSource.Listener {
+        final FakeLocationSource mSource;
+        final SpeedPipeline mPipeline = new SpeedPipeline(new SpeedProcessor(PROCESSOR_LISTENER),
+                new SpeedEstimator(), new SampleGate(), new AdaptiveRateScheduler(1000L, 10000L));
+        final LatencyTracker mLatency = new LatencyTracker();
+        int mResultCount;
+        int mFixCount;
+
+        PipelineListener(FakeLocationSource source) {
+            mSource = source;
+            source.setListener(this);
+        }
+
+        @Override
+        public void onLocationResultStart() {
+            mPipeline.begin();
+        }
+
+        @Override
+        public void onFix(long elapsedNanos, long time, boolean hasSpeed, float speedMps, float speedAccuracy,
+                          float accuracy, double latitude, double longitude) {
+            if (mSource.isLive()) {
+                mLatency.add(mSource.getNowNanos() - elapsedNanos);
+            }
+            mPipeline.add(elapsedNanos, time, hasSpeed, speedMps, speedAccuracy, accuracy, latitude, longitude);
+            mFixCount++;
+        }
+
+        @Override
+        public void onLocationResultEnd() {
+            mPipeline.end();
+            mResultCount++;
+        }
+
+        @Override
+        public void onLastFix(long elapsedNanos, long time, boolean hasSpeed, float speedMps, float accuracy) {
+        }
+    }
+
+    /**
+     * Adds a drive north at 20 metres/sec, one fix a second
+     */
+    private static void drive(FakeLocationSource source, int seconds) {
+        for (int i = 0; i < seconds; i++) {
+            source.add((i + 1) * 1000 * MILLIS, START + i * 1000L, true, 20.0F, 0.5F, 4.0F,
+                    -33.8688 + i * 20.0 / 111195.0, 151.2093);
+        }
+    }
+
+    @Test
+    public void dropsFixesUntilTheUpdatesAreRequested() {
+        FakeLocationSource source = new FakeLocationSource(true, 50 * MILLIS);
+        PipelineListener listener = new PipelineListener(source);
+
+        drive(source, 5);
+        assertEquals(0, listener.mFixCount);
+        assertEquals(5, source.getDroppedCount());
+
+        source.requestUpdates(1000L, AdaptiveRateScheduler.PRIORITY_HIGH_ACCURACY, 0);
+        drive(source, 5);
+        source.removeUpdates();
+        drive(source, 5);
+
+        assertEquals(5, listener.mFixCount);
+        assertEquals(5, listener.mResultCount);
+        assertEquals(10, source.getDroppedCount());
+    }
+
+    @Test
+    public void deliversEachFixImmediatelyWithoutMaxWait() {
+        FakeLocationSource source = new FakeLocationSource(true, 50 * MILLIS);
+        PipelineListener listener = new PipelineListener(source);
+        source.requestUpdates(1000L, AdaptiveRateScheduler.PRIORITY_HIGH_ACCURACY, 0);
+
+        drive(source, 60);
+
+        assertEquals(60, listener.mResultCount);
+        // the first fix is held by the sample gate, so its result has no speed
+        assertEquals(59, listener.mPipeline.getProcessor().getBatchCount());
+        assertEquals(72.0F, listener.mPipeline.getProcessor().getSpeed(), 0.5F);
+        assertEquals(60, listener.mLatency.getCount());
+        assertEquals(50.0, listener.mLatency.getMeanMillis(), 1e-9);
+        assertEquals(50.0, listener.mLatency.getMaxMillis(), 1e-9);
+    }
+
+    @Test
+    public void holdsFixesForTheMaxWaitAndDeliversThemOnFlush() {
+        FakeLocationSource source = new FakeLocationSource(true, 50 * MILLIS);
+        PipelineListener listener = new PipelineListener(source);
+        source.requestUpdates(1000L, AdaptiveRateScheduler.PRIORITY_BALANCED_POWER, 10000L);
+
+        drive(source, 25);
+
+        // two batches of 11 fixes, each delivered when the oldest had waited 10 seconds
+        assertEquals(2, listener.mResultCount);
+        assertEquals(22, listener.mFixCount);
+        assertEquals(3, source.getHeldCount());
+
+        source.flush();
+        assertEquals(3, listener.mResultCount);
+        assertEquals(25, listener.mFixCount);
+        assertEquals(0, source.getHeldCount());
+        assertEquals(3, listener.mPipeline.getProcessor().getBatchCount());
+        assertEquals(72.0F, listener.mPipeline.getProcessor().getSpeed(), 0.5F);
+        // the oldest fix of a batch is the latest
+        assertEquals(10050.0, listener.mLatency.getMaxMillis(), 1e-9);
+    }
+
+    @Test
+    public void batchedFixesHaveHigherLatencyThanImmediateFixes() {
+        FakeLocationSource immediate = new FakeLocationSource(true, 50 * MILLIS);
+        PipelineListener immediateListener = new PipelineListener(immediate);
+        immediate.requestUpdates(1000L, AdaptiveRateScheduler.PRIORITY_HIGH_ACCURACY, 0);
+        FakeLocationSource batched = new FakeLocationSource(true, 50 * MILLIS);
+        PipelineListener batchedListener = new PipelineListener(batched);
+        batched.requestUpdates(1000L, AdaptiveRateScheduler.PRIORITY_HIGH_ACCURACY, 5000L);
+
+        drive(immediate, 120);
+        drive(batched, 120);
+
+        assertTrue(batchedListener.mLatency.getMeanMillis() > 2 * immediateListener.mLatency.getMeanMillis());
+        // the same speeds, however they were delivered
+        assertEquals(immediateListener.mPipeline.getProcessor().getSpeed(),
+                batchedListener.mPipeline.getProcessor().getSpeed(), 0.01F);
+    }
+
+    @Test
+    public void replacesTheRequestWhenTheRateChanges() {
+        FakeLocationSource source = new FakeLocationSource(true, 50 * MILLIS);
+        new PipelineListener(source);
+        source.requestUpdates(1000L, AdaptiveRateScheduler.PRIORITY_HIGH_ACCURACY, 0);
+        source.requestUpdates(5000L, AdaptiveRateScheduler.PRIORITY_BALANCED_POWER, 50000L);
+
+        assertTrue(source.isRequested());
+        assertEquals(2, source.getRequestCount());
+        assertEquals(5000L, source.getIntervalMillis());
+        assertEquals(AdaptiveRateScheduler.PRIORITY_BALANCED_POWER, source.getPriority());
+        assertEquals(50000L, source.getMaxWaitMillis());
+    }
+
+    @Test
+    public void doesNotMeasureTheLatencyOfReplayedFixes() {
+        FakeLocationSource source = new FakeLocationSource(false, 50 * MILLIS);
+        PipelineListener listener = new PipelineListener(source);
+        source.requestUpdates(1000L, AdaptiveRateScheduler.PRIORITY_HIGH_ACCURACY, 0);
+
+        drive(source, 10);
+
+        assertEquals(10, listener.mFixCount);
+        assertEquals(0, listener.mLatency.getCount());
+    }
+}
@@ -0,0 +1,89 @@
+package kk.speeddisplay.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MaxSpeedStoreTest {
+
+    private static final long INTERVAL = 5000L;
+
+    private MaxSpeedStore mStore;
+    private int mWrites;
+    private float mWritten;
+
+    @Before
+    public void setUp() {
+        mWrites = 0;
+        mStore = new MaxSpeedStore(new MaxSpeedStore.Writer() {
+            @Override
+            public void write(float maxSpeed) {
+                mWrites++;
+                mWritten = maxSpeed;
+            }
+        }, INTERVAL, 50.0F);
+    }
+
+    @Test
+    public void writesFirstUpdateStraightAway() {
+        assertTrue(mStore.update(60.0F, 1000L));
+        assertEquals(1, mWrites);
+        assertEquals(60.0F, mWritten, 0.0F);
+        assertFalse(mStore.isDirty());
+        assertEquals(-1, mStore.getFlushDelay(1000L));
+    }
+
+    @Test
+    public void coalescesUpdatesWithinInterval() {
+        mStore.update(60.0F, 1000L);
+        for (int i = 1; i <= 40; i++) {
+            assertFalse(mStore.update(60.0F + i, 1000L + i * 100L));
+        }
+        assertEquals(1, mWrites);
+        assertTrue(mStore.isDirty());
+        assertEquals(INTERVAL - 4000L, mStore.getFlushDelay(5000L));
+
+        assertTrue(mStore.flushIfDue(6000L));
+        assertEquals(2, mWrites);
+        assertEquals(100.0F, mWritten, 0.0F);
+        assertEquals(41, mStore.getUpdateCount());
+        assertEquals(39, mStore.getSavedWriteCount());
+    }
+
+    @Test
+    public void writesFirstUpdateOfEachBurst() {
+        mStore.update(60.0F, 1000L);
+        assertFalse(mStore.update(70.0F, 1100L));
+        mStore.flush(1200L);
+
+        // the next acceleration starts after a quiet period
+        assertTrue(mStore.update(80.0F, 1200L + INTERVAL));
+        assertEquals(3, mWrites);
+        assertEquals(80.0F, mWritten, 0.0F);
+        assertFalse(mStore.update(90.0F, 1300L + INTERVAL));
+        assertEquals(INTERVAL - 100L, mStore.getFlushDelay(1300L + INTERVAL));
+    }
+
+    @Test
+    public void flushWritesPendingUpdate() {
+        mStore.update(60.0F, 1000L);
+        mStore.update(70.0F, 1100L);
+        mStore.flush(1200L);
+        assertEquals(70.0F, mWritten, 0.0F);
+        assertEquals(2, mWrites);
+
+        // nothing pending, so nothing written
+        mStore.flush(1300L);
+        assertEquals(2, mWrites);
+    }
+
+    @Test
+    public void setWritesStraightAway() {
+        mStore.update(60.0F, 1000L);
+        mStore.set(0.0F, 1100L);
+        assertEquals(2, mWrites);
+        assertEquals(0.0F, mWritten, 0.0F);
+        assertEquals(0.0F, mStore.getMaxSpeed(), 0.0F);
+    }
+}
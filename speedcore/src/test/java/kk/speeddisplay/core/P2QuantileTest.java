@@ -0,0 +1,122 @@
+package kk.speeddisplay.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class P2QuantileTest {
+
+    private static final int SAMPLES = 2000000;
+    private static final double[] LEVELS = {0.5, 0.9, 0.99};
+
+    /**
+     * Checks the estimates against the exact quantiles, as the fraction of the samples
+     * below the estimate, the rank error, which does not depend on the scale of the samples
+     */
+    private static void assertRankError(float[] samples, double maxRankError) {
+        P2Quantile[] sketches = new P2Quantile[LEVELS.length];
+        for (int i = 0; i < LEVELS.length; i++) {
+            sketches[i] = new P2Quantile(LEVELS[i]);
+        }
+        for (float sample : samples) {
+            for (P2Quantile sketch : sketches) {
+                sketch.add(sample);
+            }
+        }
+        float[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        for (P2Quantile sketch : sketches) {
+            double estimate = sketch.getQuantile();
+            int below = 0;
+            int low = 0;
+            int high = sorted.length;
+            // binary search for the rank of the estimate
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (sorted[mid] < estimate) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            below = low;
+            double rank = (double) below / sorted.length;
+            assertEquals("quantile " + sketch.getQuantileLevel(), sketch.getQuantileLevel(), rank, maxRankError);
+        }
+    }
+
+    @Test
+    public void estimatesUniformSamples() {
+        Random random = new Random(1);
+        float[] samples = new float[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            samples[i] = random.nextFloat() * 200;
+        }
+        assertRankError(samples, 0.002);
+    }
+
+    @Test
+    public void estimatesSkewedSamples() {
+        Random random = new Random(2);
+        float[] samples = new float[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            samples[i] = (float) (-20 * Math.log(1 - random.nextDouble()));
+        }
+        assertRankError(samples, 0.002);
+    }
+
+    @Test
+    public void estimatesDrivingSpeeds() {
+        // hours of urban and highway driving, in the order driven, so not shuffled
+        SpeedTraces urban = SpeedTraces.urban();
+        SpeedTraces highway = SpeedTraces.highway();
+        float[] samples = new float[SAMPLES];
+        int i = 0;
+        while (i < SAMPLES) {
+            for (int j = 0; j < urban.mReportedSpeeds.length && i < SAMPLES; j++) {
+                samples[i++] = SpeedProcessor.mpsToKph(urban.mReportedSpeeds[j]);
+            }
+            for (int j = 0; j < highway.mReportedSpeeds.length && i < SAMPLES; j++) {
+                samples[i++] = SpeedProcessor.mpsToKph(highway.mReportedSpeeds[j]);
+            }
+        }
+        assertRankError(samples, 0.01);
+    }
+
+    @Test
+    public void usesSamplesUntilMarkersSet() {
+        P2Quantile median = new P2Quantile(0.5);
+        assertEquals(0.0, median.getQuantile(), 0.0);
+        median.add(30);
+        median.add(10);
+        median.add(20);
+        assertEquals(20.0, median.getQuantile(), 0.0);
+        assertEquals(3, median.getCount());
+        median.reset();
+        median.add(5);
+        assertEquals(5.0, median.getQuantile(), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsQuantileOutOfRange() {
+        new P2Quantile(1.0);
+    }
+
+    @Test
+    public void addsWithoutAllocating() {
+        assumeTrue(Allocations.isSupported());
+        P2Quantile sketch = new P2Quantile(0.9);
+        for (int i = 0; i < 100000; i++) {
+            sketch.add(i % 1000);
+        }
+        long before = Allocations.allocatedBytes();
+        for (int i = 0; i < 1000000; i++) {
+            sketch.add(i % 1000);
+        }
+        assertTrue(Allocations.allocatedBytes() - before < Allocations.NOISE_BYTES);
+    }
+}
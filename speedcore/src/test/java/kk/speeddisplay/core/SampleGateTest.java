@@ -0,0 +1,136 @@
+package kk.speeddisplay.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SampleGateTest {
+
+    private final SampleGate mGate = new SampleGate();
+
+    /**
+     * Starts the gate with a sample a second before the time, held until the sample at the time agrees
+     */
+    private void start(long time, float speedMps) {
+        assertFalse(mGate.accept(time - 1000L, speedMps, Float.NaN, 5.0F));
+    }
+
+    @Test
+    public void rejectsPoorAccuracy() {
+        assertFalse(mGate.accept(1000L, 20.0F, Float.NaN, 80.0F));
+        assertFalse(mGate.accept(2000L, 20.0F, 8.0F, 5.0F));
+        // the first accurate sample is held, the next agrees with it
+        assertFalse(mGate.accept(3000L, 20.0F, Float.NaN, 5.0F));
+        assertTrue(mGate.accept(4000L, 20.0F, 0.5F, 5.0F));
+        assertEquals(2, mGate.getRejectedAccuracyCount());
+        assertEquals(2, mGate.getRejectedCount());
+    }
+
+    @Test
+    public void positionalSpeedHasItsOwnLimit() {
+        // 10 m fixes a second apart give a positional speed accurate to 14 m/s
+        assertFalse(mGate.accept(1000L, 20.0F, 14.1F, 10.0F));
+        assertFalse(mGate.accept(2000L, 20.0F, 14.1F, 10.0F, true));
+        assertTrue(mGate.accept(3000L, 20.0F, 14.1F, 10.0F, true));
+        assertFalse(mGate.accept(4000L, 20.0F, 42.4F, 30.0F, true));
+        assertEquals(2, mGate.getRejectedAccuracyCount());
+    }
+
+    @Test
+    public void rejectsSingleSpike() {
+        start(1000L, 25.0F);
+        assertTrue(mGate.accept(1000L, 25.0F, Float.NaN, 5.0F));
+        // 380 km/h for one fix
+        assertFalse(mGate.accept(2000L, 105.6F, Float.NaN, 5.0F));
+        assertTrue(mGate.accept(3000L, 25.5F, Float.NaN, 5.0F));
+        assertEquals(1, mGate.getRejectedAccelerationCount());
+    }
+
+    @Test
+    public void acceptsHardBraking() {
+        start(1000L, 30.0F);
+        assertTrue(mGate.accept(1000L, 30.0F, Float.NaN, 5.0F));
+        assertTrue(mGate.accept(2000L, 20.0F, Float.NaN, 5.0F));
+        assertTrue(mGate.accept(3000L, 10.0F, Float.NaN, 5.0F));
+        assertEquals(0, mGate.getRejectedCount());
+    }
+
+    @Test
+    public void reacquiresAfterConsistentSamples() {
+        start(1000L, 0.0F);
+        assertTrue(mGate.accept(1000L, 0.0F, Float.NaN, 5.0F));
+        // genuinely moving after the fixes were lost for a short time
+        assertFalse(mGate.accept(2000L, 30.0F, Float.NaN, 5.0F));
+        assertFalse(mGate.accept(3000L, 30.5F, Float.NaN, 5.0F));
+        assertTrue(mGate.accept(4000L, 31.0F, Float.NaN, 5.0F));
+        assertTrue(mGate.accept(5000L, 31.0F, Float.NaN, 5.0F));
+        assertEquals(2, mGate.getRejectedAccelerationCount());
+    }
+
+    @Test
+    public void inconsistentSpikesNeverReacquire() {
+        start(1000L, 20.0F);
+        assertTrue(mGate.accept(1000L, 20.0F, Float.NaN, 5.0F));
+        assertFalse(mGate.accept(2000L, 90.0F, Float.NaN, 5.0F));
+        assertFalse(mGate.accept(3000L, 50.0F, Float.NaN, 5.0F));
+        assertFalse(mGate.accept(4000L, 100.0F, Float.NaN, 5.0F));
+        assertTrue(mGate.accept(5000L, 21.0F, Float.NaN, 5.0F));
+    }
+
+    @Test
+    public void allowsLargerChangeAfterGap() {
+        start(1000L, 0.0F);
+        assertTrue(mGate.accept(1000L, 0.0F, Float.NaN, 5.0F));
+        assertTrue(mGate.accept(11000L, 25.0F, Float.NaN, 5.0F));
+    }
+
+    @Test
+    public void outlierFirstSampleIsNeverAccepted() {
+        // a multipath speed from the first fix after the receiver starts
+        assertFalse(mGate.accept(1000L, 105.6F, Float.NaN, 5.0F));
+        assertFalse(mGate.accept(2000L, 25.0F, Float.NaN, 5.0F));
+        assertTrue(mGate.accept(3000L, 25.2F, Float.NaN, 5.0F));
+        assertEquals(1, mGate.getRejectedAccelerationCount());
+    }
+
+    @Test
+    public void holdsFirstSampleAfterReset() {
+        start(2000L, 25.0F);
+        assertTrue(mGate.accept(2000L, 25.0F, Float.NaN, 5.0F));
+        mGate.reset();
+        // a gap in the fixes, then an outlier
+        assertFalse(mGate.accept(60000L, 90.0F, Float.NaN, 5.0F));
+        assertFalse(mGate.accept(61000L, 22.0F, Float.NaN, 5.0F));
+        assertTrue(mGate.accept(62000L, 22.5F, Float.NaN, 5.0F));
+    }
+
+    @Test
+    public void firstSampleMustMeetAccuracy() {
+        assertFalse(mGate.accept(1000L, 25.0F, Float.NaN, 80.0F));
+        assertFalse(mGate.accept(2000L, 25.0F, Float.NaN, 5.0F));
+        assertTrue(mGate.accept(3000L, 25.0F, Float.NaN, 5.0F));
+        assertEquals(1, mGate.getRejectedAccuracyCount());
+    }
+
+    @Test
+    public void spikeDoesNotReachMaximum() {
+        final float[] max = new float[1];
+        SpeedProcessor processor = new SpeedProcessor(new SpeedProcessor.Listener() {
+            @Override
+            public void onNewMaxSpeed(float maxSpeed) {
+                max[0] = maxSpeed;
+            }
+
+            @Override
+            public void onSpeedChanged(float speed, float maxSpeed) {
+            }
+        });
+        float[] speeds = {24.9F, 25.0F, 25.2F, 105.6F, 25.4F, 25.1F};
+        for (int i = 0; i < speeds.length; i++) {
+            if (mGate.accept(i * 1000L, speeds[i], Float.NaN, 5.0F)) {
+                processor.process(i * 1000L, speeds[i], 5.0F, 0, 0);
+            }
+        }
+        assertEquals(SpeedProcessor.mpsToKph(25.4F), max[0], 0.0F);
+    }
+}
@@ -0,0 +1,135 @@
+package kk.speeddisplay.core;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class SessionJournalTest {
+
+    private static final long INTERVAL = 5000L;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private SessionJournal mJournal;
+
+    @After
+    public void tearDown() {
+        if (mJournal != null) {
+            mJournal.close();
+        }
+    }
+
+    private File journalFile() {
+        return new File(mFolder.getRoot(), "session");
+    }
+
+    private void checkpoint(int i) throws IOException {
+        mJournal.checkpoint(42L, i * 10.0, i * 1000L, i * 500L, i * 36000.0, 1500000000000L + i * 1000L,
+                -33.8 + i * 1e-4, 151.2, i * 0.5F, i * 1000L);
+    }
+
+    @Test
+    public void replaysNothingWithoutJournal() throws IOException {
+        mJournal = new SessionJournal(journalFile(), INTERVAL);
+        assertFalse(mJournal.replay());
+    }
+
+    @Test
+    public void replaysLatestCheckpoint() throws IOException {
+        mJournal = new SessionJournal(journalFile(), INTERVAL);
+        for (int i = 1; i <= 21; i++) {
+            checkpoint(i);
+        }
+        mJournal.close();
+
+        SessionJournal restarted = new SessionJournal(journalFile(), INTERVAL);
+        assertTrue(restarted.replay());
+        assertEquals(42L, restarted.getTripId());
+        assertEquals(210.0, restarted.getDistance(), 0.0);
+        assertEquals(21000L, restarted.getMovingTime());
+        assertEquals(10500L, restarted.getStoppedTime());
+        assertEquals(756000.0, restarted.getSpeedTime(), 0.0);
+        assertEquals(1500000021000L, restarted.getLastTime());
+        assertEquals(-33.8 + 21e-4, restarted.getLatitude(), 0.0);
+        assertEquals(151.2, restarted.getLongitude(), 0.0);
+        assertEquals(10.5F, restarted.getSpeed(), 0.0F);
+
+        // checkpoints after the replay continue the sequence
+        restarted.checkpoint(42L, 300.0, 0L, 0L, 0.0, 0L, 0.0, 0.0, 0.0F, 0L);
+        restarted.close();
+        mJournal = new SessionJournal(journalFile(), INTERVAL);
+        assertTrue(mJournal.replay());
+        assertEquals(300.0, mJournal.getDistance(), 0.0);
+    }
+
+    @Test
+    public void survivesTornWrite() throws IOException {
+        mJournal = new SessionJournal(journalFile(), INTERVAL);
+        for (int i = 1; i <= 10; i++) {
+            checkpoint(i);
+        }
+        mJournal.close();
+
+        // a crash part way through writing the latest record
+        RandomAccessFile file = new RandomAccessFile(journalFile(), "rw");
+        try {
+            file.seek((10 % SessionJournal.SLOTS) * SessionJournal.RECORD_SIZE + 20);
+            file.writeLong(0x1234567812345678L);
+        } finally {
+            file.close();
+        }
+
+        mJournal = new SessionJournal(journalFile(), INTERVAL);
+        assertTrue(mJournal.replay());
+        assertEquals(90.0, mJournal.getDistance(), 0.0);
+    }
+
+    @Test
+    public void batchesForces() throws IOException {
+        mJournal = new SessionJournal(journalFile(), INTERVAL);
+        // one checkpoint a second for a minute
+        for (int i = 1; i <= 60; i++) {
+            checkpoint(i);
+        }
+        assertEquals(60, mJournal.getCheckpointCount());
+        assertEquals(12, mJournal.getForceCount());
+
+        mJournal.flush(61000L);
+        assertEquals(13, mJournal.getForceCount());
+        mJournal.flush(62000L);
+        assertEquals(13, mJournal.getForceCount());
+    }
+
+    @Test
+    public void clearEndsSession() throws IOException {
+        mJournal = new SessionJournal(journalFile(), INTERVAL);
+        checkpoint(1);
+        mJournal.clear();
+        assertFalse(journalFile().exists());
+        assertFalse(new SessionJournal(journalFile(), INTERVAL).replay());
+    }
+
+    @Test
+    public void checkpointsWithoutAllocating() throws IOException {
+        assumeTrue(Allocations.isSupported());
+        mJournal = new SessionJournal(journalFile(), Long.MAX_VALUE);
+        // warm up, the first checkpoints open the file and force it
+        for (int i = 1; i <= 1000; i++) {
+            checkpoint(i);
+        }
+        long before = Allocations.allocatedBytes();
+        for (int i = 1001; i <= 11000; i++) {
+            checkpoint(i);
+        }
+        assertTrue(Allocations.allocatedBytes() - before < Allocations.NOISE_BYTES);
+    }
+}
@@ -0,0 +1,44 @@
+package kk.speeddisplay.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SevenSegmentTest {
+
+    private final int[] mCells = new int[4];
+
+    @Test
+    public void encodesDigits() {
+        assertEquals(SevenSegment.ALL_SEGMENTS, SevenSegment.segmentsFor('8'));
+        assertEquals(SevenSegment.SEGMENT_B | SevenSegment.SEGMENT_C, SevenSegment.segmentsFor('1'));
+        assertEquals(SevenSegment.SEGMENT_G, SevenSegment.segmentsFor('-'));
+        assertEquals(0, SevenSegment.segmentsFor(' '));
+    }
+
+    @Test
+    public void laysOutRightAligned() {
+        assertTrue(SevenSegment.layout("12.3".toCharArray(), 4, mCells));
+        assertEquals(0, mCells[0]);
+        assertEquals(SevenSegment.segmentsFor('1'), mCells[1]);
+        assertEquals(SevenSegment.segmentsFor('2'), mCells[2]);
+        assertEquals(SevenSegment.segmentsFor('3'), mCells[3]);
+    }
+
+    @Test
+    public void reportsOnlyChangedLayouts() {
+        SevenSegment.layout("12.3".toCharArray(), 4, mCells);
+        assertFalse(SevenSegment.layout("12.3".toCharArray(), 4, mCells));
+        assertTrue(SevenSegment.layout("12.4".toCharArray(), 4, mCells));
+    }
+
+    @Test
+    public void showsDashesWhenSpeedDoesNotFit() {
+        SevenSegment.layout("12345.6".toCharArray(), 7, mCells);
+        for (int cell : mCells) {
+            assertEquals(SevenSegment.SEGMENT_G, cell);
+        }
+        SevenSegment.layout("999.9".toCharArray(), 5, mCells);
+        assertEquals(SevenSegment.segmentsFor('9'), mCells[0]);
+    }
+}
@@ -0,0 +1,97 @@
+package kk.speeddisplay.core;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class SpeedBandHistogramTest {
+
+    private final SpeedBandHistogram mHistogram = new SpeedBandHistogram();
+
+    @Test
+    public void creditsTimeToBandOfLaterSample() {
+        mHistogram.add(0L, 0.0F);
+        mHistogram.add(1000L, 5.0F);
+        mHistogram.add(3000L, 55.0F);
+        mHistogram.add(4000L, 250.0F);
+        // signal lost for a minute
+        mHistogram.add(64000L, 55.0F);
+
+        assertEquals(1000L, mHistogram.getTime(true, 0));
+        assertEquals(2000L, mHistogram.getTime(true, 5));
+        assertEquals(1000L, mHistogram.getTime(true, SpeedBandHistogram.METRIC_BANDS - 1));
+        assertEquals(4000L, mHistogram.getTotalTime());
+        assertEquals(2000L, mHistogram.getMaxTime(true));
+
+        // 55 km/h is 34 mph, 250 km/h is above the last imperial band
+        assertEquals(1000L, mHistogram.getTime(false, 0));
+        assertEquals(2000L, mHistogram.getTime(false, 3));
+        assertEquals(1000L, mHistogram.getTime(false, SpeedBandHistogram.IMPERIAL_BANDS - 1));
+    }
+
+    @Test
+    public void mergesTrips() {
+        mHistogram.add(0L, 30.0F);
+        mHistogram.add(1000L, 30.0F);
+        SpeedBandHistogram other = new SpeedBandHistogram();
+        other.add(0L, 30.0F);
+        other.add(2000L, 30.0F);
+        other.add(3000L, 120.0F);
+
+        mHistogram.merge(other);
+        assertEquals(3000L, mHistogram.getTime(true, 3));
+        assertEquals(1000L, mHistogram.getTime(true, 12));
+        assertEquals(4000L, mHistogram.getTotalTime());
+    }
+
+    @Test
+    public void writesAndReadsTimes() throws IOException {
+        mHistogram.add(0L, 30.0F);
+        mHistogram.add(1000L, 30.0F);
+        mHistogram.add(2500L, 190.0F);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        mHistogram.writeTo(new DataOutputStream(bytes));
+
+        SpeedBandHistogram read = new SpeedBandHistogram();
+        read.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        for (int band = 0; band < SpeedBandHistogram.METRIC_BANDS; band++) {
+            assertEquals(mHistogram.getTime(true, band), read.getTime(true, band));
+        }
+        for (int band = 0; band < SpeedBandHistogram.IMPERIAL_BANDS; band++) {
+            assertEquals(mHistogram.getTime(false, band), read.getTime(false, band));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherData() throws IOException {
+        mHistogram.readFrom(new DataInputStream(new ByteArrayInputStream(new byte[64])));
+    }
+
+    @Test
+    public void clearForgetsPreviousSample() {
+        mHistogram.add(0L, 30.0F);
+        mHistogram.clear();
+        mHistogram.add(1000L, 30.0F);
+        assertEquals(0L, mHistogram.getTotalTime());
+    }
+
+    @Test
+    public void addsWithoutAllocating() {
+        assumeTrue(Allocations.isSupported());
+        for (int i = 0; i < 100000; i++) {
+            mHistogram.add(i * 1000L, i % 2500 * 0.1F);
+        }
+        long before = Allocations.allocatedBytes();
+        for (int i = 100000; i < 1100000; i++) {
+            mHistogram.add(i * 1000L, i % 2500 * 0.1F);
+        }
+        assertTrue(Allocations.allocatedBytes() - before < Allocations.NOISE_BYTES);
+    }
+}
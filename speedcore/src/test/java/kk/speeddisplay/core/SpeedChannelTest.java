@@ -0,0 +1,114 @@
+package kk.speeddisplay.core;
+
+import org.junit.Test;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SpeedChannelTest {
+
+    private final SpeedChannel mChannel = new SpeedChannel();
+
+    @Test
+    public void packsBothSpeeds() {
+        long packed = SpeedChannel.pack(123.4F, -0.5F);
+        assertEquals(123.4F, SpeedChannel.speedOf(packed), 0.0F);
+        assertEquals(-0.5F, SpeedChannel.maxSpeedOf(packed), 0.0F);
+    }
+
+    @Test
+    public void keepsOnlyLatestValue() {
+        mChannel.publish(10.0F, 10.0F);
+        mChannel.publish(20.0F, 20.0F);
+        long packed = mChannel.take();
+        assertEquals(20.0F, SpeedChannel.speedOf(packed), 0.0F);
+        assertEquals(2, mChannel.getPublishCount());
+    }
+
+    @Test
+    public void stampsThePublishTime() {
+        long before = System.nanoTime();
+        mChannel.publish(10.0F, 10.0F);
+        long after = System.nanoTime();
+        mChannel.take();
+        assertTrue(mChannel.getPublishNanos() >= before);
+        assertTrue(mChannel.getPublishNanos() <= after);
+    }
+
+    @Test
+    public void carriesSustainedMaximum() {
+        mChannel.publish(30.0F, 40.0F, 35.0F);
+        mChannel.publish(31.0F, 40.0F);
+        long packed = mChannel.take();
+        assertEquals(31.0F, SpeedChannel.speedOf(packed), 0.0F);
+        assertEquals(35.0F, mChannel.getSustainedMaxSpeed(), 0.0F);
+    }
+
+    @Test
+    public void signalsOnceUntilTaken() {
+        final AtomicInteger signals = new AtomicInteger();
+        mChannel.setListener(new SpeedChannel.Listener() {
+            @Override
+            public void onSpeedAvailable() {
+                signals.incrementAndGet();
+            }
+        });
+        mChannel.publish(1.0F, 1.0F);
+        mChannel.publish(2.0F, 2.0F);
+        mChannel.publish(3.0F, 3.0F);
+        assertEquals(1, signals.get());
+
+        mChannel.take();
+        mChannel.publish(4.0F, 4.0F);
+        assertEquals(2, signals.get());
+    }
+
+    @Test
+    public void signalsNewListenerIfValueWaiting() {
+        mChannel.publish(1.0F, 1.0F);
+        final AtomicInteger signals = new AtomicInteger();
+        mChannel.setListener(new SpeedChannel.Listener() {
+            @Override
+            public void onSpeedAvailable() {
+                signals.incrementAndGet();
+            }
+        });
+        assertEquals(1, signals.get());
+    }
+
+    @Test
+    public void consumerAlwaysSeesLastPublishedValue() throws InterruptedException {
+        final Semaphore available = new Semaphore(0);
+        mChannel.setListener(new SpeedChannel.Listener() {
+            @Override
+            public void onSpeedAvailable() {
+                available.release();
+            }
+        });
+        final int values = 1000000;
+        Thread publisher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 1; i <= values; i++) {
+                    mChannel.publish(i, i);
+                }
+            }
+        });
+        publisher.start();
+
+        float last = 0;
+        while (last < values) {
+            assertTrue(available.tryAcquire(10, TimeUnit.SECONDS));
+            long packed = mChannel.take();
+            float speed = SpeedChannel.speedOf(packed);
+            assertTrue(speed >= last);
+            assertEquals(speed, SpeedChannel.maxSpeedOf(packed), 0.0F);
+            last = speed;
+        }
+        publisher.join();
+        assertEquals(values, last, 0.0F);
+    }
+}
@@ -0,0 +1,113 @@
+package kk.speeddisplay.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class SpeedDiagnosticsTest {
+
+    private static final long MILLIS = 1000000L;
+    private static final long START = 5000 * MILLIS;
+
+    @Test
+    public void recordsTheAgeOfEachFix() {
+        SpeedDiagnostics diagnostics = new SpeedDiagnostics();
+        diagnostics.setExpectedInterval(1000L);
+        for (int i = 0; i < 10; i++) {
+            long fix = START + i * 1000 * MILLIS;
+            diagnostics.onFix(fix, fix + 40 * MILLIS);
+        }
+
+        TimingHistogram age = diagnostics.getTiming(SpeedDiagnostics.FIX_AGE);
+        assertEquals(10, diagnostics.getFixCount());
+        assertEquals(10, age.getCount());
+        assertEquals(40.0, age.getMeanMillis(), 1e-9);
+        assertEquals(0, diagnostics.getDroppedCount());
+        assertEquals(0, diagnostics.getDuplicateCount());
+    }
+
+    @Test
+    public void recordsTheJitterOfTheIntervals() {
+        SpeedDiagnostics diagnostics = new SpeedDiagnostics();
+        diagnostics.setExpectedInterval(1000L);
+        long fix = START;
+        for (int i = 0; i < 10; i++) {
+            // alternately 100 ms early and 100 ms late
+            fix += (i % 2 == 0 ? 900 : 1100) * MILLIS;
+            diagnostics.onFix(fix, fix);
+        }
+
+        TimingHistogram jitter = diagnostics.getTiming(SpeedDiagnostics.FIX_JITTER);
+        assertEquals(9, jitter.getCount());
+        assertEquals(100.0, jitter.getMeanMillis(), 1e-9);
+        assertEquals(0, diagnostics.getDroppedCount());
+    }
+
+    @Test
+    public void countsTheFixesMissingFromGaps() {
+        SpeedDiagnostics diagnostics = new SpeedDiagnostics();
+        diagnostics.setExpectedInterval(1000L);
+        diagnostics.onFix(START, START);
+        // a fix a little late is not a drop
+        diagnostics.onFix(START + 1400 * MILLIS, START + 1400 * MILLIS);
+        // two fixes missing
+        diagnostics.onFix(START + 4400 * MILLIS, START + 4400 * MILLIS);
+
+        assertEquals(3, diagnostics.getFixCount());
+        assertEquals(2, diagnostics.getDroppedCount());
+    }
+
+    @Test
+    public void countsDuplicateFixes() {
+        SpeedDiagnostics diagnostics = new SpeedDiagnostics();
+        diagnostics.setExpectedInterval(1000L);
+        diagnostics.onFix(START, START);
+        diagnostics.onFix(START, START + 10 * MILLIS);
+        diagnostics.onFix(START - 1000 * MILLIS, START + 20 * MILLIS);
+        diagnostics.onFix(START + 1000 * MILLIS, START + 1000 * MILLIS);
+
+        assertEquals(2, diagnostics.getFixCount());
+        assertEquals(2, diagnostics.getDuplicateCount());
+        assertEquals(1, diagnostics.getTiming(SpeedDiagnostics.FIX_JITTER).getCount());
+    }
+
+    @Test
+    public void reportsEachTiming() {
+        SpeedDiagnostics diagnostics = new SpeedDiagnostics();
+        diagnostics.setExpectedInterval(1000L);
+        diagnostics.onFix(START, START + 25 * MILLIS);
+        diagnostics.getTiming(SpeedDiagnostics.DRAW).record(3 * MILLIS);
+
+        StringBuilder report = new StringBuilder();
+        diagnostics.appendReport(report, true);
+        String text = report.toString();
+
+        assertTrue(text.contains("Fixes 1, dropped 0, duplicate 0"));
+        for (int i = 0; i < SpeedDiagnostics.TIMINGS; i++) {
+            assertTrue(text.contains(SpeedDiagnostics.getName(i)));
+        }
+        assertTrue(text.contains("max 25.00 ms"));
+        // the buckets of the fix age and the draw
+        assertTrue(text.contains("24.576-26.624 ms: 1"));
+        assertTrue(text.contains("2.816-3.072 ms: 1"));
+    }
+
+    @Test
+    public void recordsFixesWithoutAllocating() {
+        assumeTrue(Allocations.isSupported());
+        SpeedDiagnostics diagnostics = new SpeedDiagnostics();
+        diagnostics.setExpectedInterval(1000L);
+        long fix = START;
+        for (int i = 0; i < 100000; i++) {
+            fix += 1000 * MILLIS;
+            diagnostics.onFix(fix, fix + 30 * MILLIS);
+        }
+        long before = Allocations.allocatedBytes();
+        for (int i = 0; i < 1000000; i++) {
+            fix += 1000 * MILLIS;
+            diagnostics.onFix(fix, fix + 30 * MILLIS);
+        }
+        assertTrue(Allocations.allocatedBytes() - before < Allocations.NOISE_BYTES);
+    }
+}
@@ -0,0 +1,127 @@
+package kk.speeddisplay.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class SpeedEstimatorTest {
+
+    private static final long SECOND = 1000000000L;
+    // 20 m/s north, in degrees of latitude per second
+    private static final double NORTH_20 = 20.0 / 111195.0;
+
+    private final SpeedEstimator mEstimator = new SpeedEstimator();
+
+    @Test
+    public void usesDopplerForFirstFix() {
+        assertEquals(12.0F, mEstimator.estimate(SECOND, true, 12.0F, Float.NaN, 5.0F, -33.8, 151.2), 0.0F);
+        assertEquals(SpeedEstimator.SOURCE_DOPPLER, mEstimator.getSource());
+        assertEquals(SpeedEstimator.DEFAULT_DOPPLER_ACCURACY, mEstimator.getSpeedAccuracy(), 0.0F);
+    }
+
+    @Test
+    public void derivesSpeedFromPositionsWithoutDoppler() {
+        mEstimator.estimate(SECOND, false, 0.0F, Float.NaN, 3.0F, -33.8, 151.2);
+        float speed = mEstimator.estimate(2 * SECOND, false, 0.0F, Float.NaN, 3.0F, -33.8 + NORTH_20, 151.2);
+        assertEquals(20.0F, speed, 0.05F);
+        assertEquals(SpeedEstimator.SOURCE_POSITION, mEstimator.getSource());
+    }
+
+    @Test
+    public void keepsLastSpeedWithNoSource() {
+        mEstimator.estimate(SECOND, true, 12.0F, Float.NaN, 5.0F, -33.8, 151.2);
+        mEstimator.reset();
+        assertEquals(12.0F, mEstimator.estimate(2 * SECOND, false, 0.0F, Float.NaN, 5.0F, -33.8, 151.2), 0.0F);
+        assertEquals(SpeedEstimator.SOURCE_NONE, mEstimator.getSource());
+    }
+
+    @Test
+    public void pipelineDropsFixWithNoSource() {
+        SpeedProcessor processor = new SpeedProcessor(new SpeedProcessor.Listener() {
+            @Override
+            public void onNewMaxSpeed(float maxSpeed) {
+            }
+
+            @Override
+            public void onSpeedChanged(float speed, float maxSpeed) {
+            }
+        });
+        SpeedPipeline pipeline = new SpeedPipeline(processor, mEstimator, new SampleGate(),
+                new AdaptiveRateScheduler(1000L, 10000L));
+        pipeline.begin();
+        for (int i = 1; i <= 3; i++) {
+            pipeline.add(i * SECOND, i * 1000L, true, 20.0F, Float.NaN, 3.0F, -33.8 + i * NORTH_20, 151.2);
+        }
+        pipeline.end();
+        assertEquals(72.0F, processor.getSpeed(), 0.5F);
+        long samples = processor.getSampleCount();
+
+        // stopped after a gap, with no Doppler speed, the 20 m/s of the earlier fixes is stale
+        pipeline.begin();
+        assertFalse(pipeline.add(60 * SECOND, 60000L, false, 0.0F, Float.NaN, 3.0F, -33.8, 151.2));
+        assertEquals(SpeedEstimator.SOURCE_NONE, mEstimator.getSource());
+        pipeline.end();
+        assertEquals(samples, processor.getSampleCount());
+        assertEquals(72.0F, processor.getSpeed(), 0.5F);
+    }
+
+    @Test
+    public void blendsByAccuracy() {
+        mEstimator.estimate(0, true, 20.0F, 1.0F, 1.0F, 0.0, 0.0);
+        // positional variance (1 + 1) / 1, Doppler variance 1, so Doppler has 2/3 of the weight
+        float speed = mEstimator.estimate(SECOND, true, 21.0F, 1.0F, 1.0F, NORTH_20, 0.0);
+        assertEquals(SpeedEstimator.SOURCE_BLENDED, mEstimator.getSource());
+        assertEquals(20.0F + 2.0F / 3.0F, speed, 0.05F);
+        assertTrue(mEstimator.getSpeedAccuracy() < 1.0F);
+    }
+
+    @Test
+    public void rejectsZeroDopplerWhileMoving() {
+        double latitude = 0;
+        for (int i = 0; i < 10; i++) {
+            mEstimator.estimate(i * SECOND, true, 0.0F, Float.NaN, 3.0F, latitude, 0.0);
+            latitude += NORTH_20;
+        }
+        assertEquals(20.0F, mEstimator.getSpeed(), 0.05F);
+        assertEquals(SpeedEstimator.SOURCE_POSITION, mEstimator.getSource());
+        assertEquals(9, mEstimator.getRejectedDopplerCount());
+    }
+
+    @Test
+    public void ignoresPositionsAcrossLongGap() {
+        mEstimator.estimate(0, true, 10.0F, Float.NaN, 3.0F, 0.0, 0.0);
+        mEstimator.estimate(SpeedEstimator.MAX_POSITION_GAP_NANOS + 1, true, 10.0F, Float.NaN, 3.0F, 1.0, 0.0);
+        assertEquals(SpeedEstimator.SOURCE_DOPPLER, mEstimator.getSource());
+    }
+
+    @Test
+    public void fastDistanceMatchesHaversine() {
+        double cos = Math.cos(Math.toRadians(-33.8));
+        double fast = Geo.fastDistance(-33.8, 151.2, -33.81, 151.21, cos);
+        double exact = Geo.distance(-33.8, 151.2, -33.81, 151.21);
+        assertEquals(exact, fast, exact * 0.001);
+    }
+
+    @Test
+    public void estimatesWithoutAllocating() {
+        assumeTrue(Allocations.isSupported());
+        feed(1000000);
+
+        long before = Allocations.allocatedBytes();
+        feed(1000000);
+        long allocated = Allocations.allocatedBytes() - before;
+        assertTrue("allocated " + allocated, allocated < Allocations.NOISE_BYTES);
+    }
+
+    private void feed(int fixes) {
+        double latitude = -33.8;
+        for (int i = 0; i < fixes; i++) {
+            mEstimator.estimate(i * SECOND, i % 7 != 0, 20.0F, 0.3F, 4.0F, latitude, 151.2);
+            latitude += NORTH_20;
+            if (latitude > -33.0) {
+                latitude = -33.8;
+            }
+        }
+    }
+}
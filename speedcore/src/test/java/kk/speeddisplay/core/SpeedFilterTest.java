@@ -0,0 +1,112 @@
+package kk.speeddisplay.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class SpeedFilterTest {
+
+    private static final int[] FILTERS = {SpeedFilters.EMA, SpeedFilters.KALMAN, SpeedFilters.MEDIAN};
+
+    @Test
+    public void noneReturnsRawSpeed() {
+        SpeedFilter filter = SpeedFilters.create(SpeedFilters.NONE);
+        assertEquals(12.3F, filter.filter(1000L, 12.3F), 0.0F);
+        assertEquals(0.0F, filter.filter(2000L, 0.0F), 0.0F);
+    }
+
+    @Test
+    public void emaMovesTowardsNewSpeed() {
+        SpeedFilter filter = new EmaSpeedFilter(1000L);
+        assertEquals(10.0F, filter.filter(0L, 10.0F), 0.0F);
+        // one time constant moves half way
+        assertEquals(15.0F, filter.filter(1000L, 20.0F), 0.0001F);
+        filter.reset();
+        assertEquals(20.0F, filter.filter(2000L, 20.0F), 0.0F);
+    }
+
+    @Test
+    public void medianRemovesSpike() {
+        SpeedFilter filter = new MedianSpeedFilter(5);
+        filter.filter(0L, 10.0F);
+        filter.filter(1000L, 10.0F);
+        filter.filter(2000L, 10.0F);
+        assertEquals(10.0F, filter.filter(3000L, 50.0F), 0.0F);
+        assertEquals(10.0F, filter.filter(4000L, 0.0F), 0.0F);
+        // even number of samples uses the mean of the middle two
+        filter.reset();
+        filter.filter(0L, 10.0F);
+        assertEquals(15.0F, filter.filter(1000L, 20.0F), 0.0F);
+    }
+
+    @Test
+    public void kalmanFollowsConstantAcceleration() {
+        KalmanSpeedFilter filter = new KalmanSpeedFilter(0.7F, 0.5F);
+        float speed = 0;
+        for (int i = 0; i < 60; i++) {
+            speed = filter.filter(i * 1000L, i * 2.0F);
+        }
+        assertEquals(118.0F, speed, 0.5F);
+        assertEquals(2.0F, filter.getAcceleration(), 0.1F);
+    }
+
+    /**
+     * Scores each filter against the traces, each score must be within 0.01 metres/sec of its recorded score,
+     * so a change to the tuning fails the test until the new scores are recorded.
+     * No filter is best everywhere, the median and EMA lag when braking in town,
+     * the Kalman filter is slowest to reject the zero speeds on the highway.
+     */
+    @Test
+    public void scoresFiltersAgainstTraces() {
+        SpeedTraces urban = SpeedTraces.urban();
+        SpeedTraces highway = SpeedTraces.highway();
+        double[] urbanScores = new double[FILTERS.length + 1];
+        double[] highwayScores = new double[FILTERS.length + 1];
+        for (int type = SpeedFilters.NONE; type <= SpeedFilters.MEDIAN; type++) {
+            urbanScores[type] = urban.score(SpeedFilters.create(type));
+            highwayScores[type] = highway.score(SpeedFilters.create(type));
+        }
+
+        // recorded rms errors in metres/sec, the traces are seeded so a change means a filter has changed
+        assertEquals(0.552, urbanScores[SpeedFilters.NONE], 0.01);
+        assertEquals(0.738, urbanScores[SpeedFilters.EMA], 0.01);
+        assertEquals(0.455, urbanScores[SpeedFilters.KALMAN], 0.01);
+        assertEquals(1.431, urbanScores[SpeedFilters.MEDIAN], 0.01);
+        assertEquals(3.229, highwayScores[SpeedFilters.NONE], 0.01);
+        assertEquals(1.871, highwayScores[SpeedFilters.EMA], 0.01);
+        assertEquals(2.519, highwayScores[SpeedFilters.KALMAN], 0.01);
+        assertEquals(0.391, highwayScores[SpeedFilters.MEDIAN], 0.01);
+
+        // the filters designed for the noise do better than the raw speeds
+        assertTrue(urbanScores[SpeedFilters.KALMAN] < urbanScores[SpeedFilters.NONE]);
+        for (int type : FILTERS) {
+            assertTrue("highway filter " + type, highwayScores[type] < highwayScores[SpeedFilters.NONE]);
+        }
+    }
+
+    @Test
+    public void filtersDoNotAllocate() {
+        assumeTrue(Allocations.isSupported());
+        SpeedTraces trace = SpeedTraces.highway();
+        for (int type : FILTERS) {
+            SpeedFilter filter = SpeedFilters.create(type);
+            // warm up so the measurement does not include class loading or compilation
+            feed(filter, trace);
+
+            long before = Allocations.allocatedBytes();
+            feed(filter, trace);
+            long allocated = Allocations.allocatedBytes() - before;
+            assertTrue("filter " + type + " allocated " + allocated, allocated < Allocations.NOISE_BYTES);
+        }
+    }
+
+    private static void feed(SpeedFilter filter, SpeedTraces trace) {
+        for (int repeat = 0; repeat < 500; repeat++) {
+            for (int i = 0; i < trace.mReportedSpeeds.length; i++) {
+                filter.filter((repeat * trace.mReportedSpeeds.length + i) * SpeedTraces.INTERVAL,
+                        trace.mReportedSpeeds[i]);
+            }
+        }
+    }
+}
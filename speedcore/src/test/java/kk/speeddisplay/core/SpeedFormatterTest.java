@@ -0,0 +1,72 @@
+package kk.speeddisplay.core;
+
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class SpeedFormatterTest {
+
+    private static final String SPEED_FORMAT = "%1$.1f";
+
+    private final SpeedFormatter mFormatter = new SpeedFormatter("km/h", "mph", true);
+
+    @Test
+    public void formatsWithOneDecimalPlace() {
+        assertEquals("0.0", mFormatter.formatToString(0.0F));
+        assertEquals("12.3", mFormatter.formatToString(12.34F));
+        assertEquals("100.0", mFormatter.formatToString(99.96F));
+        assertEquals(3, mFormatter.format(1.0F));
+    }
+
+    @Test
+    public void matchesStringFormat() {
+        Random random = new Random(42);
+        for (int i = 0; i < 200000; i++) {
+            float speed = i % 2 == 0 ? i * 0.005F : random.nextFloat() * 400F;
+            assertEquals(String.format(Locale.UK, SPEED_FORMAT, speed), mFormatter.formatToString(speed));
+        }
+    }
+
+    @Test
+    public void matchesStringFormatForImperial() {
+        mFormatter.setMetric(false);
+        for (int i = 0; i < 40000; i++) {
+            float speed = i * 0.01F;
+            float mph = speed * SpeedFormatter.KPH_TO_MPH;
+            assertEquals(String.format(Locale.UK, SPEED_FORMAT, mph), mFormatter.formatToString(speed));
+        }
+    }
+
+    @Test
+    public void cachesUnits() {
+        assertEquals("km/h", mFormatter.getUnits());
+        mFormatter.setMetric(false);
+        assertEquals("mph", mFormatter.getUnits());
+        assertFalse(mFormatter.isMetric());
+    }
+
+    @Test
+    public void appendsToBuilder() {
+        StringBuilder builder = new StringBuilder("Max ");
+        mFormatter.append(builder, 55.55F);
+        assertEquals("Max " + String.format(Locale.UK, SPEED_FORMAT, 55.55F), builder.toString());
+    }
+
+    @Test
+    public void formatsWithoutAllocating() {
+        assumeTrue(Allocations.isSupported());
+        for (int i = 0; i < 100000; i++) {
+            mFormatter.format(i * 0.01F);
+        }
+        long before = Allocations.allocatedBytes();
+        for (int i = 0; i < 1000000; i++) {
+            mFormatter.format(i * 0.01F);
+        }
+        long allocated = Allocations.allocatedBytes() - before;
+        assertTrue("allocated " + allocated, allocated < Allocations.NOISE_BYTES);
+    }
+}
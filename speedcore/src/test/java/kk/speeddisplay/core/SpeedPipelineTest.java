@@ -0,0 +1,128 @@
+package kk.speeddisplay.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SpeedPipelineTest {
+
+    private static final long SECOND = 1000000000L;
+    // metres in degrees of latitude
+    private static final double METRE = 1.0 / 111195.0;
+
+    private final AdaptiveRateScheduler mScheduler = new AdaptiveRateScheduler(1000L, 10000L);
+    private SpeedProcessor mProcessor;
+    private SpeedPipeline mPipeline;
+
+    private long mNanos;
+    private double mLatitude = -33.8;
+
+    @Before
+    public void setUp() {
+        mProcessor = new SpeedProcessor(new SpeedProcessor.Listener() {
+            @Override
+            public void onNewMaxSpeed(float maxSpeed) {
+            }
+
+            @Override
+            public void onSpeedChanged(float speed, float maxSpeed) {
+            }
+        });
+        mPipeline = new SpeedPipeline(mProcessor, new SpeedEstimator(), new SampleGate(), mScheduler);
+    }
+
+    /**
+     * Moves at the speed for the interval the scheduler asks for, then adds a fix as its own
+     * location result
+     *
+     * @return true if the fix was accepted
+     */
+    private boolean fix(float speedMps, boolean hasSpeed, float accuracy) {
+        long interval = mScheduler.getInterval();
+        mNanos += interval * 1000000L;
+        mLatitude += speedMps * interval / 1000.0 * METRE;
+        mPipeline.begin();
+        boolean accepted = mPipeline.add(mNanos, mNanos / 1000000L, hasSpeed, speedMps, Float.NaN, accuracy,
+                mLatitude, 151.2);
+        mPipeline.end();
+        return accepted;
+    }
+
+    /**
+     * Parks for a minute with high accuracy fixes, until the scheduler asks for balanced power
+     */
+    private void park() {
+        long end = mNanos + 60 * SECOND;
+        while (mNanos < end) {
+            fix(0.0F, true, 5.0F);
+        }
+        assertEquals(AdaptiveRateScheduler.STATE_STATIONARY, mScheduler.getState());
+        assertEquals(AdaptiveRateScheduler.PRIORITY_BALANCED_POWER, mScheduler.getPriority());
+    }
+
+    /**
+     * Drives off with the balanced power fixes, until the scheduler asks for high accuracy,
+     * either from the speeds accepted or woken by the fixes rejected, then with the high accuracy fixes
+     */
+    private void driveOff(boolean hasSpeed, float accuracy) {
+        park();
+        int fixes = 0;
+        boolean rateChanged = false;
+        while (mScheduler.getPriority() == AdaptiveRateScheduler.PRIORITY_BALANCED_POWER) {
+            fix(20.0F, hasSpeed, accuracy);
+            rateChanged |= mPipeline.isRateChanged();
+            fixes++;
+            assertTrue(fixes <= SpeedPipeline.WAKE_REJECTED_FIXES);
+        }
+        assertTrue(rateChanged);
+        assertEquals(1000L, mScheduler.getInterval());
+
+        int accepted = 0;
+        for (int i = 0; i < 10; i++) {
+            if (fix(20.0F, true, 5.0F)) {
+                accepted++;
+            }
+        }
+        assertTrue(accepted >= 8);
+        assertEquals(72.0F, mProcessor.getSpeed(), 0.5F);
+        assertEquals(AdaptiveRateScheduler.STATE_ACCELERATING, mScheduler.getState());
+    }
+
+    @Test
+    public void wakesWhenBalancedFixesAreInaccurate() {
+        driveOff(true, 60.0F);
+    }
+
+    @Test
+    public void leavesBalancedPowerWithoutDoppler() {
+        driveOff(false, 30.0F);
+    }
+
+    @Test
+    public void acceptsPositionalSpeedsOfTypicalAccuracy() {
+        for (float accuracy = 5.0F; accuracy <= 10.0F; accuracy += 5.0F) {
+            setUp();
+            int accepted = 0;
+            for (int i = 0; i < 100; i++) {
+                if (fix(20.0F, false, accuracy)) {
+                    accepted++;
+                }
+            }
+            // the first fix has no previous position, the second is held by the sample gate,
+            // and the third has no previous position, as a fix not accepted is not used for the next speed
+            assertEquals(97, accepted);
+            assertEquals(72.0F, mProcessor.getSpeed(), 0.5F);
+        }
+    }
+
+    @Test
+    public void staysStationaryWhileFixesAreAccepted() {
+        park();
+        for (int i = 0; i < 20; i++) {
+            assertTrue(fix(0.0F, true, 20.0F));
+            assertFalse(mPipeline.isRateChanged());
+        }
+        assertEquals(AdaptiveRateScheduler.PRIORITY_BALANCED_POWER, mScheduler.getPriority());
+    }
+}
@@ -0,0 +1,164 @@
+package kk.speeddisplay.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class SpeedProcessorTest {
+
+    private SpeedProcessor mProcessor;
+    private int mSpeedChanges;
+    private int mNewMaxSpeeds;
+    private float mLastSpeed;
+    private float mLastMaxSpeed;
+
+    @Before
+    public void setUp() {
+        mSpeedChanges = 0;
+        mNewMaxSpeeds = 0;
+        mProcessor = new SpeedProcessor(new SpeedProcessor.Listener() {
+            @Override
+            public void onNewMaxSpeed(float maxSpeed) {
+                mNewMaxSpeeds++;
+                mLastMaxSpeed = maxSpeed;
+            }
+
+            @Override
+            public void onSpeedChanged(float speed, float maxSpeed) {
+                mSpeedChanges++;
+                mLastSpeed = speed;
+            }
+        });
+    }
+
+    @Test
+    public void convertsMetresPerSecondToKph() {
+        assertEquals(36.0F, SpeedProcessor.mpsToKph(10.0F), 0.0001F);
+        assertEquals(0.0F, SpeedProcessor.mpsToKph(0.0F), 0.0F);
+    }
+
+    @Test
+    public void onlyAdvisesListenerWhenSpeedChanges() {
+        assertTrue(mProcessor.process(1000L, 10.0F, 5.0F, -33.8, 151.2));
+        assertFalse(mProcessor.process(2000L, 10.0F, 5.0F, -33.8, 151.2));
+        assertTrue(mProcessor.process(3000L, 5.0F, 5.0F, -33.8, 151.2));
+
+        assertEquals(2, mSpeedChanges);
+        assertEquals(18.0F, mLastSpeed, 0.0001F);
+        assertEquals(3, mProcessor.getSampleCount());
+        assertEquals(3000L, mProcessor.getLastTime());
+    }
+
+    @Test
+    public void tracksMaximumSpeed() {
+        mProcessor.setMaxSpeed(20.0F);
+        mProcessor.process(1000L, 5.0F, 5.0F, 0, 0);      // 18 km/h
+        assertEquals(0, mNewMaxSpeeds);
+        mProcessor.process(2000L, 10.0F, 5.0F, 0, 0);     // 36 km/h
+        mProcessor.process(3000L, 8.0F, 5.0F, 0, 0);
+        assertEquals(1, mNewMaxSpeeds);
+        assertEquals(36.0F, mLastMaxSpeed, 0.0001F);
+        assertEquals(36.0F, mProcessor.getMaxSpeed(), 0.0001F);
+
+        mProcessor.resetMaxSpeed();
+        assertEquals(0.0F, mProcessor.getMaxSpeed(), 0.0F);
+        mProcessor.process(4000L, 1.0F, 5.0F, 0, 0);
+        assertEquals(2, mNewMaxSpeeds);
+    }
+
+    @Test
+    public void batchTracksExactMaximumAndAdvisesOnce() {
+        LocationBatch batch = new LocationBatch();
+        batch.add(1000L, 5.0F, 5.0F, 0, 0);
+        batch.add(2000L, 12.0F, 5.0F, 0, 0);     // peak in the middle of the batch
+        batch.add(3000L, 8.0F, 5.0F, 0, 0);
+
+        assertTrue(mProcessor.processBatch(batch));
+        assertEquals(1, mNewMaxSpeeds);
+        assertEquals(1, mSpeedChanges);
+        assertEquals(SpeedProcessor.mpsToKph(12.0F), mProcessor.getMaxSpeed(), 0.0F);
+        assertEquals(SpeedProcessor.mpsToKph(8.0F), mLastSpeed, 0.0F);
+        assertEquals(3, mProcessor.getSampleCount());
+        assertEquals(1, mProcessor.getBatchCount());
+        assertEquals(3000L, mProcessor.getLastTime());
+    }
+
+    @Test
+    public void batchGivesSameResultsAsSingleSamples() {
+        SpeedProcessor single = new SpeedProcessor(new SpeedProcessor.Listener() {
+            @Override
+            public void onNewMaxSpeed(float maxSpeed) {
+            }
+
+            @Override
+            public void onSpeedChanged(float speed, float maxSpeed) {
+            }
+        });
+        LocationBatch batch = new LocationBatch();
+        for (int i = 0; i < 1000; i++) {
+            float speed = (float) (20 + 15 * Math.sin(i * 0.37));
+            double latitude = -33.8 + i * 1e-4;
+            single.process(i * 1000L, speed, 5.0F, latitude, 151.2);
+            batch.add(i * 1000L, speed, 5.0F, latitude, 151.2);
+            if (batch.size() == 30) {
+                mProcessor.processBatch(batch);
+                batch.clear();
+            }
+        }
+        mProcessor.processBatch(batch);
+
+        assertEquals(single.getMaxSpeed(), mProcessor.getMaxSpeed(), 0.0F);
+        assertEquals(single.getSpeed(), mProcessor.getSpeed(), 0.0F);
+        assertEquals(single.getDistance(), mProcessor.getDistance(), 1e-6);
+        assertEquals(1000, mProcessor.getSampleCount());
+        assertEquals(34, mProcessor.getBatchCount());
+        // far fewer advices than samples
+        assertTrue(mSpeedChanges <= 34);
+    }
+
+    @Test
+    public void totalsDistance() {
+        // 0.01 degree of latitude is about 1112 metres
+        mProcessor.process(1000L, 10.0F, 5.0F, 0.0, 0.0);
+        mProcessor.process(2000L, 10.0F, 5.0F, 0.01, 0.0);
+        assertEquals(1112.0, mProcessor.getDistance(), 1.0);
+        assertEquals(1112.0, Geo.distance(0.0, 0.0, 0.01, 0.0), 1.0);
+    }
+
+    @Test
+    public void continuesRestoredSession() {
+        mProcessor.restoreSession(5000.0, 1000L, 0.0, 0.0);
+        mProcessor.process(2000L, 10.0F, 5.0F, 0.0001, 0.0);
+        assertEquals(5011.1, mProcessor.getDistance(), 0.1);
+        assertEquals(2000L, mProcessor.getLastTime());
+    }
+
+    @Test
+    public void processesMillionsOfSamplesWithoutAllocating() {
+        assumeTrue(Allocations.isSupported());
+        int samples = 5000000;
+
+        // warm up so the measurement does not include class loading or compilation
+        feed(samples);
+
+        long before = Allocations.allocatedBytes();
+        long start = System.nanoTime();
+        feed(samples);
+        long elapsed = System.nanoTime() - start;
+        long allocated = Allocations.allocatedBytes() - before;
+
+        assertTrue("allocated " + allocated, allocated < Allocations.NOISE_BYTES);
+        // allow plenty of headroom for slow build machines, expected to be far higher
+        double samplesPerSecond = samples * 1e9 / elapsed;
+        assertTrue("samples/s " + samplesPerSecond, samplesPerSecond > 1000000);
+    }
+
+    private void feed(int samples) {
+        for (int i = 0; i < samples; i++) {
+            float speed = (i % 400) * 0.1F;
+            mProcessor.process(i * 100L, speed, 4.0F, -33.8 + i * 1e-7, 151.2);
+        }
+    }
+}
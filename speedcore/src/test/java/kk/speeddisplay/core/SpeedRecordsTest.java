@@ -0,0 +1,159 @@
+package kk.speeddisplay.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SpeedRecordsTest {
+
+    private static final long FLUSH_INTERVAL = 5000L;
+    private static final long BANDS_INTERVAL = 60000L;
+    private static final float STORED_MAX = 150.0F;
+    private static final float STORED_SUSTAINED = 140.0F;
+
+    /* the records as saved, as if in the preferences and the speed band file */
+    private float mSavedMax = STORED_MAX;
+    private float mSavedSustained = STORED_SUSTAINED;
+    private final SpeedBandHistogram mSavedBands = new SpeedBandHistogram();
+    private int mSaves;
+
+    private final SpeedBandHistogram mTripBands = new SpeedBandHistogram();
+    private SpeedRecords mRecords;
+    private SpeedProcessor mProcessor;
+
+    @Before
+    public void setUp() {
+        // 10 minutes at 100 km/h from earlier trips
+        for (long time = 0; time <= 600000L; time += 1000L) {
+            mSavedBands.add(time, 100.0F);
+        }
+        mRecords = new SpeedRecords(new SpeedRecords.Saver() {
+            @Override
+            public void saveMaxSpeed(float maxSpeed) {
+                mSaves++;
+                mSavedMax = maxSpeed;
+            }
+
+            @Override
+            public void saveSustainedMaxSpeed(float sustainedMaxSpeed) {
+                mSaves++;
+                mSavedSustained = sustainedMaxSpeed;
+            }
+
+            @Override
+            public void saveSpeedBands(SpeedBandHistogram totals) {
+                mSaves++;
+                mSavedBands.copyFrom(totals);
+            }
+        }, FLUSH_INTERVAL, BANDS_INTERVAL, STORED_MAX, STORED_SUSTAINED, mTripBands);
+        mRecords.getStoredSpeedBands().copyFrom(mSavedBands);
+        mRecords.setSpeedBandsLoaded(0L);
+
+        // passes the results of the speed processor to the records, as the service does
+        mProcessor = new SpeedProcessor(new SpeedProcessor.Listener() {
+            @Override
+            public void onNewMaxSpeed(float maxSpeed) {
+                mRecords.updateMaxSpeed(maxSpeed, mProcessor.getLastTime());
+            }
+
+            @Override
+            public void onSpeedChanged(float speed, float maxSpeed) {
+                if (speed < maxSpeed) {
+                    mRecords.flushMaxSpeed(mProcessor.getLastTime());
+                }
+            }
+        });
+        mProcessor.setMaxSpeed(STORED_MAX);
+        mProcessor.setSustainedMaxSpeed(STORED_SUSTAINED);
+        mProcessor.setSpeedBands(mTripBands);
+    }
+
+    /**
+     * Drives 5 minutes up to 200 km/h and back down, one sample a second
+     */
+    private void drive() {
+        for (int i = 0; i <= 300; i++) {
+            long time = i * 1000L;
+            float speedMps = (i < 150 ? i : 300 - i) * 200.0F / 150 / 3.6F;
+            mProcessor.process(time, speedMps, 5.0F, 0.0, 0.0);
+            mRecords.updateSustainedMaxSpeed(mProcessor.getSustainedMaxSpeed(), time);
+            mRecords.saveSpeedBandsIfDue(time);
+        }
+        mRecords.saveSpeedBands(300000L);
+        mRecords.flushMaxSpeeds(300000L);
+    }
+
+    @Test
+    public void savesRecordsOfLiveDrive() {
+        drive();
+
+        assertEquals(mProcessor.getMaxSpeed(), mSavedMax, 0.0F);
+        assertTrue(mSavedMax > 199.0F);
+        assertEquals(mProcessor.getSustainedMaxSpeed(), mSavedSustained, 0.0F);
+        assertTrue(mSavedSustained > STORED_SUSTAINED);
+        assertEquals(600000L + 300000L, mSavedBands.getTotalTime());
+        assertEquals(-1, mRecords.getFlushDelay(300000L));
+    }
+
+    @Test
+    public void replayLeavesStoredRecordsUnchanged() {
+        mRecords.setLive(false);
+        drive();
+
+        // the replay is still shown from memory
+        assertTrue(mProcessor.getMaxSpeed() > 199.0F);
+        assertEquals(300000L, mTripBands.getTotalTime());
+
+        assertEquals(0, mSaves);
+        assertEquals(STORED_MAX, mSavedMax, 0.0F);
+        assertEquals(STORED_SUSTAINED, mSavedSustained, 0.0F);
+        assertEquals(600000L, mSavedBands.getTotalTime());
+        assertEquals(600000L, mSavedBands.getTime(true, 10));
+        assertEquals(-1, mRecords.getFlushDelay(300000L));
+    }
+
+    @Test
+    public void replayDoesNotSaveReset() {
+        mRecords.setLive(false);
+        mRecords.reset(0.0F, 0.0F, 1000L);
+
+        assertEquals(0, mSaves);
+        assertEquals(STORED_MAX, mSavedMax, 0.0F);
+        assertEquals(STORED_SUSTAINED, mSavedSustained, 0.0F);
+    }
+
+    @Test
+    public void holdsMaxSpeedUntilFlushDue() {
+        assertTrue(mRecords.updateMaxSpeed(160.0F, 1000L));
+        assertFalse(mRecords.updateMaxSpeed(170.0F, 2000L));
+        assertEquals(160.0F, mSavedMax, 0.0F);
+        assertEquals(4000L, mRecords.getFlushDelay(2000L));
+
+        assertTrue(mRecords.updateSustainedMaxSpeed(155.0F, 3000L));
+        assertFalse(mRecords.updateSustainedMaxSpeed(155.0F, 3500L));
+        assertEquals(155.0F, mSavedSustained, 0.0F);
+
+        mRecords.flushMaxSpeeds(6000L);
+        assertEquals(170.0F, mSavedMax, 0.0F);
+        assertEquals(-1, mRecords.getFlushDelay(6000L));
+        assertEquals(0, mRecords.getSavedWriteCount());
+    }
+
+    @Test
+    public void savesSpeedBandsOncePerInterval() {
+        for (long time = 0; time <= 30000L; time += 1000L) {
+            mTripBands.add(time, 50.0F);
+        }
+        mRecords.saveSpeedBandsIfDue(30000L);
+        assertEquals(0, mSaves);
+
+        mRecords.saveSpeedBandsIfDue(60000L);
+        assertEquals(1, mSaves);
+        assertEquals(630000L, mSavedBands.getTotalTime());
+        assertEquals(30000L, mSavedBands.getTime(true, 5));
+
+        mRecords.saveSpeedBandsIfDue(90000L);
+        assertEquals(1, mSaves);
+    }
+}
@@ -0,0 +1,88 @@
+package kk.speeddisplay.core;
+
+import java.util.Random;
+
+/**
+ * Test helper which builds drives with a known true speed, and noisy speeds as reported
+ * by a GPS receiver, used to score the accuracy of the speed filters.
+ * The noise is seeded so the traces are the same on every run.
+ */
+final class SpeedTraces {
+
+    /* time between samples in milliseconds */
+    static final long INTERVAL = 1000L;
+
+    final String mName;
+    final float[] mTrueSpeeds;
+    final float[] mReportedSpeeds;
+
+    private SpeedTraces(String name, int samples) {
+        mName = name;
+        mTrueSpeeds = new float[samples];
+        mReportedSpeeds = new float[samples];
+    }
+
+    /**
+     * @return 20 minutes of stop and go driving, with gaussian noise and occasional spikes
+     */
+    static SpeedTraces urban() {
+        SpeedTraces trace = new SpeedTraces("urban", 20 * 60);
+        Random random = new Random(1);
+        float speed = 0;
+        for (int i = 0; i < trace.mTrueSpeeds.length; i++) {
+            // 100 s cycle, accelerate, cruise at 14 m/s, brake, stopped
+            int phase = i % 100;
+            if (phase < 10) {
+                speed = Math.min(14.0F, speed + 1.5F);
+            } else if (phase < 60) {
+                speed = 14.0F;
+            } else if (phase < 66) {
+                speed = Math.max(0.0F, speed - 2.5F);
+            } else {
+                speed = 0.0F;
+            }
+            trace.mTrueSpeeds[i] = speed;
+            float noise = (float) random.nextGaussian() * 0.5F;
+            if (random.nextInt(50) == 0) {
+                noise += random.nextBoolean() ? 3.0F : -3.0F;
+            }
+            trace.mReportedSpeeds[i] = Math.max(0.0F, speed + noise);
+        }
+        return trace;
+    }
+
+    /**
+     * @return 30 minutes of highway driving, with gaussian noise and occasional zero speeds
+     */
+    static SpeedTraces highway() {
+        SpeedTraces trace = new SpeedTraces("highway", 30 * 60);
+        Random random = new Random(2);
+        for (int i = 0; i < trace.mTrueSpeeds.length; i++) {
+            float speed = (float) (30.0 + 3.0 * Math.sin(i * 2 * Math.PI / 300));
+            trace.mTrueSpeeds[i] = speed;
+            float reported = speed + (float) random.nextGaussian() * 0.7F;
+            if (random.nextInt(100) == 0) {
+                // stale or missing Doppler speed
+                reported = 0.0F;
+            }
+            trace.mReportedSpeeds[i] = reported;
+        }
+        return trace;
+    }
+
+    /**
+     * Scores a filter by the root mean square error of the filtered speeds against the true speeds
+     *
+     * @param filter filter to score, reset before use
+     * @return root mean square error in metres/sec
+     */
+    double score(SpeedFilter filter) {
+        filter.reset();
+        double sum = 0;
+        for (int i = 0; i < mTrueSpeeds.length; i++) {
+            double error = filter.filter(i * INTERVAL, mReportedSpeeds[i]) - mTrueSpeeds[i];
+            sum += error * error;
+        }
+        return Math.sqrt(sum / mTrueSpeeds.length);
+    }
+}
@@ -0,0 +1,192 @@
+package kk.speeddisplay.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Times the start of the app through the {@link WarmStart} the service uses to decide which speeds
+ * are sent, with a listener which only sends them as the service does, and a frame like the main
+ * activity's, using the in-memory {@link FakeLocationSource} and its clock.
+ * The times are those of the fake source, they do not measure the start of the app on a device.
+ */
+public class StartupTimerTest {
+
+    private static final long MILLIS = 1000000L;
+    private static final long TARGET = 5000L;
+    /* process start, service start and first frame, milliseconds since boot */
+    private static final long PROCESS_START = 100000L;
+    private static final long SERVICE_START = PROCESS_START + 300L;
+    private static final long FIRST_FRAME = PROCESS_START + 320L;
+
+    /**
+     * Sends the speeds to the channel when the speed processor advises a change, and when the
+     * warm start says to, as the service does
+     */
+    private static class StartupListener implements LocationSource.Listener, SpeedProcessor.Listener {
+        final SpeedChannel mChannel = new SpeedChannel();
+        final StartupTimer mTimer = new StartupTimer(PROCESS_START, TARGET);
+        final WarmStart mWarmStart = new WarmStart(10000L, 20.0F, mTimer);
+        final SpeedPipeline mPipeline = new SpeedPipeline(new SpeedProcessor(this),
+                new SpeedEstimator(), new SampleGate(), new AdaptiveRateScheduler(1000L, 10000L));
+
+        StartupListener(FakeLocationSource source) {
+            source.setListener(this);
+        }
+
+        @Override
+        public void onLastFix(long elapsedNanos, long time, boolean hasSpeed, float speedMps, float accuracy) {
+            if (mWarmStart.onLastFix(elapsedNanos, SERVICE_START * MILLIS, hasSpeed, speedMps, accuracy, true)) {
+                mChannel.publish(mWarmStart.getSpeed(), 0.0F);
+            }
+        }
+
+        @Override
+        public void onLocationResultStart() {
+            mPipeline.begin();
+        }
+
+        @Override
+        public void onFix(long elapsedNanos, long time, boolean hasSpeed, float speedMps, float speedAccuracy,
+                          float accuracy, double latitude, double longitude) {
+            mPipeline.add(elapsedNanos, time, hasSpeed, speedMps, speedAccuracy, accuracy, latitude, longitude);
+        }
+
+        @Override
+        public void onLocationResultEnd() {
+            if (mWarmStart.endResult(mPipeline, true) == WarmStart.RESULT_SEND) {
+                SpeedProcessor processor = mPipeline.getProcessor();
+                mChannel.publish(processor.getSpeed(), processor.getMaxSpeed());
+            }
+        }
+
+        @Override
+        public void onNewMaxSpeed(float maxSpeed) {
+        }
+
+        @Override
+        public void onSpeedChanged(float speed, float maxSpeed) {
+            mChannel.publish(speed, maxSpeed);
+        }
+
+        /**
+         * Displays the latest speed, as the main activity does on a frame
+         *
+         * @return speed displayed in km/hour
+         */
+        float frame(long nowMillis) {
+            float speed = SpeedChannel.speedOf(mChannel.take());
+            mTimer.onFrame(nowMillis);
+            return speed;
+        }
+    }
+
+    /**
+     * Starts the service, which asks for the last fix, shows the speed, then requests the updates
+     */
+    private static StartupListener start(FakeLocationSource source) {
+        StartupListener listener = new StartupListener(source);
+        listener.mChannel.publish(0.0F, 0.0F);
+        source.requestLastFix();
+        source.requestUpdates(1000L, AdaptiveRateScheduler.PRIORITY_HIGH_ACCURACY, 0);
+        return listener;
+    }
+
+    private static void addFix(FakeLocationSource source, long elapsedMillis, float speedMps) {
+        source.add(elapsedMillis * MILLIS, 1530440130000L + elapsedMillis, true, speedMps, 0.5F, 4.0F,
+                -33.8688, 151.2093);
+    }
+
+    private static long nowMillis(FakeLocationSource source) {
+        return source.getNowNanos() / MILLIS;
+    }
+
+    @Test
+    public void showsAFreshLastFixOnTheFirstFrame() {
+        FakeLocationSource source = new FakeLocationSource(true, 50 * MILLIS);
+        source.setLastFix((SERVICE_START - 2000L) * MILLIS, 1530440128000L, true, 20.0F, 5.0F);
+        StartupListener listener = start(source);
+
+        assertEquals(72.0F, listener.frame(FIRST_FRAME), 0.001F);
+        assertEquals(320L, listener.mTimer.getFirstSpeedMillis());
+        assertEquals(StartupTimer.NOT_YET, listener.mTimer.getRealSpeedMillis());
+
+        //the first fix is held until the next agrees with it
+        addFix(source, SERVICE_START + 1500L, 25.0F);
+        addFix(source, SERVICE_START + 2500L, 25.0F);
+        assertEquals(90.0F, listener.frame(nowMillis(source) + 16L), 0.001F);
+        assertTrue(listener.mTimer.isLastFixShown());
+        assertEquals(2866L, listener.mTimer.getRealSpeedMillis());
+        assertTrue(listener.mTimer.isWithinTarget());
+    }
+
+    @Test
+    public void showsZeroUntilTheFirstFixWhenTheLastFixIsStale() {
+        FakeLocationSource source = new FakeLocationSource(true, 50 * MILLIS);
+        source.setLastFix((SERVICE_START - 60000L) * MILLIS, 1530440070000L, true, 20.0F, 5.0F);
+        StartupListener listener = start(source);
+
+        assertEquals(0.0F, listener.frame(FIRST_FRAME), 0.001F);
+        assertEquals(1, source.getLastFixRequestCount());
+
+        //the first fix is held until the next agrees with it
+        addFix(source, SERVICE_START + 1500L, 25.0F);
+        addFix(source, SERVICE_START + 2500L, 25.0F);
+        assertEquals(90.0F, listener.frame(nowMillis(source) + 16L), 0.001F);
+        assertFalse(listener.mTimer.isLastFixShown());
+        assertEquals(2866L, listener.mTimer.getRealSpeedMillis());
+    }
+
+    @Test
+    public void theFirstFixReplacesTheLastFixEvenIfTheSpeedIsUnchanged() {
+        FakeLocationSource source = new FakeLocationSource(true, 50 * MILLIS);
+        source.setLastFix((SERVICE_START - 1000L) * MILLIS, 1530440129000L, true, 15.0F, 5.0F);
+        StartupListener listener = start(source);
+        assertEquals(54.0F, listener.frame(FIRST_FRAME), 0.001F);
+
+        //stopped since the last fix, the pipeline's speed is still 0 so it does not advise a change
+        addFix(source, SERVICE_START + 1500L, 0.0F);
+        addFix(source, SERVICE_START + 2500L, 0.0F);
+        assertEquals(0.0F, listener.frame(nowMillis(source) + 16L), 0.001F);
+        assertNotEquals(StartupTimer.NOT_YET, listener.mTimer.getRealSpeedMillis());
+    }
+
+    @Test
+    public void timesTheFirstRealSpeedFromTheProcessStart() {
+        FakeLocationSource source = new FakeLocationSource(true, 50 * MILLIS);
+        StartupListener listener = start(source);
+        assertEquals(0.0F, listener.frame(FIRST_FRAME), 0.001F);
+        addFix(source, SERVICE_START + 1000L, 20.0F);
+        //the first fix is held by the sample gate, so nothing new is shown
+        assertEquals(StartupTimer.NOT_YET, listener.mTimer.getRealSpeedMillis());
+        addFix(source, SERVICE_START + 2000L, 20.0F);
+        assertEquals(72.0F, listener.frame(nowMillis(source) + 16L), 0.001F);
+
+        assertEquals(2366L, listener.mTimer.getRealSpeedMillis());
+        assertTrue(listener.mTimer.isWithinTarget());
+    }
+
+    @Test
+    public void missesTheTargetWhenTheFirstFixIsLate() {
+        StartupTimer timer = new StartupTimer(PROCESS_START, TARGET);
+        timer.onFrame(FIRST_FRAME);
+        timer.onRealSpeedSent();
+        assertTrue(timer.onFrame(PROCESS_START + TARGET + 1L));
+        assertFalse(timer.isWithinTarget());
+
+        StringBuilder report = new StringBuilder();
+        timer.appendReport(report);
+        assertTrue(report.toString(), report.toString().contains("first real speed 5001 ms, target 5000 ms, missed"));
+    }
+
+    @Test
+    public void onlyTheFirstStartIsMeasured() {
+        StartupTimer timer = new StartupTimer(PROCESS_START, TARGET);
+        assertFalse(timer.isWithinTarget());
+        timer.onRealSpeedSent();
+        assertTrue(timer.onFrame(PROCESS_START + 1200L));
+        assertFalse(timer.onFrame(PROCESS_START + 9000L));
+        assertEquals(1200L, timer.getFirstSpeedMillis());
+        assertEquals(1200L, timer.getRealSpeedMillis());
+    }
+}
@@ -0,0 +1,131 @@
+package kk.speeddisplay.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class SustainedSpeedTrackerTest {
+
+    private final SustainedSpeedTracker mTracker = new SustainedSpeedTracker(5000L);
+
+    @Test
+    public void dequeGivesWindowMinimumAndMaximum() {
+        MonotonicDeque minimum = new MonotonicDeque(false);
+        MonotonicDeque maximum = new MonotonicDeque(true);
+        Random random = new Random(3);
+        float[] values = new float[2000];
+        int window = 7;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt(100);
+            minimum.push(i, values[i]);
+            maximum.push(i, values[i]);
+            minimum.removeBefore(i - window + 1);
+            maximum.removeBefore(i - window + 1);
+
+            float min = Float.MAX_VALUE;
+            float max = -Float.MAX_VALUE;
+            for (int j = Math.max(0, i - window + 1); j <= i; j++) {
+                min = Math.min(min, values[j]);
+                max = Math.max(max, values[j]);
+            }
+            assertEquals(min, minimum.peek(), 0.0F);
+            assertEquals(max, maximum.peek(), 0.0F);
+            assertTrue(minimum.size() <= window);
+        }
+    }
+
+    @Test
+    public void dequeGrowsPastInitialCapacity() {
+        MonotonicDeque minimum = new MonotonicDeque(false);
+        // increasing values are all kept by a minimum deque
+        for (int i = 0; i < 100; i++) {
+            minimum.push(i, i);
+        }
+        assertEquals(100, minimum.size());
+        minimum.removeBefore(60);
+        assertEquals(60.0F, minimum.peek(), 0.0F);
+        assertEquals(40, minimum.size());
+    }
+
+    @Test
+    public void spikeIsNotSustained() {
+        float[] speeds = {50, 52, 51, 120, 53, 52, 50, 51, 52, 50};
+        for (int i = 0; i < speeds.length; i++) {
+            mTracker.update(i * 1000L, speeds[i]);
+        }
+        assertEquals(50.0F, mTracker.getSustainedMaxSpeed(), 0.0F);
+    }
+
+    @Test
+    public void reportsHighestSpeedHeldForWindow() {
+        for (int i = 0; i <= 20; i++) {
+            // ramp to 100, hold for 6 seconds, then slow down
+            float speed = i <= 10 ? i * 10 : (i <= 16 ? 100 : 60);
+            mTracker.update(i * 1000L, speed);
+        }
+        assertEquals(100.0F, mTracker.getSustainedMaxSpeed(), 0.0F);
+        assertEquals(60.0F, mTracker.getHeldSpeed(), 0.0F);
+    }
+
+    @Test
+    public void speedMustBeHeldForWholeWindow() {
+        mTracker.update(0L, 100.0F);
+        mTracker.update(1000L, 100.0F);
+        assertEquals(0.0F, mTracker.getSustainedMaxSpeed(), 0.0F);
+        assertTrue(mTracker.update(5000L, 100.0F));
+        assertEquals(100.0F, mTracker.getSustainedMaxSpeed(), 0.0F);
+    }
+
+    @Test
+    public void gapStartsWindowAgain() {
+        mTracker.update(0L, 80.0F);
+        mTracker.update(2000L, 80.0F);
+        // no samples for longer than the window, the speed in between is not known
+        mTracker.update(20000L, 80.0F);
+        assertEquals(0.0F, mTracker.getSustainedMaxSpeed(), 0.0F);
+        mTracker.update(25000L, 80.0F);
+        assertEquals(80.0F, mTracker.getSustainedMaxSpeed(), 0.0F);
+    }
+
+    @Test
+    public void processorTracksSustainedMaximum() {
+        SpeedProcessor processor = new SpeedProcessor(new SpeedProcessor.Listener() {
+            @Override
+            public void onNewMaxSpeed(float maxSpeed) {
+            }
+
+            @Override
+            public void onSpeedChanged(float speed, float maxSpeed) {
+            }
+        });
+        processor.setSustainedWindow(3000L);
+        float[] speeds = {10, 20, 20, 20, 20, 40, 20};
+        for (int i = 0; i < speeds.length; i++) {
+            processor.process(i * 1000L, speeds[i], 5.0F, 0, 0);
+        }
+        assertEquals(SpeedProcessor.mpsToKph(40.0F), processor.getMaxSpeed(), 0.0F);
+        assertEquals(SpeedProcessor.mpsToKph(20.0F), processor.getSustainedMaxSpeed(), 0.0F);
+        processor.resetMaxSpeed();
+        assertEquals(0.0F, processor.getSustainedMaxSpeed(), 0.0F);
+    }
+
+    @Test
+    public void updatesWithoutAllocating() {
+        assumeTrue(Allocations.isSupported());
+        feed(1000000);
+
+        long before = Allocations.allocatedBytes();
+        feed(1000000);
+        long allocated = Allocations.allocatedBytes() - before;
+        assertTrue("allocated " + allocated, allocated < Allocations.NOISE_BYTES);
+    }
+
+    private void feed(int samples) {
+        for (int i = 0; i < samples; i++) {
+            mTracker.update(i * 1000L, (i * 37) % 150);
+        }
+    }
+}
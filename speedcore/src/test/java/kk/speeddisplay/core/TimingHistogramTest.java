@@ -0,0 +1,110 @@
+package kk.speeddisplay.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class TimingHistogramTest {
+
+    private static final long MICROS = 1000L;
+    private static final long MILLIS = 1000000L;
+
+    @Test
+    public void bucketsCoverEveryDurationInOrder() {
+        assertEquals(0, TimingHistogram.bucket(0));
+        assertEquals(TimingHistogram.BUCKETS - 1, TimingHistogram.bucket(Long.MAX_VALUE));
+        for (int bucket = 0; bucket < TimingHistogram.BUCKETS; bucket++) {
+            long lower = TimingHistogram.getLowerMicros(bucket);
+            long upper = TimingHistogram.getUpperMicros(bucket);
+            assertTrue(upper > lower);
+            assertEquals(bucket, TimingHistogram.bucket(lower));
+            assertEquals(bucket, TimingHistogram.bucket(upper - 1));
+            // within an eighth of the duration
+            assertTrue(bucket < 8 || (upper - lower) * 8 <= lower);
+        }
+    }
+
+    @Test
+    public void summarisesTheDurations() {
+        TimingHistogram histogram = new TimingHistogram();
+        Random random = new Random(1);
+        long total = 0;
+        long max = 0;
+        for (int i = 0; i < 100000; i++) {
+            // 0 to 100 ms
+            long nanos = (long) (random.nextDouble() * 100 * MILLIS);
+            histogram.record(nanos);
+            total += nanos / MICROS;
+            max = Math.max(max, nanos / MICROS);
+        }
+
+        assertEquals(100000, histogram.getCount());
+        assertEquals(total / 1000.0 / 100000, histogram.getMeanMillis(), 1e-9);
+        assertEquals(max / 1000.0, histogram.getMaxMillis(), 1e-9);
+        // to within a bucket, an eighth, and the sampling
+        assertEquals(50.0, histogram.getPercentileMillis(0.5), 50.0 / 8);
+        assertEquals(90.0, histogram.getPercentileMillis(0.9), 90.0 / 8);
+        assertEquals(99.0, histogram.getPercentileMillis(0.99), 99.0 / 8);
+        assertTrue(histogram.getPercentileMillis(1.0) <= histogram.getMaxMillis());
+    }
+
+    @Test
+    public void isZeroWithoutDurations() {
+        TimingHistogram histogram = new TimingHistogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0.0, histogram.getMeanMillis(), 0.0);
+        assertEquals(0.0, histogram.getMaxMillis(), 0.0);
+        assertEquals(0.0, histogram.getPercentileMillis(0.5), 0.0);
+    }
+
+    @Test
+    public void recordsNegativeDurationAsZero() {
+        TimingHistogram histogram = new TimingHistogram();
+        histogram.record(-5 * MILLIS);
+
+        assertEquals(1, histogram.getBucketCount(0));
+        assertEquals(0.0, histogram.getMaxMillis(), 0.0);
+    }
+
+    @Test
+    public void holdsVeryLongDurationsInTheLastBucket() {
+        TimingHistogram histogram = new TimingHistogram();
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(1, histogram.getBucketCount(TimingHistogram.BUCKETS - 1));
+        assertEquals(Long.MAX_VALUE / MILLIS, histogram.getMaxMillis(), 1.0);
+    }
+
+    @Test
+    public void resetForgetsTheDurations() {
+        TimingHistogram histogram = new TimingHistogram();
+        for (int i = 0; i < 100; i++) {
+            histogram.record(300 * MILLIS);
+        }
+        histogram.reset();
+        histogram.record(2 * MILLIS);
+
+        assertEquals(1, histogram.getCount());
+        assertEquals(2.0, histogram.getMeanMillis(), 1e-9);
+        assertEquals(2.0, histogram.getMaxMillis(), 1e-9);
+        assertEquals(2.0, histogram.getPercentileMillis(0.99), 2.0 / 8);
+    }
+
+    @Test
+    public void recordsWithoutAllocating() {
+        assumeTrue(Allocations.isSupported());
+        TimingHistogram histogram = new TimingHistogram();
+        for (int i = 0; i < 100000; i++) {
+            histogram.record(i * MICROS);
+        }
+        long before = Allocations.allocatedBytes();
+        for (int i = 0; i < 1000000; i++) {
+            histogram.record(i * MICROS);
+        }
+        assertTrue(Allocations.allocatedBytes() - before < Allocations.NOISE_BYTES);
+    }
+}
@@ -0,0 +1,154 @@
+package kk.speeddisplay.core;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+public class TraceReadersTest {
+
+    /* 2018-07-01T10:15:30Z */
+    private static final long TIME = 1530440130000L;
+
+    private static TraceReader reader(String text, int format) {
+        return TraceReaders.create(new StringReader(text), format);
+    }
+
+    @Test
+    public void parsesIsoTimes() throws IOException {
+        assertEquals(0L, TraceReaders.parseTime("1970-01-01T00:00:00Z"));
+        assertEquals(TIME, TraceReaders.parseTime("2018-07-01T10:15:30Z"));
+        assertEquals(TIME + 500, TraceReaders.parseTime("2018-07-01T10:15:30.5Z"));
+        assertEquals(TIME + 123, TraceReaders.parseTime("2018-07-01T10:15:30.123456Z"));
+        assertEquals(TIME, TraceReaders.parseTime("2018-07-01T20:15:30+10:00"));
+        assertEquals(TIME, TraceReaders.parseTime("2018-07-01T05:15:30-0500"));
+        assertEquals(TIME, TraceReaders.parseTime("2018-07-01 10:15:30"));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsBadTimes() throws IOException {
+        TraceReaders.parseTime("1 July 2018");
+    }
+
+    @Test
+    public void findsFormatFromExtension() {
+        assertEquals(TraceReaders.GPX, TraceReaders.getFormat("drive.GPX"));
+        assertEquals(TraceReaders.NMEA, TraceReaders.getFormat("drive.nmea"));
+        assertEquals(TraceReaders.NMEA, TraceReaders.getFormat("drive.nma"));
+        assertEquals(TraceReaders.CSV, TraceReaders.getFormat("drive.csv"));
+        assertEquals(-1, TraceReaders.getFormat("drive.txt"));
+    }
+
+    @Test
+    public void readsGpxTrackPoints() throws IOException {
+        String gpx = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<gpx version=\"1.1\" xmlns:gpxtpx=\"http://www.garmin.com/xmlschemas/TrackPointExtension/v2\">\n"
+                + "<!-- recorded <on> a phone -->\n"
+                + "<trk><name>drive</name><trkseg>\n"
+                + "<trkpt lat=\"-33.8688\" lon='151.2093'><ele>25</ele><time>2018-07-01T10:15:30Z</time>"
+                + "<hdop>0.8</hdop><extensions><gpxtpx:TrackPointExtension>"
+                + "<gpxtpx:speed>12.5</gpxtpx:speed></gpxtpx:TrackPointExtension></extensions></trkpt>\n"
+                + "<trkpt lat=\"-33.8690\" lon=\"151.2095\"/>\n"
+                + "<trkpt lon=\"151.2097\" lat=\"-33.8692\">\n  <time>2018-07-01T10:15:31.5Z</time>\n</trkpt>\n"
+                + "</trkseg></trk></gpx>\n";
+        TraceReader reader = reader(gpx, TraceReaders.GPX);
+        TraceFix fix = new TraceFix();
+
+        assertTrue(reader.next(fix));
+        assertEquals(TIME, fix.getTime());
+        assertEquals(-33.8688, fix.getLatitude(), 1e-9);
+        assertEquals(151.2093, fix.getLongitude(), 1e-9);
+        assertTrue(fix.hasSpeed());
+        assertEquals(12.5F, fix.getSpeed(), 1e-6F);
+        assertEquals(0.8F * TraceFix.HDOP_ACCURACY, fix.getAccuracy(), 1e-6F);
+
+        // the point without a time is skipped
+        assertTrue(reader.next(fix));
+        assertEquals(TIME + 1500, fix.getTime());
+        assertEquals(-33.8692, fix.getLatitude(), 1e-9);
+        assertEquals(151.2097, fix.getLongitude(), 1e-9);
+        assertFalse(fix.hasSpeed());
+        assertEquals(TraceFix.DEFAULT_ACCURACY, fix.getAccuracy(), 0);
+
+        assertFalse(reader.next(fix));
+        reader.close();
+    }
+
+    @Test
+    public void readsNmeaSentences() throws IOException {
+        String nmea = "$GPGGA,101530.00,3352.1280,S,15112.5580,E,1,10,0.8,25.0,M,20.0,M,,*49\n"
+                + "$GPRMC,101530.00,A,3352.1280,S,15112.5580,E,20.0,90.0,010718,,,A*43\n"
+                + "$GPGSV,3,1,11,03,03,111,00,04,15,270,00,06,01,010,00,13,06,292,00*74\n"
+                // damaged in the log, the checksum does not match
+                + "$GNRMC,101531.00,A,3352.1280,S,15112.5700,E,91.0,90.0,010718,,,A*57\n"
+                + "$GNRMC,101531.00,A,3352.1280,S,15112.5700,E,21.0,90.0,010718,,,A*57\n"
+                // no fix
+                + "$GPRMC,101532.00,V,,,,,,,010718,,,N*76\n";
+        NmeaTraceReader reader = (NmeaTraceReader) reader(nmea, TraceReaders.NMEA);
+        TraceFix fix = new TraceFix();
+
+        assertTrue(reader.next(fix));
+        assertEquals(TIME, fix.getTime());
+        assertEquals(-(33 + 52.128 / 60), fix.getLatitude(), 1e-9);
+        assertEquals(151 + 12.558 / 60, fix.getLongitude(), 1e-9);
+        assertTrue(fix.hasSpeed());
+        assertEquals(20.0F * 1852 / 3600, fix.getSpeed(), 1e-4F);
+        assertEquals(0.8F * TraceFix.HDOP_ACCURACY, fix.getAccuracy(), 1e-6F);
+
+        assertTrue(reader.next(fix));
+        assertEquals(TIME + 1000, fix.getTime());
+        assertEquals(21.0F * 1852 / 3600, fix.getSpeed(), 1e-4F);
+        // no GGA for this time
+        assertEquals(TraceFix.DEFAULT_ACCURACY, fix.getAccuracy(), 0);
+
+        assertFalse(reader.next(fix));
+        assertEquals(1, reader.getSkippedCount());
+    }
+
+    @Test
+    public void checksNmeaChecksums() {
+        assertTrue(NmeaTraceReader.isValid("$GPRMC,101532.00,V,,,,,,,010718,,,N*76"));
+        assertTrue(NmeaTraceReader.isValid("$GPRMC,101532.00,V,,,,,,,010718,,,N"));
+        assertFalse(NmeaTraceReader.isValid("$GPRMC,101532.00,V,,,,,,,010718,,,N*77"));
+        assertFalse(NmeaTraceReader.isValid("$GPRMC,101532.00,V,,,,,,,010718,,,N*7"));
+        assertFalse(NmeaTraceReader.isValid("GPRMC,101532.00,V"));
+    }
+
+    @Test
+    public void readsCsvColumnsInAnyOrder() throws IOException {
+        String csv = "# exported drive\n"
+                + "lat,lon,Speed,time,accuracy,bearing\n"
+                + "-33.8688,151.2093,12.5,1530440130000,3.5,90\n"
+                + "\n"
+                + "-33.8690,151.2095,,2018-07-01T10:15:31Z,,90\n";
+        TraceReader reader = reader(csv, TraceReaders.CSV);
+        TraceFix fix = new TraceFix();
+
+        assertTrue(reader.next(fix));
+        assertEquals(TIME, fix.getTime());
+        assertEquals(-33.8688, fix.getLatitude(), 1e-9);
+        assertEquals(151.2093, fix.getLongitude(), 1e-9);
+        assertEquals(12.5F, fix.getSpeed(), 0);
+        assertEquals(3.5F, fix.getAccuracy(), 0);
+        assertTrue(Float.isNaN(fix.getSpeedAccuracy()));
+
+        assertTrue(reader.next(fix));
+        assertEquals(TIME + 1000, fix.getTime());
+        assertFalse(fix.hasSpeed());
+        assertEquals(TraceFix.DEFAULT_ACCURACY, fix.getAccuracy(), 0);
+
+        assertFalse(reader.next(fix));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsCsvWithoutPositions() throws IOException {
+        reader("time,speed\n1530440130000,12.5\n", TraceReaders.CSV).next(new TraceFix());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsBadCsvValues() throws IOException {
+        reader("time,lat,lon\n1530440130000,south,151.2\n", TraceReaders.CSV).next(new TraceFix());
+    }
+}
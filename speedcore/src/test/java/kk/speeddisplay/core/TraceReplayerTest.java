@@ -0,0 +1,178 @@
+package kk.speeddisplay.core;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class TraceReplayerTest {
+
+    private static final long START = 1530440130000L;
+    private static final long MILLIS = 1000000L;
+
+    private final SpeedProcessor.Listener mListener = new SpeedProcessor.Listener() {
+        @Override
+        public void onNewMaxSpeed(float maxSpeed) {
+        }
+
+        @Override
+        public void onSpeedChanged(float speed, float maxSpeed) {
+        }
+    };
+
+    /**
+     * @return a drive north, one fix a second, from the noisy highway and urban speeds
+     */
+    private static Trace drive(int repeats) {
+        SpeedTraces highway = SpeedTraces.highway();
+        SpeedTraces urban = SpeedTraces.urban();
+        Trace trace = new Trace();
+        TraceFix fix = new TraceFix();
+        double latitude = -33.8688;
+        long time = START;
+        for (int r = 0; r < repeats; r++) {
+            for (SpeedTraces part : new SpeedTraces[]{urban, highway}) {
+                for (int i = 0; i < part.mTrueSpeeds.length; i++) {
+                    latitude += part.mTrueSpeeds[i] / 111195.0;
+                    fix.set(time, latitude, 151.2093);
+                    fix.setSpeed(part.mReportedSpeeds[i]);
+                    fix.setAccuracy(4.0F);
+                    trace.add(fix);
+                    time += SpeedTraces.INTERVAL;
+                }
+            }
+        }
+        return trace;
+    }
+
+    private SpeedPipeline pipeline(TripStatistics statistics) {
+        SpeedProcessor processor = new SpeedProcessor(mListener);
+        processor.setStatistics(statistics);
+        return new SpeedPipeline(processor, new SpeedEstimator(), new SampleGate(),
+                new AdaptiveRateScheduler(1000L, 10000L));
+    }
+
+    @Test
+    public void pacesFixesByTheTimesOfTheTrace() throws IOException {
+        Trace trace = drive(1);
+        TraceReplayer replayer = new TraceReplayer(trace.newReader(), 100);
+
+        assertTrue(replayer.next(0));
+        assertEquals(START, replayer.getFix().getTime());
+        assertEquals(0L, replayer.getFix().getElapsedNanos());
+        // one second of the trace is 10 ms at 100 times real time
+        assertFalse(replayer.next(9 * MILLIS));
+        assertEquals(MILLIS, replayer.getDelayNanos(9 * MILLIS));
+        assertTrue(replayer.next(10 * MILLIS));
+        assertEquals(START + 1000, replayer.getFix().getTime());
+        assertEquals(1000 * MILLIS, replayer.getFix().getElapsedNanos());
+
+        // late, so all the fixes due are given at once
+        assertTrue(replayer.next(35 * MILLIS));
+        assertTrue(replayer.next(35 * MILLIS));
+        assertFalse(replayer.next(35 * MILLIS));
+        assertEquals(4, replayer.getFixCount());
+    }
+
+    @Test
+    public void endsWithTheTrace() throws IOException {
+        Trace trace = drive(1);
+        TraceReplayer replayer = new TraceReplayer(trace.newReader(), TraceReplayer.REAL_TIME);
+        long end = trace.getDuration() * MILLIS;
+        int count = 0;
+        while (replayer.next(end)) {
+            count++;
+        }
+        assertEquals(trace.size(), count);
+        assertEquals(-1, replayer.getDelayNanos(end));
+        assertTrue(replayer.isFinished());
+    }
+
+    @Test
+    public void splitsFixesDueTogetherIntoLocationResults() throws IOException {
+        Trace trace = drive(1);
+        SpeedPipeline pipeline = pipeline(null);
+        TraceReplayer replayer = new TraceReplayer(trace.newReader(), TraceReplayer.AS_FAST_AS_POSSIBLE);
+
+        assertEquals(0, replayer.getDelayNanos(0));
+        assertEquals(100, replayer.replay(pipeline, 0, 100));
+        assertEquals(1, pipeline.getProcessor().getBatchCount());
+        while (replayer.replay(pipeline, 0, 100) > 0) {
+            // replay the rest
+        }
+        assertEquals(trace.size(), replayer.getFixCount());
+        assertEquals((trace.size() + 99) / 100, pipeline.getProcessor().getBatchCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNegativeSpeedFactor() {
+        new TraceReplayer(new Trace().newReader(), -1);
+    }
+
+    @Test
+    public void givesTheSameResultsAtAnyPace() throws IOException, InterruptedException {
+        Trace trace = drive(1);
+
+        TripStatistics fastStatistics = new TripStatistics();
+        SpeedPipeline fast = pipeline(fastStatistics);
+        new TraceReplayer(trace.newReader(), TraceReplayer.AS_FAST_AS_POSSIBLE).run(fast, 1);
+
+        // 1000 times real time, stepping the replay clock rather than waiting
+        TripStatistics pacedStatistics = new TripStatistics();
+        SpeedPipeline paced = pipeline(pacedStatistics);
+        TraceReplayer replayer = new TraceReplayer(trace.newReader(), 1000);
+        for (long now = 0; !replayer.isFinished(); now += 3 * MILLIS) {
+            replayer.replay(paced, now, 1);
+        }
+
+        assertEquals(fast.getProcessor().getSampleCount(), paced.getProcessor().getSampleCount());
+        assertEquals(fast.getProcessor().getMaxSpeed(), paced.getProcessor().getMaxSpeed(), 0);
+        assertEquals(fast.getProcessor().getDistance(), paced.getProcessor().getDistance(), 0);
+        assertEquals(fastStatistics.getMovingTime(), pacedStatistics.getMovingTime());
+        assertEquals(fastStatistics.getP90Speed(), pacedStatistics.getP90Speed(), 0);
+    }
+
+    @Test
+    public void regressionOfTheWholePipelineOnADrive() throws IOException, InterruptedException {
+        Trace trace = drive(1);
+        TripStatistics statistics = new TripStatistics();
+        SpeedPipeline pipeline = pipeline(statistics);
+        new TraceReplayer(trace.newReader(), TraceReplayer.AS_FAST_AS_POSSIBLE).run(pipeline, 10);
+
+        SpeedProcessor processor = pipeline.getProcessor();
+        // the true speeds peak at 33 m/s, the noise and spikes must not take the maximum far above
+        assertTrue("max " + processor.getMaxSpeed(), processor.getMaxSpeed() > 33 * 3.6F);
+        assertTrue("max " + processor.getMaxSpeed(), processor.getMaxSpeed() < 38 * 3.6F);
+        // 20 minutes of urban driving then 30 minutes of highway, about 10 km and 54 km
+        assertEquals(64000, processor.getDistance(), 2000);
+        // the first fix is held by the sample gate until the next one agrees
+        assertEquals(trace.getDuration() - 1000L, statistics.getMovingTime() + statistics.getStoppedTime());
+        assertTrue(statistics.getStoppedTime() > 0);
+    }
+
+    @Test
+    public void replaysHoursOfDrivingWithoutAllocating() throws IOException, InterruptedException {
+        assumeTrue(Allocations.isSupported());
+        // 25 hours at one fix a second
+        Trace trace = drive(30);
+        SpeedPipeline pipeline = pipeline(new TripStatistics());
+
+        // warm up so the measurement does not include class loading or compilation
+        new TraceReplayer(trace.newReader(), TraceReplayer.AS_FAST_AS_POSSIBLE).run(pipeline, 10);
+
+        TraceReplayer replayer = new TraceReplayer(trace.newReader(), TraceReplayer.AS_FAST_AS_POSSIBLE);
+        long before = Allocations.allocatedBytes();
+        long start = System.nanoTime();
+        replayer.run(pipeline, 10);
+        long elapsed = System.nanoTime() - start;
+        long allocated = Allocations.allocatedBytes() - before;
+
+        assertEquals(trace.size(), replayer.getFixCount());
+        assertTrue("allocated " + allocated, allocated < Allocations.NOISE_BYTES);
+        // allow plenty of headroom for slow build machines, expected to be far higher
+        double fixesPerSecond = trace.size() * 1e9 / elapsed;
+        assertTrue("fixes/s " + fixesPerSecond, fixesPerSecond > 100000);
+    }
+}
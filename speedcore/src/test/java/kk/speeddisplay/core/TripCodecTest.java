@@ -0,0 +1,361 @@
+package kk.speeddisplay.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class TripCodecTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    /* a drive, one sample a second, as recorded from the location results */
+    private static final int SAMPLES = 3600;
+    private final long[] mTimes = new long[SAMPLES];
+    private final double[] mLatitudes = new double[SAMPLES];
+    private final double[] mLongitudes = new double[SAMPLES];
+    private final float[] mSpeeds = new float[SAMPLES];
+    private final float[] mAccuracies = new float[SAMPLES];
+
+    public TripCodecTest() {
+        Random random = new Random(3);
+        SpeedTraces urban = SpeedTraces.urban();
+        SpeedTraces highway = SpeedTraces.highway();
+        long time = 1500000000000L;
+        double lat = -33.8688;
+        double lon = 151.2093;
+        for (int i = 0; i < SAMPLES; i++) {
+            float speed = i < urban.mTrueSpeeds.length ? urban.mReportedSpeeds[i]
+                    : highway.mReportedSpeeds[(i - urban.mTrueSpeeds.length) % highway.mTrueSpeeds.length];
+            // fixes arrive a few milliseconds either side of each second
+            mTimes[i] = time + i * 1000L + random.nextInt(20) - 10;
+            double heading = i * 0.002;
+            lat += Math.cos(heading) * speed / 111320.0;
+            lon += Math.sin(heading) * speed / 92000.0;
+            mLatitudes[i] = lat;
+            mLongitudes[i] = lon;
+            mSpeeds[i] = speed;
+            mAccuracies[i] = 3.0F + random.nextInt(40) * 0.1F;
+        }
+    }
+
+    private byte[] encode(int samples) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TripEncoder encoder = new TripEncoder(out);
+        for (int i = 0; i < samples; i++) {
+            encoder.append(mTimes[i], mLatitudes[i], mLongitudes[i], mSpeeds[i], mAccuracies[i]);
+        }
+        encoder.finish();
+        assertEquals(samples, encoder.getSampleCount());
+        assertEquals(out.size(), encoder.getBytesWritten());
+        return out.toByteArray();
+    }
+
+    private void assertSample(TripDecoder decoder, int i) {
+        assertEquals(mTimes[i], decoder.getTime());
+        assertEquals(mLatitudes[i], decoder.getLatitude(), 0.6e-7);
+        assertEquals(mLongitudes[i], decoder.getLongitude(), 0.6e-7);
+        assertEquals(mSpeeds[i], decoder.getSpeed(), 0.006F);
+        assertEquals(mAccuracies[i], decoder.getAccuracy(), 0.06F);
+    }
+
+    @Test
+    public void decodesWithinQuantisation() throws IOException {
+        TripDecoder decoder = new TripDecoder(new ByteArrayInputStream(encode(SAMPLES)));
+        for (int i = 0; i < SAMPLES; i++) {
+            assertTrue(decoder.next());
+            assertSample(decoder, i);
+        }
+        assertFalse(decoder.next());
+        assertFalse(decoder.next());
+    }
+
+    @Test
+    public void decodesBlocksIntoArrays() throws IOException {
+        TripDecoder decoder = new TripDecoder(new ByteArrayInputStream(encode(SAMPLES)));
+        long[] times = new long[TripDecoder.MAX_BLOCK_SAMPLES];
+        double[] latitudes = new double[TripDecoder.MAX_BLOCK_SAMPLES];
+        double[] longitudes = new double[TripDecoder.MAX_BLOCK_SAMPLES];
+        float[] speeds = new float[TripDecoder.MAX_BLOCK_SAMPLES];
+        float[] accuracies = new float[TripDecoder.MAX_BLOCK_SAMPLES];
+
+        // the rest of a block stepped into, then whole blocks
+        for (int i = 0; i < 10; i++) {
+            assertTrue(decoder.next());
+        }
+        int i = 10;
+        int count;
+        while ((count = decoder.nextBlock(times, latitudes, longitudes, speeds, accuracies)) > 0) {
+            for (int j = 0; j < count; j++, i++) {
+                assertEquals(mTimes[i], times[j]);
+                assertEquals(mLatitudes[i], latitudes[j], 0.6e-7);
+                assertEquals(mLongitudes[i], longitudes[j], 0.6e-7);
+                assertEquals(mSpeeds[i], speeds[j], 0.006F);
+                assertEquals(mAccuracies[i], accuracies[j], 0.06F);
+            }
+            assertSample(decoder, i - 1);
+        }
+        assertEquals(SAMPLES, i);
+        assertFalse(decoder.next());
+    }
+
+    @Test
+    public void isAtLeastFiveTimesSmallerThanDoubles() throws IOException {
+        int naive = SAMPLES * 5 * 8;
+        assertTrue(encode(SAMPLES).length * 5 <= naive);
+    }
+
+    @Test
+    public void decodesEmptyTrip() throws IOException {
+        TripDecoder decoder = new TripDecoder(new ByteArrayInputStream(encode(0)));
+        assertFalse(decoder.next());
+    }
+
+    @Test
+    public void decodesPartBlock() throws IOException {
+        int samples = TripCodec.BLOCK_SAMPLES + 1;
+        TripDecoder decoder = new TripDecoder(new ByteArrayInputStream(encode(samples)));
+        for (int i = 0; i < samples; i++) {
+            assertTrue(decoder.next());
+            assertSample(decoder, i);
+        }
+        assertFalse(decoder.next());
+    }
+
+    @Test
+    public void decodesLargeDeltas() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TripEncoder encoder = new TripEncoder(out);
+        encoder.append(1L, -89.9, -179.9, 0.0F, 0.0F);
+        encoder.append(Long.MAX_VALUE / 2, 89.9, 179.9, 300.0F, 1000.0F);
+        encoder.append(2L, -89.9, -179.9, 0.0F, 0.0F);
+        encoder.finish();
+
+        TripDecoder decoder = new TripDecoder(new ByteArrayInputStream(out.toByteArray()));
+        assertTrue(decoder.next());
+        assertTrue(decoder.next());
+        assertEquals(Long.MAX_VALUE / 2, decoder.getTime());
+        assertEquals(179.9, decoder.getLongitude(), 1e-7);
+        assertEquals(1000.0F, decoder.getAccuracy(), 0.0F);
+        assertTrue(decoder.next());
+        assertEquals(2L, decoder.getTime());
+        assertEquals(-89.9, decoder.getLatitude(), 1e-7);
+        assertFalse(decoder.next());
+    }
+
+    @Test
+    public void seeksToBlockHoldingTime() throws IOException {
+        TripDecoder decoder = new TripDecoder(new ByteArrayInputStream(encode(SAMPLES)));
+        int target = 2000;
+        decoder.seek(mTimes[target]);
+        assertTrue(decoder.next());
+        assertTrue(decoder.getTime() <= mTimes[target]);
+        assertTrue(decoder.getTime() > mTimes[target - TripCodec.BLOCK_SAMPLES]);
+        while (decoder.getTime() < mTimes[target]) {
+            assertTrue(decoder.next());
+        }
+        assertSample(decoder, target);
+        for (int i = target + 1; i < SAMPLES; i++) {
+            assertTrue(decoder.next());
+            assertSample(decoder, i);
+        }
+        assertFalse(decoder.next());
+    }
+
+    @Test
+    public void seekSkipsPayloadsOfBlocksPassed() throws IOException {
+        byte[] encoded = encode(SAMPLES);
+        final int[] read = new int[1];
+        InputStream in = new FilterInputStream(new ByteArrayInputStream(encoded)) {
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int n = super.read(buffer, offset, length);
+                read[0] += Math.max(n, 0);
+                return n;
+            }
+        };
+        TripDecoder decoder = new TripDecoder(in);
+        int target = 3000;
+        decoder.seek(mTimes[target]);
+        // the headers of the blocks passed and the payload of the block found
+        assertTrue(read[0] < encoded.length / 4);
+        assertTrue(decoder.next());
+        while (decoder.getTime() < mTimes[target]) {
+            assertTrue(decoder.next());
+        }
+        assertSample(decoder, target);
+    }
+
+    @Test
+    public void seeksWithoutMark() throws IOException {
+        InputStream in = new FilterInputStream(new ByteArrayInputStream(encode(SAMPLES))) {
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+        };
+        TripDecoder decoder = new TripDecoder(in);
+        int target = 2000;
+        decoder.seek(mTimes[target]);
+        assertTrue(decoder.next());
+        while (decoder.getTime() < mTimes[target]) {
+            assertTrue(decoder.next());
+        }
+        assertSample(decoder, target);
+        for (int i = target + 1; i < SAMPLES; i++) {
+            assertTrue(decoder.next());
+            assertSample(decoder, i);
+        }
+        assertFalse(decoder.next());
+    }
+
+    @Test
+    public void seeksPastEndToLastBlock() throws IOException {
+        TripDecoder decoder = new TripDecoder(new ByteArrayInputStream(encode(SAMPLES)));
+        decoder.seek(Long.MAX_VALUE);
+        int last = 0;
+        while (decoder.next()) {
+            last++;
+        }
+        assertEquals(SAMPLES % TripCodec.BLOCK_SAMPLES, last);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws IOException {
+        new TripDecoder(new ByteArrayInputStream(new byte[16]));
+    }
+
+    @Test(expected = EOFException.class)
+    public void rejectsTruncatedTrip() throws IOException {
+        byte[] encoded = encode(SAMPLES);
+        TripDecoder decoder = new TripDecoder(new ByteArrayInputStream(Arrays.copyOf(encoded, encoded.length - 1)));
+        while (decoder.next()) {
+            decoder.getTime();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsCorruptBlock() throws IOException {
+        byte[] encoded = encode(SAMPLES);
+        // every varint of the first block continues into the next byte
+        int payload = TripCodec.FILE_HEADER_SIZE + TripCodec.BLOCK_HEADER_SIZE;
+        for (int i = payload; i < payload + 100; i++) {
+            encoded[i] |= 0x80;
+        }
+        TripDecoder decoder = new TripDecoder(new ByteArrayInputStream(encoded));
+        decoder.next();
+    }
+
+    @Test
+    public void decodesWithoutAllocating() throws IOException {
+        assumeTrue(Allocations.isSupported());
+        TripDecoder decoder = new TripDecoder(new ByteArrayInputStream(encode(SAMPLES)));
+        long allocated = Allocations.allocatedBytes();
+        while (decoder.next()) {
+            decoder.getSpeed();
+        }
+        assertTrue(Allocations.allocatedBytes() - allocated < Allocations.NOISE_BYTES);
+    }
+
+    @Test
+    public void compactsRecordedSegments() throws IOException {
+        File directory = mFolder.getRoot();
+        TripRecorder recorder = new TripRecorder(directory, TripRecorder.HEADER_SIZE + 100 * TripRecorder.RECORD_SIZE);
+        recorder.start(9L);
+        for (int i = 0; i < 250; i++) {
+            recorder.append(mTimes[i], mLatitudes[i], mLongitudes[i], mSpeeds[i], mAccuracies[i]);
+        }
+        recorder.close();
+        assertEquals(250, TripCompactor.compact(directory, 9L));
+        assertEquals(0, TripRecorder.listSegments(directory, 9L).length);
+
+        // the trip continues after a restart, the new samples are added to the end
+        recorder = new TripRecorder(directory, TripRecorder.DEFAULT_SEGMENT_SIZE);
+        recorder.start(9L);
+        for (int i = 250; i < 400; i++) {
+            recorder.append(mTimes[i], mLatitudes[i], mLongitudes[i], mSpeeds[i], mAccuracies[i]);
+        }
+        recorder.close();
+        assertEquals(400, TripCompactor.compact(directory, 9L));
+
+        assertCompacted(directory, 400);
+    }
+
+    @Test
+    public void doesNotAddSegmentsLeftByFailureAgain() throws IOException {
+        File directory = mFolder.getRoot();
+        TripRecorder recorder = new TripRecorder(directory, TripRecorder.HEADER_SIZE + 100 * TripRecorder.RECORD_SIZE);
+        recorder.start(9L);
+        for (int i = 0; i < 250; i++) {
+            recorder.append(mTimes[i], mLatitudes[i], mLongitudes[i], mSpeeds[i], mAccuracies[i]);
+        }
+        recorder.close();
+        File[] segments = TripRecorder.listSegments(directory, 9L);
+        byte[][] contents = new byte[segments.length][];
+        for (int i = 0; i < segments.length; i++) {
+            contents[i] = readFile(segments[i]);
+        }
+        assertEquals(250, TripCompactor.compact(directory, 9L));
+
+        // the process died after the rename, before the segments were deleted
+        for (int i = 0; i < segments.length; i++) {
+            writeFile(segments[i], contents[i]);
+        }
+        assertEquals(250, TripCompactor.compact(directory, 9L));
+        assertEquals(0, TripRecorder.listSegments(directory, 9L).length);
+        assertCompacted(directory, 250);
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            byte[] bytes = new byte[(int) in.length()];
+            in.readFully(bytes);
+            return bytes;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void writeFile(File file, byte[] bytes) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Checks the compressed file of trip 9 holds the first samples of the drive, once each
+     */
+    private void assertCompacted(File directory, int samples) throws IOException {
+        FileInputStream in = new FileInputStream(TripCompactor.compressedFile(directory, 9L));
+        try {
+            TripDecoder decoder = new TripDecoder(in);
+            for (int i = 0; i < samples; i++) {
+                assertTrue(decoder.next());
+                assertSample(decoder, i);
+            }
+            assertFalse(decoder.next());
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package kk.speeddisplay.core;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class TripRecorderTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private TripRecorder mRecorder;
+
+    @After
+    public void tearDown() {
+        if (mRecorder != null) {
+            mRecorder.close();
+        }
+    }
+
+    @Test
+    public void readsBackRecordedSamples() throws IOException {
+        File directory = mFolder.getRoot();
+        mRecorder = new TripRecorder(directory, TripRecorder.DEFAULT_SEGMENT_SIZE);
+        mRecorder.start(42L);
+        for (int i = 1; i <= 100; i++) {
+            mRecorder.append(1500000000000L + i * 100L, -33.8 + i * 1e-5, 151.2, i * 0.1F, 4.0F);
+        }
+        mRecorder.close();
+
+        TripReader reader = new TripReader(directory, 42L);
+        int count = 0;
+        while (reader.next()) {
+            count++;
+            assertEquals(1500000000000L + count * 100L, reader.getTime());
+            assertEquals(-33.8 + count * 1e-5, reader.getLatitude(), 0.0);
+            assertEquals(151.2, reader.getLongitude(), 0.0);
+            assertEquals(count * 0.1F, reader.getSpeed(), 0.0F);
+            assertEquals(4.0F, reader.getAccuracy(), 0.0F);
+        }
+        assertEquals(100, count);
+    }
+
+    @Test
+    public void rollsToNewSegmentWhenFull() throws IOException {
+        File directory = mFolder.getRoot();
+        int recordsPerSegment = 10;
+        mRecorder = new TripRecorder(directory,
+                TripRecorder.HEADER_SIZE + recordsPerSegment * TripRecorder.RECORD_SIZE);
+        mRecorder.start(7L);
+        for (int i = 1; i <= 25; i++) {
+            mRecorder.append(i, 0, 0, i, 0);
+        }
+        mRecorder.close();
+
+        assertEquals(3, TripRecorder.listSegments(directory, 7L).length);
+        TripReader reader = new TripReader(directory, 7L);
+        int count = 0;
+        while (reader.next()) {
+            assertEquals(++count, reader.getTime());
+        }
+        assertEquals(25, count);
+    }
+
+    @Test
+    public void restartedTripContinuesInNewSegment() throws IOException {
+        File directory = mFolder.getRoot();
+        mRecorder = new TripRecorder(directory, TripRecorder.DEFAULT_SEGMENT_SIZE);
+        mRecorder.start(9L);
+        mRecorder.append(1, 0, 0, 1, 0);
+        mRecorder.close();
+        mRecorder.start(9L);
+        mRecorder.append(2, 0, 0, 2, 0);
+        mRecorder.close();
+
+        TripReader reader = new TripReader(directory, 9L);
+        assertTrue(reader.next());
+        assertEquals(1, reader.getTime());
+        assertTrue(reader.next());
+        assertEquals(2, reader.getTime());
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void appendsWithoutAllocating() throws IOException {
+        assumeTrue(Allocations.isSupported());
+        mRecorder = new TripRecorder(mFolder.getRoot(), 8 * TripRecorder.DEFAULT_SEGMENT_SIZE);
+        mRecorder.start(1L);
+        int samples = 100000;
+        // warm up so the measurement does not include class loading or compilation
+        feed(samples, 1);
+
+        long before = Allocations.allocatedBytes();
+        long start = System.nanoTime();
+        feed(samples, samples + 1);
+        long elapsed = System.nanoTime() - start;
+        long allocated = Allocations.allocatedBytes() - before;
+
+        assertTrue("allocated " + allocated, allocated < Allocations.NOISE_BYTES);
+        // 10 samples a second for hours takes a few milliseconds
+        assertTrue("ns per sample " + elapsed / samples, elapsed / samples < 2000);
+    }
+
+    private void feed(int samples, long firstTime) throws IOException {
+        for (int i = 0; i < samples; i++) {
+            mRecorder.append(firstTime + i, -33.8, 151.2, 20.0F, 4.0F);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package kk.speeddisplay.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class TripStatisticsTest {
+
+    private final TripStatistics mStatistics = new TripStatistics();
+
+    @Test
+    public void totalsMovingAndStoppedTime() {
+        mStatistics.add(0L, 0.0F);
+        mStatistics.add(1000L, 36.0F);
+        mStatistics.add(2000L, 72.0F);
+        mStatistics.add(3000L, 0.0F);
+        mStatistics.add(4000L, 0.5F);
+        // signal lost for a minute
+        mStatistics.add(64000L, 36.0F);
+
+        assertEquals(2000L, mStatistics.getMovingTime());
+        assertEquals(2000L, mStatistics.getStoppedTime());
+        assertEquals(54.0F, mStatistics.getMovingAverageSpeed(), 1e-4F);
+        assertEquals(27.0F, mStatistics.getAverageSpeed(), 1e-4F);
+        assertEquals(48.0F, mStatistics.getMeanSpeed(), 1e-4F);
+        assertEquals(72.0F, mStatistics.getMaxSpeed(), 0.0F);
+        assertEquals(20.78F, mStatistics.getSpeedDeviation(), 0.01F);
+        assertEquals(6, mStatistics.getSampleCount());
+    }
+
+    @Test
+    public void continuesRestoredTrip() {
+        // ten minutes moving at 60 km/hour and five stopped before the restart
+        mStatistics.restore(600000L, 300000L, 600000L * 60.0, 1000L);
+        mStatistics.add(2000L, 60.0F);
+        mStatistics.add(3000L, 0.0F);
+
+        assertEquals(601000L, mStatistics.getMovingTime());
+        assertEquals(301000L, mStatistics.getStoppedTime());
+        assertEquals(60.0F, mStatistics.getMovingAverageSpeed(), 1e-4F);
+        assertEquals(601000L * 60.0F / 902000L, mStatistics.getAverageSpeed(), 1e-4F);
+        assertEquals(2, mStatistics.getSampleCount());
+    }
+
+    @Test
+    public void resetsForNewTrip() {
+        mStatistics.add(0L, 50.0F);
+        mStatistics.add(1000L, 50.0F);
+        mStatistics.reset();
+        assertEquals(0L, mStatistics.getMovingTime());
+        assertEquals(0.0F, mStatistics.getAverageSpeed(), 0.0F);
+        assertEquals(0.0F, mStatistics.getMedianSpeed(), 0.0F);
+        assertEquals(0, mStatistics.getSampleCount());
+    }
+
+    @Test
+    public void summarisesMillionsOfSamplesWithoutAllocating() {
+        assumeTrue(Allocations.isSupported());
+        int samples = 5000000;
+        // a speed rising and falling evenly between 0 and 100 km/h, so the quantiles are known
+        feed(samples);
+        mStatistics.reset();
+
+        long before = Allocations.allocatedBytes();
+        long start = System.nanoTime();
+        feed(samples);
+        long elapsed = System.nanoTime() - start;
+        long allocated = Allocations.allocatedBytes() - before;
+
+        assertTrue("allocated " + allocated, allocated < Allocations.NOISE_BYTES);
+        // allow plenty of headroom for slow build machines, expected to be far higher
+        double samplesPerSecond = samples * 1e9 / elapsed;
+        assertTrue("samples/s " + samplesPerSecond, samplesPerSecond > 1000000);
+
+        // only the moving speeds, 1.8 to 100 km/h, are in the quantiles
+        assertEquals(50.9F, mStatistics.getMedianSpeed(), 0.2F);
+        assertEquals(90.2F, mStatistics.getP90Speed(), 0.2F);
+        assertEquals(99.0F, mStatistics.getP99Speed(), 0.2F);
+        assertEquals(50.9F, mStatistics.getMovingAverageSpeed(), 0.1F);
+    }
+
+    private void feed(int samples) {
+        for (int i = 0; i < samples; i++) {
+            int step = i % 2000;
+            float speed = (step < 1000 ? step : 2000 - step) * 0.1F;
+            mStatistics.add(i * 1000L, speed);
+        }
+    }
+
+    @Test
+    public void channelPassesLatestStatistics() {
+        TripStatisticsChannel channel = new TripStatisticsChannel();
+        TripStatisticsChannel.Summary summary = new TripStatisticsChannel.Summary();
+        mStatistics.add(0L, 36.0F);
+        mStatistics.add(1000L, 36.0F);
+        channel.publish(mStatistics);
+        channel.read(summary);
+        assertEquals(36.0F, summary.getMovingAverageSpeed(), 1e-4F);
+        assertEquals(36.0F, summary.getMedianSpeed(), 0.0F);
+        assertEquals(1000L, summary.getMovingTime());
+        assertEquals(2, summary.getSampleCount());
+    }
+
+    @Test
+    public void channelReaderSeesSinglePublish() throws InterruptedException {
+        final TripStatisticsChannel channel = new TripStatisticsChannel();
+        final int publishes = 200000;
+        Thread publisher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                TripStatistics statistics = new TripStatistics();
+                for (int i = 1; i <= publishes; i++) {
+                    statistics.add(i * 1000L, 10.0F);
+                    channel.publish(statistics);
+                }
+            }
+        });
+        publisher.start();
+        TripStatisticsChannel.Summary summary = new TripStatisticsChannel.Summary();
+        long last = 0;
+        while (last < publishes) {
+            channel.read(summary);
+            // the moving time is one second less than the samples, if both are from one publish
+            if (summary.getSampleCount() > 0) {
+                assertEquals((summary.getSampleCount() - 1) * 1000L, summary.getMovingTime());
+            }
+            assertTrue(summary.getSampleCount() >= last);
+            last = summary.getSampleCount();
+        }
+        publisher.join();
+    }
+}
@@ -0,0 +1,117 @@
+package kk.speeddisplay.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class WarmStartTest {
+
+    private static final long MILLIS = 1000000L;
+    private static final long NOW = 600000 * MILLIS;
+
+    private final StartupTimer mTimer = new StartupTimer(0L, 5000L);
+
+    private WarmStart newWarmStart() {
+        return new WarmStart(10000L, 20.0F, mTimer);
+    }
+
+    @Test
+    public void showsTheSpeedOfARecentFix() {
+        WarmStart warmStart = newWarmStart();
+        assertTrue(warmStart.offer(NOW - 2000 * MILLIS, NOW, true, 20.0F, 5.0F));
+        assertTrue(warmStart.isShowingLastFix());
+        assertEquals(72.0F, warmStart.getSpeed(), 0.001F);
+        assertFalse(warmStart.hasRealSpeed());
+    }
+
+    @Test
+    public void ignoresAFixTooOld() {
+        WarmStart warmStart = newWarmStart();
+        assertTrue(warmStart.offer(NOW - 10000 * MILLIS, NOW, true, 20.0F, 5.0F));
+        warmStart = newWarmStart();
+        assertFalse(warmStart.offer(NOW - 10001 * MILLIS, NOW, true, 20.0F, 5.0F));
+        assertFalse(warmStart.isShowingLastFix());
+    }
+
+    @Test
+    public void ignoresAFixFromTheFuture() {
+        //a fix timed on a different clock, or from before a reboot
+        assertFalse(newWarmStart().offer(NOW + 1000 * MILLIS, NOW, true, 20.0F, 5.0F));
+    }
+
+    @Test
+    public void ignoresAFixWithoutSpeed() {
+        assertFalse(newWarmStart().offer(NOW - 1000 * MILLIS, NOW, false, 0.0F, 5.0F));
+    }
+
+    @Test
+    public void ignoresAnInaccurateFix() {
+        assertFalse(newWarmStart().offer(NOW - 1000 * MILLIS, NOW, true, 20.0F, 20.5F));
+        assertFalse(newWarmStart().offer(NOW - 1000 * MILLIS, NOW, true, 20.0F, Float.NaN));
+    }
+
+    @Test
+    public void theFirstAcceptedFixReplacesTheLastFix() {
+        WarmStart warmStart = newWarmStart();
+        warmStart.offer(NOW - 1000 * MILLIS, NOW, true, 20.0F, 5.0F);
+
+        //all the fixes of the result rejected
+        assertFalse(warmStart.onLocationResult(false));
+        assertTrue(warmStart.isShowingLastFix());
+
+        assertTrue(warmStart.onLocationResult(true));
+        assertFalse(warmStart.isShowingLastFix());
+        assertTrue(warmStart.hasRealSpeed());
+        assertFalse(warmStart.onLocationResult(true));
+    }
+
+    @Test
+    public void sendsTheLastFixOnlyWhileDisplayed() {
+        WarmStart warmStart = newWarmStart();
+        assertFalse(warmStart.onLastFix(NOW - 1000 * MILLIS, NOW, true, 20.0F, 5.0F, false));
+        //shown when the speeds are displayed again
+        assertTrue(warmStart.isShowingLastFix());
+        assertFalse(mTimer.isLastFixShown());
+
+        assertTrue(newWarmStart().onLastFix(NOW - 1000 * MILLIS, NOW, true, 20.0F, 5.0F, true));
+        mTimer.onFrame(1000L);
+        assertTrue(mTimer.isLastFixShown());
+    }
+
+    @Test
+    public void sendsTheFirstResultWithAnAcceptedFix() {
+        SpeedPipeline pipeline = new SpeedPipeline(new SpeedProcessor(new SpeedProcessor.Listener() {
+            @Override
+            public void onNewMaxSpeed(float maxSpeed) {
+            }
+
+            @Override
+            public void onSpeedChanged(float speed, float maxSpeed) {
+            }
+        }), new SpeedEstimator(), new SampleGate(), new AdaptiveRateScheduler(1000L, 10000L));
+        WarmStart warmStart = newWarmStart();
+
+        //stopped, the first fix is held by the sample gate, the second accepted, neither changes the speed
+        for (int i = 1; i <= 2; i++) {
+            pipeline.begin();
+            pipeline.add(i * 1000 * MILLIS, i * 1000L, true, 0.0F, 0.5F, 4.0F, -33.8688, 151.2093);
+            assertEquals(i == 1 ? WarmStart.RESULT_NOT_SENT : WarmStart.RESULT_SEND,
+                    warmStart.endResult(pipeline, true));
+        }
+        assertTrue(warmStart.hasRealSpeed());
+        assertTrue(mTimer.onFrame(3000L));
+        assertEquals(3000L, mTimer.getRealSpeedMillis());
+
+        pipeline.begin();
+        pipeline.add(3000 * MILLIS, 3000L, true, 0.0F, 0.5F, 4.0F, -33.8688, 151.2093);
+        assertEquals(WarmStart.RESULT_NOT_SENT, warmStart.endResult(pipeline, true));
+    }
+
+    @Test
+    public void ignoresALastFixArrivingAfterTheFirstFix() {
+        WarmStart warmStart = newWarmStart();
+        assertTrue(warmStart.onLocationResult(true));
+        assertFalse(warmStart.offer(NOW - 1000 * MILLIS, NOW, true, 20.0F, 5.0F));
+        assertFalse(warmStart.isShowingLastFix());
+    }
+}